@@ -122,6 +122,76 @@ public abstract class GenericObject implements Serializable, Cloneable {
         return matchExpression;
     }
 
+    /**
+     * The public clone methods of the Cloneable classes passed to makeClone.
+     */
+    private static final Map<Class<?>, Method> cloneMethods =
+        new java.util.concurrent.ConcurrentHashMap<Class<?>, Method>();
+
+    /**
+     * The fields that the introspection based equals and match look at, per class.
+     */
+    private static final Map<Class<?>, Field[]> comparableFields =
+        new java.util.concurrent.ConcurrentHashMap<Class<?>, Field[]>();
+
+    /**
+     * Return the non private, non static fields declared by the given class, leaving
+     * out the book-keeping fields (indentation and stringRepresentation). These are the
+     * fields compared by the introspection based equals and match. The array is computed
+     * (and made accessible) once per class since getDeclaredFields copies it on every call.
+     */
+    protected static Field[] getComparableFields(Class<?> c) {
+        Field[] fields = comparableFields.get(c);
+        if (fields == null) {
+            Field[] declared = c.getDeclaredFields();
+            ArrayList<Field> list = new ArrayList<Field>(declared.length);
+            for (int i = 0; i < declared.length; i++) {
+                Field f = declared[i];
+                int modifier = f.getModifiers();
+                if (Modifier.isPrivate(modifier) || Modifier.isStatic(modifier))
+                    continue;
+                String fieldName = f.getName();
+                if (fieldName.equals("stringRepresentation")
+                        || fieldName.equals("indentation"))
+                    continue;
+                try {
+                    f.setAccessible(true);
+                } catch (SecurityException ex) {
+                    // Fall back to the normal access checks.
+                }
+                list.add(f);
+            }
+            fields = list.toArray(new Field[list.size()]);
+            comparableFields.put(c, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Compare the value of a primitive field in two objects of the same class.
+     */
+    protected static boolean equalPrimitiveFields(Field f, Object a, Object b)
+            throws IllegalAccessException {
+        Class<?> fieldType = f.getType();
+        if (fieldType == Integer.TYPE)
+            return f.getInt(a) == f.getInt(b);
+        else if (fieldType == Boolean.TYPE)
+            return f.getBoolean(a) == f.getBoolean(b);
+        else if (fieldType == Long.TYPE)
+            return f.getLong(a) == f.getLong(b);
+        else if (fieldType == Short.TYPE)
+            return f.getShort(a) == f.getShort(b);
+        else if (fieldType == Character.TYPE)
+            return f.getChar(a) == f.getChar(b);
+        else if (fieldType == Double.TYPE)
+            return f.getDouble(a) == f.getDouble(b);
+        else if (fieldType == Float.TYPE)
+            return f.getFloat(a) == f.getFloat(b);
+        else if (fieldType == Byte.TYPE)
+            return f.getByte(a) == f.getByte(b);
+        return true;
+    }
+
     public static Class<?> getClassFromName(String className) {
         try {
             return Class.forName(className);
@@ -147,6 +217,13 @@ public abstract class GenericObject implements Serializable, Cloneable {
     public static Object makeClone(Object obj) {
         if (obj == null)
             throw new NullPointerException("null obj!");
+        // The common cases first, without any class lookups.
+        if (obj instanceof String)
+            return obj;
+        else if (obj instanceof GenericObject)
+            return ((GenericObject) obj).clone();
+        else if (obj instanceof GenericObjectList)
+            return ((GenericObjectList) obj).clone();
         Class<?> c = obj.getClass();
         Object clone_obj = obj;
         if (immutableClasses.contains (c))
@@ -181,7 +258,11 @@ public abstract class GenericObject implements Serializable, Cloneable {
             // If a clone method exists for the object, then
             // invoke it
             try {
-                Method meth = c.getMethod("clone", (Class[]) null);
+                Method meth = cloneMethods.get(c);
+                if (meth == null) {
+                    meth = c.getMethod("clone", (Class[]) null);
+                    cloneMethods.put(c, meth);
+                }
                 clone_obj = meth.invoke(obj,(Object[]) null);
             } catch (SecurityException ex) {
             } catch (IllegalArgumentException ex) {
@@ -411,60 +492,23 @@ public abstract class GenericObject implements Serializable, Cloneable {
         if (!this.getClass().equals(that.getClass()))
             return false;
         Class<?> myclass = this.getClass();
-        Class<?> hisclass = that.getClass();
         while (true) {
-            Field[] fields = myclass.getDeclaredFields();
-            Field[] hisfields = hisclass.getDeclaredFields();
+            Field[] fields = getComparableFields(myclass);
             for (int i = 0; i < fields.length; i++) {
                 Field f = fields[i];
-                Field g = hisfields[i];
-                // Only print protected and public members.
-                int modifier = f.getModifiers();
-                if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                    continue;
-                Class<?> fieldType = f.getType();
-                String fieldName = f.getName();
-                if (fieldName.compareTo("stringRepresentation") == 0) {
-                    continue;
-                }
-                if (fieldName.compareTo("indentation") == 0) {
-                    continue;
-                }
                 try {
-                    // Primitive fields are printed with type: value
-                    if (fieldType.isPrimitive()) {
-                        String fname = fieldType.toString();
-                        if (fname.compareTo("int") == 0) {
-                            if (f.getInt(this) != g.getInt(that))
-                                return false;
-                        } else if (fname.compareTo("short") == 0) {
-                            if (f.getShort(this) != g.getShort(that))
-                                return false;
-                        } else if (fname.compareTo("char") == 0) {
-                            if (f.getChar(this) != g.getChar(that))
-                                return false;
-                        } else if (fname.compareTo("long") == 0) {
-                            if (f.getLong(this) != g.getLong(that))
-                                return false;
-                        } else if (fname.compareTo("boolean") == 0) {
-                            if (f.getBoolean(this) != g.getBoolean(that))
-                                return false;
-                        } else if (fname.compareTo("double") == 0) {
-                            if (f.getDouble(this) != g.getDouble(that))
-                                return false;
-                        } else if (fname.compareTo("float") == 0) {
-                            if (f.getFloat(this) != g.getFloat(that))
-                                return false;
-                        }
-                    } else if (g.get(that) == f.get(this))
-                        return true;
-                    else if (f.get(this) == null)
-                        return false;
-                    else if (g.get(that) == null)
-                        return false;
-                    else if (g.get(that) == null && f.get(this) != null)
+                    if (f.getType().isPrimitive()) {
+                        if (!equalPrimitiveFields(f, this, that))
+                            return false;
+                        continue;
+                    }
+                    Object myObj = f.get(this);
+                    Object hisObj = f.get(that);
+                    if (myObj == hisObj)
+                        continue;
+                    else if (myObj == null || hisObj == null)
                         return false;
-                    else if (!f.get(this).equals(g.get(that)))
+                    else if (!myObj.equals(hisObj))
                         return false;
                 } catch (IllegalAccessException ex1) {
                     InternalErrorHandler.handleException(ex1);
@@ -474,7 +518,6 @@ public abstract class GenericObject implements Serializable, Cloneable {
                 break;
             else {
                 myclass = myclass.getSuperclass();
-                hisclass = hisclass.getSuperclass();
             }
 
         }
@@ -496,54 +539,16 @@ public abstract class GenericObject implements Serializable, Cloneable {
         if (!this.getClass().equals(other.getClass()))
             return false;
         GenericObject that = (GenericObject) other;
-        Class<?> myclass = this.getClass();
-        Field[] fields = myclass.getDeclaredFields();
-        Class<?> hisclass = other.getClass();
-        Field[] hisfields = hisclass.getDeclaredFields();
+        Field[] fields = getComparableFields(this.getClass());
         for (int i = 0; i < fields.length; i++) {
             Field f = fields[i];
-            Field g = hisfields[i];
-            // Only print protected and public members.
-            int modifier = f.getModifiers();
-            if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                continue;
-            Class<?> fieldType = f.getType();
-            String fieldName = f.getName();
-            if (fieldName.compareTo("stringRepresentation") == 0) {
-                continue;
-            }
-            if (fieldName.compareTo("indentation") == 0) {
-                continue;
-            }
             try {
-                // Primitive fields are printed with type: value
-                if (fieldType.isPrimitive()) {
-                    String fname = fieldType.toString();
-                    if (fname.compareTo("int") == 0) {
-                        if (f.getInt(this) != g.getInt(that))
-                            return false;
-                    } else if (fname.compareTo("short") == 0) {
-                        if (f.getShort(this) != g.getShort(that))
-                            return false;
-                    } else if (fname.compareTo("char") == 0) {
-                        if (f.getChar(this) != g.getChar(that))
-                            return false;
-                    } else if (fname.compareTo("long") == 0) {
-                        if (f.getLong(this) != g.getLong(that))
-                            return false;
-                    } else if (fname.compareTo("boolean") == 0) {
-                        if (f.getBoolean(this) != g.getBoolean(that))
-                            return false;
-                    } else if (fname.compareTo("double") == 0) {
-                        if (f.getDouble(this) != g.getDouble(that))
-                            return false;
-                    } else if (fname.compareTo("float") == 0) {
-                        if (f.getFloat(this) != g.getFloat(that))
-                            return false;
-                    }
+                if (f.getType().isPrimitive()) {
+                    if (!equalPrimitiveFields(f, this, that))
+                        return false;
                 } else {
                     Object myObj = f.get(this);
-                    Object hisObj = g.get(that);
+                    Object hisObj = f.get(that);
                     if (hisObj != null && myObj == null)
                         return false;
                     else if (hisObj == null && myObj != null)
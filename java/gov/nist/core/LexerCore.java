@@ -27,6 +27,7 @@ package gov.nist.core;
 
 import java.text.ParseException;
 import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** A lexical analyzer that is used by all parsers in our implementation.
  *
@@ -82,40 +83,44 @@ public class LexerCore extends StringTokenizer {
     public static final int AND = (int) '&';
     public static final int UNDERSCORE = (int) '_';
 
-    protected static final Hashtable globalSymbolTable;
-    protected static final Hashtable lexerTables;
-    protected Hashtable currentLexer;
+    protected static final Hashtable<Integer, String> globalSymbolTable;
+    protected static final ConcurrentHashMap<String, Hashtable<String, Integer>> lexerTables;
+    protected Hashtable<String, Integer> currentLexer;
     protected String currentLexerName;
     protected Token currentMatch;
 
     static {
-        globalSymbolTable = new Hashtable();
-        lexerTables = new Hashtable();
+        globalSymbolTable = new Hashtable<Integer, String>();
+        lexerTables = new ConcurrentHashMap<String, Hashtable<String, Integer>>();
     }
 
     protected void addKeyword(String name, int value) {
-        // System.out.println("addKeyword " + name + " value = " + value);
-        // new Exception().printStackTrace();
+        addKeyword(currentLexer, name, value);
+    }
+
+    protected static void addKeyword(Hashtable<String, Integer> table, String name, int value) {
         Integer val = Integer.valueOf(value);
-        currentLexer.put(name, val);
+        table.put(name, val);
         if (!globalSymbolTable.containsKey(val))
             globalSymbolTable.put(val, name);
     }
 
     public String lookupToken(int value) {
         if (value > START) {
-            return (String) globalSymbolTable.get(Integer.valueOf(value));
+            return globalSymbolTable.get(Integer.valueOf(value));
         } else {
             Character ch = Character.valueOf((char) value);
             return ch.toString();
         }
     }
 
-    protected Hashtable addLexer(String lexerName) {
-        currentLexer = (Hashtable) lexerTables.get(lexerName);
+    protected Hashtable<String, Integer> addLexer(String lexerName) {
+        currentLexer = lexerTables.get(lexerName);
         if (currentLexer == null) {
-            currentLexer = new Hashtable();
-            lexerTables.put(lexerName, currentLexer);
+            Hashtable<String, Integer> table = new Hashtable<String, Integer>();
+            currentLexer = lexerTables.putIfAbsent(lexerName, table);
+            if (currentLexer == null)
+                currentLexer = table;
         }
         return currentLexer;
     }
@@ -127,7 +132,7 @@ public class LexerCore extends StringTokenizer {
     }
 
     protected LexerCore() {
-        this.currentLexer = new Hashtable();
+        this.currentLexer = new Hashtable<String, Integer>();
         this.currentLexerName = "charLexer";
     }
 
@@ -177,7 +182,7 @@ public class LexerCore extends StringTokenizer {
                 tok.tokenValue = id;
                 String idUppercase = id.toUpperCase();
                 if (currentLexer.containsKey(idUppercase)) {
-                    Integer type = (Integer) currentLexer.get(idUppercase);
+                    Integer type = currentLexer.get(idUppercase);
                     tok.tokenType = type.intValue();
                 } else
                     tok.tokenType = ID;
@@ -223,7 +228,7 @@ public class LexerCore extends StringTokenizer {
                 this.currentMatch.tokenType = SAFE;
             } else {
                 String nexttok = getNextId();
-                Integer cur = (Integer) currentLexer.get(nexttok.toUpperCase());
+                Integer cur = currentLexer.get(nexttok.toUpperCase());
 
                 if (cur == null || cur.intValue() != tok)
                     throw new ParseException(
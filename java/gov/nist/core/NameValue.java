@@ -54,8 +54,6 @@ public class NameValue extends GenericObject implements Entry<String,String> {
 
     private String separator;
 
-    private String quotes;
-
     private String name;
 
     private Object value;
@@ -64,7 +62,6 @@ public class NameValue extends GenericObject implements Entry<String,String> {
         name = null;
         value = "";
         separator = Separators.EQUALS;
-        this.quotes = "";
         this.isFlagParameter = false;
     }
 
@@ -82,7 +79,6 @@ public class NameValue extends GenericObject implements Entry<String,String> {
         name = n;
         value = v;
         separator = Separators.EQUALS;
-        quotes = "";
         this.isFlagParameter = isFlag;
     }
 
@@ -109,7 +105,6 @@ public class NameValue extends GenericObject implements Entry<String,String> {
      */
     public void setQuotedValue() {
         isQuotedString = true;
-        this.quotes = Separators.DOUBLE_QUOTE;
     }
 
     /**
@@ -160,6 +155,9 @@ public class NameValue extends GenericObject implements Entry<String,String> {
     }
 
     public StringBuffer encode(StringBuffer buffer) {
+        // The quotes are not kept in a field of their own, every parameter of every
+        // message carries a NameValue.
+        String quotes = isQuotedString ? Separators.DOUBLE_QUOTE : "";
         if (name != null && value != null && !isFlagParameter) {
             if (GenericObject.isMySubclass(value.getClass())) {
                 GenericObject gv = (GenericObject) value;
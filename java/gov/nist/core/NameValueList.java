@@ -31,17 +31,26 @@ package gov.nist.core;
 import java.util.concurrent.*;
 
 import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
- * Implements a simple NameValue association with a quick lookup function (via a
- * hash map) the default behavior for this class is not thread safe.
- * specify a constructor with boolean true to make this thread safe.
+ * Implements a simple NameValue association with a quick lookup function. The
+ * default behavior for this class is not thread safe. Specify a constructor
+ * with boolean true to make this thread safe.
+ * <p>
+ * Most lists hold no parameter or only one or two (a tag, a branch and rport,
+ * lr), so small lists are kept in two parallel arrays that are allocated on
+ * the first set and searched linearly, ignoring case. A list that grows beyond
+ * MAX_COMPACT_SIZE entries moves to a LinkedHashMap keyed by the lower case
+ * name. The names of the common parameters are shared between all lists.
  *
  * @version 1.2
  *
@@ -56,8 +65,39 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
 
     private static final long serialVersionUID = -6998271876574260243L;
 
+    /**
+     * The largest number of entries kept in the arrays.
+     */
+    private static final int MAX_COMPACT_SIZE = 16;
+
+    /**
+     * Lower case names of the parameters found in nearly every message.
+     */
+    private static final Map<String,String> wellKnownNames = new HashMap<String,String>();
+
+    static {
+        String[] names = { "tag", "branch", "received", "rport", "maddr", "ttl",
+                "transport", "user", "method", "lr", "expires", "q", "comp", "ob", "gr",
+                "+sip.instance", "reg-id", "nonce", "realm", "qop", "algorithm", "opaque",
+                "response", "uri", "username", "cnonce", "nc", "stale", "domain",
+                "handling", "purpose", "duration", "id", "cause", "text", "to-tag",
+                "from-tag", "phone-context" };
+        for (int i = 0; i < names.length; i++)
+            wellKnownNames.put(names[i], names[i]);
+    }
+
+    /**
+     * The map used once the list is too large for the arrays (or always, if the list
+     * is synchronized). Null while the list is compact.
+     */
     private Map<String,NameValue> hmap;
 
+    private String[] keys;
+
+    private NameValue[] entries;
+
+    private int size;
+
     private String separator;
 
     /**
@@ -65,15 +105,100 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
     public NameValueList() {
         this.separator = ";";
-        this.hmap = new LinkedHashMap<String,NameValue>();
     }
 
     public NameValueList(boolean sync) {
         this.separator = ";";
         if (sync)
             this.hmap = new ConcurrentHashMap<String,NameValue>();
-        else
-            this.hmap = new LinkedHashMap<String,NameValue>();
+    }
+
+    /**
+     * The lower case form of a name, shared with other lists for the common names.
+     */
+    private static String toKey(String name) {
+        String key = wellKnownNames.get(name);
+        if (key != null)
+            return key;
+        key = name.toLowerCase();
+        String wellKnown = wellKnownNames.get(key);
+        return wellKnown != null ? wellKnown : key;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            String key = keys[i];
+            if (key == name || key.equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private NameValue lookup(String name) {
+        if (hmap != null)
+            return hmap.get(name.toLowerCase());
+        int index = indexOf(name);
+        return index < 0 ? null : entries[index];
+    }
+
+    private NameValue store(String key, NameValue nameValue) {
+        if (hmap != null)
+            return hmap.put(key, nameValue);
+        int index = indexOf(key);
+        if (index >= 0) {
+            NameValue old = entries[index];
+            entries[index] = nameValue;
+            return old;
+        }
+        if (size == MAX_COMPACT_SIZE) {
+            Map<String,NameValue> map = new LinkedHashMap<String,NameValue>();
+            for (int i = 0; i < size; i++)
+                map.put(keys[i], entries[i]);
+            map.put(key, nameValue);
+            this.hmap = map;
+            this.keys = null;
+            this.entries = null;
+            this.size = 0;
+            return null;
+        }
+        if (keys == null) {
+            keys = new String[2];
+            entries = new NameValue[2];
+        } else if (size == keys.length) {
+            int capacity = Math.min(MAX_COMPACT_SIZE, size * 2);
+            String[] newKeys = new String[capacity];
+            NameValue[] newEntries = new NameValue[capacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(entries, 0, newEntries, 0, size);
+            keys = newKeys;
+            entries = newEntries;
+        }
+        keys[size] = key;
+        entries[size] = nameValue;
+        size++;
+        return null;
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(entries, index + 1, entries, index, moved);
+        }
+        size--;
+        keys[size] = null;
+        entries[size] = null;
+    }
+
+    private NameValue removeKey(String name) {
+        if (hmap != null)
+            return hmap.remove(name.toLowerCase());
+        int index = indexOf(name);
+        if (index < 0)
+            return null;
+        NameValue old = entries[index];
+        removeAt(index);
+        return old;
     }
 
     public void setSeparator(String separator) {
@@ -91,7 +216,13 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
     }
 
     public StringBuffer encode(StringBuffer buffer) {
-        if (!hmap.isEmpty()) {
+        if (hmap == null) {
+            for (int i = 0; i < size; i++) {
+                if (i > 0)
+                    buffer.append(separator);
+                entries[i].encode(buffer);
+            }
+        } else if (!hmap.isEmpty()) {
             Iterator<NameValue> iterator = hmap.values().iterator();
             if (iterator.hasNext()) {
                 while (true) {
@@ -121,15 +252,20 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
 
     public void set(NameValue nv) {
-        this.hmap.put(nv.getName().toLowerCase(), nv);
+        String name = nv.getName();
+        String key = toKey(name);
+        if (key != name && key.equals(name))
+            nv.setName(key);
+        store(key, nv);
     }
 
     /**
      * Set a namevalue object in this list.
      */
     public void set(String name, Object value) {
-        NameValue nameValue = new NameValue(name, value);
-        hmap.put(name.toLowerCase(), nameValue);
+        String key = toKey(name);
+        NameValue nameValue = new NameValue(key.equals(name) ? key : name, value);
+        store(key, nameValue);
 
     }
 
@@ -149,15 +285,15 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
         }
         NameValueList other = (NameValueList) otherObject;
 
-        if (hmap.size() != other.hmap.size()) {
+        if (size() != other.size()) {
             return false;
         }
-        Iterator<String> li = this.hmap.keySet().iterator();
+        Iterator<String> li = this.getNames();
 
         while (li.hasNext()) {
             String key = (String) li.next();
             NameValue nv1 = this.getNameValue(key);
-            NameValue nv2 = (NameValue) other.hmap.get(key);
+            NameValue nv2 = other.getNameValue(key);
             if (nv2 == null)
                 return false;
             else if (!nv2.equals(nv1))
@@ -170,7 +306,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * Do a lookup on a given name and return value associated with it.
      */
     public Object getValue(String name) {
-        NameValue nv = this.getNameValue(name.toLowerCase());
+        NameValue nv = this.lookup(name);
         if (nv != null)
             return nv.getValueAsObject();
         else
@@ -183,7 +319,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @since 1.0
      */
     public NameValue getNameValue(String name) {
-        return (NameValue) this.hmap.get(name.toLowerCase());
+        return this.lookup(name);
     }
 
     /**
@@ -193,7 +329,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @since 1.0
      */
     public boolean hasNameValue(String name) {
-        return hmap.containsKey(name.toLowerCase());
+        return lookup(name) != null;
     }
 
     /**
@@ -202,22 +338,28 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @since 1.0
      */
     public boolean delete(String name) {
-        String lcName = name.toLowerCase();
-        if (this.hmap.containsKey(lcName)) {
-            this.hmap.remove(lcName);
-            return true;
-        } else {
-            return false;
-        }
-
+        return removeKey(name) != null;
     }
 
     public Object clone() {
         NameValueList retval = new NameValueList();
         retval.setSeparator(this.separator);
-        Iterator<NameValue> it = this.hmap.values().iterator();
-        while (it.hasNext()) {
-            retval.set((NameValue) ((NameValue) it.next()).clone());
+        if (hmap == null) {
+            if (size > 0) {
+                retval.keys = new String[size];
+                retval.entries = new NameValue[size];
+                for (int i = 0; i < size; i++) {
+                    retval.keys[i] = keys[i];
+                    retval.entries[i] = (NameValue) entries[i].clone();
+                }
+                retval.size = size;
+            }
+        } else {
+            Iterator<Map.Entry<String,NameValue>> it = this.hmap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String,NameValue> entry = it.next();
+                retval.store(entry.getKey(), (NameValue) entry.getValue().clone());
+            }
         }
         return retval;
     }
@@ -226,14 +368,14 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * Return the size of the embedded map
      */
     public int size() {
-        return this.hmap.size();
+        return hmap == null ? size : this.hmap.size();
     }
 
     /**
      * Return true if empty.
      */
     public boolean isEmpty() {
-        return hmap.isEmpty();
+        return size() == 0;
     }
 
     /**
@@ -242,7 +384,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @return the iterator.
      */
     public Iterator<NameValue> iterator() {
-        return this.hmap.values().iterator();
+        return values().iterator();
     }
 
     /**
@@ -251,7 +393,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @return a list iterator that has the names of the parameters.
      */
     public Iterator<String> getNames() {
-        return this.hmap.keySet().iterator();
+        return keySet().iterator();
 
     }
 
@@ -276,7 +418,13 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
 
     public void clear() {
-        this.hmap.clear();
+        if (hmap != null) {
+            this.hmap.clear();
+        } else {
+            this.keys = null;
+            this.entries = null;
+            this.size = 0;
+        }
     }
 
     /*
@@ -284,7 +432,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#containsKey(java.lang.Object)
      */
     public boolean containsKey(Object key) {
-        return this.hmap.containsKey(key.toString().toLowerCase());
+        return lookup(key.toString()) != null;
     }
 
     /*
@@ -292,7 +440,13 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#containsValue(java.lang.Object)
      */
     public boolean containsValue(Object value) {
-        return this.hmap.containsValue(value);
+        if (hmap != null)
+            return this.hmap.containsValue(value);
+        for (int i = 0; i < size; i++) {
+            if (entries[i].equals(value))
+                return true;
+        }
+        return false;
     }
 
     /*
@@ -300,7 +454,21 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#entrySet()
      */
     public Set<java.util.Map.Entry<String, NameValue>> entrySet() {
-        return this.hmap.entrySet();
+        if (hmap != null)
+            return this.hmap.entrySet();
+        return new AbstractSet<Map.Entry<String,NameValue>>() {
+            public Iterator<Map.Entry<String,NameValue>> iterator() {
+                return new CompactIterator<Map.Entry<String,NameValue>>() {
+                    Map.Entry<String,NameValue> element(int index) {
+                        return new CompactEntry(index);
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+        };
     }
 
     /*
@@ -308,7 +476,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#get(java.lang.Object)
      */
     public NameValue get(Object key) {
-        return this.hmap.get(key.toString().toLowerCase());
+        return this.lookup(key.toString());
     }
 
     /*
@@ -316,7 +484,25 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#keySet()
      */
     public Set<String> keySet() {
-        return this.hmap.keySet();
+        if (hmap != null)
+            return this.hmap.keySet();
+        return new AbstractSet<String>() {
+            public Iterator<String> iterator() {
+                return new CompactIterator<String>() {
+                    String element(int index) {
+                        return keys[index];
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public boolean contains(Object o) {
+                return o != null && containsKey(o);
+            }
+        };
     }
 
     /*
@@ -324,11 +510,16 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#put(java.lang.Object, java.lang.Object)
      */
     public NameValue put(String name, NameValue nameValue) {
-        return this.hmap.put(name, nameValue);
+        return this.store(toKey(name), nameValue);
     }
 
     public void putAll(Map<? extends String, ? extends NameValue> map) {
-        this.hmap.putAll(map);
+        Iterator<? extends Map.Entry<? extends String, ? extends NameValue>> it = map
+                .entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<? extends String, ? extends NameValue> entry = it.next();
+            put(entry.getKey(), entry.getValue());
+        }
     }
 
     /*
@@ -336,7 +527,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#remove(java.lang.Object)
      */
     public NameValue remove(Object key) {
-        return this.hmap.remove(key.toString().toLowerCase());
+        return this.removeKey(key.toString());
     }
 
     /*
@@ -344,11 +535,96 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#values()
      */
     public Collection<NameValue> values() {
-        return this.hmap.values();
+        if (hmap != null)
+            return this.hmap.values();
+        return new AbstractCollection<NameValue>() {
+            public Iterator<NameValue> iterator() {
+                return new CompactIterator<NameValue>() {
+                    NameValue element(int index) {
+                        return entries[index];
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+        };
     }
     
     @Override
     public int hashCode() {
-        return this.hmap.keySet().hashCode();
+        if (hmap != null)
+            return this.hmap.keySet().hashCode();
+        int hashCode = 0;
+        for (int i = 0; i < size; i++)
+            hashCode += keys[i].hashCode();
+        return hashCode;
+    }
+
+    /**
+     * Iterates over the arrays of a compact list.
+     */
+    private abstract class CompactIterator<T> implements Iterator<T> {
+        private int next;
+
+        private int last = -1;
+
+        abstract T element(int index);
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public T next() {
+            if (next >= size)
+                throw new NoSuchElementException();
+            last = next++;
+            return element(last);
+        }
+
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    /**
+     * An entry of a compact list; setValue writes through to the list.
+     */
+    private class CompactEntry implements Map.Entry<String,NameValue> {
+        private final int index;
+
+        CompactEntry(int index) {
+            this.index = index;
+        }
+
+        public String getKey() {
+            return keys[index];
+        }
+
+        public NameValue getValue() {
+            return entries[index];
+        }
+
+        public NameValue setValue(NameValue value) {
+            NameValue old = entries[index];
+            entries[index] = value;
+            return old;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> that = (Map.Entry<?,?>) other;
+            return getKey().equals(that.getKey()) && getValue().equals(that.getValue());
+        }
+
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
     }
 }
@@ -1,6 +1,7 @@
 package gov.nist.core;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Thread Auditor class:
@@ -13,6 +14,12 @@ import java.util.*;
  *   - The main implication for the monitored threads is that they can no longer block
  *     waiting for an event forever. Any wait() must be implemented with a timeout so that
  *     the thread can periodically ping the auditor.
+ *   - A ping is a volatile write to the handle of the thread, so that pinging does not
+ *     serialize the monitored threads.
+ *   - Threads bracket each message they process with beginWork and endWork. The auditor
+ *     keeps the longest processing time per thread and a background scan reports a thread
+ *     that has been working on the same message for longer than the stall threshold,
+ *     with its stack trace and the message, so that slow listeners can be found.
  *
  * This code is in the public domain.
  *
@@ -21,16 +28,46 @@ import java.util.*;
  */
 
 public class ThreadAuditor {
+    /// Maximum number of stall reports kept until the next audit
+    private static final int MAX_STALL_REPORTS = 100;
+
+    /// Maximum length of the description of a message in a stall report
+    private static final int MAX_WORK_DESCRIPTION = 200;
+
     /// Threads being monitored
-    private Map<Thread,ThreadHandle> threadHandles = new HashMap<Thread,ThreadHandle>();
+    private Map<Thread,ThreadHandle> threadHandles = new ConcurrentHashMap<Thread,ThreadHandle>();
 
     /// How often are threads supposed to ping
-    private long pingIntervalInMillisecs = 0;
+    private volatile long pingIntervalInMillisecs = 0;
+
+    /// How long a thread may work on one message before it is reported (0 = the audit interval)
+    private volatile long stallThresholdInMillisecs = 0;
+
+    /// Stall reports produced since the last audit
+    private final LinkedList<String> stallReports = new LinkedList<String>();
+
+    /// Logger for the stall reports (may be null)
+    private volatile StackLogger stackLogger;
+
+    /// Runs the stall scan (null when stall detection is not running)
+    private Timer stallScanTimer;
 
     /// Internal class, used as a handle by the monitored threads
     public class ThreadHandle {
         /// Set to true when the thread pings, periodically reset to false by the auditor
-        private boolean isThreadActive;
+        private volatile boolean isThreadActive;
+
+        /// Time the thread started working on its current message, 0 when idle
+        private volatile long workStartTime;
+
+        /// The message the thread is working on
+        private volatile Object work;
+
+        /// Longest time (ms) the thread took for one message
+        private volatile long maxLatency;
+
+        /// Start time of the work last reported as stalled, so that it is reported once
+        private volatile long reportedStallTime;
 
         /// Thread being monitored
         private Thread thread;
@@ -62,7 +99,7 @@ public class ThreadAuditor {
 
         // Helper function to allow threads to ping using this handle
         public void ping() {
-            threadAuditor.ping(this);
+            isThreadActive = true;
         }
 
         // Helper function to allow threads to get the ping interval directly from this handle
@@ -70,6 +107,40 @@ public class ThreadAuditor {
             return threadAuditor.getPingIntervalInMillisecs();
         }
 
+        /**
+         * Called by the monitored thread before it processes a message.
+         *
+         * @param message -- the message (or event) being processed, reported if the thread
+         *        stalls.
+         */
+        public void beginWork(Object message) {
+            if (!threadAuditor.isEnabled())
+                return;
+            this.work = message;
+            this.workStartTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Called by the monitored thread when it is done with the message passed to
+         * beginWork. Also counts as a ping.
+         */
+        public void endWork() {
+            long start = workStartTime;
+            if (start == 0)
+                return;
+            long latency = System.currentTimeMillis() - start;
+            workStartTime = 0;
+            work = null;
+            if (latency > maxLatency)
+                maxLatency = latency;
+            isThreadActive = true;
+        }
+
+        /// The longest time (ms) the thread took to process a message
+        public long getMaxLatencyInMillisecs() {
+            return maxLatency;
+        }
+
         /**
          * Returns a string representation of the object
          *
@@ -78,7 +149,8 @@ public class ThreadAuditor {
         public String toString() {
             StringBuffer toString = new StringBuffer()
                     .append("Thread Name: ").append(thread.getName())
-                    .append(", Alive: ").append(thread.isAlive());
+                    .append(", Alive: ").append(thread.isAlive())
+                    .append(", Max latency: ").append(maxLatency).append(" ms");
             return toString.toString();
         }
     }
@@ -93,13 +165,29 @@ public class ThreadAuditor {
         pingIntervalInMillisecs = value;
     }
 
+    /// How long (ms) a thread may work on one message before it is reported as stalled
+    public long getStallThresholdInMillisecs() {
+        long threshold = stallThresholdInMillisecs;
+        return threshold > 0 ? threshold : 2 * pingIntervalInMillisecs;
+    }
+
+    /// Defines the stall threshold (0 = the audit interval, twice the ping interval)
+    public void setStallThresholdInMillisecs(long value) {
+        stallThresholdInMillisecs = value;
+    }
+
+    /// Defines the logger the stall reports are written to as warnings
+    public void setStackLogger(StackLogger stackLogger) {
+        this.stackLogger = stackLogger;
+    }
+
     /// Indicates if the auditing of threads is enabled
     public boolean isEnabled() {
         return (pingIntervalInMillisecs > 0);
     }
 
     /// Called by a thread that wants to be monitored
-    public synchronized ThreadHandle addCurrentThread() {
+    public ThreadHandle addCurrentThread() {
         // Create and return a thread handle but only add it
         // to the list of monitored threads if the auditor is enabled
         ThreadHandle threadHandle = new ThreadHandle(this);
@@ -110,18 +198,114 @@ public class ThreadAuditor {
     }
 
     /// Stops monitoring a given thread
-    public synchronized void removeThread(Thread thread) {
+    public void removeThread(Thread thread) {
         threadHandles.remove(thread);
     }
 
     /// Called by a monitored thread reporting that it's alive and well
-    public synchronized void ping(ThreadHandle threadHandle) {
-        threadHandle.setThreadActive(true);
+    public void ping(ThreadHandle threadHandle) {
+        threadHandle.ping();
     }
 
     /// Resets the auditor
-    public synchronized void reset() {
+    public void reset() {
         threadHandles.clear();
+        synchronized (stallReports) {
+            stallReports.clear();
+        }
+    }
+
+    /**
+     * Start the background scan for stalled threads, if auditing is enabled. The scan runs
+     * on a daemon timer of its own so that it keeps running when the stack timer stalls.
+     */
+    public synchronized void startStallDetection() {
+        if (!isEnabled() || stallScanTimer != null)
+            return;
+        long period = Math.max(10, getStallThresholdInMillisecs() / 2);
+        stallScanTimer = new Timer("ThreadAuditor", true);
+        stallScanTimer.schedule(new TimerTask() {
+            public void run() {
+                scanForStalledThreads();
+            }
+        }, period, period);
+    }
+
+    /// Stops the background scan for stalled threads
+    public synchronized void stopStallDetection() {
+        if (stallScanTimer != null) {
+            stallScanTimer.cancel();
+            stallScanTimer = null;
+        }
+    }
+
+    /**
+     * Look for threads that have been working on one message for longer than the stall
+     * threshold and report them (once per message).
+     */
+    public void scanForStalledThreads() {
+        long now = System.currentTimeMillis();
+        long threshold = getStallThresholdInMillisecs();
+        Iterator<ThreadHandle> it = threadHandles.values().iterator();
+        while (it.hasNext()) {
+            ThreadHandle threadHandle = it.next();
+            long start = threadHandle.workStartTime;
+            if (start == 0 || now - start < threshold || threadHandle.reportedStallTime == start)
+                continue;
+            Object work = threadHandle.work;
+            StackTraceElement[] stackTrace = threadHandle.getThread().getStackTrace();
+            // The thread may have finished while we took the stack trace.
+            if (threadHandle.workStartTime != start)
+                continue;
+            threadHandle.reportedStallTime = start;
+
+            StringBuffer report = new StringBuffer();
+            report.append("Thread [").append(threadHandle.getThread().getName())
+                    .append("] has been processing a message for ").append(now - start)
+                    .append(" ms\n");
+            report.append("      Message: ").append(describe(work)).append("\n");
+            if (stackTrace.length > 0) {
+                report.append("      Stack trace:\n");
+                for (int i = 0; i < stackTrace.length; i++)
+                    report.append("         ").append(stackTrace[i]).append("\n");
+            } else {
+                report.append("      Stack trace is not available.\n");
+            }
+            String stallReport = report.toString();
+            synchronized (stallReports) {
+                stallReports.add(stallReport);
+                if (stallReports.size() > MAX_STALL_REPORTS)
+                    stallReports.removeFirst();
+            }
+            StackLogger logger = stackLogger;
+            if (logger != null)
+                logger.logWarning("Thread Auditor: " + stallReport);
+        }
+    }
+
+    /**
+     * A one line description of the message a thread is working on.
+     */
+    private static String describe(Object work) {
+        if (work == null)
+            return "unknown";
+        String description;
+        if (work instanceof java.net.DatagramPacket) {
+            java.net.DatagramPacket packet = (java.net.DatagramPacket) work;
+            description = new String(packet.getData(), packet.getOffset(), Math.min(packet
+                    .getLength(), MAX_WORK_DESCRIPTION)) + " (from " + packet.getAddress()
+                    + ":" + packet.getPort() + ")";
+        } else {
+            description = work.toString();
+        }
+        int end = description.indexOf('\r');
+        if (end == -1)
+            end = description.indexOf('\n');
+        if (end != -1)
+            description = description.substring(0, end);
+        if (description.length() > MAX_WORK_DESCRIPTION)
+            description = description.substring(0, MAX_WORK_DESCRIPTION) + "...";
+        return description;
     }
 
     /**
@@ -131,7 +315,6 @@ public class ThreadAuditor {
      */
     public synchronized String auditThreads() {
         String auditReport = null;
-        // Map stackTraces = null;
 
         // Scan all monitored threads looking for non-responsive ones
         Iterator<ThreadHandle> it = threadHandles.values().iterator();
@@ -146,33 +329,23 @@ public class ThreadAuditor {
                     auditReport = "Thread Auditor Report:\n";
                 }
                 auditReport += "   Thread [" + thread.getName() + "] has failed to respond to an audit request.\n";
-
-                /*
-                 * Stack traces are not available with JDK 1.4.
-                 * Feel free to uncomment this block to get a better report if you're using JDK 1.5.
-                 */
-                //  // Get stack traces for all live threads (do this only once per audit)
-                //  if (stackTraces == null) {
-                //      stackTraces = Thread.getAllStackTraces();
-                //  }
-                //
-                //  // Get the stack trace for the non-responsive thread
-                //  StackTraceElement[] stackTraceElements = (StackTraceElement[])stackTraces.get(thread);
-                //  if (stackTraceElements != null && stackTraceElements.length > 0) {
-                //      auditReport += "      Stack trace:\n";
-                //
-                //      for (int i = 0; i < stackTraceElements.length ; i ++ ) {
-                //          StackTraceElement stackTraceElement = stackTraceElements[i];
-                //          auditReport += "         " + stackTraceElement.toString() + "\n";
-                //      }
-                //  } else {
-                //      auditReport += "      Stack trace is not available.\n";
-                //  }
             }
 
             // Reset the ping status of the thread
             threadHandle.setThreadActive(false);
         }
+
+        // Add the stalls found by the background scan since the last audit
+        synchronized (stallReports) {
+            if (!stallReports.isEmpty()) {
+                StringBuffer stalls = new StringBuffer(auditReport == null ? "Thread Auditor Report:\n"
+                        : auditReport);
+                for (String stallReport : stallReports)
+                    stalls.append("   ").append(stallReport);
+                stallReports.clear();
+                auditReport = stalls.toString();
+            }
+        }
         return auditReport;
     }
 
@@ -181,7 +354,7 @@ public class ThreadAuditor {
      *
      * @return a string representation of the object
      */
-    public synchronized String toString() {
+    public String toString() {
         String toString = "Thread Auditor - List of monitored threads:\n";
         Iterator<ThreadHandle> it = threadHandles.values().iterator();
         while ( it.hasNext()) {
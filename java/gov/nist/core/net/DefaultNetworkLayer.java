@@ -33,6 +33,7 @@ import java.net.MulticastSocket;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
 
 /* Added by Daniel J. Martinez Manzano <dani@dif.um.es> */
 import javax.net.ssl.SSLSocket;
@@ -48,11 +49,20 @@ import javax.net.ssl.SSLServerSocketFactory;
  * @since 1.1
  *
  */
-public class DefaultNetworkLayer implements NetworkLayer {
+public class DefaultNetworkLayer implements NetworkLayerExt {
 
-    private SSLSocketFactory sslSocketFactory;
+    /**
+     * The default SSL factories, created on first use: initializing the default SSL context
+     * loads the JVM trust store, which takes longer than the rest of stack startup and is
+     * not needed by stacks without TLS.
+     */
+    private static class SSLFactories {
+        static final SSLSocketFactory sslSocketFactory = (SSLSocketFactory) SSLSocketFactory
+                .getDefault();
 
-    private SSLServerSocketFactory sslServerSocketFactory;
+        static final SSLServerSocketFactory sslServerSocketFactory = (SSLServerSocketFactory) SSLServerSocketFactory
+                .getDefault();
+    }
 
     /**
      * single default network layer; for flexibility, it may be better not to
@@ -61,9 +71,6 @@ public class DefaultNetworkLayer implements NetworkLayer {
     public static final DefaultNetworkLayer SINGLETON = new DefaultNetworkLayer();
 
     private DefaultNetworkLayer() {
-        sslServerSocketFactory = (SSLServerSocketFactory) SSLServerSocketFactory
-                .getDefault();
-        sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
     }
 
     public ServerSocket createServerSocket(int port, int backlog,
@@ -91,26 +98,41 @@ public class DefaultNetworkLayer implements NetworkLayer {
             } catch (IOException e) {
                 throw new SocketException( e.getLocalizedMessage() );
             }
-        } else return new DatagramSocket(port, laddr);
+        } else {
+            // Backed by a channel so that the stack can send from the
+            // listening socket with direct buffers.
+            DatagramSocket ds = null;
+            try {
+                ds = DatagramChannel.open().socket();
+                ds.bind(new InetSocketAddress(laddr, port));
+                return ds;
+            } catch (SocketException e) {
+                if (ds != null)
+                    ds.close();
+                throw e;
+            } catch (IOException e) {
+                throw new SocketException( e.getLocalizedMessage() );
+            }
+        }
     }
 
     /* Added by Daniel J. Martinez Manzano <dani@dif.um.es> */
     public SSLServerSocket createSSLServerSocket(int port, int backlog,
             InetAddress bindAddress) throws IOException {
-        return (SSLServerSocket) sslServerSocketFactory.createServerSocket(
+        return (SSLServerSocket) SSLFactories.sslServerSocketFactory.createServerSocket(
                 port, backlog, bindAddress);
     }
 
     /* Added by Daniel J. Martinez Manzano <dani@dif.um.es> */
     public SSLSocket createSSLSocket(InetAddress address, int port)
             throws IOException {
-        return (SSLSocket) sslSocketFactory.createSocket(address, port);
+        return (SSLSocket) SSLFactories.sslSocketFactory.createSocket(address, port);
     }
 
     /* Added by Daniel J. Martinez Manzano <dani@dif.um.es> */
     public SSLSocket createSSLSocket(InetAddress address, int port,
             InetAddress myAddress) throws IOException {
-        return (SSLSocket) sslSocketFactory.createSocket(address, port,
+        return (SSLSocket) SSLFactories.sslSocketFactory.createSocket(address, port,
                 myAddress, 0);
     }
 
@@ -156,4 +178,30 @@ public class DefaultNetworkLayer implements NetworkLayer {
             return new Socket(address, port);
     }
 
+    public Socket connectSocket(InetAddress address, int port, InetAddress myAddress,
+            int timeout) throws IOException {
+        Socket sock = new Socket();
+        try {
+            if (myAddress != null)
+                sock.bind(new InetSocketAddress(myAddress, 0));
+            sock.connect(new InetSocketAddress(address, port), timeout);
+            return sock;
+        } catch (IOException ex) {
+            sock.close();
+            throw ex;
+        }
+    }
+
+    public SSLSocket connectSSLSocket(InetAddress address, int port, InetAddress myAddress,
+            int timeout) throws IOException {
+        Socket sock = connectSocket(address, port, myAddress, timeout);
+        try {
+            return (SSLSocket) SSLFactories.sslSocketFactory.createSocket(sock,
+                    address.getHostAddress(), port, true);
+        } catch (IOException ex) {
+            sock.close();
+            throw ex;
+        }
+    }
+
 }
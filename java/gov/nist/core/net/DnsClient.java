@@ -0,0 +1,479 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package gov.nist.core.net;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A minimal DNS stub resolver that speaks the DNS wire protocol over UDP, and
+ * over TCP when an answer does not fit in a datagram.
+ * It only knows about the record types needed for locating SIP servers
+ * (RFC 3263): NAPTR, SRV, A and AAAA. Unlike InetAddress it returns the TTL
+ * of every record so that callers can cache results for the right amount of
+ * time, and it can be pointed at any server (for example a local stub server
+ * when testing).
+ * <p>
+ * Every query gets a random id and is sent from a random source port, and
+ * only answers from the server that was asked are accepted, so that a
+ * spoofed answer has to guess both (RFC 5452).
+ *
+ * @since 2.0
+ *
+ */
+public class DnsClient {
+
+    public static final int TYPE_A = 1;
+
+    public static final int TYPE_AAAA = 28;
+
+    public static final int TYPE_SRV = 33;
+
+    public static final int TYPE_NAPTR = 35;
+
+    private static final int CLASS_IN = 1;
+
+    private static final int DNS_PORT = 53;
+
+    private static final int MAX_UDP_RESPONSE = 4096;
+
+    private static final int RCODE_NXDOMAIN = 3;
+
+    // Truncation bit, in the third byte of the header.
+    private static final int FLAG_TC = 0x02;
+
+    // Lowest source port picked for a query; the ports below are often reserved.
+    private static final int MIN_SOURCE_PORT = 1024;
+
+    // Query ids and source ports must not be predictable.
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * A single resource record from the answer or additional section.
+     * Only the fields relevant to the record type are filled in.
+     */
+    public static class Record {
+        public String name;
+
+        public int type;
+
+        public long ttl;
+
+        // A / AAAA
+        public InetAddress address;
+
+        // SRV
+        public int priority;
+
+        public int weight;
+
+        public int port;
+
+        public String target;
+
+        // NAPTR
+        public int order;
+
+        public int preference;
+
+        public String flags;
+
+        public String service;
+
+        public String regexp;
+
+        public String replacement;
+
+        public String toString() {
+            return name + " " + ttl + " " + type + " "
+                    + (address != null ? address.getHostAddress() : "")
+                    + (target != null ? priority + " " + weight + " " + port + " " + target : "")
+                    + (replacement != null ? order + " " + preference + " " + flags + " "
+                            + service + " " + replacement : "");
+        }
+    }
+
+    /**
+     * The result of a query. A name error (NXDOMAIN) or an empty answer is
+     * reported with an empty record list; the negative TTL is then taken from
+     * the SOA record in the authority section when the server supplies one.
+     */
+    public static class Response {
+        public List<Record> records = new ArrayList<Record>();
+
+        public boolean nameError;
+
+        public long negativeTtl = -1;
+    }
+
+    private InetSocketAddress[] servers;
+
+    private int timeout;
+
+    private int retries;
+
+    /**
+     * Create a resolver that queries the given servers in order.
+     *
+     * @param servers -- the DNS servers to use.
+     * @param timeout -- time to wait for a single answer in milliseconds.
+     * @param retries -- how many times the whole server list is tried.
+     */
+    public DnsClient(InetSocketAddress[] servers, int timeout, int retries) {
+        if (servers == null || servers.length == 0)
+            throw new IllegalArgumentException("No DNS servers");
+        this.servers = servers;
+        this.timeout = timeout;
+        this.retries = retries < 1 ? 1 : retries;
+    }
+
+    /**
+     * Parse a list of servers in the form host[:port], separated by commas or
+     * spaces.
+     */
+    public static InetSocketAddress[] parseServers(String serverList) throws IOException {
+        ArrayList<InetSocketAddress> retval = new ArrayList<InetSocketAddress>();
+        StringTokenizer st = new StringTokenizer(serverList, " ,");
+        while (st.hasMoreTokens()) {
+            String server = st.nextToken();
+            int port = DNS_PORT;
+            int brack = server.indexOf(']');
+            int colon = server.lastIndexOf(':');
+            // a bare IPv6 address has several colons and no brackets.
+            if (colon > brack && (brack > 0 || server.indexOf(':') == colon)) {
+                try {
+                    port = Integer.parseInt(server.substring(colon + 1));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Bad DNS server port " + server);
+                }
+                server = server.substring(0, colon);
+            }
+            if (server.startsWith("[") && server.endsWith("]"))
+                server = server.substring(1, server.length() - 1);
+            retval.add(new InetSocketAddress(InetAddress.getByName(server), port));
+        }
+        return retval.toArray(new InetSocketAddress[retval.size()]);
+    }
+
+    /**
+     * Read the name servers of the platform from /etc/resolv.conf.
+     *
+     * @return the configured name servers or null if none could be found.
+     */
+    public static InetSocketAddress[] getSystemServers() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader("/etc/resolv.conf"));
+            StringBuffer serverList = new StringBuffer();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line);
+                if (st.countTokens() >= 2 && st.nextToken().equals("nameserver")) {
+                    serverList.append(st.nextToken()).append(' ');
+                }
+            }
+            InetSocketAddress[] retval = parseServers(serverList.toString());
+            return retval.length == 0 ? null : retval;
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Query the servers for records of the given type.
+     *
+     * @param name -- the domain name to look up.
+     * @param type -- one of the TYPE_ constants.
+     * @return the answer records of the requested type (with CNAMEs already
+     *         followed by the server) plus any records of the additional
+     *         section.
+     * @throws IOException if none of the servers answered.
+     */
+    public Response query(String name, int type) throws IOException {
+        int id = random.nextInt(0x10000);
+        byte[] query = encodeQuery(id, name, type);
+        IOException lastException = null;
+        DatagramSocket socket = openSocket();
+        try {
+            socket.setSoTimeout(timeout);
+            byte[] buffer = new byte[MAX_UDP_RESPONSE];
+            for (int attempt = 0; attempt < retries; attempt++) {
+                for (int i = 0; i < servers.length; i++) {
+                    try {
+                        socket.send(new DatagramPacket(query, query.length, servers[i]));
+                        while (true) {
+                            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                            socket.receive(packet);
+                            // Ignore stray answers to earlier (timed out)
+                            // queries, and answers from anybody but the server.
+                            if (packet.getLength() < 12
+                                    || ((buffer[0] & 0xff) << 8 | (buffer[1] & 0xff)) != id
+                                    || !servers[i].equals(packet.getSocketAddress()))
+                                continue;
+                            // A truncated answer is incomplete; ask again over TCP.
+                            if ((buffer[2] & FLAG_TC) != 0)
+                                return queryTcp(servers[i], query, id, type);
+                            return decodeResponse(buffer, packet.getLength(), type);
+                        }
+                    } catch (SocketTimeoutException ex) {
+                        lastException = ex;
+                    } catch (IOException ex) {
+                        lastException = ex;
+                    }
+                }
+            }
+        } finally {
+            socket.close();
+        }
+        throw lastException != null ? lastException : new IOException("DNS query failed");
+    }
+
+    /**
+     * Open the socket for one query on a random port, or on a port picked by the system if
+     * the random ones are taken.
+     */
+    private static DatagramSocket openSocket() throws SocketException {
+        for (int i = 0; i < 10; i++) {
+            try {
+                return new DatagramSocket(MIN_SOURCE_PORT
+                        + random.nextInt(0x10000 - MIN_SOURCE_PORT));
+            } catch (BindException ex) {
+                // In use, try another one.
+            }
+        }
+        return new DatagramSocket();
+    }
+
+    /**
+     * Send the query over TCP (RFC 1035 4.2.2: each message is preceded by its length).
+     */
+    private Response queryTcp(InetSocketAddress server, byte[] query, int id, int type)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(server, timeout);
+            socket.setSoTimeout(timeout);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(query.length);
+            out.write(query);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] buffer = new byte[in.readUnsignedShort()];
+            in.readFully(buffer);
+            if (buffer.length < 12 || ((buffer[0] & 0xff) << 8 | (buffer[1] & 0xff)) != id)
+                throw new IOException("Bad DNS answer over TCP from " + server);
+            if ((buffer[2] & FLAG_TC) != 0)
+                throw new IOException("Truncated DNS answer over TCP from " + server);
+            return decodeResponse(buffer, buffer.length, type);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static byte[] encodeQuery(int id, String name, int type) throws IOException {
+        byte[] buffer = new byte[18 + name.length()];
+        int p = 0;
+        buffer[p++] = (byte) (id >> 8);
+        buffer[p++] = (byte) id;
+        // Flags: standard query, recursion desired.
+        buffer[p++] = 0x01;
+        buffer[p++] = 0x00;
+        // QDCOUNT = 1, ANCOUNT = NSCOUNT = ARCOUNT = 0
+        buffer[p++] = 0x00;
+        buffer[p++] = 0x01;
+        p += 6;
+        int labelStart = 0;
+        int length = name.endsWith(".") ? name.length() - 1 : name.length();
+        while (labelStart < length) {
+            int labelEnd = name.indexOf('.', labelStart);
+            if (labelEnd < 0 || labelEnd > length)
+                labelEnd = length;
+            int labelLength = labelEnd - labelStart;
+            if (labelLength == 0 || labelLength > 63)
+                throw new IOException("Bad domain name " + name);
+            buffer[p++] = (byte) labelLength;
+            for (int i = labelStart; i < labelEnd; i++)
+                buffer[p++] = (byte) name.charAt(i);
+            labelStart = labelEnd + 1;
+        }
+        buffer[p++] = 0;
+        buffer[p++] = (byte) (type >> 8);
+        buffer[p++] = (byte) type;
+        buffer[p++] = 0x00;
+        buffer[p++] = (byte) CLASS_IN;
+        return buffer;
+    }
+
+    private static Response decodeResponse(byte[] buf, int length, int type) throws IOException {
+        Response response = new Response();
+        int rcode = buf[3] & 0x0f;
+        if (rcode == RCODE_NXDOMAIN) {
+            response.nameError = true;
+        } else if (rcode != 0) {
+            throw new IOException("DNS server returned error " + rcode);
+        }
+        int qdcount = readShort(buf, 4);
+        int ancount = readShort(buf, 6);
+        int nscount = readShort(buf, 8);
+        int arcount = readShort(buf, 10);
+        int[] pos = new int[] { 12 };
+        for (int i = 0; i < qdcount; i++) {
+            readName(buf, length, pos);
+            pos[0] += 4;
+        }
+        int total = ancount + nscount + arcount;
+        for (int i = 0; i < total; i++) {
+            Record record = new Record();
+            record.name = readName(buf, length, pos);
+            int p = pos[0];
+            if (p + 10 > length)
+                throw new IOException("Truncated DNS response");
+            record.type = readShort(buf, p);
+            record.ttl = ((long) readShort(buf, p + 4) << 16) | readShort(buf, p + 6);
+            int rdlength = readShort(buf, p + 8);
+            int rdata = p + 10;
+            if (rdata + rdlength > length)
+                throw new IOException("Truncated DNS response");
+            boolean authority = i >= ancount && i < ancount + nscount;
+            if (authority) {
+                // SOA minimum field bounds the negative cache time (RFC 2308)
+                if (record.type == 6) {
+                    int[] soaPos = new int[] { rdata };
+                    readName(buf, length, soaPos);
+                    readName(buf, length, soaPos);
+                    long minimum = ((long) readShort(buf, soaPos[0] + 16) << 16)
+                            | readShort(buf, soaPos[0] + 18);
+                    response.negativeTtl = Math.min(minimum, record.ttl);
+                }
+            } else if (decodeRecordData(buf, length, rdata, rdlength, record)) {
+                // Answers of other types (CNAME) are skipped, additional
+                // records are kept since SRV and NAPTR answers usually
+                // carry the addresses of their targets.
+                if (i >= ancount || record.type == type)
+                    response.records.add(record);
+            }
+            pos[0] = rdata + rdlength;
+        }
+        return response;
+    }
+
+    private static boolean decodeRecordData(byte[] buf, int length, int p, int rdlength,
+            Record record) throws IOException {
+        switch (record.type) {
+        case TYPE_A:
+        case TYPE_AAAA:
+            byte[] address = new byte[rdlength];
+            System.arraycopy(buf, p, address, 0, rdlength);
+            record.address = InetAddress.getByAddress(record.name, address);
+            return true;
+        case TYPE_SRV:
+            record.priority = readShort(buf, p);
+            record.weight = readShort(buf, p + 2);
+            record.port = readShort(buf, p + 4);
+            record.target = readName(buf, length, new int[] { p + 6 });
+            return true;
+        case TYPE_NAPTR:
+            int[] pos = new int[] { p + 4 };
+            record.order = readShort(buf, p);
+            record.preference = readShort(buf, p + 2);
+            record.flags = readCharacterString(buf, pos);
+            record.service = readCharacterString(buf, pos);
+            record.regexp = readCharacterString(buf, pos);
+            record.replacement = readName(buf, length, pos);
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static int readShort(byte[] buf, int p) {
+        return ((buf[p] & 0xff) << 8) | (buf[p + 1] & 0xff);
+    }
+
+    private static String readCharacterString(byte[] buf, int[] pos) {
+        int len = buf[pos[0]] & 0xff;
+        String retval = new String(buf, pos[0] + 1, len);
+        pos[0] += len + 1;
+        return retval;
+    }
+
+    /**
+     * Read a (possibly compressed) domain name starting at pos[0] and advance
+     * pos[0] past it.
+     */
+    private static String readName(byte[] buf, int length, int[] pos) throws IOException {
+        StringBuffer name = new StringBuffer();
+        int p = pos[0];
+        int end = -1;
+        int jumps = 0;
+        while (true) {
+            if (p >= length)
+                throw new IOException("Truncated DNS name");
+            int len = buf[p] & 0xff;
+            if (len == 0) {
+                p++;
+                break;
+            } else if ((len & 0xc0) == 0xc0) {
+                if (++jumps > 64)
+                    throw new IOException("DNS name compression loop");
+                if (end < 0)
+                    end = p + 2;
+                p = ((len & 0x3f) << 8) | (buf[p + 1] & 0xff);
+            } else {
+                if (name.length() > 0)
+                    name.append('.');
+                for (int i = 1; i <= len; i++)
+                    name.append((char) (buf[p + i] & 0xff));
+                p += len + 1;
+            }
+        }
+        pos[0] = end < 0 ? p : end;
+        return name.toString();
+    }
+
+}
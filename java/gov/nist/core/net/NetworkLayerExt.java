@@ -0,0 +1,67 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package gov.nist.core.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Network layer extensions: outgoing connections with a connect timeout. The stack uses
+ * these when the configured network layer implements them, so that an unreachable peer
+ * does not hold a connecting thread for the operating system's connect timeout.
+ *
+ * @since 2.0
+ */
+public interface NetworkLayerExt extends NetworkLayer {
+
+    /**
+     * Create a socket connected to address:port, optionally bound to myAddress.
+     *
+     * @param address -- the address to connect to.
+     * @param port -- the port to connect to.
+     * @param myAddress -- the local address to bind to, or null for any.
+     * @param timeout -- the connect timeout in ms, 0 for no timeout.
+     * @throws java.net.SocketTimeoutException if the connection is not established in time.
+     */
+    public Socket connectSocket(InetAddress address, int port, InetAddress myAddress,
+            int timeout) throws IOException;
+
+    /**
+     * Create a (not yet handshaken) SSL socket connected to address:port, optionally bound
+     * to myAddress.
+     *
+     * @param address -- the address to connect to.
+     * @param port -- the port to connect to.
+     * @param myAddress -- the local address to bind to, or null for any.
+     * @param timeout -- the connect timeout in ms, 0 for no timeout.
+     * @throws java.net.SocketTimeoutException if the connection is not established in time.
+     */
+    public SSLSocket connectSSLSocket(InetAddress address, int port, InetAddress myAddress,
+            int timeout) throws IOException;
+}
@@ -34,6 +34,7 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.DatagramChannel;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.SecureRandom;
@@ -42,6 +43,7 @@ import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
@@ -55,12 +57,14 @@ import javax.net.ssl.TrustManagerFactory;
  * @since 1.2
  *
  */
-public class SslNetworkLayer implements NetworkLayer {
+public class SslNetworkLayer implements NetworkLayerExt {
 
     private SSLSocketFactory sslSocketFactory;
 
     private SSLServerSocketFactory sslServerSocketFactory;
 
+    private SSLContext sslContext;
+
     public SslNetworkLayer(
             String trustStoreFile,
             String keyStoreFile,
@@ -83,6 +87,16 @@ public class SslNetworkLayer implements NetworkLayer {
         sslContext.init(kmFactory.getKeyManagers(), tmFactory.getTrustManagers(), secureRandom);
         sslServerSocketFactory = sslContext.getServerSocketFactory();
         sslSocketFactory = sslContext.getSocketFactory();
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * The cache of client side TLS sessions. Sessions are cached per peer (address and
+     * port), so a reconnect to the same peer resumes the session instead of doing a full
+     * handshake.
+     */
+    public SSLSessionContext getClientSessionContext() {
+        return sslContext.getClientSessionContext();
     }
 
     public ServerSocket createServerSocket(int port, int backlog,
@@ -101,7 +115,20 @@ public class SslNetworkLayer implements NetworkLayer {
 
     public DatagramSocket createDatagramSocket(int port, InetAddress laddr)
             throws SocketException {
-        return new DatagramSocket(port, laddr);
+        // Backed by a channel so that the stack can send from the
+        // listening socket with direct buffers.
+        DatagramSocket ds = null;
+        try {
+            ds = DatagramChannel.open().socket();
+            ds.bind(new InetSocketAddress(laddr, port));
+            return ds;
+        } catch (SocketException e) {
+            if (ds != null)
+                ds.close();
+            throw e;
+        } catch (IOException e) {
+            throw new SocketException(e.getLocalizedMessage());
+        }
     }
 
     /* Added by Daniel J. Martinez Manzano <dani@dif.um.es> */
@@ -165,4 +192,31 @@ public class SslNetworkLayer implements NetworkLayer {
         else
             return new Socket(address, port);
     }
-}
+
+    public Socket connectSocket(InetAddress address, int port, InetAddress myAddress,
+            int timeout) throws IOException {
+        Socket sock = new Socket();
+        try {
+            if (myAddress != null)
+                sock.bind(new InetSocketAddress(myAddress, 0));
+            sock.connect(new InetSocketAddress(address, port), timeout);
+            return sock;
+        } catch (IOException ex) {
+            sock.close();
+            throw ex;
+        }
+    }
+
+    public SSLSocket connectSSLSocket(InetAddress address, int port, InetAddress myAddress,
+            int timeout) throws IOException {
+        Socket sock = connectSocket(address, port, myAddress, timeout);
+        try {
+            return (SSLSocket) sslSocketFactory.createSocket(sock,
+                    address.getHostAddress(), port, true);
+        } catch (IOException ex) {
+            sock.close();
+            throw ex;
+        }
+    }
+
+}
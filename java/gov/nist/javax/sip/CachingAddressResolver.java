@@ -0,0 +1,617 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package gov.nist.javax.sip;
+
+import gov.nist.core.StackLogger;
+import gov.nist.core.net.AddressResolver;
+import gov.nist.core.net.DnsClient;
+import gov.nist.javax.sip.stack.HopImpl;
+import gov.nist.javax.sip.stack.MessageProcessor;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sip.ListeningPoint;
+import javax.sip.address.Hop;
+
+/**
+ * An AddressResolver that locates SIP servers using the DNS procedures of RFC
+ * 3263 (NAPTR, then SRV, then A/AAAA) and caches the results for as long as
+ * the DNS records allow. Failed lookups are cached as well (negative caching)
+ * so that a broken domain does not cost a DNS round trip for every message.
+ *
+ * <p>
+ * Lookups run on a small pool of resolver threads. Concurrent lookups for the
+ * same hop are coalesced into a single DNS query. Callers that must not block
+ * (for example the transport threads) can use {@link #resolveAddressAsync(Hop)}
+ * or {@link #getCachedAddress(Hop)}; {@link #resolveAddress(Hop)} waits at most
+ * for the configured lookup timeout and falls back to the unresolved hop. The
+ * stack calls {@link #stop()} when it stops, which releases the resolver
+ * threads.
+ *
+ * <p>
+ * To use this resolver, set <code>gov.nist.javax.sip.ADDRESS_RESOLVER</code>
+ * to <code>gov.nist.javax.sip.CachingAddressResolver</code>. The DNS servers
+ * are taken from <code>gov.nist.javax.sip.DNS_SERVERS</code> (a comma
+ * separated list of host[:port]) or else from /etc/resolv.conf. When no DNS
+ * server can be found only A/AAAA lookups are done, through InetAddress.
+ *
+ * @see gov.nist.javax.sip.SipStackImpl
+ * @since 2.0
+ *
+ */
+public class CachingAddressResolver implements AddressResolver {
+
+    /*
+     * Time to cache addresses that were obtained through InetAddress (which
+     * does not tell us the TTL).
+     */
+    private static final long DEFAULT_TTL = 30;
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final int DEFAULT_LOOKUP_TIMEOUT = 4000;
+
+    private static final int RESOLVER_THREADS = 4;
+
+    private StackLogger stackLogger;
+
+    private DnsClient dnsClient;
+
+    // Max time in milliseconds that resolveAddress waits for a lookup.
+    private int lookupTimeout = DEFAULT_LOOKUP_TIMEOUT;
+
+    // Max time in seconds for which failed lookups are remembered.
+    private long negativeTtl = DEFAULT_TTL;
+
+    // Upper bound for positive cache entries (seconds).
+    private long maxTtl = 3600;
+
+    private int maxCacheSize = DEFAULT_CACHE_SIZE;
+
+    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+
+    private final ConcurrentHashMap<String, FutureTask<Hop>> pendingLookups = new ConcurrentHashMap<String, FutureTask<Hop>>();
+
+    private final Random random = new Random();
+
+    private ThreadPoolExecutor executor;
+
+    /*
+     * A resolved hop and the time at which it becomes stale. A null hop records
+     * a failed lookup.
+     */
+    private static class CacheEntry {
+        final Hop hop;
+
+        final long expiryTime;
+
+        CacheEntry(Hop hop, long ttlSeconds) {
+            this.hop = hop;
+            this.expiryTime = System.currentTimeMillis() + ttlSeconds * 1000;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiryTime;
+        }
+    }
+
+    /*
+     * Keeps track of the smallest TTL seen while following a NAPTR -> SRV -> A
+     * chain.
+     */
+    private static class Ttl {
+        long value = Long.MAX_VALUE;
+
+        void update(long ttl) {
+            if (ttl < value)
+                value = ttl;
+        }
+    }
+
+    public CachingAddressResolver() {
+        InetSocketAddress[] servers = DnsClient.getSystemServers();
+        if (servers != null)
+            this.dnsClient = new DnsClient(servers, DEFAULT_LOOKUP_TIMEOUT / 2, 2);
+    }
+
+    /**
+     * Configure the resolver from the stack properties. This is called by the
+     * stack when the resolver is instantiated through the
+     * gov.nist.javax.sip.ADDRESS_RESOLVER property.
+     *
+     * @param configurationProperties -- the stack configuration.
+     */
+    public void setStackProperties(Properties configurationProperties) {
+        String timeout = configurationProperties
+                .getProperty("gov.nist.javax.sip.DNS_LOOKUP_TIMEOUT");
+        if (timeout != null)
+            this.lookupTimeout = Integer.parseInt(timeout);
+        String ttl = configurationProperties
+                .getProperty("gov.nist.javax.sip.DNS_NEGATIVE_CACHE_TTL");
+        if (ttl != null)
+            this.negativeTtl = Long.parseLong(ttl);
+        String cacheSize = configurationProperties
+                .getProperty("gov.nist.javax.sip.DNS_CACHE_SIZE");
+        if (cacheSize != null)
+            this.maxCacheSize = Integer.parseInt(cacheSize);
+        String servers = configurationProperties.getProperty("gov.nist.javax.sip.DNS_SERVERS");
+        if (servers != null) {
+            try {
+                setDnsServers(DnsClient.parseServers(servers));
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Bad gov.nist.javax.sip.DNS_SERVERS "
+                        + servers, ex);
+            }
+        } else if (this.dnsClient != null) {
+            setDnsServers(DnsClient.getSystemServers());
+        }
+    }
+
+    /**
+     * Set the logger used for debug output.
+     */
+    public void setStackLogger(StackLogger stackLogger) {
+        this.stackLogger = stackLogger;
+    }
+
+    /**
+     * Use the given DNS servers for NAPTR, SRV and address lookups. Passing
+     * null disables DNS queries (only InetAddress is used).
+     */
+    public void setDnsServers(InetSocketAddress[] servers) {
+        this.dnsClient = servers == null ? null : new DnsClient(servers,
+                Math.max(lookupTimeout / 2, 1), 2);
+        this.cache.clear();
+    }
+
+    /**
+     * Forget all cached results.
+     */
+    public void clearCache() {
+        this.cache.clear();
+    }
+
+    /**
+     * Shut down the resolver threads. Lookups that are still queued are
+     * abandoned. The resolver can still be used afterwards; a new pool is
+     * started on demand.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "AddressResolver");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see gov.nist.core.net.AddressResolver#resolveAddress(javax.sip.address.Hop)
+     */
+    public Hop resolveAddress(Hop inputAddress) {
+        Hop hop = getCachedAddress(inputAddress);
+        if (hop != null)
+            return hop;
+        Future<Hop> future = resolveAddressAsync(inputAddress);
+        try {
+            return future.get(lookupTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            if (isLoggingEnabled())
+                stackLogger.logDebug("DNS lookup timed out for " + inputAddress);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            if (isLoggingEnabled())
+                stackLogger.logDebug("DNS lookup failed for " + inputAddress + " "
+                        + ex.getCause());
+        }
+        return fixPort(inputAddress);
+    }
+
+    /**
+     * Return the cached resolution of a hop without blocking.
+     *
+     * @param inputAddress -- the hop to look up.
+     * @return the resolved hop, the hop with the default port filled in if it
+     *         needs no lookup or the last lookup failed, or null if the hop is
+     *         not in the cache.
+     */
+    public Hop getCachedAddress(Hop inputAddress) {
+        if (isNumeric(inputAddress.getHost()))
+            return fixPort(inputAddress);
+        CacheEntry entry = cache.get(makeKey(inputAddress));
+        if (entry == null)
+            return null;
+        if (entry.isExpired(System.currentTimeMillis())) {
+            cache.remove(makeKey(inputAddress), entry);
+            return null;
+        }
+        return entry.hop != null ? entry.hop : fixPort(inputAddress);
+    }
+
+    /**
+     * Return the cached resolution of a hop, or else start a lookup in the
+     * background and return the hop with the default port filled in. This
+     * never blocks and is meant for the receive path of the transports, where
+     * the result only decides whether a received parameter is added.
+     *
+     * @param inputAddress -- the hop to look up.
+     * @return the resolved hop or the unresolved hop with a port.
+     */
+    public Hop resolveAddressNoWait(Hop inputAddress) {
+        Hop hop = getCachedAddress(inputAddress);
+        if (hop != null)
+            return hop;
+        resolveAddressAsync(inputAddress);
+        return fixPort(inputAddress);
+    }
+
+    /**
+     * Start resolving a hop without waiting for the result. If a lookup of the
+     * same hop is already running the caller shares its result.
+     *
+     * @param inputAddress -- the hop to resolve.
+     * @return a future that yields the resolved hop (never null; the hop with
+     *         the default port filled in if resolution failed).
+     */
+    public Future<Hop> resolveAddressAsync(final Hop inputAddress) {
+        Hop hop = getCachedAddress(inputAddress);
+        if (hop != null) {
+            FutureTask<Hop> done = new FutureTask<Hop>(new Runnable() {
+                public void run() {
+                }
+            }, hop);
+            done.run();
+            return done;
+        }
+        final String key = makeKey(inputAddress);
+        FutureTask<Hop> task = pendingLookups.get(key);
+        if (task != null)
+            return task;
+        FutureTask<Hop> newTask = new FutureTask<Hop>(new Callable<Hop>() {
+            public Hop call() {
+                try {
+                    return lookup(key, inputAddress);
+                } finally {
+                    pendingLookups.remove(key);
+                }
+            }
+        });
+        task = pendingLookups.putIfAbsent(key, newTask);
+        if (task != null)
+            return task;
+        try {
+            getExecutor().execute(newTask);
+        } catch (RejectedExecutionException ex) {
+            // Stopped concurrently - do the lookup on the caller's thread.
+            newTask.run();
+        }
+        return newTask;
+    }
+
+    private Hop lookup(String key, Hop inputAddress) {
+        Ttl ttl = new Ttl();
+        Hop hop = null;
+        try {
+            hop = locate(inputAddress, ttl);
+        } catch (IOException ex) {
+            if (isLoggingEnabled())
+                stackLogger.logDebug("DNS lookup failed for " + inputAddress + " : "
+                        + ex.getMessage());
+            // No answer, so no negative TTL from the server either.
+            ttl = new Ttl();
+        }
+        if (hop == null) {
+            // A negative answer is cached for as long as its SOA allows (RFC 2308), but
+            // no longer than configured.
+            putCache(key, new CacheEntry(null, Math.min(ttl.value, negativeTtl)));
+            return fixPort(inputAddress);
+        }
+        putCache(key, new CacheEntry(hop, Math.min(ttl.value, maxTtl)));
+        if (isLoggingEnabled())
+            stackLogger.logDebug("Resolved " + inputAddress + " to " + hop + " ttl " + ttl.value);
+        return hop;
+    }
+
+    private void putCache(String key, CacheEntry entry) {
+        if (cache.size() >= maxCacheSize) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Map.Entry<String, CacheEntry>> it = cache.entrySet().iterator(); it
+                    .hasNext();) {
+                if (it.next().getValue().isExpired(now))
+                    it.remove();
+            }
+            // Still full - make room by dropping an arbitrary entry.
+            Iterator<String> it = cache.keySet().iterator();
+            while (cache.size() >= maxCacheSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        cache.put(key, entry);
+    }
+
+    /*
+     * RFC 3263 section 4. The transport of the hop is used when given (section
+     * 4.1 allows the transport to come from the URI or Via), otherwise NAPTR
+     * records select it. An explicit port skips the SRV lookup.
+     */
+    private Hop locate(Hop hop, Ttl ttl) throws IOException {
+        String host = hop.getHost();
+        String transport = hop.getTransport();
+        int port = hop.getPort();
+
+        if (port != -1 || dnsClient == null) {
+            if (transport == null)
+                transport = ListeningPoint.UDP;
+            InetAddress address = lookupAddress(host, ttl);
+            if (address == null)
+                return null;
+            return new HopImpl(address.getHostAddress(), port != -1 ? port : MessageProcessor
+                    .getDefaultPort(transport), transport);
+        }
+
+        if (transport == null) {
+            Hop naptrHop = lookupNaptr(host, ttl);
+            if (naptrHop != null)
+                return naptrHop;
+            String[] transports = new String[] { ListeningPoint.UDP, ListeningPoint.TCP,
+                    ListeningPoint.TLS };
+            for (int i = 0; i < transports.length; i++) {
+                Hop srvHop = lookupSrv(srvName(host, transports[i]), transports[i], ttl);
+                if (srvHop != null)
+                    return srvHop;
+            }
+            transport = ListeningPoint.UDP;
+        } else {
+            Hop srvHop = lookupSrv(srvName(host, transport), transport, ttl);
+            if (srvHop != null)
+                return srvHop;
+        }
+
+        InetAddress address = lookupAddress(host, ttl);
+        if (address == null)
+            return null;
+        return new HopImpl(address.getHostAddress(),
+                MessageProcessor.getDefaultPort(transport), transport);
+    }
+
+    private Hop lookupNaptr(String host, Ttl ttl) throws IOException {
+        DnsClient.Response response = dnsClient.query(host, DnsClient.TYPE_NAPTR);
+        List<DnsClient.Record> naptrs = new ArrayList<DnsClient.Record>();
+        for (DnsClient.Record record : response.records) {
+            if (record.type == DnsClient.TYPE_NAPTR && "s".equalsIgnoreCase(record.flags)
+                    && naptrTransport(record.service) != null)
+                naptrs.add(record);
+        }
+        if (naptrs.isEmpty())
+            return null;
+        Collections.sort(naptrs, new Comparator<DnsClient.Record>() {
+            public int compare(DnsClient.Record a, DnsClient.Record b) {
+                if (a.order != b.order)
+                    return a.order - b.order;
+                return a.preference - b.preference;
+            }
+        });
+        for (DnsClient.Record naptr : naptrs) {
+            ttl.update(naptr.ttl);
+            Hop hop = lookupSrv(naptr.replacement, naptrTransport(naptr.service), ttl);
+            if (hop != null)
+                return hop;
+        }
+        return null;
+    }
+
+    private Hop lookupSrv(String name, String transport, Ttl ttl) throws IOException {
+        DnsClient.Response response = dnsClient.query(name, DnsClient.TYPE_SRV);
+        List<DnsClient.Record> srvs = new ArrayList<DnsClient.Record>();
+        for (DnsClient.Record record : response.records) {
+            // A target of "." means the service is not available (RFC 2782).
+            if (record.type == DnsClient.TYPE_SRV && record.target.length() > 0)
+                srvs.add(record);
+        }
+        if (srvs.isEmpty())
+            return null;
+        for (DnsClient.Record srv : orderSrv(srvs)) {
+            InetAddress address = findAdditional(response, srv.target, ttl);
+            if (address == null)
+                address = lookupAddress(srv.target, ttl);
+            if (address != null) {
+                ttl.update(srv.ttl);
+                return new HopImpl(address.getHostAddress(), srv.port, transport);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Order SRV records by priority, and within a priority by the weighted
+     * random selection of RFC 2782.
+     */
+    private List<DnsClient.Record> orderSrv(List<DnsClient.Record> srvs) {
+        Collections.sort(srvs, new Comparator<DnsClient.Record>() {
+            public int compare(DnsClient.Record a, DnsClient.Record b) {
+                return a.priority - b.priority;
+            }
+        });
+        List<DnsClient.Record> retval = new ArrayList<DnsClient.Record>(srvs.size());
+        int i = 0;
+        while (i < srvs.size()) {
+            int j = i;
+            int totalWeight = 0;
+            while (j < srvs.size() && srvs.get(j).priority == srvs.get(i).priority) {
+                totalWeight += srvs.get(j).weight;
+                j++;
+            }
+            List<DnsClient.Record> group = new ArrayList<DnsClient.Record>(srvs.subList(i, j));
+            while (!group.isEmpty()) {
+                int pick = 0;
+                if (totalWeight > 0) {
+                    int r = random.nextInt(totalWeight + 1);
+                    int sum = 0;
+                    for (pick = 0; pick < group.size() - 1; pick++) {
+                        sum += group.get(pick).weight;
+                        if (sum >= r)
+                            break;
+                    }
+                }
+                DnsClient.Record chosen = group.remove(pick);
+                totalWeight -= chosen.weight;
+                retval.add(chosen);
+            }
+            i = j;
+        }
+        return retval;
+    }
+
+    private InetAddress findAdditional(DnsClient.Response response, String name, Ttl ttl) {
+        for (DnsClient.Record record : response.records) {
+            if (record.address != null && record.name.equalsIgnoreCase(name)) {
+                ttl.update(record.ttl);
+                return record.address;
+            }
+        }
+        return null;
+    }
+
+    private InetAddress lookupAddress(String host, Ttl ttl) throws IOException {
+        String name = host;
+        if (name.startsWith("[") && name.endsWith("]"))
+            name = name.substring(1, name.length() - 1);
+        if (dnsClient == null || isNumeric(host)) {
+            try {
+                InetAddress address = InetAddress.getByName(name);
+                ttl.update(DEFAULT_TTL);
+                return address;
+            } catch (UnknownHostException ex) {
+                return null;
+            }
+        }
+        DnsClient.Response response = dnsClient.query(name, DnsClient.TYPE_A);
+        if (response.records.isEmpty() && !response.nameError) {
+            if (response.negativeTtl >= 0)
+                ttl.update(response.negativeTtl);
+            response = dnsClient.query(name, DnsClient.TYPE_AAAA);
+        }
+        for (DnsClient.Record record : response.records) {
+            if (record.address != null) {
+                ttl.update(record.ttl);
+                return record.address;
+            }
+        }
+        if (response.negativeTtl >= 0)
+            ttl.update(response.negativeTtl);
+        return null;
+    }
+
+    private static String srvName(String host, String transport) {
+        if (transport.equalsIgnoreCase(ListeningPoint.TLS))
+            return "_sips._tcp." + host;
+        else if (transport.equalsIgnoreCase(ListeningPoint.TCP))
+            return "_sip._tcp." + host;
+        else if (transport.equalsIgnoreCase(ListeningPoint.SCTP))
+            return "_sip._sctp." + host;
+        else
+            return "_sip._udp." + host;
+    }
+
+    private static String naptrTransport(String service) {
+        if ("SIP+D2U".equalsIgnoreCase(service))
+            return ListeningPoint.UDP;
+        else if ("SIP+D2T".equalsIgnoreCase(service))
+            return ListeningPoint.TCP;
+        else if ("SIPS+D2T".equalsIgnoreCase(service))
+            return ListeningPoint.TLS;
+        else
+            return null;
+    }
+
+    private static String makeKey(Hop hop) {
+        return (hop.getHost() + ":" + hop.getPort() + "/" + hop.getTransport()).toLowerCase();
+    }
+
+    private static Hop fixPort(Hop hop) {
+        if (hop.getPort() != -1)
+            return hop;
+        String transport = hop.getTransport() != null ? hop.getTransport() : ListeningPoint.UDP;
+        return new HopImpl(hop.getHost(), MessageProcessor.getDefaultPort(transport), transport);
+    }
+
+    /*
+     * True for IPv4 dotted quads and IPv6 references, which need no lookup.
+     */
+    private static boolean isNumeric(String host) {
+        if (host.indexOf(':') >= 0)
+            return true;
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9'))
+                return false;
+        }
+        return host.length() > 0;
+    }
+
+    private boolean isLoggingEnabled() {
+        return stackLogger != null && stackLogger.isLoggingEnabled();
+    }
+
+}
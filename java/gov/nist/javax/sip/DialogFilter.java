@@ -37,7 +37,7 @@ import gov.nist.javax.sip.header.RetryAfter;
 import gov.nist.javax.sip.header.Route;
 import gov.nist.javax.sip.header.RouteList;
 import gov.nist.javax.sip.header.Server;
-import gov.nist.javax.sip.message.MessageFactoryImpl;
+import gov.nist.javax.sip.message.ResponsePrototype;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 import gov.nist.javax.sip.stack.MessageChannel;
@@ -64,7 +64,6 @@ import javax.sip.TransactionState;
 import javax.sip.header.CSeqHeader;
 import javax.sip.header.EventHeader;
 import javax.sip.header.ReferToHeader;
-import javax.sip.header.ServerHeader;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
 
@@ -94,6 +93,32 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
 
     private SipStackImpl sipStack;
 
+    // The automatic error responses, pre-encoded.
+    private static final ResponsePrototype REQUEST_PENDING = new ResponsePrototype(
+            Response.REQUEST_PENDING, null, retryAfter(1));
+
+    private static final ResponsePrototype BAD_REQUEST = new ResponsePrototype(
+            Response.BAD_REQUEST, null);
+
+    private static final ResponsePrototype CALL_OR_TRANSACTION_DOES_NOT_EXIST = new ResponsePrototype(
+            Response.CALL_OR_TRANSACTION_DOES_NOT_EXIST, null);
+
+    private static final ResponsePrototype LOOP_DETECTED = new ResponsePrototype(
+            Response.LOOP_DETECTED, null);
+
+    private static final ResponsePrototype REQUEST_OUT_OF_ORDER = new ResponsePrototype(
+            Response.SERVER_INTERNAL_ERROR, "Request out of order", retryAfter(10));
+
+    private static RetryAfter retryAfter(int seconds) {
+        RetryAfter retryAfter = new RetryAfter();
+        try {
+            retryAfter.setRetryAfter(seconds);
+        } catch (InvalidArgumentException ex) {
+            InternalErrorHandler.handleException(ex);
+        }
+        return retryAfter;
+    }
+
     public DialogFilter(SipStackImpl sipStack) {
         this.sipStack = sipStack;
 
@@ -107,15 +132,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
      */
     private void sendRequestPendingResponse(SIPRequest sipRequest,
             SIPServerTransaction transaction) {
-        SIPResponse sipResponse = sipRequest.createResponse(Response.REQUEST_PENDING);
-        ServerHeader serverHeader = MessageFactoryImpl.getDefaultServerHeader();
-        if (serverHeader != null) {
-            sipResponse.setHeader(serverHeader);
-        }
+        SIPResponse sipResponse = REQUEST_PENDING.createResponse(sipRequest);
         try {
-            RetryAfter retryAfter = new RetryAfter();
-            retryAfter.setRetryAfter(1);
-            sipResponse.setHeader(retryAfter);
             if (sipRequest.getMethod().equals(Request.INVITE)) {
                 sipStack.addTransactionPendingAck(transaction);
             }
@@ -138,13 +156,9 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
 
     private void sendBadRequestResponse(SIPRequest sipRequest, SIPServerTransaction transaction,
             String reasonPhrase) {
-        SIPResponse sipResponse = sipRequest.createResponse(Response.BAD_REQUEST);
+        SIPResponse sipResponse = BAD_REQUEST.createResponse(sipRequest);
         if (reasonPhrase != null)
             sipResponse.setReasonPhrase(reasonPhrase);
-        ServerHeader serverHeader = MessageFactoryImpl.getDefaultServerHeader();
-        if (serverHeader != null) {
-            sipResponse.setHeader(serverHeader);
-        }
         try {
             if (sipRequest.getMethod().equals(Request.INVITE)) {
                 sipStack.addTransactionPendingAck(transaction);
@@ -169,13 +183,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
     private void sendCallOrTransactionDoesNotExistResponse(SIPRequest sipRequest,
             SIPServerTransaction transaction) {
 
-        SIPResponse sipResponse = sipRequest
-                .createResponse(Response.CALL_OR_TRANSACTION_DOES_NOT_EXIST);
+        SIPResponse sipResponse = CALL_OR_TRANSACTION_DOES_NOT_EXIST.createResponse(sipRequest);
 
-        ServerHeader serverHeader = MessageFactoryImpl.getDefaultServerHeader();
-        if (serverHeader != null) {
-            sipResponse.setHeader(serverHeader);
-        }
         try {
             if (sipRequest.getMethod().equals(Request.INVITE)) {
                 sipStack.addTransactionPendingAck(transaction);
@@ -199,12 +208,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
      * 
      */
     private void sendLoopDetectedResponse(SIPRequest sipRequest, SIPServerTransaction transaction) {
-        SIPResponse sipResponse = sipRequest.createResponse(Response.LOOP_DETECTED);
+        SIPResponse sipResponse = LOOP_DETECTED.createResponse(sipRequest);
 
-        ServerHeader serverHeader = MessageFactoryImpl.getDefaultServerHeader();
-        if (serverHeader != null) {
-            sipResponse.setHeader(serverHeader);
-        }
         try {
             sipStack.addTransactionPendingAck(transaction);
             transaction.sendResponse(sipResponse);
@@ -230,17 +235,9 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
         if (sipStack.isLoggingEnabled())
             sipStack.getStackLogger()
                     .logDebug("Sending 500 response for out of sequence message");
-        SIPResponse sipResponse = sipRequest.createResponse(Response.SERVER_INTERNAL_ERROR);
-        sipResponse.setReasonPhrase("Request out of order");
-        if (MessageFactoryImpl.getDefaultServerHeader() != null) {
-            ServerHeader serverHeader = MessageFactoryImpl.getDefaultServerHeader();
-            sipResponse.setHeader(serverHeader);
-        }
+        SIPResponse sipResponse = REQUEST_OUT_OF_ORDER.createResponse(sipRequest);
 
         try {
-            RetryAfter retryAfter = new RetryAfter();
-            retryAfter.setRetryAfter(10);
-            sipResponse.setHeader(retryAfter);
             sipStack.addTransactionPendingAck(transaction);
             transaction.sendResponse(sipResponse);
             transaction.releaseSem();
@@ -581,8 +578,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                             .logDebug(
                                     "Sending 481 for PRACK - automatic dialog support is enabled -- cant find dialog!");
                 }
-                SIPResponse notExist = sipRequest
-                        .createResponse(Response.CALL_OR_TRANSACTION_DOES_NOT_EXIST);
+                SIPResponse notExist = CALL_OR_TRANSACTION_DOES_NOT_EXIST
+                        .createResponse(sipRequest);
 
                 try {
                     sipProvider.sendResponse(notExist);
@@ -649,8 +646,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                 // then it is the application's responsibility to
                 // take care of this error condition possibly.
 
-                SIPResponse response = sipRequest
-                        .createResponse(Response.CALL_OR_TRANSACTION_DOES_NOT_EXIST);
+                SIPResponse response = CALL_OR_TRANSACTION_DOES_NOT_EXIST
+                        .createResponse(sipRequest);
                 response.setReasonPhrase("Dialog Not Found");
 
                 if (sipStack.isLoggingEnabled())
@@ -744,8 +741,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                 // an endpoint on this provider.
                 // Send the error response for the cancel.
 
-                SIPResponse response = sipRequest
-                        .createResponse(Response.CALL_OR_TRANSACTION_DOES_NOT_EXIST);
+                SIPResponse response = CALL_OR_TRANSACTION_DOES_NOT_EXIST
+                        .createResponse(sipRequest);
                 if (sipStack.isLoggingEnabled()) {
                     sipStack.getStackLogger().logDebug(
                             "dropping request -- automatic dialog support "
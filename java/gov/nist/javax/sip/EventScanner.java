@@ -64,15 +64,13 @@ class EventScanner implements Runnable {
 
     public EventScanner(SipStackImpl sipStackImpl) {
         this.pendingEvents = new LinkedList();
-        Thread myThread = new Thread(this);
         // This needs to be set to false else the
-        // main thread mysteriously exits.
-        myThread.setDaemon(false);
+        // main thread mysteriously exits (virtual threads are always daemons).
+        Thread myThread = sipStackImpl.getThreadFactory().newThread(this, "EventScannerThread",
+                false, Thread.NORM_PRIORITY);
 
         this.sipStack = sipStackImpl;
 
-        myThread.setName("EventScannerThread");
-
         myThread.start();
 
     }
@@ -259,8 +257,8 @@ class EventScanner implements Runnable {
                 if (eventWrapper.transaction != null)
                     sipStack
                             .removePendingTransaction((SIPServerTransaction) eventWrapper.transaction);
-                if (eventWrapper.transaction.getOriginalRequest().getMethod()
-                        .equals(Request.ACK)) {
+                if (eventWrapper.transaction != null
+                        && eventWrapper.transaction.getMethod().equals(Request.ACK)) {
                     // Set the tx state to terminated so it is removed from the
                     // stack
                     // if the user configured to get notification on ACK
@@ -447,6 +445,18 @@ class EventScanner implements Runnable {
 
     }
 
+    /**
+     * The message carried by an event, or the event itself if it carries none.
+     */
+    private static Object getMessage(EventObject sipEvent) {
+        if (sipEvent instanceof RequestEvent)
+            return ((RequestEvent) sipEvent).getRequest();
+        else if (sipEvent instanceof ResponseEvent)
+            return ((ResponseEvent) sipEvent).getResponse();
+        else
+            return sipEvent;
+    }
+
     /**
      * For the non-re-entrant listener this delivers the events to the listener
      * from a single queue. If the listener is re-entrant, then the stack just
@@ -507,13 +517,19 @@ class EventScanner implements Runnable {
                                 "Processing " + eventWrapper + "nevents "
                                         + eventsToDeliver.size());
                     }
+                    // Let the auditor report a listener that takes too long with this event.
+                    threadHandle.beginWork(getMessage(eventWrapper.sipEvent));
                     try {
                         deliverEvent(eventWrapper);
+                        sipStack.recordProcessingDelay(System.currentTimeMillis()
+                                - eventWrapper.timeStamp);
                     } catch (Exception e) {
                         if (sipStack.isLoggingEnabled()) {
                             sipStack.getStackLogger().logError(
                                     "Unexpected exception caught while delivering event -- carrying on bravely", e);
                         }
+                    } finally {
+                        threadHandle.endWork();
                     }
                 }
             } // end While
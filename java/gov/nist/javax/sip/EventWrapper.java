@@ -35,10 +35,13 @@ class EventWrapper {
 
     protected EventObject sipEvent;
     protected SIPTransaction transaction;
+    // When the event was created; used to measure the processing delay.
+    protected long timeStamp;
 
     EventWrapper(EventObject sipEvent, SIPTransaction transaction) {
         this.sipEvent = sipEvent;
         this.transaction = transaction;
+        this.timeStamp = System.currentTimeMillis();
     }
 }
 
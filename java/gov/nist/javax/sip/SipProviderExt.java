@@ -1,6 +1,10 @@
 package gov.nist.javax.sip;
 
+import javax.sip.SipException;
 import javax.sip.SipProvider;
+import javax.sip.address.Hop;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
 
 /**
  * Extensions to SipProvider under consideration for Version 2.0.
@@ -37,4 +41,31 @@ public interface SipProviderExt extends SipProvider {
      * @since 2.0
      */
     public void setDialogErrorsAutomaticallyHandled();
+
+    /**
+     * Forward a request statelessly, as a stateless proxy or load balancer does. Unlike
+     * sendRequest, the request is sent as is (the topmost Via must already carry the branch
+     * the application computed) and no dialog lookup is done. The destination is resolved
+     * once and cached, and the request is encoded straight onto the socket of the listening
+     * point for the transport of the hop, so no transaction or channel objects are created
+     * per request.
+     *
+     * @param request -- the request to forward.
+     * @param hop -- the next hop, or null to ask the router of the stack.
+     * @throws SipException if there is no listening point for the transport of the hop or
+     *         the request could not be sent.
+     * @since 2.0
+     */
+    public void forwardRequest(Request request, Hop hop) throws SipException;
+
+    /**
+     * Forward a response statelessly to the address given by the topmost Via (received and
+     * rport parameters if present). Unlike sendResponse the transaction table is not
+     * consulted.
+     *
+     * @param response -- the response to forward, with the proxy's own Via already removed.
+     * @throws SipException if the response could not be sent.
+     * @since 2.0
+     */
+    public void forwardResponse(Response response) throws SipException;
 }
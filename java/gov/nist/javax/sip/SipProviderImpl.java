@@ -190,6 +190,7 @@ public class SipProviderImpl implements javax.sip.SipProvider, gov.nist.javax.si
         } else {
             // just call the delivery method
             this.eventScanner.deliverEvent(eventWrapper);
+            sipStack.recordProcessingDelay(System.currentTimeMillis() - eventWrapper.timeStamp);
         }
     }
 
@@ -285,6 +286,19 @@ public class SipProviderImpl implements javax.sip.SipProvider, gov.nist.javax.si
         if ( sipRequest.getMethod().equals(Request.ACK)) {
             throw new TransactionUnavailableException ("Cannot create client transaction for  " + Request.ACK);
         }
+        // Fail fast (rather than block) if the client transaction table is full.
+        sipStack.checkClientTransactionAdmission();
+        try {
+            return createNewClientTransaction(sipRequest);
+        } finally {
+            // The transaction counts itself once it is in the table.
+            sipStack.releaseClientTransactionAdmission();
+        }
+    }
+
+    private ClientTransaction createNewClientTransaction(SIPRequest sipRequest)
+            throws TransactionUnavailableException {
+        Request request = sipRequest;
         // Be kind and assign a via header for this provider if the user is
         // sloppy
         if (sipRequest.getTopmostVia() == null) {
@@ -701,27 +715,7 @@ public class SipProviderImpl implements javax.sip.SipProvider, gov.nist.javax.si
                     via.setBranch(sipRequest.getTransactionId());
                 }
             }
-            MessageChannel messageChannel = null;
-            if (this.listeningPoints.containsKey(hop.getTransport()
-                    .toUpperCase()))
-                messageChannel = sipStack.createRawMessageChannel(
-                        this.getListeningPoint(hop.getTransport()).getIPAddress(),
-                        this.getListeningPoint(hop.getTransport()).getPort(), hop);
-            if (messageChannel != null) {
-                messageChannel.sendMessage((SIPMessage) sipRequest,hop);
-            } else {
-                throw new SipException(
-                        "Could not create a message channel for "
-                                + hop.toString());
-            }
-        } catch (IOException ex) {
-            if (sipStack.isLoggingEnabled()) {
-                sipStack.getStackLogger().logException(ex);
-            }
-
-            throw new SipException(
-                    "IO Exception occured while Sending Request", ex);
-
+            forward(sipRequest, hop);
         } catch (ParseException ex1) {
             InternalErrorHandler.handleException(ex1);
         } finally {
@@ -748,6 +742,67 @@ public class SipProviderImpl implements javax.sip.SipProvider, gov.nist.javax.si
         if ( st != null   && st.getState() != TransactionState.TERMINATED && this.isAutomaticDialogSupportEnabled()) {
             throw new SipException("Transaction exists -- cannot send response statelessly");
         }
+        forward(sipResponse, getResponseHop(via));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see gov.nist.javax.sip.SipProviderExt#forwardRequest(javax.sip.message.Request,
+     *      javax.sip.address.Hop)
+     */
+    public void forwardRequest(Request request, Hop hop) throws SipException {
+        if (!sipStack.isAlive())
+            throw new SipException("Stack is stopped.");
+        SIPRequest sipRequest = (SIPRequest) request;
+        if (sipRequest.getTopmostVia() == null)
+            throw new SipException("Invalid SipRequest -- no via header!");
+        if (hop == null)
+            hop = sipStack.getRouter(sipRequest).getNextHop(request);
+        if (hop == null)
+            throw new SipException("could not determine next hop!");
+        forward(sipRequest, hop);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see gov.nist.javax.sip.SipProviderExt#forwardResponse(javax.sip.message.Response)
+     */
+    public void forwardResponse(Response response) throws SipException {
+        if (!sipStack.isAlive())
+            throw new SipException("Stack is stopped");
+        Via via = ((SIPResponse) response).getTopmostVia();
+        if (via == null)
+            throw new SipException("No via header in response!");
+        forward((SIPResponse) response, getResponseHop(via));
+    }
+
+    /**
+     * Send a message to a hop from the listening point for the transport of the hop, outside
+     * of any transaction.
+     */
+    private void forward(SIPMessage sipMessage, Hop hop) throws SipException {
+        ListeningPoint listeningPoint = this.getListeningPoint(hop.getTransport());
+        if (listeningPoint == null)
+            throw new SipException("Could not create a message channel for " + hop.toString());
+        try {
+            sipStack.getStatelessForwarder().forward(sipMessage,
+                    listeningPoint.getIPAddress(), listeningPoint.getPort(), hop);
+        } catch (IOException ex) {
+            if (sipStack.isLoggingEnabled()) {
+                sipStack.getStackLogger().logException(ex);
+            }
+            throw new SipException("IO Exception occured while Sending "
+                    + (sipMessage instanceof SIPRequest ? "Request" : "Response"), ex);
+        }
+    }
+
+    /**
+     * The hop a response goes to: the received and rport parameters of the topmost Via if
+     * present, its sent-by otherwise.
+     */
+    private Hop getResponseHop(Via via) {
         String transport = via.getTransport();
 
         // check to see if Via has "received paramaeter". If so
@@ -775,23 +830,8 @@ public class SipProviderImpl implements javax.sip.SipProvider, gov.nist.javax.si
             if (host.indexOf("[") < 0)
                 host = "[" + host + "]";
 
-        Hop hop = sipStack.getAddressResolver().resolveAddress(
+        return sipStack.getAddressResolver().resolveAddress(
                 new HopImpl(host, port, transport));
-
-        try {
-            ListeningPointImpl listeningPoint = (ListeningPointImpl) this
-                    .getListeningPoint(transport);
-            if (listeningPoint == null)
-                throw new SipException(
-                        "whoopsa daisy! no listening point found for transport "
-                                + transport);
-            MessageChannel messageChannel = sipStack.createRawMessageChannel(
-                    this.getListeningPoint(hop.getTransport()).getIPAddress(),
-                    listeningPoint.port, hop);
-            messageChannel.sendMessage(sipResponse);
-        } catch (IOException ex) {
-            throw new SipException(ex.getMessage());
-        }
     }
 
     /*
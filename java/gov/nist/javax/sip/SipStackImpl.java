@@ -35,10 +35,15 @@ import gov.nist.javax.sip.clientauthutils.AuthenticationHelper;
 import gov.nist.javax.sip.clientauthutils.AuthenticationHelperImpl;
 import gov.nist.javax.sip.clientauthutils.SecureAccountManager;
 import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.stack.AdmissionController;
 import gov.nist.javax.sip.stack.DefaultMessageLogFactory;
 import gov.nist.javax.sip.stack.DefaultRouter;
+import gov.nist.javax.sip.stack.DialogStateReplicator;
+import gov.nist.javax.sip.stack.DialogStore;
 import gov.nist.javax.sip.stack.MessageProcessor;
 import gov.nist.javax.sip.stack.SIPTransactionStack;
+import gov.nist.javax.sip.stack.SourceRateLimiter;
+import gov.nist.javax.sip.stack.StackThreadFactory;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -47,6 +52,7 @@ import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.Properties;
@@ -54,6 +60,8 @@ import java.util.StringTokenizer;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.sip.InvalidArgumentException;
 import javax.sip.ListeningPoint;
 import javax.sip.ObjectInUseException;
@@ -229,6 +237,15 @@ import javax.sip.message.Request;
  * machine but will run the listener in its own thread.</li>
  * </ul>
  * 
+ * <li><b>gov.nist.javax.sip.THREAD_FACTORY = platform|virtual|classpath </b> <br/>
+ * The threads the stack creates for its transports (accept loops, TCP and TLS
+ * readers, pipelined parsers, UDP workers), TLS handshakes, re-INVITEs and the
+ * event scanner. Default is platform (plain java.lang.Thread). virtual uses
+ * virtual threads and requires Java 21 or later; combined with a
+ * THREAD_POOL_SIZE of -1 it gives each UDP message its own cheap thread. Any
+ * other value is taken as the class name of a java.util.concurrent.ThreadFactory
+ * with a public no argument constructor.</li>
+ * 
  * <li><b>gov.nist.javax.sip.REENTRANT_LISTENER = true|false </b> <br/>
  * Default is false. Set to true if the listener is re-entrant. If the listener
  * is re-entrant then the stack manages a thread pool and synchronously calls
@@ -242,17 +259,87 @@ import javax.sip.message.Request;
  * <li><b>gov.nist.javax.sip.MAX_CONNECTIONS = integer </b> <br/>
  * Max number of simultaneous TCP connections handled by stack.</li>
  * 
+ * <li><b>gov.nist.javax.sip.MAX_CACHED_CONNECTIONS = integer </b> <br/>
+ * Max number of TCP/TLS connections kept in the connection cache. When the
+ * cache is full the least recently used connection is closed. Default is
+ * unlimited.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.CONNECTION_IDLE_TIMEOUT = integer </b> <br/>
+ * Seconds after which a TCP/TLS connection that carried no traffic is closed.
+ * Default is 0 (never).</li>
+ * 
+ * <li><b>gov.nist.javax.sip.TCP_KEEPALIVE_INTERVAL = integer </b> <br/>
+ * Seconds of inactivity after which a cached TCP/TLS connection is sent an
+ * RFC 5626 double CRLF ping. A connection that does not answer within 10
+ * seconds is closed. Default is 0 (no keepalives). Pings received from peers
+ * are always answered.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.TRIM_COMPLETED_TRANSACTIONS = true|false </b> <br/>
+ * If true, a non-INVITE server transaction that has sent its final response,
+ * and an INVITE server transaction confirmed by the ACK of a non-2xx response,
+ * keep only their matching state and the encoded last response for the time
+ * they linger to absorb retransmissions. getRequest and getResponse decode the
+ * messages again if they are called after that, so they return new objects.
+ * Default is false.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DIALOG_PASSIVATION_TIME = integer </b> <br/>
+ * Seconds after which a confirmed dialog that has not been used, has no
+ * transaction in progress and carries no application data has its last
+ * response, original request, ACKs and route set moved into a compact off-heap
+ * record. The dialog itself stays in the dialog table, and its state is
+ * restored in place when it is next looked up (for example by an incoming
+ * in-dialog request) or used through a reference the application kept. The
+ * dialog also drops its first and last transaction, so getFirstTransaction()
+ * returns null afterwards; a dialog whose record cannot be read back is
+ * terminated. Should be well above the 32 second transaction lifetime.
+ * Default is 0 (never).</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DIALOG_STATE_REPLICATOR = classpath </b> <br/>
+ * The fully qualified classpath of a DialogStateReplicator with a default
+ * constructor. It receives DialogCodec snapshots of dialogs whose state, route
+ * set, remote target or CSeq numbers changed, for example to keep a hot standby
+ * up to date. The replicator can also be set with setDialogStateReplicator.
+ * Default is none.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DIALOG_REPLICATION_INTERVAL = integer </b> <br/>
+ * How often (ms) the changed dialogs are handed to the DialogStateReplicator.
+ * Changes of a dialog within an interval are coalesced into one snapshot.
+ * Default is 100.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DIALOG_REPLICATION_BATCH_SIZE = integer </b> <br/>
+ * Number of changed dialogs that are handed to the DialogStateReplicator
+ * without waiting for the interval to end. The batch is still taken and
+ * replicated on the stack timer, never on the thread that filled it. Default
+ * is 1000.</li>
+ * 
  * <li><b>gov.nist.javax.sip.MAX_SERVER_TRANSACTIONS = integer </b> <br/>
- * Maximum size of server transaction table. The low water mark is 80% of the
- * high water mark. Requests are selectively dropped in the lowater mark to
- * highwater mark range. Requests are unconditionally accepted if the table is
- * smaller than the low water mark. The default highwater mark is 5000</li>
+ * Maximum size of server transaction table. New requests that would grow the
+ * table beyond the current limit are answered with 503 (Service Unavailable)
+ * and a Retry-After header instead of being silently dropped. Default is
+ * unlimited.</li>
  * 
  * <li><b>gov.nist.javax.sip.MAX_CLIENT_TRANSACTIONS = integer </b> <br/>
- * Max number of active client transactions before the caller blocks and waits
- * for the number to drop below a threshold. Default is unlimited, i.e. the
- * caller never blocks and waits for a client transaction to become available
- * (i.e. it does its own resource management in the application).</li>
+ * Max number of active client transactions. When the limit is reached
+ * getNewClientTransaction fails at once with a TransactionOverloadException
+ * (which carries a suggested retry interval) rather than blocking the caller.
+ * Default is unlimited, i.e. the application does its own resource
+ * management.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.ADAPTIVE_TRANSACTION_LIMIT = true|false </b> <br/>
+ * If true, the limits set by MAX_SERVER_TRANSACTIONS and MAX_CLIENT_TRANSACTIONS
+ * are upper bounds and the effective limits adapt to the observed processing
+ * delay (time spent queued for the listener plus listener latency): they are
+ * cut back when the delay exceeds ADMISSION_TARGET_DELAY and grow again when it
+ * recovers. Default is false.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.ADMISSION_TARGET_DELAY = integer </b> <br/>
+ * Target processing delay in ms for ADAPTIVE_TRANSACTION_LIMIT. Default is
+ * 200.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.OVERLOAD_CONTROL_VIA = true|false </b> <br/>
+ * If true (and MAX_SERVER_TRANSACTIONS is set), responses to clients that add
+ * an oc parameter to their Via carry the RFC 7339 overload control parameters
+ * (oc, oc-algo, oc-validity, oc-seq). Default is false.</li>
  * 
  * <li><b>gov.nist.javax.sip.PASS_INVITE_NON_2XX_ACK_TO_LISTENER = true|false
  * </b> <br/>
@@ -300,7 +387,28 @@ import javax.sip.message.Request;
  * getHostByName. Specifying your own address resolver allows you to customize
  * address lookup. The default address resolver is a pass-through address
  * resolver (i.e. just returns the input string without doing a resolution). See
- * gov.nist.javax.sip.DefaultAddressResolver.</li>
+ * gov.nist.javax.sip.DefaultAddressResolver. Set this to
+ * gov.nist.javax.sip.CachingAddressResolver for RFC 3263 (NAPTR/SRV/A/AAAA)
+ * lookups with a TTL based cache.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DNS_SERVERS = host[:port],... </b><br/>
+ * DNS servers used by the CachingAddressResolver. Defaults to the name servers
+ * in /etc/resolv.conf. If none are found, only address lookups are done
+ * (through InetAddress) and SRV/NAPTR records are not consulted.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DNS_LOOKUP_TIMEOUT = integer </b><br/>
+ * Max time (milliseconds) that the CachingAddressResolver blocks the calling
+ * thread for a lookup that is not cached. When it expires the unresolved hop is
+ * used and the lookup completes in the background. Default is 4000.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DNS_NEGATIVE_CACHE_TTL = integer </b><br/>
+ * Max time (seconds) for which the CachingAddressResolver remembers failed
+ * lookups. A negative answer is remembered for the TTL of the SOA record that
+ * comes with it (RFC 2308) if that is shorter; a lookup that got no answer at
+ * all is remembered for this long. Default is 30.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.DNS_CACHE_SIZE = integer </b><br/>
+ * Max number of entries in the CachingAddressResolver cache. Default is 1024.</li>
  * 
  * <li><b>gov.nist.javax.sip.AUTO_GENERATE_TIMESTAMP= [true| false] </b><br/>
  * (default is false) Automatically generate a getTimeOfDay timestamp for a
@@ -319,6 +427,14 @@ import javax.sip.message.Request;
  * remain disabled. An example of how to use this property is in
  * src/examples/threadaudit.</li>
  * 
+ * <li><b>gov.nist.javax.sip.THREAD_STALL_THRESHOLD_IN_MILLISECS = long </b> <br/>
+ * When thread audits are enabled, a stack thread that spends longer than this
+ * on a single message (for example in a slow listener) is reported as stalled.
+ * The report is logged as a warning and included in the next audit report, and
+ * holds the stack trace of the thread and the first line of the message. The
+ * longest processing time seen by each thread is listed by the ThreadAuditor.
+ * Default is the thread audit interval.</li>
+ * 
  * 
  * 
  * <li><b>gov.nist.javax.sip.COMPUTE_CONTENT_LENGTH_FROM_MESSAGE_BODY =
@@ -329,6 +445,23 @@ import javax.sip.message.Request;
  * parameter in the Message. Otherwise, it will use the content length supplied
  * and generate a parse exception if the content is truncated.
  * 
+ * <li><b>gov.nist.javax.sip.HEADER_CACHE_SIZE = integer </b> <br/>
+ * Number of parsed User-Agent, Server, Allow, Supported, Require,
+ * Content-Type, Accept, Allow-Events, Max-Forwards and similar headers of
+ * received messages to keep, so that a header whose text was seen before is
+ * copied rather than parsed again and its strings are shared. Like the content
+ * length flag above, this applies to every stack in the JVM. Default is 0 (no
+ * cache). AddressFactoryImpl and HeaderFactoryImpl have a setParseCacheSize
+ * method for the same purpose.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.PRELOAD_PARSER = [true|false] </b> <br/>
+ * If true, the first stack created in the JVM parses a canned request and
+ * response on a background thread while the application creates its
+ * listening points and providers, so that the parser and header classes are
+ * loaded before the first message arrives. Default is <it>true</it> when the
+ * JVM has more than one CPU; with a single CPU the preload only competes
+ * with the application for it.</li>
+ * 
  * <li><b>gov.nist.javax.sip.CANCEL_CLIENT_TRANSACTION_CHECKED = [true|false]
  * </b> <br/>
  * Default is <it>true</it>. This flag is added in support of load balancers or
@@ -374,6 +507,29 @@ import javax.sip.message.Request;
  * The Max queue size is 5000 messages. The minimum queue size is 2500 messages.
  * </li>
  * 
+ * <li><b>gov.nist.javax.sip.SOURCE_RATE_LIMIT = integer </b> <br/>
+ * Maximum number of messages per second accepted from a single source IP
+ * address. Over the limit, UDP datagrams are dropped before they are parsed,
+ * new TCP/TLS connections are refused and requests on open connections are
+ * answered with 503 (other messages are dropped) without closing the
+ * connection. Default is unlimited.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.SOURCE_RATE_BURST = integer </b> <br/>
+ * Number of messages a source may send in a burst above SOURCE_RATE_LIMIT.
+ * Default is twice the rate.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.SOURCE_BAN_TIME = integer </b> <br/>
+ * Seconds a source is banned after it sent a full burst of messages over its
+ * limit. 0 disables bans. Default is 60.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.SOURCE_ALLOW_LIST = address,address,... </b> <br/>
+ * Comma separated list of IP addresses that are never rate limited (for
+ * example trusted proxies).</li>
+ * 
+ * <li><b>gov.nist.javax.sip.SOURCE_TABLE_SIZE = integer </b> <br/>
+ * Maximum number of source addresses tracked by the rate limiter. Default is
+ * 10000.</li>
+ * 
  * <li><b>gov.nist.javax.sip.DELIVER_UNSOLICITED_NOTIFY = [true|false] </b> <br/>
  * Default is <it>false</it>. This flag is added to allow Sip Listeners to
  * receive all NOTIFY requests including those that are not part of a valid
@@ -401,6 +557,34 @@ import javax.sip.message.Request;
  *  The default is "SSLv3, SSLv2Hello, TLSv1".
  *  Some servers do not support SSLv2Hello, so override to "SSLv3, TLSv1". 
  * </li>
+ * 
+ * <li><b>gov.nist.javax.sip.TLS_HANDSHAKE_TIMEOUT = integer </b> <br/>
+ * Milliseconds allowed for a TLS handshake, incoming or outgoing. Default is
+ * 10000. Handshakes of accepted connections run on a pool of
+ * gov.nist.javax.sip.TLS_HANDSHAKE_THREADS threads (default 4) with room for
+ * gov.nist.javax.sip.TLS_HANDSHAKE_QUEUE_SIZE waiting connections (default
+ * 100); connections beyond that are refused, so slow clients cannot stall the
+ * accept loop.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.CONNECT_TIMEOUT = integer </b> <br/>
+ * Milliseconds allowed to open an outgoing TCP or TLS connection. Default is
+ * 10000. Connections are opened on a pool of gov.nist.javax.sip.CONNECT_THREADS
+ * threads (default 4) with room for gov.nist.javax.sip.CONNECT_QUEUE_SIZE
+ * waiting connects (default 100), separate from the handshake pool. The sender
+ * does not wait: messages sent to a peer while its connection is being opened
+ * are queued and written in order once it is open. If it cannot be opened, the
+ * transactions using that peer get an IOExceptionEvent and a transport error,
+ * and further sends to the peer fail with an IOException for a few seconds
+ * before a new connect is tried.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.TLS_CLIENT_SESSION_CACHE_SIZE = integer </b> <br/>
+ * Number of client TLS sessions cached (per peer) so that reconnects resume
+ * the session instead of doing a full handshake. 0 means unlimited. Default
+ * is the Java runtime default.</li>
+ * 
+ * <li><b>gov.nist.javax.sip.TLS_CLIENT_SESSION_TIMEOUT = integer </b> <br/>
+ * Seconds a cached client TLS session may be resumed. Default is the Java
+ * runtime default.</li>
 
  * <li><b>javax.net.ssl.keyStore = fileName </b> <br/>
  * Default is <it>NULL</it>. If left undefined the keyStore and trustStore will
@@ -784,6 +968,15 @@ public class SipStackImpl extends SIPTransactionStack implements
 						"can't find or instantiate AddressResolver implementation: "
 								+ path);
 			}
+			if (this.addressResolver instanceof CachingAddressResolver) {
+				CachingAddressResolver cachingAddressResolver = (CachingAddressResolver) this.addressResolver;
+				cachingAddressResolver.setStackLogger(getStackLogger());
+				try {
+					cachingAddressResolver.setStackProperties(configurationProperties);
+				} catch (IllegalArgumentException ex) {
+					throw new PeerUnavailableException(ex.getMessage(), ex);
+				}
+			}
 		}
 
 		String maxConnections = configurationProperties
@@ -798,6 +991,57 @@ public class SipStackImpl extends SIPTransactionStack implements
 			}
 		}
 
+		try {
+			this.maxCachedConnections = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.MAX_CACHED_CONNECTIONS", "-1").trim());
+			this.connectionIdleTimeout = Long.parseLong(configurationProperties
+					.getProperty("gov.nist.javax.sip.CONNECTION_IDLE_TIMEOUT", "0").trim()) * 1000;
+			this.keepAliveInterval = Long.parseLong(configurationProperties
+					.getProperty("gov.nist.javax.sip.TCP_KEEPALIVE_INTERVAL", "0").trim()) * 1000;
+		} catch (NumberFormatException ex) {
+			if (isLoggingEnabled())
+				getStackLogger().logError(
+					"connection cache - bad value " + ex.getMessage());
+		}
+
+		this.trimCompletedTransactions = "true".equalsIgnoreCase(configurationProperties
+				.getProperty("gov.nist.javax.sip.TRIM_COMPLETED_TRANSACTIONS", "false").trim());
+
+		try {
+			this.dialogPassivationTime = Long.parseLong(configurationProperties
+					.getProperty("gov.nist.javax.sip.DIALOG_PASSIVATION_TIME", "0").trim()) * 1000;
+			if (this.dialogPassivationTime > 0)
+				this.passivatedDialogs = new DialogStore();
+		} catch (NumberFormatException ex) {
+			if (isLoggingEnabled())
+				getStackLogger().logError(
+					"dialog passivation time - bad value " + ex.getMessage());
+		}
+
+		try {
+			this.dialogReplicationInterval = Long.parseLong(configurationProperties
+					.getProperty("gov.nist.javax.sip.DIALOG_REPLICATION_INTERVAL", "100").trim());
+			this.dialogReplicationBatchSize = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.DIALOG_REPLICATION_BATCH_SIZE", "1000").trim());
+		} catch (NumberFormatException ex) {
+			if (isLoggingEnabled())
+				getStackLogger().logError(
+					"dialog replication - bad value " + ex.getMessage());
+		}
+		String replicatorClassName = configurationProperties
+				.getProperty("gov.nist.javax.sip.DIALOG_STATE_REPLICATOR");
+		if (replicatorClassName != null) {
+			try {
+				Class<?> clazz = Class.forName(replicatorClassName.trim());
+				Constructor<?> c = clazz.getConstructor(new Class<?>[0]);
+				this.setDialogStateReplicator((DialogStateReplicator) c
+						.newInstance(new Object[0]));
+			} catch (Exception ex) {
+				throw new PeerUnavailableException(
+						"Could not create the dialog state replicator " + replicatorClassName, ex);
+			}
+		}
+
 		String threadPoolSize = configurationProperties
 				.getProperty("gov.nist.javax.sip.THREAD_POOL_SIZE");
 		if (threadPoolSize != null) {
@@ -810,6 +1054,36 @@ public class SipStackImpl extends SIPTransactionStack implements
 			}
 		}
 
+		String threadFactoryName = configurationProperties
+				.getProperty("gov.nist.javax.sip.THREAD_FACTORY");
+		if (threadFactoryName != null) {
+			try {
+				super.threadFactory = StackThreadFactory.forName(threadFactoryName);
+			} catch (IllegalArgumentException ex) {
+				this.eventScanner.forceStop();
+				throw new PeerUnavailableException(ex.getMessage(), ex);
+			}
+			// The event scanner was started by the default constructor, move it
+			// to a thread of the configured factory.
+			this.eventScanner.forceStop();
+			this.eventScanner = new EventScanner(this);
+		}
+
+		boolean adaptiveTransactionLimit = "true".equalsIgnoreCase(configurationProperties
+				.getProperty("gov.nist.javax.sip.ADAPTIVE_TRANSACTION_LIMIT", "false").trim());
+		long admissionTargetDelay = 200;
+		String targetDelay = configurationProperties
+				.getProperty("gov.nist.javax.sip.ADMISSION_TARGET_DELAY");
+		if (targetDelay != null) {
+			try {
+				admissionTargetDelay = Long.parseLong(targetDelay.trim());
+			} catch (NumberFormatException ex) {
+				if (isLoggingEnabled())
+					this.getStackLogger().logError(
+						"admission target delay - bad value " + ex.getMessage());
+			}
+		}
+
 		String serverTransactionTableSize = configurationProperties
 				.getProperty("gov.nist.javax.sip.MAX_SERVER_TRANSACTIONS");
 		if (serverTransactionTableSize != null) {
@@ -818,7 +1092,11 @@ public class SipStackImpl extends SIPTransactionStack implements
 						serverTransactionTableSize).intValue();
 				this.serverTransactionTableLowaterMark = this.serverTransactionTableHighwaterMark * 80 / 100;
 				// Lowater is 80% of highwater
-			} catch (NumberFormatException ex) {
+				this.serverAdmissionController = new AdmissionController(
+						this.serverTransactionTableHighwaterMark, adaptiveTransactionLimit,
+						admissionTargetDelay);
+				this.unlimitedServerTransactionTableSize = false;
+			} catch (IllegalArgumentException ex) {
 				if (isLoggingEnabled())
 					this.getStackLogger()
 						.logError(
@@ -837,9 +1115,13 @@ public class SipStackImpl extends SIPTransactionStack implements
 			try {
 				this.clientTransactionTableHiwaterMark = new Integer(
 						clientTransactionTableSize).intValue();
-				this.clientTransactionTableLowaterMark = this.clientTransactionTableLowaterMark * 80 / 100;
+				this.clientTransactionTableLowaterMark = this.clientTransactionTableHiwaterMark * 80 / 100;
 				// Lowater is 80% of highwater
-			} catch (NumberFormatException ex) {
+				this.clientAdmissionController = new AdmissionController(
+						this.clientTransactionTableHiwaterMark, adaptiveTransactionLimit,
+						admissionTargetDelay);
+				this.unlimitedClientTransactionTableSize = false;
+			} catch (IllegalArgumentException ex) {
 				if (isLoggingEnabled())
 					this.getStackLogger()
 						.logError(
@@ -850,6 +1132,9 @@ public class SipStackImpl extends SIPTransactionStack implements
 			this.unlimitedClientTransactionTableSize = true;
 		}
 
+		this.overloadControlVia = "true".equalsIgnoreCase(configurationProperties
+				.getProperty("gov.nist.javax.sip.OVERLOAD_CONTROL_VIA", "false").trim());
+
 		super.cacheServerConnections = true;
 		String flag = configurationProperties
 				.getProperty("gov.nist.javax.sip.CACHE_SERVER_CONNECTIONS");
@@ -933,6 +1218,22 @@ public class SipStackImpl extends SIPTransactionStack implements
 			}
 		}
 
+		String stallThreshold = configurationProperties
+				.getProperty("gov.nist.javax.sip.THREAD_STALL_THRESHOLD_IN_MILLISECS");
+		if (stallThreshold != null) {
+			try {
+				getThreadAuditor().setStallThresholdInMillisecs(
+						Long.valueOf(stallThreshold).longValue());
+			} catch (NumberFormatException ex) {
+				if (isLoggingEnabled())
+					getStackLogger().logError(
+						"THREAD_STALL_THRESHOLD_IN_MILLISECS - bad value ["
+								+ stallThreshold + "] " + ex.getMessage());
+			}
+		}
+		// The audit interval is known now: start monitoring the timer thread.
+		startThreadAudit();
+
 		// JvB: added property for testing
 		this
 				.setNon2XXAckPassedToListener(Boolean
@@ -973,6 +1274,25 @@ public class SipStackImpl extends SIPTransactionStack implements
 		StringMsgParser
 				.setComputeContentLengthFromMessage(computeContentLength);
 
+		try {
+			StringMsgParser.setHeaderCacheSize(Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.HEADER_CACHE_SIZE", "0").trim()));
+		} catch (NumberFormatException ex) {
+			if (isLoggingEnabled())
+				getStackLogger().logError("header cache size - bad value " + ex.getMessage());
+		}
+
+		boolean preloadParser = "true".equalsIgnoreCase(configurationProperties.getProperty(
+				"gov.nist.javax.sip.PRELOAD_PARSER",
+				String.valueOf(Runtime.getRuntime().availableProcessors() > 1)).trim());
+		if (preloadParser && !StringMsgParser.isPreloaded()) {
+			getThreadFactory().newThread(new Runnable() {
+				public void run() {
+					StringMsgParser.preload();
+				}
+			}, "ParserPreloadThread").start();
+		}
+
 		String tlsClientProtocols = configurationProperties.getProperty(
 				"gov.nist.javax.sip.TLS_CLIENT_PROTOCOLS");
 		if (tlsClientProtocols != null)
@@ -987,6 +1307,51 @@ public class SipStackImpl extends SIPTransactionStack implements
 			this.enabledProtocols = protocols;
 		}
 
+		try {
+			super.tlsHandshakeTimeout = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.TLS_HANDSHAKE_TIMEOUT", "10000").trim());
+			super.tlsHandshakeThreads = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.TLS_HANDSHAKE_THREADS", "4").trim());
+			super.tlsHandshakeQueueSize = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.TLS_HANDSHAKE_QUEUE_SIZE", "100").trim());
+			super.connectTimeout = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.CONNECT_TIMEOUT", "10000").trim());
+			super.connectThreads = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.CONNECT_THREADS", "4").trim());
+			super.connectQueueSize = Integer.parseInt(configurationProperties
+					.getProperty("gov.nist.javax.sip.CONNECT_QUEUE_SIZE", "100").trim());
+		} catch (NumberFormatException ex) {
+			if (isLoggingEnabled())
+				getStackLogger().logError("TLS handshake - bad value " + ex.getMessage());
+		}
+		if (super.tlsHandshakeThreads <= 0 || super.tlsHandshakeQueueSize <= 0)
+			throw new PeerUnavailableException(
+					"Bad configuration parameter TLS_HANDSHAKE_THREADS or TLS_HANDSHAKE_QUEUE_SIZE : should be positive");
+		if (super.connectThreads <= 0 || super.connectQueueSize <= 0)
+			throw new PeerUnavailableException(
+					"Bad configuration parameter CONNECT_THREADS or CONNECT_QUEUE_SIZE : should be positive");
+
+		String sessionCacheSize = configurationProperties
+				.getProperty("gov.nist.javax.sip.TLS_CLIENT_SESSION_CACHE_SIZE");
+		String sessionTimeout = configurationProperties
+				.getProperty("gov.nist.javax.sip.TLS_CLIENT_SESSION_TIMEOUT");
+		if (sessionCacheSize != null || sessionTimeout != null) {
+			try {
+				SSLSessionContext sessionContext;
+				if (networkLayer instanceof SslNetworkLayer)
+					sessionContext = ((SslNetworkLayer) networkLayer).getClientSessionContext();
+				else
+					sessionContext = SSLContext.getDefault().getClientSessionContext();
+				if (sessionCacheSize != null)
+					sessionContext.setSessionCacheSize(Integer.parseInt(sessionCacheSize.trim()));
+				if (sessionTimeout != null)
+					sessionContext.setSessionTimeout(Integer.parseInt(sessionTimeout.trim()));
+			} catch (Exception ex) {
+				if (isLoggingEnabled())
+					getStackLogger().logError("TLS client session cache - bad value", ex);
+			}
+		}
+
 		super.rfc2543Supported = configurationProperties.getProperty(
 				"gov.nist.javax.sip.RFC_2543_SUPPORT_ENABLED", "true")
 				.equalsIgnoreCase("true");
@@ -1035,6 +1400,43 @@ public class SipStackImpl extends SIPTransactionStack implements
 						Boolean.TRUE.toString()));
 		super.stackDoesCongestionControl = congetstionControlEnabled;
 
+		String sourceRateLimit = configurationProperties
+				.getProperty("gov.nist.javax.sip.SOURCE_RATE_LIMIT");
+		if (sourceRateLimit != null) {
+			try {
+				int rate = Integer.parseInt(sourceRateLimit.trim());
+				int burst = Integer.parseInt(configurationProperties.getProperty(
+						"gov.nist.javax.sip.SOURCE_RATE_BURST",
+						Integer.toString(2 * rate)).trim());
+				long banTime = Long.parseLong(configurationProperties.getProperty(
+						"gov.nist.javax.sip.SOURCE_BAN_TIME", "60").trim()) * 1000;
+				int tableSize = Integer.parseInt(configurationProperties.getProperty(
+						"gov.nist.javax.sip.SOURCE_TABLE_SIZE", "10000").trim());
+				super.sourceRateLimiter = new SourceRateLimiter(rate, burst, banTime,
+						tableSize);
+				String allowList = configurationProperties
+						.getProperty("gov.nist.javax.sip.SOURCE_ALLOW_LIST");
+				if (allowList != null) {
+					StringTokenizer st = new StringTokenizer(allowList, ", ");
+					while (st.hasMoreTokens()) {
+						String allowed = st.nextToken();
+						try {
+							super.sourceRateLimiter.addAllowedAddress(InetAddress
+									.getByName(allowed));
+						} catch (UnknownHostException ex) {
+							if (isLoggingEnabled())
+								this.getStackLogger().logError(
+										"Bad address in source allow list " + allowed);
+						}
+					}
+				}
+			} catch (IllegalArgumentException ex) {
+				if (isLoggingEnabled())
+					this.getStackLogger().logError(
+						"source rate limit - bad value " + ex.getMessage());
+			}
+		}
+
 		super.isBackToBackUserAgent = Boolean
 				.parseBoolean(configurationProperties.getProperty(
 						"gov.nist.javax.sip.IS_BACK_TO_BACK_USER_AGENT",
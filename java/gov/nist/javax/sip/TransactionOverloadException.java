@@ -0,0 +1,54 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip;
+
+import javax.sip.TransactionUnavailableException;
+
+/**
+ * Thrown by getNewClientTransaction when the client transaction admission control
+ * (gov.nist.javax.sip.MAX_CLIENT_TRANSACTIONS) rejects a new transaction. The application
+ * should back off for getRetryAfter() seconds or shed the request.
+ *
+ * @since 2.0
+ */
+public class TransactionOverloadException extends TransactionUnavailableException {
+
+    private static final long serialVersionUID = 3419585722407425371L;
+
+    private final int retryAfter;
+
+    public TransactionOverloadException(String message, int retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * The suggested back-off in seconds.
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+}
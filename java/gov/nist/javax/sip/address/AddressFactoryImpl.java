@@ -45,11 +45,63 @@ import javax.sip.address.*;
  */
 public class AddressFactoryImpl implements javax.sip.address.AddressFactory {
 
+    /**
+     * Addresses parsed by createAddress, or null if the parse cache is off.
+     */
+    private ParseCache addressCache;
+
+    /**
+     * URIs parsed by createURI, createSipURI and createTelURL, or null if the parse cache
+     * is off.
+     */
+    private ParseCache uriCache;
+
     /** Creates a new instance of AddressFactoryImpl
      */
     public AddressFactoryImpl() {
     }
 
+    /**
+     * Keep up to the given number of parsed addresses and as many parsed URIs, so that
+     * creating one from a string seen before (a Contact, a Route set entry) copies the
+     * cached object instead of parsing the string again. Zero (the default) disables the
+     * cache.
+     */
+    public void setParseCacheSize(int size) {
+        if (size > 0) {
+            this.addressCache = new ParseCache(size);
+            this.uriCache = new ParseCache(size);
+        } else {
+            this.addressCache = null;
+            this.uriCache = null;
+        }
+    }
+
+    /**
+     * The cache of parsed addresses, or null if it is disabled.
+     */
+    public ParseCache getAddressCache() {
+        return addressCache;
+    }
+
+    /**
+     * The cache of parsed URIs, or null if it is disabled.
+     */
+    public ParseCache getURICache() {
+        return uriCache;
+    }
+
+    private Object getCachedURI(String uri) {
+        ParseCache cache = uriCache;
+        return cache == null ? null : cache.get(uri);
+    }
+
+    private void cacheURI(String uri, GenericURI value) {
+        ParseCache cache = uriCache;
+        if (cache != null)
+            cache.put(uri, value);
+    }
+
 
     /**
      *
@@ -93,9 +145,13 @@ public class AddressFactoryImpl implements javax.sip.address.AddressFactory {
     throws ParseException {
         if (uri == null)
             throw new NullPointerException("null URI");
+        Object cached = getCachedURI(uri);
+        if (cached instanceof SipUri)
+            return (SipURI) cached;
         try {
             StringMsgParser smp = new StringMsgParser();
             SipUri sipUri = smp.parseSIPUrl(uri);
+            cacheURI(uri, sipUri);
             return (SipURI) sipUri;
         } catch (ParseException ex) {
             //  throw new java.net.URISyntaxException(uri, ex.getMessage());
@@ -127,10 +183,15 @@ public class AddressFactoryImpl implements javax.sip.address.AddressFactory {
 
         uriString.append(host);
 
+        String text = uriString.toString();
+        Object cached = getCachedURI(text);
+        if (cached instanceof SipUri)
+            return (SipURI) cached;
         StringMsgParser smp = new StringMsgParser();
         try {
 
-            SipUri sipUri = smp.parseSIPUrl(uriString.toString());
+            SipUri sipUri = smp.parseSIPUrl(text);
+            cacheURI(text, sipUri);
             return sipUri;
         } catch (ParseException ex) {
             throw new ParseException(ex.getMessage(), 0);
@@ -149,9 +210,13 @@ public class AddressFactoryImpl implements javax.sip.address.AddressFactory {
         if (uri == null)
             throw new NullPointerException("null url");
         String telUrl = "tel:" + uri;
+        Object cached = getCachedURI(telUrl);
+        if (cached instanceof TelURLImpl)
+            return (TelURL) cached;
         try {
             StringMsgParser smp = new StringMsgParser();
             TelURLImpl timp = (TelURLImpl) smp.parseUrl(telUrl);
+            cacheURI(telUrl, timp);
             return (TelURL) timp;
         } catch (ParseException ex) {
             throw new ParseException(ex.getMessage(), 0);
@@ -190,8 +255,17 @@ public class AddressFactoryImpl implements javax.sip.address.AddressFactory {
             addressImpl.setURI( uri );
             return addressImpl;
         } else {
+            ParseCache cache = addressCache;
+            if (cache != null) {
+                AddressImpl cached = (AddressImpl) cache.get(address);
+                if (cached != null)
+                    return cached;
+            }
             StringMsgParser smp = new StringMsgParser();
-            return smp.parseAddress(address);
+            AddressImpl addressImpl = smp.parseAddress(address);
+            if (cache != null)
+                cache.put(address, addressImpl);
+            return addressImpl;
         }
     }
 
@@ -207,22 +281,29 @@ public class AddressFactoryImpl implements javax.sip.address.AddressFactory {
     public javax.sip.address.URI createURI(String uri) throws ParseException {
         if (uri == null)
             throw new NullPointerException("null arg");
+        Object cached = getCachedURI(uri);
+        if (cached != null)
+            return (javax.sip.address.URI) cached;
+        GenericURI retval = null;
         try {
             URLParser urlParser = new URLParser(uri);
             String scheme = urlParser.peekScheme();
             if (scheme == null)
                 throw new ParseException("bad scheme", 0);
             if (scheme.equalsIgnoreCase("sip")) {
-                return (javax.sip.address.URI) urlParser.sipURL(true);
+                retval = urlParser.sipURL(true);
             } else if (scheme.equalsIgnoreCase("sips")) {
-                return (javax.sip.address.URI) urlParser.sipURL(true);
+                retval = urlParser.sipURL(true);
             } else if (scheme.equalsIgnoreCase("tel")) {
-                return (javax.sip.address.URI) urlParser.telURL(true);
+                retval = urlParser.telURL(true);
             }
         } catch (ParseException ex) {
             throw new ParseException(ex.getMessage(), 0);
         }
-        return new gov.nist.javax.sip.address.GenericURI(uri);
+        if (retval == null)
+            retval = new gov.nist.javax.sip.address.GenericURI(uri);
+        cacheURI(uri, retval);
+        return retval;
     }
 
 }
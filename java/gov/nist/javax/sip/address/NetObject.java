@@ -80,58 +80,23 @@ public abstract class NetObject extends GenericObject {
         if (!this.getClass().equals(that.getClass()))
             return false;
         Class<?> myclass = this.getClass();
-        Class<?> hisclass = that.getClass();
         while (true) {
-            Field[] fields = myclass.getDeclaredFields();
-            Field[] hisfields = hisclass.getDeclaredFields();
+            Field[] fields = getComparableFields(myclass);
             for (int i = 0; i < fields.length; i++) {
                 Field f = fields[i];
-                Field g = hisfields[i];
-                // Only print protected and public members.
-                int modifier = f.getModifiers();
-                if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                    continue;
-                Class<?> fieldType = f.getType();
-                String fieldName = f.getName();
-                if (fieldName.compareTo("stringRepresentation") == 0) {
-                    continue;
-                }
-                if (fieldName.compareTo("indentation") == 0) {
-                    continue;
-                }
                 try {
-                    // Primitive fields are printed with type: value
-                    if (fieldType.isPrimitive()) {
-                        String fname = fieldType.toString();
-                        if (fname.compareTo("int") == 0) {
-                            if (f.getInt(this) != g.getInt(that))
-                                return false;
-                        } else if (fname.compareTo("short") == 0) {
-                            if (f.getShort(this) != g.getShort(that))
-                                return false;
-                        } else if (fname.compareTo("char") == 0) {
-                            if (f.getChar(this) != g.getChar(that))
-                                return false;
-                        } else if (fname.compareTo("long") == 0) {
-                            if (f.getLong(this) != g.getLong(that))
-                                return false;
-                        } else if (fname.compareTo("boolean") == 0) {
-                            if (f.getBoolean(this) != g.getBoolean(that))
-                                return false;
-                        } else if (fname.compareTo("double") == 0) {
-                            if (f.getDouble(this) != g.getDouble(that))
-                                return false;
-                        } else if (fname.compareTo("float") == 0) {
-                            if (f.getFloat(this) != g.getFloat(that))
-                                return false;
-                        }
-                    } else if (g.get(that) == f.get(this))
+                    if (f.getType().isPrimitive()) {
+                        if (!equalPrimitiveFields(f, this, that))
+                            return false;
                         continue;
-                    else if (f.get(this) == null && g.get(that) != null)
-                        return false;
-                    else if (g.get(that) == null && f.get(that) != null)
+                    }
+                    Object myObj = f.get(this);
+                    Object hisObj = f.get(that);
+                    if (myObj == hisObj)
+                        continue;
+                    else if (myObj == null || hisObj == null)
                         return false;
-                    else if (!f.get(this).equals(g.get(that)))
+                    else if (!myObj.equals(hisObj))
                         return false;
                 } catch (IllegalAccessException ex1) {
                     InternalErrorHandler.handleException(ex1);
@@ -141,7 +106,6 @@ public abstract class NetObject extends GenericObject {
                 break;
             else {
                 myclass = myclass.getSuperclass();
-                hisclass = hisclass.getSuperclass();
             }
         }
         return true;
@@ -166,58 +130,18 @@ public abstract class NetObject extends GenericObject {
         if (!this.getClass().equals(other.getClass()))
             return false;
         GenericObject that = (GenericObject) other;
-        // System.out.println("Comparing " + that.encode());
-        // System.out.println("this = " + this.encode());
-
-        Class<?> hisclass = other.getClass();
         Class<?> myclass = this.getClass();
         while (true) {
-            Field[] fields = myclass.getDeclaredFields();
-            Field[] hisfields = hisclass.getDeclaredFields();
+            Field[] fields = getComparableFields(myclass);
             for (int i = 0; i < fields.length; i++) {
                 Field f = fields[i];
-                Field g = hisfields[i];
-                // Only print protected and public members.
-                int modifier = f.getModifiers();
-                if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                    continue;
-                Class<?> fieldType = f.getType();
-                String fieldName = f.getName();
-                if (fieldName.compareTo("stringRepresentation") == 0) {
-                    continue;
-                }
-                if (fieldName.compareTo("indentation") == 0) {
-                    continue;
-                }
                 try {
-                    // Primitive fields are printed with type: value
-                    if (fieldType.isPrimitive()) {
-                        String fname = fieldType.toString();
-                        if (fname.compareTo("int") == 0) {
-                            if (f.getInt(this) != g.getInt(that))
-                                return false;
-                        } else if (fname.compareTo("short") == 0) {
-                            if (f.getShort(this) != g.getShort(that))
-                                return false;
-                        } else if (fname.compareTo("char") == 0) {
-                            if (f.getChar(this) != g.getChar(that))
-                                return false;
-                        } else if (fname.compareTo("long") == 0) {
-                            if (f.getLong(this) != g.getLong(that))
-                                return false;
-                        } else if (fname.compareTo("boolean") == 0) {
-                            if (f.getBoolean(this) != g.getBoolean(that))
-                                return false;
-                        } else if (fname.compareTo("double") == 0) {
-                            if (f.getDouble(this) != g.getDouble(that))
-                                return false;
-                        } else if (fname.compareTo("float") == 0) {
-                            if (f.getFloat(this) != g.getFloat(that))
-                                return false;
-                        }
+                    if (f.getType().isPrimitive()) {
+                        if (!equalPrimitiveFields(f, this, that))
+                            return false;
                     } else {
                         Object myObj = f.get(this);
-                        Object hisObj = g.get(that);
+                        Object hisObj = f.get(that);
                         if (hisObj != null && myObj == null)
                             return false;
                         else if (hisObj == null && myObj != null)
@@ -263,7 +187,6 @@ public abstract class NetObject extends GenericObject {
                 break;
             else {
                 myclass = myclass.getSuperclass();
-                hisclass = hisclass.getSuperclass();
             }
         }
         return true;
@@ -19,9 +19,9 @@ package gov.nist.javax.sip.clientauthutils;
 
 import gov.nist.javax.sip.SipStackImpl;
 import gov.nist.javax.sip.address.SipUri;
+import gov.nist.javax.sip.header.SIPHeader;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.stack.SIPClientTransaction;
-import gov.nist.javax.sip.stack.SIPTransactionStack;
 
 import java.text.ParseException;
 import java.util.Collection;
@@ -36,7 +36,6 @@ import javax.sip.SipException;
 import javax.sip.SipProvider;
 import javax.sip.address.Hop;
 import javax.sip.address.SipURI;
-import javax.sip.address.URI;
 import javax.sip.header.AuthorizationHeader;
 import javax.sip.header.CSeqHeader;
 import javax.sip.header.Header;
@@ -95,7 +94,7 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
         this.headerFactory = headerFactory;
         this.sipStack = sipStack;
 
-        this.cachedCredentials = new CredentialsCache(((SIPTransactionStack) sipStack).getTimer());
+        this.cachedCredentials = new CredentialsCache();
     }
     
     /**
@@ -112,7 +111,7 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
         this.headerFactory = headerFactory;
         this.sipStack = sipStack;
 
-        this.cachedCredentials = new CredentialsCache(((SIPTransactionStack) sipStack).getTimer());
+        this.cachedCredentials = new CredentialsCache();
     }
     
 
@@ -222,43 +221,55 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
             .getNewClientTransaction(reoriginatedRequest);
 
             WWWAuthenticateHeader authHeader = null;
-            SipURI requestUri = (SipURI) challengedTransaction.getRequest().getRequestURI();
             while (authHeaders.hasNext()) {
                 authHeader = (WWWAuthenticateHeader) authHeaders.next();
                 String realm = authHeader.getRealm();
+                /*
+                 * A challenge that is not just for a stale nonce, in answer to a request that
+                 * already carried credentials for this realm, means those credentials were
+                 * rejected. Don't keep using them for new calls.
+                 */
+                if (!"true".equalsIgnoreCase(authHeader.getParameter("stale"))
+                        && hasCredentials(challengedRequest, realm))
+                    cachedCredentials.removeRealmCredentials(realm);
                 AuthorizationHeader authorization = null;
-                String sipDomain;
+                String userName;
+                String hashUserDomainPassword;
                 if ( this.accountManager instanceof SecureAccountManager ) {
                     UserCredentialHash credHash =
                         ((SecureAccountManager)this.accountManager).getCredentialHash(challengedTransaction,realm);
-                    URI uri = reoriginatedRequest.getRequestURI();
-                    sipDomain = credHash.getSipDomain();
-                    authorization = this.getAuthorization(reoriginatedRequest
-                            .getMethod(), uri.toString(),
-                            (reoriginatedRequest.getContent() == null) ? "" : new String(
-                            reoriginatedRequest.getRawContent()), authHeader, credHash);
+                    if (credHash == null)
+                        throw new SipException(
+                            "Cannot find user creds for the given user name and realm");
+                    userName = credHash.getUserName();
+                    hashUserDomainPassword = credHash.getHashUserDomainPassword();
                 } else {
                     UserCredentials userCreds = ((AccountManager) this.accountManager).getCredentials(challengedTransaction, realm);
-                    sipDomain = userCreds.getSipDomain();
                     if (userCreds == null)
                          throw new SipException(
                             "Cannot find user creds for the given user name and realm");
 
                     // we haven't yet authenticated this realm since we were
                     // started.
-
-                       authorization = this.getAuthorization(reoriginatedRequest
-                                .getMethod(), reoriginatedRequest.getRequestURI().toString(),
-                                (reoriginatedRequest.getContent() == null) ? "" : new String(
-                                reoriginatedRequest.getRawContent()), authHeader, userCreds);
+                    userName = userCreds.getUserName();
+                    hashUserDomainPassword = MessageDigestAlgorithm.calculateHashUserDomainPassword(
+                            authHeader.getAlgorithm(), userName, realm, userCreds.getPassword());
                 }
+                // The body only enters the digest for qop=auth-int, which we never
+                // pick (see getAuthorization), so don't copy it into a String here.
+                authorization = this.getAuthorization(reoriginatedRequest.getMethod(),
+                        reoriginatedRequest.getRequestURI().toString(), "", authHeader,
+                        userName, hashUserDomainPassword, 1);
                 if (sipStack.isLoggingEnabled())
                 	sipStack.getStackLogger().logDebug(
                         "Created authorization header: " + authorization.toString());
 
-                if (cacheTime != 0)
-                    cachedCredentials.cacheAuthorizationHeader(sipDomain,
-                            authorization, cacheTime);
+                if (cacheTime != 0) {
+                    cachedCredentials.cacheAuthorizationHeader(challengedRequest.getCallId()
+                            .getCallId(), authorization, cacheTime);
+                    cachedCredentials.cacheRealmCredentials(authHeader, userName,
+                            hashUserDomainPassword, cacheTime);
+                }
 
                 reoriginatedRequest.addHeader(authorization);
             }
@@ -286,26 +297,30 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
      * @param uri digest-uri
      * @param requestBody the body of the request.
      * @param authHeader the challenge that we should respond to
-     * @param userCredentials username and pass
+     * @param userName the user name to authenticate as
+     * @param hashUserDomainPassword H(username:realm:password)
+     * @param nonceCount the number of requests sent so far with the nonce of authHeader,
+     *        including this one.
      *
      * @return an authorisation header in response to authHeader.
      *
      * @throws OperationFailedException if auth header was malformated.
      */
     private AuthorizationHeader getAuthorization(String method, String uri, String requestBody,
-            WWWAuthenticateHeader authHeader, UserCredentials userCredentials) {
+            WWWAuthenticateHeader authHeader, String userName, String hashUserDomainPassword,
+            int nonceCount) {
         String response = null;
 
         // JvB: authHeader.getQop() is a quoted _list_ of qop values
         // (e.g. "auth,auth-int") Client is supposed to pick one
         String qopList = authHeader.getQop();
         String qop = (qopList != null) ? "auth" : null;
-        String nc_value = "00000001";
+        String nc_value = Integer.toHexString(nonceCount);
+        nc_value = "00000000".substring(nc_value.length()) + nc_value;
         String cnonce = "xyz";
 
         response = MessageDigestAlgorithm.calculateResponse(authHeader.getAlgorithm(),
-                userCredentials.getUserName(), authHeader.getRealm(), userCredentials
-                        .getPassword(), authHeader.getNonce(), nc_value, // JvB added
+                hashUserDomainPassword, authHeader.getNonce(), nc_value, // JvB added
                 cnonce, // JvB added
                 method, uri, requestBody, qop,sipStack.getStackLogger());// jvb changed
 
@@ -318,7 +333,7 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
                 authorization = headerFactory.createAuthorizationHeader(authHeader.getScheme());
             }
 
-            authorization.setUsername(userCredentials.getUserName());
+            authorization.setUsername(userName);
             authorization.setRealm(authHeader.getRealm());
             authorization.setNonce(authHeader.getNonce());
             authorization.setParameter("uri", uri);
@@ -335,7 +350,7 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
             if (qop != null) {
                 authorization.setQop(qop);
                 authorization.setCNonce(cnonce);
-                authorization.setNonceCount(Integer.parseInt(nc_value));
+                authorization.setNonceCount(nonceCount);
             }
 
             authorization.setResponse(response);
@@ -346,72 +361,7 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
 
         return authorization;
     }
-    /**
-     * Generates an authorisation header in response to wwwAuthHeader.
-     *
-     * @param method method of the request being authenticated
-     * @param uri digest-uri
-     * @param requestBody the body of the request.
-     * @param authHeader the challenge that we should respond to
-     * @param userCredentials username and pass
-     *
-     * @return an authorisation header in response to authHeader.
-     *
-     * @throws OperationFailedException if auth header was malformated.
-     */
-    private AuthorizationHeader getAuthorization(String method, String uri, String requestBody,
-            WWWAuthenticateHeader authHeader, UserCredentialHash userCredentials) {
-        String response = null;
 
-        // JvB: authHeader.getQop() is a quoted _list_ of qop values
-        // (e.g. "auth,auth-int") Client is supposed to pick one
-        String qopList = authHeader.getQop();
-        String qop = (qopList != null) ? "auth" : null;
-        String nc_value = "00000001";
-        String cnonce = "xyz";
-
-        response = MessageDigestAlgorithm.calculateResponse(authHeader.getAlgorithm(),
-              userCredentials.getHashUserDomainPassword(), authHeader.getNonce(), nc_value, // JvB added
-                cnonce, // JvB added
-                method, uri, requestBody, qop,sipStack.getStackLogger());// jvb changed
-
-        AuthorizationHeader authorization = null;
-        try {
-            if (authHeader instanceof ProxyAuthenticateHeader) {
-                authorization = headerFactory.createProxyAuthorizationHeader(authHeader
-                        .getScheme());
-            } else {
-                authorization = headerFactory.createAuthorizationHeader(authHeader.getScheme());
-            }
-
-            authorization.setUsername(userCredentials.getUserName());
-            authorization.setRealm(authHeader.getRealm());
-            authorization.setNonce(authHeader.getNonce());
-            authorization.setParameter("uri", uri);
-            authorization.setResponse(response);
-            if (authHeader.getAlgorithm() != null) {
-                authorization.setAlgorithm(authHeader.getAlgorithm());
-            }
-
-            if (authHeader.getOpaque() != null) {
-                authorization.setOpaque(authHeader.getOpaque());
-            }
-
-            // jvb added
-            if (qop != null) {
-                authorization.setQop(qop);
-                authorization.setCNonce(cnonce);
-                authorization.setNonceCount(Integer.parseInt(nc_value));
-            }
-
-            authorization.setResponse(response);
-
-        } catch (ParseException ex) {
-            throw new RuntimeException("Failed to create an authorization header!");
-        }
-
-        return authorization;
-    }
     /**
      * Removes all via headers from <tt>request</tt> and replaces them with a new one, equal to
      * the one that was top most.
@@ -441,6 +391,19 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
         Collection<AuthorizationHeader> authHeaders = this.cachedCredentials
                 .getCachedAuthorizationHeaders(callId);
         if (authHeaders == null) {
+            /*
+             * A new call: if we already answered a challenge of the realm of the target (or
+             * of our own domain), authorize pre-emptively with the cached nonce and the next
+             * nonce count instead of waiting for another 401/407.
+             */
+            CredentialsCache.RealmCredentials credentials = getRealmCredentials(sipRequest);
+            if (credentials != null) {
+                request.addHeader(getAuthorization(request.getMethod(), request
+                        .getRequestURI().toString(), "", credentials.challenge,
+                        credentials.userName, credentials.hashUserDomainPassword, credentials
+                                .nextNonceCount()));
+                return;
+            }
         	if (sipStack.isLoggingEnabled())
         		sipStack.getStackLogger().logDebug(
                     "Could not find authentication headers for " + callId);
@@ -453,6 +416,40 @@ public class AuthenticationHelperImpl implements AuthenticationHelper {
 
     }
 
+    /**
+     * Check whether a request carries an Authorization or Proxy-Authorization header for a
+     * realm.
+     */
+    private static boolean hasCredentials(SIPRequest request, String realm) {
+        if (realm == null)
+            return false;
+        String[] names = { AuthorizationHeader.NAME, ProxyAuthorizationHeader.NAME };
+        for (int i = 0; i < names.length; i++) {
+            ListIterator<SIPHeader> headers = request.getHeaders(names[i]);
+            while (headers.hasNext()) {
+                if (realm.equalsIgnoreCase(((AuthorizationHeader) headers.next()).getRealm()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Look up cached realm credentials using the host of the Request-URI and then the host
+     * of the From URI as the realm.
+     */
+    private CredentialsCache.RealmCredentials getRealmCredentials(SIPRequest request) {
+        CredentialsCache.RealmCredentials credentials = null;
+        if (request.getRequestURI() instanceof SipURI)
+            credentials = cachedCredentials.getRealmCredentials(((SipURI) request
+                    .getRequestURI()).getHost());
+        if (credentials == null && request.getFrom() != null
+                && request.getFrom().getAddress().getURI() instanceof SipURI)
+            credentials = cachedCredentials.getRealmCredentials(((SipURI) request.getFrom()
+                    .getAddress().getURI()).getHost());
+        return credentials;
+    }
+
     /*
      * (non-Javadoc)
      *
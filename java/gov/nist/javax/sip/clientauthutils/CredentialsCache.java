@@ -1,94 +1,163 @@
 package gov.nist.javax.sip.clientauthutils;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
-import javax.sip.*;
 import javax.sip.header.*;
-import javax.sip.address.*;
-import javax.sip.message.*;
 
 /**
  * A cache of authorization headers to be used for subsequent processing when we
- * set up calls. We cache credentials on a per proxy domain per user basis.
+ * set up calls. We cache credentials on a per call basis, and the last challenge
+ * (with the hashed credentials that answered it) on a per realm basis so that new
+ * calls to a realm we already authenticated with can be authorized pre-emptively.
+ *
+ * Both tables are bounded and evict the least recently used entry when full. Entries
+ * carry their expiry time and are dropped lazily when they are looked up, so no timer
+ * task is scheduled per cached header.
  *
  */
 
 class CredentialsCache {
 
+    /**
+     * Default bound on the number of Call-IDs (and realms) that we keep credentials for.
+     */
+    static final int DEFAULT_MAX_SIZE = 10000;
 
     /**
-     * The key for this map is the proxy domain name. A given proxy authorizes a
-     * user for a number of domains. The Hashtable value of the mapping is a
-     * mapping of user names to AuthorizationHeader list for that proxy domain.
+     * A cached authorization header and the time it expires at.
      */
-    private ConcurrentHashMap<String, List<AuthorizationHeader>> authorizationHeaders =
-            new ConcurrentHashMap<String, List<AuthorizationHeader>>();
-    private Timer timer;
+    static class CachedAuthorization {
+        final AuthorizationHeader authorization;
 
-    class TimeoutTask extends TimerTask {
-        String callId;
-        String userName;
+        final long expiryTime;
 
-        public TimeoutTask(String userName, String proxyDomain) {
-            this.callId = proxyDomain;
-            this.userName = userName;
+        CachedAuthorization(AuthorizationHeader authorization, long expiryTime) {
+            this.authorization = authorization;
+            this.expiryTime = expiryTime;
         }
+    }
+
+    /**
+     * The challenge of a realm and the credentials we answered it with. The nonce count is
+     * incremented for every request that reuses the nonce.
+     */
+    static class RealmCredentials {
+        final WWWAuthenticateHeader challenge;
+
+        final String userName;
+
+        final String hashUserDomainPassword;
+
+        final long expiryTime;
+
+        private int nonceCount = 1;
 
-        @Override
-        public void run() {
-            authorizationHeaders.remove(callId);
+        RealmCredentials(WWWAuthenticateHeader challenge, String userName,
+                String hashUserDomainPassword, long expiryTime) {
+            this.challenge = challenge;
+            this.userName = userName;
+            this.hashUserDomainPassword = hashUserDomainPassword;
+            this.expiryTime = expiryTime;
+        }
 
+        synchronized int nextNonceCount() {
+            return ++nonceCount;
         }
+    }
+
+    /**
+     * The key for this map is the call id. The value is the list of authorization
+     * headers (one per realm) that we sent for that call.
+     */
+    private final Map<String, List<CachedAuthorization>> authorizationHeaders;
 
+    /**
+     * The key for this map is the realm.
+     */
+    private final Map<String, RealmCredentials> realmCredentials;
+
+    CredentialsCache() {
+        this(DEFAULT_MAX_SIZE);
     }
 
+    CredentialsCache(final int maxSize) {
+        this.authorizationHeaders = new LinkedHashMap<String, List<CachedAuthorization>>(16,
+                0.75f, true) {
+            private static final long serialVersionUID = 1L;
 
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, List<CachedAuthorization>> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.realmCredentials = new LinkedHashMap<String, RealmCredentials>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
 
-    CredentialsCache (Timer timer) {
-        this.timer = timer;
+            protected boolean removeEldestEntry(Map.Entry<String, RealmCredentials> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static long getExpiryTime(int cacheTime) {
+        return cacheTime < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + cacheTime * 1000L;
     }
 
     /**
-     * Cache the bindings of proxyDomain and authorization header.
+     * Cache the bindings of call id and authorization header.
      *
      * @param callid
      *            the id of the call that the <tt>authorization</tt> header
      *            belongs to.
      * @param authorization
      *            the authorization header that we'd like to cache.
+     * @param cacheTime
+     *            seconds to keep the header, -1 for no expiry.
      */
     void cacheAuthorizationHeader(String callId,
             AuthorizationHeader authorization, int cacheTime) {
-        String user = authorization.getUsername();
         if ( callId == null) throw new NullPointerException("Call ID is null!");
         if ( authorization == null) throw new NullPointerException("Null authorization domain");
 
-        List<AuthorizationHeader> authHeaders = authorizationHeaders.get(callId);
-        if (authHeaders == null) {
-            authHeaders = new LinkedList<AuthorizationHeader>();
-            authorizationHeaders.put(callId, authHeaders);
-        } else {
-            String realm = authorization.getRealm();
-            for (ListIterator<AuthorizationHeader> li = authHeaders.listIterator(); li.hasNext();) {
-                AuthorizationHeader authHeader = (AuthorizationHeader) li.next();
-                if ( realm.equals(authHeader.getRealm()) ) {
-                    li.remove();
+        CachedAuthorization cached = new CachedAuthorization(authorization,
+                getExpiryTime(cacheTime));
+        String realm = authorization.getRealm();
+        synchronized (authorizationHeaders) {
+            List<CachedAuthorization> authHeaders = authorizationHeaders.get(callId);
+            if (authHeaders == null) {
+                authHeaders = new LinkedList<CachedAuthorization>();
+                authorizationHeaders.put(callId, authHeaders);
+            } else {
+                for (ListIterator<CachedAuthorization> li = authHeaders.listIterator(); li.hasNext();) {
+                    AuthorizationHeader authHeader = li.next().authorization;
+                    if ( realm.equals(authHeader.getRealm()) ) {
+                        li.remove();
+                    }
                 }
             }
+            authHeaders.add(cached);
         }
+    }
 
-        authHeaders.add(authorization);
-
-        TimeoutTask timeoutTask  = new TimeoutTask( callId,user);
-        if ( cacheTime != -1)
-            this.timer.schedule(timeoutTask, cacheTime*1000);
-
-
+    /**
+     * Cache the challenge of a realm together with the credentials that answered it.
+     *
+     * @param cacheTime
+     *            seconds to keep the credentials, -1 for no expiry.
+     */
+    void cacheRealmCredentials(WWWAuthenticateHeader challenge, String userName,
+            String hashUserDomainPassword, int cacheTime) {
+        if (challenge == null || challenge.getRealm() == null)
+            throw new NullPointerException("Null challenge or realm");
+        RealmCredentials credentials = new RealmCredentials(challenge, userName,
+                hashUserDomainPassword, getExpiryTime(cacheTime));
+        synchronized (realmCredentials) {
+            realmCredentials.put(challenge.getRealm(), credentials);
+        }
     }
 
     /**
-     * Returns an authorization header cached for the specified call id and null
+     * Returns the authorization headers cached for the specified call id and null
      * if no authorization header has been previously cached for this call.
      *
      * @param callid
@@ -102,8 +171,44 @@ class CredentialsCache {
             String callid) {
         if (callid == null)
             throw new NullPointerException("Null arg!");
-        return this.authorizationHeaders.get(callid);
+        long now = System.currentTimeMillis();
+        synchronized (authorizationHeaders) {
+            List<CachedAuthorization> authHeaders = authorizationHeaders.get(callid);
+            if (authHeaders == null)
+                return null;
+            List<AuthorizationHeader> retval = new ArrayList<AuthorizationHeader>(authHeaders
+                    .size());
+            for (Iterator<CachedAuthorization> it = authHeaders.iterator(); it.hasNext();) {
+                CachedAuthorization cached = it.next();
+                if (cached.expiryTime <= now) {
+                    it.remove();
+                } else {
+                    retval.add(cached.authorization);
+                }
+            }
+            if (authHeaders.isEmpty()) {
+                authorizationHeaders.remove(callid);
+                return null;
+            }
+            return retval;
+        }
+    }
 
+    /**
+     * Returns the credentials cached for a realm, or null if there are none or they
+     * have expired.
+     */
+    RealmCredentials getRealmCredentials(String realm) {
+        if (realm == null)
+            return null;
+        synchronized (realmCredentials) {
+            RealmCredentials credentials = realmCredentials.get(realm);
+            if (credentials != null && credentials.expiryTime <= System.currentTimeMillis()) {
+                realmCredentials.remove(realm);
+                return null;
+            }
+            return credentials;
+        }
     }
 
     /**
@@ -112,8 +217,18 @@ class CredentialsCache {
      * @param callId
      */
     public void removeAuthenticationHeader(String callId) {
-        this.authorizationHeaders.remove(callId);
+        synchronized (authorizationHeaders) {
+            this.authorizationHeaders.remove(callId);
+        }
+    }
 
+    /**
+     * Remove the credentials cached for a realm, e.g. after they were rejected.
+     */
+    void removeRealmCredentials(String realm) {
+        synchronized (realmCredentials) {
+            this.realmCredentials.remove(realm);
+        }
     }
 
 }
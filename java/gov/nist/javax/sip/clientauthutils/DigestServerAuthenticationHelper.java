@@ -0,0 +1,239 @@
+package gov.nist.javax.sip.clientauthutils;
+
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+
+import java.security.MessageDigest;
+import java.text.ParseException;
+
+import javax.sip.address.URI;
+import javax.sip.header.AuthorizationHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.ProxyAuthorizationHeader;
+import javax.sip.header.WWWAuthenticateHeader;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+/**
+ * Server side digest authentication (RFC 2617, RFC 8760). A registrar or proxy uses
+ * generateChallenge to add a WWW-Authenticate or Proxy-Authenticate header to its 401/407
+ * response and doAuthenticateHashedPassword to check the credentials of the retried request.
+ * The account store is expected to keep H(username:realm:password) (see
+ * MessageDigestAlgorithm.calculateHashUserDomainPassword and UserCredentialHash) so that the
+ * plain text password never needs to be handled. Nonces are tracked in a NonceCache, which
+ * rejects expired nonces and replayed nonce counts. The digest-uri of the credentials must
+ * match the Request-URI (RFC 2617 section 3.2.2.5), so that credentials captured for one
+ * request cannot be replayed against another.
+ *
+ * @since 2.0
+ */
+public class DigestServerAuthenticationHelper {
+
+    public static final String DEFAULT_SCHEME = "Digest";
+
+    public static final int DEFAULT_MAX_NONCES = 10000;
+
+    public static final long DEFAULT_NONCE_LIFETIME = 5 * 60 * 1000;
+
+    private static final AddressFactoryImpl addressFactory = new AddressFactoryImpl();
+
+    private final String algorithm;
+
+    private final NonceCache nonceCache;
+
+    /**
+     * Create a helper using MD5 and the default nonce cache limits.
+     */
+    public DigestServerAuthenticationHelper() {
+        this(MessageDigestAlgorithm.MD5, new NonceCache(DEFAULT_MAX_NONCES,
+                DEFAULT_NONCE_LIFETIME));
+    }
+
+    /**
+     * Create a helper.
+     *
+     * @param algorithm -- MD5 or SHA-256, optionally with the -sess suffix.
+     * @param nonceCache -- the cache of outstanding nonces.
+     */
+    public DigestServerAuthenticationHelper(String algorithm, NonceCache nonceCache) {
+        if (!MessageDigestAlgorithm.isSupportedAlgorithm(algorithm))
+            throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        if (nonceCache == null)
+            throw new NullPointerException("null nonce cache");
+        this.algorithm = algorithm;
+        this.nonceCache = nonceCache;
+    }
+
+    public NonceCache getNonceCache() {
+        return nonceCache;
+    }
+
+    /**
+     * Add a challenge with a fresh nonce to a 401 or 407 response.
+     *
+     * @param headerFactory -- the header factory used to create the challenge.
+     * @param response -- the 401 (WWW-Authenticate) or 407 (Proxy-Authenticate) response.
+     * @param realm -- the realm to challenge for.
+     * @param stale -- true if the client's credentials were rejected only because its nonce
+     *        was stale.
+     */
+    public void generateChallenge(HeaderFactory headerFactory, Response response, String realm,
+            boolean stale) throws ParseException {
+        WWWAuthenticateHeader challenge;
+        if (response.getStatusCode() == Response.PROXY_AUTHENTICATION_REQUIRED) {
+            challenge = headerFactory.createProxyAuthenticateHeader(DEFAULT_SCHEME);
+        } else {
+            challenge = headerFactory.createWWWAuthenticateHeader(DEFAULT_SCHEME);
+        }
+        challenge.setRealm(realm);
+        challenge.setNonce(nonceCache.generateNonce());
+        challenge.setAlgorithm(algorithm);
+        challenge.setParameter("qop", "auth");
+        if (stale)
+            challenge.setParameter("stale", "true");
+        response.setHeader(challenge);
+    }
+
+    /**
+     * Add a challenge with a fresh nonce to a 401 or 407 response.
+     */
+    public void generateChallenge(HeaderFactory headerFactory, Response response, String realm)
+            throws ParseException {
+        generateChallenge(headerFactory, response, realm, false);
+    }
+
+    /**
+     * Authenticate a request against the credential hash of the user it claims to come from.
+     * The username and realm of the credentials must be those of the account.
+     */
+    public int doAuthenticate(Request request, UserCredentialHash credentials) {
+        return doAuthenticateHashedPassword(request, credentials.getUserName(), credentials
+                .getSipDomain(), credentials.getHashUserDomainPassword());
+    }
+
+    /**
+     * Authenticate a request given H(username:realm:password) of the user named in its
+     * Authorization (or Proxy-Authorization) header. The caller must have looked the hash
+     * up by that username and realm; use the variant that takes the account's username and
+     * realm otherwise.
+     *
+     * @return NonceCache.NONCE_VALID if the credentials are valid, NonceCache.NONCE_STALE if
+     *         the response matches but the nonce is unknown or expired (re-challenge with
+     *         stale=true), NonceCache.NONCE_REPLAYED for a replayed nonce count and -1 if the
+     *         request carries no valid credentials at all.
+     */
+    public int doAuthenticateHashedPassword(Request request, String hashedPassword) {
+        return doAuthenticateHashedPassword(request, null, null, hashedPassword);
+    }
+
+    /**
+     * Authenticate a request given the username, realm and H(username:realm:password) of an
+     * account. The credentials are rejected unless they name that username and realm.
+     *
+     * @param username -- the account's username, or null to accept the one in the header.
+     * @param realm -- the account's realm, or null to accept the one in the header.
+     * @return as for doAuthenticateHashedPassword(Request, String).
+     */
+    public int doAuthenticateHashedPassword(Request request, String username, String realm,
+            String hashedPassword) {
+        AuthorizationHeader authorization = getAuthorization(request);
+        if (authorization == null || hashedPassword == null)
+            return -1;
+        String nonce = authorization.getNonce();
+        String uri = authorization.getParameter("uri");
+        String response = authorization.getResponse();
+        if (nonce == null || uri == null || response == null)
+            return -1;
+        if (username != null && !username.equals(authorization.getUsername()))
+            return -1;
+        if (realm != null && !realm.equalsIgnoreCase(authorization.getRealm()))
+            return -1;
+        if (!matchesRequestURI(uri, request.getRequestURI()))
+            return -1;
+
+        String headerAlgorithm = authorization.getAlgorithm();
+        if (headerAlgorithm == null)
+            headerAlgorithm = MessageDigestAlgorithm.MD5;
+        if (!headerAlgorithm.equalsIgnoreCase(algorithm))
+            return -1;
+
+        String qop = authorization.getQop();
+        String nc = authorization.getParameter("nc");
+        String cnonce = authorization.getCNonce();
+        long nonceCount = -1;
+        if (qop != null) {
+            if (nc == null || cnonce == null)
+                return -1;
+            try {
+                nonceCount = Long.parseLong(nc, 16);
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+
+        String body = null;
+        if ("auth-int".equalsIgnoreCase(qop)) {
+            byte[] content = request.getRawContent();
+            body = content == null ? "" : new String(content);
+        }
+
+        String expected;
+        try {
+            if (qop == null) {
+                // rfc2069 style, no cnonce
+                expected = MessageDigestAlgorithm.calculateResponse(headerAlgorithm,
+                        hashedPassword, nonce, null, null, request.getMethod(), uri, body, null,
+                        null);
+            } else {
+                expected = MessageDigestAlgorithm.calculateResponse(headerAlgorithm,
+                        hashedPassword, nonce, nc, cnonce, request.getMethod(), uri, body, qop,
+                        null);
+            }
+        } catch (NullPointerException ex) {
+            return -1;
+        }
+        // Compare in constant time so that the timing does not reveal how much of a guess
+        // was right. Our digest is lower case hex.
+        if (!MessageDigest.isEqual(expected.getBytes(), response.toLowerCase().getBytes()))
+            return -1;
+
+        return nonceCache.checkNonce(nonce, nonceCount);
+    }
+
+    /**
+     * Authenticate a request given the plain text password of the user.
+     */
+    public int doAuthenticatePlainTextPassword(Request request, String password) {
+        AuthorizationHeader authorization = getAuthorization(request);
+        if (authorization == null || password == null || authorization.getUsername() == null
+                || authorization.getRealm() == null)
+            return -1;
+        return doAuthenticateHashedPassword(request, MessageDigestAlgorithm
+                .calculateHashUserDomainPassword(algorithm, authorization.getUsername(),
+                        authorization.getRealm(), password));
+    }
+
+    /*
+     * The digest-uri is normally a copy of the Request-URI. Compare it as a URI
+     * (RFC 3261 section 19.1.4) so that differences in escaping or case do not matter.
+     */
+    private static boolean matchesRequestURI(String uri, URI requestURI) {
+        if (requestURI == null)
+            return false;
+        if (uri.equals(requestURI.toString()))
+            return true;
+        try {
+            return addressFactory.createURI(uri).equals(requestURI);
+        } catch (ParseException ex) {
+            return false;
+        }
+    }
+
+    private static AuthorizationHeader getAuthorization(Request request) {
+        AuthorizationHeader authorization = (AuthorizationHeader) request
+                .getHeader(AuthorizationHeader.NAME);
+        if (authorization == null)
+            authorization = (AuthorizationHeader) request
+                    .getHeader(ProxyAuthorizationHeader.NAME);
+        return authorization;
+    }
+}
@@ -7,12 +7,28 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * The class takes standard Http Authentication details and returns a response according to the
- * MD5 algorithm
+ * MD5 algorithm (or SHA-256, RFC 8760). Each thread keeps its own MessageDigest instances so
+ * that computing a response does not look up a provider or allocate intermediate Strings.
  * 
  * @author Emil Ivov
  */
 
 public class MessageDigestAlgorithm {
+    public static final String MD5 = "MD5";
+
+    public static final String SHA_256 = "SHA-256";
+
+    private static final String SESS_SUFFIX = "-sess";
+
+    /**
+     * Per thread digesters, index 0 is MD5 and index 1 is SHA-256.
+     */
+    private static final ThreadLocal<Digester[]> threadDigesters = new ThreadLocal<Digester[]>() {
+        protected Digester[] initialValue() {
+            return new Digester[2];
+        }
+    };
+
     /**
      * Calculates an http authentication response in accordance with rfc2617.
      * <p>
@@ -39,7 +55,7 @@ public class MessageDigestAlgorithm {
             String nonce_value, String nc_value, String cnonce_value,
             String method, String digest_uri_value, String entity_body, String qop_value,
             StackLogger stackLogger)  {
-        if (stackLogger.isLoggingEnabled()) {
+        if (stackLogger != null && stackLogger.isLoggingEnabled()) {
             stackLogger.logDebug("trying to authenticate using : " + algorithm + ", "+
                     hashUserNameRealmPasswd + ", " + nonce_value + ", "
                     + nc_value + ", " + cnonce_value + ", " + method + ", " + digest_uri_value
@@ -54,37 +70,17 @@ public class MessageDigestAlgorithm {
         // The following follows closely the algorithm for generating a response
         // digest as specified by rfc2617
         
-        if (cnonce_value == null || cnonce_value.length() == 0)
+        Digester digester = getDigester(algorithm);
+        String ha1 = hashUserNameRealmPasswd;
+        if (isSessionAlgorithm(algorithm)) {
+            if (cnonce_value == null || cnonce_value.length() == 0)
                 throw new NullPointerException(
                         "cnonce_value may not be absent for MD5-Sess algorithm.");
 
-     
-        String A2 = null;
-        if (qop_value == null || qop_value.trim().length() == 0
-                || qop_value.trim().equalsIgnoreCase("auth")) {
-            A2 = method + ":" + digest_uri_value;
-        } else {
-            if (entity_body == null)
-                entity_body = "";
-            A2 = method + ":" + digest_uri_value + ":" + H(entity_body);
-        }
-
-        String request_digest = null;
-
-        if (cnonce_value != null && qop_value != null && nc_value != null
-                && (qop_value.equalsIgnoreCase("auth") || qop_value.equalsIgnoreCase("auth-int")))
-
-        {
-            request_digest = KD(hashUserNameRealmPasswd, nonce_value + ":" + nc_value + ":" + cnonce_value + ":"
-                    + qop_value + ":" + H(A2));
-
-        } else {
-            request_digest = KD(hashUserNameRealmPasswd, nonce_value + ":" + H(A2));
+            ha1 = digester.hash(hashUserNameRealmPasswd, nonce_value, cnonce_value);
         }
-
-        return request_digest;
-        
-        
+        return digester.response(ha1, nonce_value, nc_value, cnonce_value, method,
+                digest_uri_value, entity_body, qop_value);
     }
 
     /**
@@ -115,7 +111,7 @@ public class MessageDigestAlgorithm {
             String passwd, String nonce_value, String nc_value, String cnonce_value,
             String method, String digest_uri_value, String entity_body, String qop_value,
             StackLogger stackLogger) {
-        if (stackLogger.isLoggingEnabled()) {
+        if (stackLogger != null && stackLogger.isLoggingEnabled()) {
             stackLogger.logDebug("trying to authenticate using : " + algorithm + ", "
                     + username_value + ", " + realm_value + ", "
                     + (passwd != null && passwd.trim().length() > 0) + ", " + nonce_value + ", "
@@ -130,72 +126,167 @@ public class MessageDigestAlgorithm {
 
         // The following follows closely the algorithm for generating a response
         // digest as specified by rfc2617
-        String A1 = null;
+        Digester digester = getDigester(algorithm);
+        String ha1 = digester.hash(username_value, realm_value, passwd);
 
-        if (algorithm == null || algorithm.trim().length() == 0
-                || algorithm.trim().equalsIgnoreCase("MD5")) {
-            A1 = username_value + ":" + realm_value + ":" + passwd;
-        } else {
+        if (isSessionAlgorithm(algorithm)) {
             if (cnonce_value == null || cnonce_value.length() == 0)
                 throw new NullPointerException(
                         "cnonce_value may not be absent for MD5-Sess algorithm.");
 
-            A1 = H(username_value + ":" + realm_value + ":" + passwd) + ":" + nonce_value + ":"
-                    + cnonce_value;
+            ha1 = digester.hash(ha1, nonce_value, cnonce_value);
         }
 
-        String A2 = null;
-        if (qop_value == null || qop_value.trim().length() == 0
-                || qop_value.trim().equalsIgnoreCase("auth")) {
-            A2 = method + ":" + digest_uri_value;
-        } else {
-            if (entity_body == null)
-                entity_body = "";
-            A2 = method + ":" + digest_uri_value + ":" + H(entity_body);
-        }
+        return digester.response(ha1, nonce_value, nc_value, cnonce_value, method,
+                digest_uri_value, entity_body, qop_value);
+    }
+
+    /**
+     * Compute H(username:realm:password), the value that a SecureAccountManager hands out
+     * through UserCredentialHash.getHashUserDomainPassword().
+     * 
+     * @param algorithm -- MD5 (default) or SHA-256 (RFC 8760), with or without -sess.
+     */
+    public static String calculateHashUserDomainPassword(String algorithm, String userName,
+            String realm, String password) {
+        return getDigester(algorithm).hash(userName, realm, password);
+    }
 
-        String request_digest = null;
+    /**
+     * Return true if the algorithm is one this class can compute.
+     */
+    public static boolean isSupportedAlgorithm(String algorithm) {
+        if (algorithm == null || algorithm.trim().length() == 0)
+            return true;
+        String base = baseAlgorithm(algorithm);
+        return base.equalsIgnoreCase(MD5) || base.equalsIgnoreCase(SHA_256);
+    }
 
-        if (cnonce_value != null && qop_value != null && nc_value != null
-                && (qop_value.equalsIgnoreCase("auth") || qop_value.equalsIgnoreCase("auth-int")))
+    private static boolean isSessionAlgorithm(String algorithm) {
+        return algorithm != null && algorithm.trim().toLowerCase().endsWith(SESS_SUFFIX);
+    }
 
-        {
-            request_digest = KD(H(A1), nonce_value + ":" + nc_value + ":" + cnonce_value + ":"
-                    + qop_value + ":" + H(A2));
+    private static String baseAlgorithm(String algorithm) {
+        String base = algorithm.trim();
+        if (isSessionAlgorithm(base))
+            base = base.substring(0, base.length() - SESS_SUFFIX.length());
+        return base;
+    }
 
+    private static Digester getDigester(String algorithm) {
+        Digester[] digesters = threadDigesters.get();
+        if (algorithm != null && algorithm.trim().length() != 0
+                && baseAlgorithm(algorithm).equalsIgnoreCase(SHA_256)) {
+            if (digesters[1] == null)
+                digesters[1] = new Digester(SHA_256);
+            return digesters[1];
         } else {
-            request_digest = KD(H(A1), nonce_value + ":" + H(A2));
+            if (digesters[0] == null)
+                digesters[0] = new Digester(MD5);
+            return digesters[0];
         }
-
-        return request_digest;
     }
 
     /**
-     * Defined in rfc 2617 as H(data) = MD5(data);
-     * 
-     * @param data data
-     * @return MD5(data)
+     * A MessageDigest with scratch buffers, reused by one thread for all hashes. Strings are
+     * fed to the digest from a reusable byte buffer, so no intermediate Strings or byte arrays
+     * are built for A1, A2 and the request digest.
      */
-    private static String H(String data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("MD5");
-
-            return toHexString(digest.digest(data.getBytes()));
-        } catch (NoSuchAlgorithmException ex) {
-            // shouldn't happen
-            throw new RuntimeException("Failed to instantiate an MD5 algorithm", ex);
+    private static final class Digester {
+        private final MessageDigest digest;
+
+        private byte[] scratch = new byte[256];
+
+        private final char[] hex;
+
+        Digester(String algorithm) {
+            try {
+                this.digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException ex) {
+                // shouldn't happen
+                throw new RuntimeException("Failed to instantiate an " + algorithm
+                        + " algorithm", ex);
+            }
+            this.hex = new char[digest.getDigestLength() * 2];
         }
-    }
 
-    /**
-     * Defined in rfc 2617 as KD(secret, data) = H(concat(secret, ":", data))
-     * 
-     * @param data data
-     * @param secret secret
-     * @return H(concat(secret, ":", data));
-     */
-    private static String KD(String secret, String data) {
-        return H(secret + ":" + data);
+        /**
+         * H(a:b:c)
+         */
+        String hash(String a, String b, String c) {
+            update(a);
+            digest.update((byte) ':');
+            update(b);
+            digest.update((byte) ':');
+            update(c);
+            return finish();
+        }
+
+        /**
+         * KD(ha1, nonce:nc:cnonce:qop:H(A2)) or KD(ha1, nonce:H(A2)) as defined in rfc2617.
+         */
+        String response(String ha1, String nonce, String nc, String cnonce, String method,
+                String uri, String entityBody, String qop) {
+            // H(A2)
+            if (qop == null || qop.trim().length() == 0 || qop.trim().equalsIgnoreCase("auth")) {
+                update(method);
+                digest.update((byte) ':');
+                update(uri);
+            } else {
+                if (entityBody == null)
+                    entityBody = "";
+                update(entityBody);
+                String hbody = finish();
+                update(method);
+                digest.update((byte) ':');
+                update(uri);
+                digest.update((byte) ':');
+                update(hbody);
+            }
+            String ha2 = finish();
+
+            update(ha1);
+            digest.update((byte) ':');
+            update(nonce);
+            digest.update((byte) ':');
+            if (cnonce != null && qop != null && nc != null
+                    && (qop.equalsIgnoreCase("auth") || qop.equalsIgnoreCase("auth-int"))) {
+                update(nc);
+                digest.update((byte) ':');
+                update(cnonce);
+                digest.update((byte) ':');
+                update(qop);
+                digest.update((byte) ':');
+            }
+            update(ha2);
+            return finish();
+        }
+
+        private void update(String s) {
+            int length = s.length();
+            if (length > scratch.length)
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    // Not plain ASCII: use the platform encoding as before.
+                    digest.update(s.getBytes());
+                    return;
+                }
+                scratch[i] = (byte) c;
+            }
+            digest.update(scratch, 0, length);
+        }
+
+        private String finish() {
+            byte[] b = digest.digest();
+            int pos = 0;
+            for (int i = 0; i < b.length; i++) {
+                hex[pos++] = toHex[(b[i] >> 4) & 0x0F];
+                hex[pos++] = toHex[b[i] & 0x0f];
+            }
+            return new String(hex);
+        }
     }
 
     // the following code was copied from the NIST-SIP instant
@@ -206,20 +297,4 @@ public class MessageDigestAlgorithm {
     private static final char[] toHex = {
         '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
     };
-
-    /**
-     * Converts b[] to hex string.
-     * 
-     * @param b the bte array to convert
-     * @return a Hex representation of b.
-     */
-    private static String toHexString(byte b[]) {
-        int pos = 0;
-        char[] c = new char[b.length * 2];
-        for (int i = 0; i < b.length; i++) {
-            c[pos++] = toHex[(b[i] >> 4) & 0x0F];
-            c[pos++] = toHex[b[i] & 0x0f];
-        }
-        return new String(c);
-    }
 }
@@ -0,0 +1,160 @@
+package gov.nist.javax.sip.clientauthutils;
+
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the nonces handed out by a server in its digest challenges. For each
+ * nonce we remember when it was issued and which nonce-counts (nc) were accepted, so that a
+ * replayed Authorization header is rejected without any extra state in the application.
+ * Requests sent with one nonce can overtake each other (several transactions, UDP), so a
+ * nonce count below the highest one seen is still accepted once if it lies within the last
+ * NONCE_COUNT_WINDOW counts. When the cache is full the least recently used nonce is dropped; a client
+ * that presents a dropped nonce is simply challenged again with stale=true.
+ *
+ * @since 2.0
+ */
+public class NonceCache {
+
+    /**
+     * The nonce is known, not expired and the nonce count has not been seen before.
+     */
+    public static final int NONCE_VALID = 0;
+
+    /**
+     * The nonce was never issued by us, has expired or has been evicted.
+     */
+    public static final int NONCE_STALE = 1;
+
+    /**
+     * The nonce count was already accepted for this nonce, or is too far below the highest
+     * one accepted.
+     */
+    public static final int NONCE_REPLAYED = 2;
+
+    /**
+     * How far below the highest accepted nonce count a late request may be.
+     */
+    public static final int NONCE_COUNT_WINDOW = 64;
+
+    private static final char[] toHex = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static class NonceEntry {
+        final long issued;
+
+        long lastNonceCount;
+
+        // Bit i is set if nonce count lastNonceCount - i was accepted.
+        long seenCounts;
+
+        NonceEntry(long issued) {
+            this.issued = issued;
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final long lifetime;
+
+    private final LinkedHashMap<String, NonceEntry> nonces;
+
+    /**
+     * Create a nonce cache.
+     *
+     * @param maxSize -- the maximum number of outstanding nonces.
+     * @param lifetime -- how long (in milliseconds) a nonce may be used after it was issued.
+     */
+    public NonceCache(final int maxSize, long lifetime) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Bad max size " + maxSize);
+        this.lifetime = lifetime;
+        this.nonces = new LinkedHashMap<String, NonceEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, NonceEntry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Generate a fresh nonce and remember it.
+     */
+    public String generateNonce() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        long now = System.currentTimeMillis();
+        char[] chars = new char[bytes.length * 2 + 16];
+        int pos = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            chars[pos++] = toHex[(bytes[i] >> 4) & 0x0F];
+            chars[pos++] = toHex[bytes[i] & 0x0F];
+        }
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            chars[pos++] = toHex[(int) (now >> shift) & 0x0F];
+        }
+        String nonce = new String(chars);
+        synchronized (nonces) {
+            nonces.put(nonce, new NonceEntry(now));
+        }
+        return nonce;
+    }
+
+    /**
+     * Check a nonce and nonce count presented by a client. A nonce count of -1 means that the
+     * client did not send one (no qop), in which case the nonce may be used only once.
+     *
+     * @return NONCE_VALID, NONCE_STALE or NONCE_REPLAYED.
+     */
+    public int checkNonce(String nonce, long nonceCount) {
+        if (nonce == null)
+            return NONCE_STALE;
+        long now = System.currentTimeMillis();
+        synchronized (nonces) {
+            NonceEntry entry = nonces.get(nonce);
+            if (entry == null)
+                return NONCE_STALE;
+            if (now - entry.issued > lifetime) {
+                nonces.remove(nonce);
+                return NONCE_STALE;
+            }
+            if (nonceCount < 0) {
+                nonces.remove(nonce);
+                return NONCE_VALID;
+            }
+            if (nonceCount > entry.lastNonceCount) {
+                long shift = nonceCount - entry.lastNonceCount;
+                entry.seenCounts = shift >= NONCE_COUNT_WINDOW ? 1 : entry.seenCounts << shift | 1;
+                entry.lastNonceCount = nonceCount;
+                return NONCE_VALID;
+            }
+            long age = entry.lastNonceCount - nonceCount;
+            if (nonceCount == 0 || age >= NONCE_COUNT_WINDOW
+                    || (entry.seenCounts & (1L << age)) != 0)
+                return NONCE_REPLAYED;
+            entry.seenCounts |= 1L << age;
+            return NONCE_VALID;
+        }
+    }
+
+    /**
+     * Forget a nonce, for example after a successful REGISTER that should not be reused.
+     */
+    public void removeNonce(String nonce) {
+        synchronized (nonces) {
+            nonces.remove(nonce);
+        }
+    }
+
+    /**
+     * The number of outstanding nonces.
+     */
+    public int size() {
+        synchronized (nonces) {
+            return nonces.size();
+        }
+    }
+}
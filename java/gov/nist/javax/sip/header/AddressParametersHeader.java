@@ -46,11 +46,17 @@ public abstract class AddressParametersHeader extends ParametersHeader implement
 
     protected AddressImpl address;
 
-    /* (non-Javadoc)
-     * @see gov.nist.javax.sip.header.AddressParameters#getAddress()
+    /**
+     * True while the address is shared with another header (see copyOnWrite).
+     */
+    private transient volatile boolean addressShared;
+
+    /**
+     * Get the address. The caller may change the returned address, so an address that is
+     * still shared with another header is copied first.
      */
     public Address getAddress() {
-        return address;
+        return ownAddress();
     }
 
     /* (non-Javadoc)
@@ -58,6 +64,46 @@ public abstract class AddressParametersHeader extends ParametersHeader implement
      */
     public void setAddress(Address address) {
         this.address = (AddressImpl) address;
+        this.addressShared = false;
+    }
+
+    /**
+     * Use the address and parameters of another header until one of the two changes them.
+     */
+    protected final void shareAddress(AddressParametersHeader other) {
+        synchronized (other) {
+            this.address = other.address;
+            this.addressShared = true;
+            other.addressShared = true;
+        }
+        shareParameters(other);
+    }
+
+    /**
+     * Return the address, copying it first if it is shared with another header. Subclasses
+     * call this before they change the address or hand out a part of it. The copy is made
+     * under the header lock so that two threads reading the same header get the same address.
+     */
+    protected final AddressImpl ownAddress() {
+        if (addressShared) {
+            synchronized (this) {
+                if (addressShared) {
+                    if (address != null)
+                        address = (AddressImpl) address.clone();
+                    addressShared = false;
+                }
+            }
+        }
+        return address;
+    }
+
+    /**
+     * A copy of this header that shares its address and parameters with it.
+     */
+    protected final AddressParametersHeader copyAddressOnWrite() {
+        AddressParametersHeader retval = (AddressParametersHeader) shallowClone();
+        retval.shareAddress(this);
+        return retval;
     }
 
     /**
@@ -85,6 +131,7 @@ public abstract class AddressParametersHeader extends ParametersHeader implement
         AddressParametersHeader retval = (AddressParametersHeader) super.clone();
         if (this.address != null)
             retval.address = (AddressImpl) this.address.clone();
+        retval.addressShared = false;
         return retval;
     }
 
@@ -96,9 +143,14 @@ public abstract class AddressParametersHeader extends ParametersHeader implement
 
 
 
+        if (other instanceof AddressParametersHeader) {
+            // Compare the addresses as they are; getAddress() would copy a shared one.
+            final AddressParametersHeader o = (AddressParametersHeader) other;
+            return this.address.equals( o.address ) && this.equalParameters( o );
+        }
         if (other instanceof HeaderAddress && other instanceof Parameters) {
             final HeaderAddress o = (HeaderAddress) other;
-            return this.getAddress().equals( o.getAddress() ) && this.equalParameters( (Parameters) o );
+            return this.address.equals( o.getAddress() ) && this.equalParameters( (Parameters) o );
         }
         return false;
     }
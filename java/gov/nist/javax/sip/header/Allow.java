@@ -87,4 +87,13 @@ public final class Allow extends
     protected String encodeBody() {
         return method;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.AllowHeader) {
+            final javax.sip.header.AllowHeader o = (javax.sip.header.AllowHeader) other;
+            return (this.method == null ? o.getMethod() == null : this.method.equals(o.getMethod()));
+        }
+        return false;
+    }
 }
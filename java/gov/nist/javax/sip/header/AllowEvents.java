@@ -97,4 +97,13 @@ public final class AllowEvents
     protected String encodeBody() {
         return eventType;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.AllowEventsHeader) {
+            final javax.sip.header.AllowEventsHeader o = (javax.sip.header.AllowEventsHeader) other;
+            return (this.eventType == null ? o.getEventType() == null : this.eventType.equals(o.getEventType()));
+        }
+        return false;
+    }
 }
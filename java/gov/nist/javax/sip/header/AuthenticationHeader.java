@@ -550,4 +550,15 @@ public abstract class AuthenticationHeader extends ParametersHeader {
         return getParameter(ParameterNamesIms.INTEGRITY_PROTECTED);
     }
 
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof AuthenticationHeader) {
+            final AuthenticationHeader o = (AuthenticationHeader) other;
+            return this.getName().equalsIgnoreCase(o.getName())
+                && (this.scheme == null ? o.scheme == null : this.scheme.equalsIgnoreCase(o.scheme))
+                && this.equalParameters(o);
+        }
+        return false;
+    }
+
 }
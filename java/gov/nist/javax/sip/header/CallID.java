@@ -50,6 +50,11 @@ public class CallID
      */
     protected CallIdentifier callIdentifier;
 
+    /**
+     * True while callIdentifier is shared with another header (see copyOnWrite).
+     */
+    private transient volatile boolean callIdentifierShared;
+
     /**
      * Default constructor
      */
@@ -99,10 +104,20 @@ public class CallID
     }
 
     /**
-     * get the call Identifer member.
+     * get the call Identifer member. The caller may change it, so a call identifier that
+     * is still shared with another header is copied first, under the header lock.
      * @return CallIdentifier
      */
     public CallIdentifier getCallIdentifer() {
+        if (callIdentifierShared) {
+            synchronized (this) {
+                if (callIdentifierShared) {
+                    if (callIdentifier != null)
+                        callIdentifier = (CallIdentifier) callIdentifier.clone();
+                    callIdentifierShared = false;
+                }
+            }
+        }
         return callIdentifier;
     }
 
@@ -116,6 +131,7 @@ public class CallID
     public void setCallId(String cid) throws ParseException {
         try {
             callIdentifier = new CallIdentifier(cid);
+            callIdentifierShared = false;
         } catch (IllegalArgumentException ex) {
             throw new ParseException(cid, 0);
         }
@@ -127,6 +143,7 @@ public class CallID
      */
     public void setCallIdentifier(CallIdentifier cid) {
         callIdentifier = cid;
+        callIdentifierShared = false;
     }
 
     /** Constructor given the call Identifier.
@@ -142,6 +159,15 @@ public class CallID
         CallID retval = (CallID) super.clone();
         if (this.callIdentifier != null)
             retval.callIdentifier = (CallIdentifier) this.callIdentifier.clone();
+        retval.callIdentifierShared = false;
         return retval;
     }
+
+    public SIPHeader copyOnWrite() {
+        synchronized (this) {
+            CallID retval = (CallID) shallowClone();
+            retval.callIdentifierShared = this.callIdentifierShared = true;
+            return retval;
+        }
+    }
 }
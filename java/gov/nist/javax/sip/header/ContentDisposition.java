@@ -120,6 +120,16 @@ public final class ContentDisposition
     public String getContentDisposition() {
         return this.encodeBody();
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.ContentDispositionHeader) {
+            final javax.sip.header.ContentDispositionHeader o = (javax.sip.header.ContentDispositionHeader) other;
+            return (this.dispositionType == null ? o.getDispositionType() == null : this.dispositionType.equals(o.getDispositionType()))
+                && this.equalParameters(o);
+        }
+        return false;
+    }
 }
 /*
  * $Log: ContentDisposition.java,v $
@@ -132,4 +132,13 @@ public class ContentEncoding
                 "JAIN-SIP Exception, " + " encoding is null");
         contentEncoding = encoding;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.ContentEncodingHeader) {
+            final javax.sip.header.ContentEncodingHeader o = (javax.sip.header.ContentEncodingHeader) other;
+            return (this.contentEncoding == null ? o.getEncoding() == null : this.contentEncoding.equals(o.getEncoding()));
+        }
+        return false;
+    }
 }
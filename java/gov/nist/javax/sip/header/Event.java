@@ -142,4 +142,14 @@ public class Event extends ParametersHeader implements EventHeader {
             && ((this.getEventId() == matchTarget.getEventId())
                 || this.getEventId().equalsIgnoreCase(matchTarget.getEventId()));
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof EventHeader) {
+            final EventHeader o = (EventHeader) other;
+            return (this.eventType == null ? o.getEventType() == null : this.eventType.equals(o.getEventType()))
+                && this.equalParameters(o);
+        }
+        return false;
+    }
 }
@@ -102,4 +102,14 @@ public class Expires
             throw new InvalidArgumentException("bad argument " + expires);
         this.expires = expires;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.ExpiresHeader) {
+            final javax.sip.header.ExpiresHeader o = (javax.sip.header.ExpiresHeader) other;
+            return this.getExpires() == o.getExpires()
+                && this.getName().equalsIgnoreCase(o.getName());
+        }
+        return false;
+    }
 }
@@ -120,4 +120,14 @@ public class ExtensionHeaderImpl
     public String encodeBody() {
         return this.getHeaderValue();
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.ExtensionHeader) {
+            final javax.sip.header.ExtensionHeader o = (javax.sip.header.ExtensionHeader) other;
+            return this.getName().equalsIgnoreCase(o.getName())
+                && (this.value == null ? o.getValue() == null : this.value.equals(o.getValue()));
+        }
+        return false;
+    }
 }
@@ -64,8 +64,7 @@ public final class From
      */
     public From(To to) {
         super(NAME);
-        address = to.address;
-        parameters = to.parameters;
+        shareAddress(to);
     }
 
     /**
@@ -99,7 +98,7 @@ public final class From
      * @return hostport field
      */
     public HostPort getHostPort() {
-        return address.getHostPort();
+        return ownAddress().getHostPort();
     }
 
     /**
@@ -130,7 +129,7 @@ public final class From
     /** remove Tag member
      */
     public void removeTag() {
-        parameters.delete(ParameterNames.TAG);
+        ownParameters().delete(ParameterNames.TAG);
     }
 
     /**
@@ -138,7 +137,7 @@ public final class From
      * @param address Address to set
      */
     public void setAddress(javax.sip.address.Address address) {
-        this.address = (AddressImpl) address;
+        super.setAddress(address);
     }
 
     /**
@@ -161,4 +160,8 @@ public final class From
         return (other instanceof FromHeader) && super.equals(other);
     }
 
+    public SIPHeader copyOnWrite() {
+        return copyAddressOnWrite();
+    }
+
 }
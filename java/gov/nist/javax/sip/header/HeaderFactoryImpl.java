@@ -65,6 +65,11 @@ public class HeaderFactoryImpl implements HeaderFactory , HeaderFactoryExt {
      */
     private boolean stripAddressScopeZones = false;
 
+    /**
+     * Headers parsed by createHeader, or null if the parse cache is off.
+     */
+    private ParseCache headerCache;
+
     /**
      * Set pretty encoding on / off.
      * This splits up via headers into multiple lines for readability ( better for
@@ -1163,6 +1168,36 @@ public class HeaderFactoryImpl implements HeaderFactory , HeaderFactoryExt {
      * @throws ParseException 
      */
     public javax.sip.header.Header createHeader(String headerText) throws ParseException {
+        ParseCache cache = headerCache;
+        if (cache != null) {
+            Header cached = (Header) cache.get(headerText);
+            if (cached != null)
+                return cached;
+        }
+        Header header = parseHeader(headerText);
+        if (cache != null && header != null)
+            cache.put(headerText, (SIPHeader) header);
+        return header;
+    }
+
+    /**
+     * Keep up to the given number of headers parsed by createHeader, so that creating a
+     * header from a string seen before (an Allow, Supported or User-Agent value) copies the
+     * cached header instead of parsing the string again. Zero (the default) disables the
+     * cache.
+     */
+    public void setParseCacheSize(int size) {
+        this.headerCache = size > 0 ? new ParseCache(size) : null;
+    }
+
+    /**
+     * The cache of parsed headers, or null if it is disabled.
+     */
+    public ParseCache getParseCache() {
+        return headerCache;
+    }
+
+    private Header parseHeader(String headerText) throws ParseException {
         StringMsgParser smp = new StringMsgParser();
         SIPHeader sipHeader = smp.parseSIPHeader(headerText.trim());
         if (sipHeader instanceof SIPHeaderList) {
@@ -96,6 +96,15 @@ public class MinExpires extends SIPHeader implements MinExpiresHeader {
         this.expires = expires;
     }
 
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof MinExpiresHeader) {
+            final MinExpiresHeader o = (MinExpiresHeader) other;
+            return this.getExpires() == o.getExpires()
+                && this.getName().equalsIgnoreCase(o.getName());
+        }
+        return false;
+    }
 }
 /*
  * $Log: MinExpires.java,v $
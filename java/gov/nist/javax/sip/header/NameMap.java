@@ -74,99 +74,101 @@ public class NameMap implements SIPHeaderNames, PackageNames {
         nameMap.put(headerName.toLowerCase(), className);
     }
 
+    // The classes are entered by name, not as class literals, so that building the map
+    // does not load every header class.
     private static void initializeNameMap() {
         nameMap = new Hashtable();
-        putNameMap(MinExpires.NAME, MinExpires.class.getName()); // 1
+        putNameMap(MinExpires.NAME, SIPHEADERS_PACKAGE + ".MinExpires"); // 1
 
-        putNameMap(ErrorInfo.NAME, ErrorInfo.class.getName()); // 2
+        putNameMap(ErrorInfo.NAME, SIPHEADERS_PACKAGE + ".ErrorInfo"); // 2
 
-        putNameMap(MimeVersion.NAME, MimeVersion.class.getName()); // 3
+        putNameMap(MimeVersion.NAME, SIPHEADERS_PACKAGE + ".MimeVersion"); // 3
 
-        putNameMap(InReplyTo.NAME, InReplyTo.class.getName()); // 4
+        putNameMap(InReplyTo.NAME, SIPHEADERS_PACKAGE + ".InReplyTo"); // 4
 
-        putNameMap(Allow.NAME, Allow.class.getName()); // 5
+        putNameMap(Allow.NAME, SIPHEADERS_PACKAGE + ".Allow"); // 5
 
-        putNameMap(ContentLanguage.NAME, ContentLanguage.class.getName()); // 6
+        putNameMap(ContentLanguage.NAME, SIPHEADERS_PACKAGE + ".ContentLanguage"); // 6
 
-        putNameMap(CALL_INFO, CallInfo.class.getName()); //7
+        putNameMap(CALL_INFO, SIPHEADERS_PACKAGE + ".CallInfo"); //7
 
-        putNameMap(CSEQ, CSeq.class.getName()); //8
+        putNameMap(CSEQ, SIPHEADERS_PACKAGE + ".CSeq"); //8
 
-        putNameMap(ALERT_INFO, AlertInfo.class.getName()); //9
+        putNameMap(ALERT_INFO, SIPHEADERS_PACKAGE + ".AlertInfo"); //9
 
-        putNameMap(ACCEPT_ENCODING, AcceptEncoding.class.getName()); //10
+        putNameMap(ACCEPT_ENCODING, SIPHEADERS_PACKAGE + ".AcceptEncoding"); //10
 
-        putNameMap(ACCEPT, Accept.class.getName()); //11
+        putNameMap(ACCEPT, SIPHEADERS_PACKAGE + ".Accept"); //11
 
-        putNameMap(ACCEPT_LANGUAGE, AcceptLanguage.class.getName()); //12
+        putNameMap(ACCEPT_LANGUAGE, SIPHEADERS_PACKAGE + ".AcceptLanguage"); //12
 
-        putNameMap(RECORD_ROUTE, RecordRoute.class.getName()); //13
+        putNameMap(RECORD_ROUTE, SIPHEADERS_PACKAGE + ".RecordRoute"); //13
 
-        putNameMap(TIMESTAMP, TimeStamp.class.getName()); //14
+        putNameMap(TIMESTAMP, SIPHEADERS_PACKAGE + ".TimeStamp"); //14
 
-        putNameMap(TO, To.class.getName()); //15
+        putNameMap(TO, SIPHEADERS_PACKAGE + ".To"); //15
 
-        putNameMap(VIA, Via.class.getName()); //16
+        putNameMap(VIA, SIPHEADERS_PACKAGE + ".Via"); //16
 
-        putNameMap(FROM, From.class.getName()); //17
+        putNameMap(FROM, SIPHEADERS_PACKAGE + ".From"); //17
 
-        putNameMap(CALL_ID, CallID.class.getName()); //18
+        putNameMap(CALL_ID, SIPHEADERS_PACKAGE + ".CallID"); //18
 
-        putNameMap(AUTHORIZATION, Authorization.class.getName()); //19
+        putNameMap(AUTHORIZATION, SIPHEADERS_PACKAGE + ".Authorization"); //19
 
-        putNameMap(PROXY_AUTHENTICATE, ProxyAuthenticate.class.getName()); //20
+        putNameMap(PROXY_AUTHENTICATE, SIPHEADERS_PACKAGE + ".ProxyAuthenticate"); //20
 
-        putNameMap(SERVER, Server.class.getName()); //21
+        putNameMap(SERVER, SIPHEADERS_PACKAGE + ".Server"); //21
 
-        putNameMap(UNSUPPORTED, Unsupported.class.getName()); //22
+        putNameMap(UNSUPPORTED, SIPHEADERS_PACKAGE + ".Unsupported"); //22
 
-        putNameMap(RETRY_AFTER, RetryAfter.class.getName()); //23
+        putNameMap(RETRY_AFTER, SIPHEADERS_PACKAGE + ".RetryAfter"); //23
 
-        putNameMap(CONTENT_TYPE, ContentType.class.getName()); //24
+        putNameMap(CONTENT_TYPE, SIPHEADERS_PACKAGE + ".ContentType"); //24
 
-        putNameMap(CONTENT_ENCODING, ContentEncoding.class.getName()); //25
+        putNameMap(CONTENT_ENCODING, SIPHEADERS_PACKAGE + ".ContentEncoding"); //25
 
-        putNameMap(CONTENT_LENGTH, ContentLength.class.getName()); //26
+        putNameMap(CONTENT_LENGTH, SIPHEADERS_PACKAGE + ".ContentLength"); //26
 
-        putNameMap(ROUTE, Route.class.getName()); //27
+        putNameMap(ROUTE, SIPHEADERS_PACKAGE + ".Route"); //27
 
-        putNameMap(CONTACT, Contact.class.getName()); //28
+        putNameMap(CONTACT, SIPHEADERS_PACKAGE + ".Contact"); //28
 
-        putNameMap(WWW_AUTHENTICATE, WWWAuthenticate.class.getName()); //29
+        putNameMap(WWW_AUTHENTICATE, SIPHEADERS_PACKAGE + ".WWWAuthenticate"); //29
 
-        putNameMap(MAX_FORWARDS, MaxForwards.class.getName()); //30
+        putNameMap(MAX_FORWARDS, SIPHEADERS_PACKAGE + ".MaxForwards"); //30
 
-        putNameMap(ORGANIZATION, Organization.class.getName()); //31
+        putNameMap(ORGANIZATION, SIPHEADERS_PACKAGE + ".Organization"); //31
 
-        putNameMap(PROXY_AUTHORIZATION, ProxyAuthorization.class.getName()); //32
+        putNameMap(PROXY_AUTHORIZATION, SIPHEADERS_PACKAGE + ".ProxyAuthorization"); //32
 
-        putNameMap(PROXY_REQUIRE, ProxyRequire.class.getName()); //33
+        putNameMap(PROXY_REQUIRE, SIPHEADERS_PACKAGE + ".ProxyRequire"); //33
 
-        putNameMap(REQUIRE, Require.class.getName()); //34
+        putNameMap(REQUIRE, SIPHEADERS_PACKAGE + ".Require"); //34
 
-        putNameMap(CONTENT_DISPOSITION, ContentDisposition.class.getName()); //35
+        putNameMap(CONTENT_DISPOSITION, SIPHEADERS_PACKAGE + ".ContentDisposition"); //35
 
-        putNameMap(SUBJECT, Subject.class.getName()); //36
+        putNameMap(SUBJECT, SIPHEADERS_PACKAGE + ".Subject"); //36
 
-        putNameMap(USER_AGENT, UserAgent.class.getName()); //37
+        putNameMap(USER_AGENT, SIPHEADERS_PACKAGE + ".UserAgent"); //37
 
-        putNameMap(WARNING, Warning.class.getName()); //38
+        putNameMap(WARNING, SIPHEADERS_PACKAGE + ".Warning"); //38
 
-        putNameMap(PRIORITY, Priority.class.getName()); //39
+        putNameMap(PRIORITY, SIPHEADERS_PACKAGE + ".Priority"); //39
 
-        putNameMap(DATE, SIPDateHeader.class.getName()); //40
+        putNameMap(DATE, SIPHEADERS_PACKAGE + ".SIPDateHeader"); //40
 
-        putNameMap(EXPIRES, Expires.class.getName()); //41
+        putNameMap(EXPIRES, SIPHEADERS_PACKAGE + ".Expires"); //41
 
-        putNameMap(SUPPORTED, Supported.class.getName()); //42
+        putNameMap(SUPPORTED, SIPHEADERS_PACKAGE + ".Supported"); //42
 
-        putNameMap(REPLY_TO, ReplyTo.class.getName()); // 43
+        putNameMap(REPLY_TO, SIPHEADERS_PACKAGE + ".ReplyTo"); // 43
 
-        putNameMap(SUBSCRIPTION_STATE, SubscriptionState.class.getName()); //44
+        putNameMap(SUBSCRIPTION_STATE, SIPHEADERS_PACKAGE + ".SubscriptionState"); //44
 
-        putNameMap(EVENT, Event.class.getName()); //45
+        putNameMap(EVENT, SIPHEADERS_PACKAGE + ".Event"); //45
 
-        putNameMap(ALLOW_EVENTS, AllowEvents.class.getName()); //46
+        putNameMap(ALLOW_EVENTS, SIPHEADERS_PACKAGE + ".AllowEvents"); //46
 
 
         // pmusgrave - extensions
@@ -180,29 +182,29 @@ public class NameMap implements SIPHeaderNames, PackageNames {
 
         // IMS Specific headers.
 
-        putNameMap(PAccessNetworkInfoHeader.NAME, PAccessNetworkInfo.class.getName());
+        putNameMap(PAccessNetworkInfoHeader.NAME, SIPHEADERS_PACKAGE + ".ims.PAccessNetworkInfo");
 
-        putNameMap(PAssertedIdentityHeader.NAME, PAssertedIdentity.class.getName());
+        putNameMap(PAssertedIdentityHeader.NAME, SIPHEADERS_PACKAGE + ".ims.PAssertedIdentity");
 
-        putNameMap(PAssociatedURIHeader.NAME, PAssociatedURI.class.getName());
+        putNameMap(PAssociatedURIHeader.NAME, SIPHEADERS_PACKAGE + ".ims.PAssociatedURI");
 
-        putNameMap(PCalledPartyIDHeader.NAME, PCalledPartyID.class.getName());
+        putNameMap(PCalledPartyIDHeader.NAME, SIPHEADERS_PACKAGE + ".ims.PCalledPartyID");
 
-        putNameMap(PChargingFunctionAddressesHeader.NAME,  PChargingFunctionAddresses.class.getName());
+        putNameMap(PChargingFunctionAddressesHeader.NAME,  SIPHEADERS_PACKAGE + ".ims.PChargingFunctionAddresses");
 
-        putNameMap(PChargingVectorHeader.NAME,PChargingVector.class.getName());
+        putNameMap(PChargingVectorHeader.NAME,SIPHEADERS_PACKAGE + ".ims.PChargingVector");
 
-        putNameMap(PMediaAuthorizationHeader.NAME,PMediaAuthorization.class.getName());
+        putNameMap(PMediaAuthorizationHeader.NAME,SIPHEADERS_PACKAGE + ".ims.PMediaAuthorization");
 
-        putNameMap(Path.NAME, Path.class.getName());
+        putNameMap(Path.NAME, SIPHEADERS_PACKAGE + ".ims.Path");
 
-        putNameMap(PPreferredIdentity.NAME, PPreferredIdentity.class.getName());
+        putNameMap(PPreferredIdentity.NAME, SIPHEADERS_PACKAGE + ".ims.PPreferredIdentity");
 
-        putNameMap(Privacy.NAME,Privacy.class.getName());
+        putNameMap(Privacy.NAME,SIPHEADERS_PACKAGE + ".ims.Privacy");
 
-        putNameMap(ServiceRoute.NAME, ServiceRoute.class.getName());
+        putNameMap(ServiceRoute.NAME, SIPHEADERS_PACKAGE + ".ims.ServiceRoute");
 
-        putNameMap(PVisitedNetworkID.NAME, PVisitedNetworkID.class.getName());
+        putNameMap(PVisitedNetworkID.NAME, SIPHEADERS_PACKAGE + ".ims.PVisitedNetworkID");
 
 
 
@@ -89,6 +89,15 @@ public class Organization extends SIPHeader implements OrganizationHeader {
                     + " Organization, setOrganization(), the organization parameter is null");
         organization = o;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof OrganizationHeader) {
+            final OrganizationHeader o = (OrganizationHeader) other;
+            return (this.organization == null ? o.getOrganization() == null : this.organization.equals(o.getOrganization()));
+        }
+        return false;
+    }
 }
 /*
  * $Log: Organization.java,v $
@@ -54,6 +54,12 @@ public abstract class ParametersHeader
     protected NameValueList parameters;
     
     protected DuplicateNameValueList duplicates;
+
+    /**
+     * True while the parameter list is shared with another header (see copyOnWrite). It is
+     * copied before it is changed or handed out.
+     */
+    private transient volatile boolean parametersShared;
     
     protected ParametersHeader() {
         this.parameters = new NameValueList();
@@ -124,7 +130,7 @@ public abstract class ParametersHeader
     */
 
     public void removeParameter(String name) {
-        this.parameters.delete(name);
+        ownParameters().delete(name);
     }
 
     /**
@@ -146,6 +152,7 @@ public abstract class ParametersHeader
      *
      */
     public void setParameter(String name, String value) throws ParseException {
+        ownParameters();
         NameValue nv = parameters.getNameValue(name);
         if (nv != null) {
             nv.setValueAsObject(value);
@@ -175,6 +182,7 @@ public abstract class ParametersHeader
      */
     public void setQuotedParameter(String name, String value)
         throws ParseException {
+        ownParameters();
         NameValue nv = parameters.getNameValue(name);
         if (nv != null) {
             nv.setValueAsObject(value);
@@ -203,7 +211,7 @@ public abstract class ParametersHeader
      */
     protected void setParameter(String name, int value) {
         Integer val = Integer.valueOf(value);
-        this.parameters.set(name,val);
+        ownParameters().set(name,val);
 
     }
 
@@ -224,7 +232,7 @@ public abstract class ParametersHeader
      */
     protected void setParameter(String name, boolean value) {
         Boolean val = Boolean.valueOf(value);
-        this.parameters.set(name,val);
+        ownParameters().set(name,val);
     }
 
     /**
@@ -243,6 +251,7 @@ public abstract class ParametersHeader
      */
     protected void setParameter(String name, float value) {
         Float val = Float.valueOf(value);
+        ownParameters();
         NameValue nv = parameters.getNameValue(name);
         if (nv != null) {
             nv.setValueAsObject(val);
@@ -271,7 +280,7 @@ public abstract class ParametersHeader
      *
      */
     protected void setParameter(String name, Object value) {
-        this.parameters.set(name,value);
+        ownParameters().set(name,value);
     }
 
     /**
@@ -290,6 +299,7 @@ public abstract class ParametersHeader
      */
     public void removeParameters() {
         this.parameters = new NameValueList();
+        this.parametersShared = false;
     }
 
     /**
@@ -297,7 +307,7 @@ public abstract class ParametersHeader
      * @return parameter list
      */
     public NameValueList getParameters() {
-        return parameters;
+        return ownParameters();
     }
 
     /** Set the parameter given a name and value.
@@ -305,7 +315,7 @@ public abstract class ParametersHeader
      * @param nameValue - the name value of the parameter to set.
      */
     public void setParameter(NameValue nameValue) {
-        this.parameters.set(nameValue);
+        ownParameters().set(nameValue);
     }
 
     /**
@@ -315,6 +325,7 @@ public abstract class ParametersHeader
      */
     public void setParameters(NameValueList parameters) {
         this.parameters = parameters;
+        this.parametersShared = false;
     }
 
     /**
@@ -456,7 +467,36 @@ public abstract class ParametersHeader
      * @return the name value pair for the given parameter name.
      */
     public NameValue getNameValue(String parameterName) {
-        return parameters.getNameValue(parameterName);
+        return ownParameters().getNameValue(parameterName);
+    }
+
+    /**
+     * Use the parameter list of another header until one of the two changes it.
+     */
+    protected final void shareParameters(ParametersHeader other) {
+        synchronized (other) {
+            this.parameters = other.parameters;
+            this.parametersShared = true;
+            other.parametersShared = true;
+        }
+    }
+
+    /**
+     * Return the parameter list, copying it first if it is shared with another header.
+     * Subclasses call this before they change the list directly. The copy is made under
+     * the header lock so that two threads reading the same header get the same list.
+     */
+    protected final NameValueList ownParameters() {
+        if (parametersShared) {
+            synchronized (this) {
+                if (parametersShared) {
+                    if (parameters != null)
+                        parameters = (NameValueList) parameters.clone();
+                    parametersShared = false;
+                }
+            }
+        }
+        return parameters;
     }
 
  
@@ -464,6 +504,7 @@ public abstract class ParametersHeader
         ParametersHeader retval = (ParametersHeader) super.clone();
         if (this.parameters != null)
             retval.parameters = (NameValueList) this.parameters.clone();
+        retval.parametersShared = false;
         return retval;
     }
 
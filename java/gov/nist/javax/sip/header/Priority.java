@@ -99,4 +99,13 @@ public class Priority extends SIPHeader implements PriorityHeader {
                     + "Priority, setPriority(), the priority parameter is null");
         priority = p;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof PriorityHeader) {
+            final PriorityHeader o = (PriorityHeader) other;
+            return (this.priority == null ? o.getPriority() == null : this.priority.equals(o.getPriority()));
+        }
+        return false;
+    }
 }
@@ -98,6 +98,15 @@ public class ProxyRequire extends SIPHeader implements ProxyRequireHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof ProxyRequireHeader) {
+            final ProxyRequireHeader o = (ProxyRequireHeader) other;
+            return (this.optionTag == null ? o.getOptionTag() == null : this.optionTag.equals(o.getOptionTag()));
+        }
+        return false;
+    }
 }
 /*
  * $Log: ProxyRequire.java,v $
@@ -153,4 +153,15 @@ public class RAck extends SIPHeader implements javax.sip.header.RAckHeader {
             throw new InvalidArgumentException("Bad rSeq # " + rSeqNumber);
         this.rSeqNumber = rSeqNumber;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.RAckHeader) {
+            final javax.sip.header.RAckHeader o = (javax.sip.header.RAckHeader) other;
+            return this.cSeqNumber == o.getCSequenceNumber()
+                && this.rSeqNumber == o.getRSequenceNumber()
+                && (this.method == null ? o.getMethod() == null : this.method.equals(o.getMethod()));
+        }
+        return false;
+    }
 }
@@ -85,6 +85,12 @@ public class RSeq extends SIPHeader implements javax.sip.header.RSeqHeader {
 
     }
 
-
-
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.RSeqHeader) {
+            final javax.sip.header.RSeqHeader o = (javax.sip.header.RSeqHeader) other;
+            return this.sequenceNumber == o.getSeqNumber();
+        }
+        return false;
+    }
 }
@@ -89,4 +89,8 @@ public class RecordRoute
         }
         return buffer;
     }
+
+    public SIPHeader copyOnWrite() {
+        return copyAddressOnWrite();
+    }
 }
@@ -98,6 +98,16 @@ public class Require extends SIPHeader implements RequireHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof RequireHeader) {
+            final RequireHeader o = (RequireHeader) other;
+            return (this.optionTag == null ? o.getOptionTag() == null : this.optionTag.equals(o.getOptionTag()))
+                && this.getName().equalsIgnoreCase(o.getName());
+        }
+        return false;
+    }
 }
 /*
  * $Log: Require.java,v $
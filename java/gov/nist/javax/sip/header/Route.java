@@ -107,5 +107,8 @@ public class Route
         return (other instanceof RouteHeader) && super.equals(other);
     }
 
+    public SIPHeader copyOnWrite() {
+        return copyAddressOnWrite();
+    }
 }
 
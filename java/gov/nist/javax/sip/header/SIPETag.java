@@ -98,4 +98,14 @@ public class SIPETag extends SIPHeader implements SIPETagHeader , ExtensionHeade
         this.setETag(value);
 
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof SIPETagHeader) {
+            final SIPETagHeader o = (SIPETagHeader) other;
+            return (this.entityTag == null ? o.getETag() == null : this.entityTag.equals(o.getETag()))
+                && this.getName().equalsIgnoreCase(o.getName());
+        }
+        return false;
+    }
 }
@@ -144,14 +144,40 @@ public abstract class SIPHeader
     }
 
     /**
-     * This is a pretty simple hashCode but satisfies requirements.
+     * This is a pretty simple hashCode but satisfies requirements. Header names are
+     * compared ignoring case (see ExtensionHeaderImpl.equals), so the hash is computed
+     * over the lower case name.
      *
      */
     public int hashCode() {
-        return this.headerName.hashCode();
+        String name = this.headerName;
+        int h = 0;
+        for (int i = 0; i < name.length(); i++)
+            h = 31 * h + Character.toLowerCase(name.charAt(i));
+        return h;
     }
 
     public final String toString() {
         return this.encode();
     }
+
+    /**
+     * Return a copy of this header for another message (a response, ACK or CANCEL built
+     * from a request). The copy behaves like a clone. By default it is one; the headers that
+     * are copied into every response (From, To, Via, Call-ID, Record-Route) instead share
+     * their parsed parts with the copy, and each of the two headers copies a part only before
+     * it first changes it or hands it out.
+     *
+     * @since 2.0
+     */
+    public SIPHeader copyOnWrite() {
+        return (SIPHeader) this.clone();
+    }
+
+    /**
+     * A field by field copy of this header, for the copyOnWrite implementations.
+     */
+    protected final SIPHeader shallowClone() {
+        return (SIPHeader) super.clone();
+    }
 }
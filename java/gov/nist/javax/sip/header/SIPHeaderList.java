@@ -33,7 +33,6 @@ import gov.nist.core.Separators;
 import gov.nist.javax.sip.header.ims.PrivacyHeader;
 
 import javax.sip.header.Header;
-import java.lang.reflect.Constructor;
 import java.util.*;
 
 /**
@@ -446,17 +445,22 @@ public abstract class SIPHeaderList<HDR extends SIPHeader> extends SIPHeader imp
      * @return clone of this Header.
      */
     public Object clone() {
-        try {
-            Class<?> clazz = this.getClass();
-
-            Constructor<?> cons = clazz.getConstructor((Class[])null);
-            SIPHeaderList<HDR> retval = (SIPHeaderList<HDR>) cons.newInstance((Object[])null);
-            retval.headerName = this.headerName;
-            retval.myClass  = this.myClass;
-            return retval.clonehlist(this.hlist);
-        } catch (Exception ex) {
-            throw new RuntimeException("Could not clone!", ex);
+        SIPHeaderList<HDR> retval = (SIPHeaderList<HDR>) shallowClone();
+        retval.hlist = new LinkedList<HDR>();
+        return retval.clonehlist(this.hlist);
+    }
+
+    /**
+     * A new list holding copyOnWrite copies of the headers of this list.
+     */
+    @SuppressWarnings("unchecked")
+    public SIPHeader copyOnWrite() {
+        SIPHeaderList<HDR> retval = (SIPHeaderList<HDR>) shallowClone();
+        retval.hlist = new LinkedList<HDR>();
+        for (Iterator<HDR> it = hlist.iterator(); it.hasNext();) {
+            retval.hlist.add((HDR) it.next().copyOnWrite());
         }
+        return retval;
     }
 
     protected final SIPHeaderList<HDR> clonehlist(List<HDR> hlistToClone) {
@@ -1,30 +1,78 @@
 package gov.nist.javax.sip.header;
 
 import java.util.HashMap;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 
 /**
  * @author yanick.belanger
  */
 public abstract class SIPHeaderNamesCache
 {
+    /**
+     * The names declared by SIPHeaderNames. They are compile time constants, so listing them
+     * here spares the reflective walk over the interface when the stack starts.
+     */
+    private static final String[] HEADER_NAMES = {
+        SIPHeaderNames.MIN_EXPIRES, SIPHeaderNames.ERROR_INFO,
+        SIPHeaderNames.MIME_VERSION, SIPHeaderNames.IN_REPLY_TO, SIPHeaderNames.ALLOW,
+        SIPHeaderNames.CONTENT_LANGUAGE, SIPHeaderNames.CALL_INFO, SIPHeaderNames.CSEQ,
+        SIPHeaderNames.ALERT_INFO, SIPHeaderNames.ACCEPT_ENCODING, SIPHeaderNames.ACCEPT,
+        SIPHeaderNames.ACCEPT_LANGUAGE, SIPHeaderNames.RECORD_ROUTE,
+        SIPHeaderNames.TIMESTAMP, SIPHeaderNames.TO, SIPHeaderNames.VIA,
+        SIPHeaderNames.FROM, SIPHeaderNames.CALL_ID, SIPHeaderNames.AUTHORIZATION,
+        SIPHeaderNames.PROXY_AUTHENTICATE, SIPHeaderNames.SERVER,
+        SIPHeaderNames.UNSUPPORTED, SIPHeaderNames.RETRY_AFTER,
+        SIPHeaderNames.CONTENT_TYPE, SIPHeaderNames.CONTENT_ENCODING,
+        SIPHeaderNames.CONTENT_LENGTH, SIPHeaderNames.ROUTE, SIPHeaderNames.CONTACT,
+        SIPHeaderNames.WWW_AUTHENTICATE, SIPHeaderNames.MAX_FORWARDS,
+        SIPHeaderNames.ORGANIZATION, SIPHeaderNames.PROXY_AUTHORIZATION,
+        SIPHeaderNames.PROXY_REQUIRE, SIPHeaderNames.REQUIRE,
+        SIPHeaderNames.CONTENT_DISPOSITION, SIPHeaderNames.SUBJECT,
+        SIPHeaderNames.USER_AGENT, SIPHeaderNames.WARNING, SIPHeaderNames.PRIORITY,
+        SIPHeaderNames.DATE, SIPHeaderNames.EXPIRES, SIPHeaderNames.SUPPORTED,
+        SIPHeaderNames.AUTHENTICATION_INFO, SIPHeaderNames.REPLY_TO, SIPHeaderNames.RACK,
+        SIPHeaderNames.RSEQ, SIPHeaderNames.REASON, SIPHeaderNames.SUBSCRIPTION_STATE,
+        SIPHeaderNames.EVENT, SIPHeaderNames.ALLOW_EVENTS, SIPHeaderNames.SIP_ETAG,
+        SIPHeaderNames.SIP_IF_MATCH, SIPHeaderNames.REFERRED_BY,
+        SIPHeaderNames.SESSION_EXPIRES, SIPHeaderNames.MIN_SE, SIPHeaderNames.REPLACES,
+        SIPHeaderNames.JOIN
+    };
+
+    /**
+     * The compact forms of the header names the parser knows.
+     */
+    private static final String[] COMPACT_NAMES = {
+        "t", "f", "v", "m", "c", "l", "i", "k", "s", "o", "e", "u", "r", "b", "x"
+    };
+
     private static final HashMap lowercaseMap = new HashMap();
 
+    /**
+     * The lower case names, open addressed by String.hashCode(), for looking names up
+     * directly in a message buffer.
+     */
+    private static final String[] byteTable = new String[256];
+
     static {
-        Field[] fields = SIPHeaderNames.class.getFields();
-        for (int i = 0; i < fields.length; i++) {
-            Field field = fields[i];
-            if (field.getType().equals(String.class) && Modifier.isStatic(field.getModifiers())) {
-                try {
-                    String value = (String) field.get(null);
-                    String lowerCase = value.toLowerCase();
-                    lowercaseMap.put(value, lowerCase);
-                    lowercaseMap.put(lowerCase, lowerCase);
-                } catch (IllegalAccessException e) {
-                }
-            }
+        for (int i = 0; i < HEADER_NAMES.length; i++) {
+            String value = HEADER_NAMES[i];
+            String lowerCase = value.toLowerCase();
+            lowercaseMap.put(value, lowerCase);
+            lowercaseMap.put(lowerCase, lowerCase);
+            addToByteTable(lowerCase);
         }
+        for (int i = 0; i < COMPACT_NAMES.length; i++)
+            addToByteTable(COMPACT_NAMES[i]);
+    }
+
+    private static void addToByteTable(String lowerCase) {
+        int mask = byteTable.length - 1;
+        int slot = lowerCase.hashCode() & mask;
+        while (byteTable[slot] != null) {
+            if (byteTable[slot].equals(lowerCase))
+                return;
+            slot = (slot + 1) & mask;
+        }
+        byteTable[slot] = lowerCase;
     }
 
     public static String toLowerCase(String headerName) {
@@ -36,4 +84,40 @@ public abstract class SIPHeaderNamesCache
             return lowerCase;
         }
     }
+
+    /**
+     * The lower case form of the header name held in the given bytes of a message. The
+     * names of the standard headers are returned without creating a String.
+     */
+    public static String toLowerCase(byte[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int c = buffer[i];
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            hash = 31 * hash + c;
+        }
+        int mask = byteTable.length - 1;
+        for (int slot = hash & mask; byteTable[slot] != null; slot = (slot + 1) & mask) {
+            String name = byteTable[slot];
+            if (name.length() == length && matches(name, buffer, offset))
+                return name;
+        }
+        try {
+            return new String(buffer, offset, length, "UTF-8").toLowerCase();
+        } catch (java.io.UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean matches(String lowerCase, byte[] buffer, int offset) {
+        for (int i = 0; i < lowerCase.length(); i++) {
+            int c = buffer[offset + i];
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if (c != lowerCase.charAt(i))
+                return false;
+        }
+        return true;
+    }
 }
@@ -96,4 +96,13 @@ public class SIPIfMatch extends SIPHeader implements SIPIfMatchHeader,ExtensionH
 
 
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof SIPIfMatchHeader) {
+            final SIPIfMatchHeader o = (SIPIfMatchHeader) other;
+            return (this.entityTag == null ? o.getETag() == null : this.entityTag.equals(o.getETag()));
+        }
+        return false;
+    }
 }
@@ -82,67 +82,26 @@ public abstract class SIPObject extends GenericObject {
     public boolean equals(Object other) {
         if (!this.getClass().equals(other.getClass()))
             return false;
-        SIPObject that = (SIPObject) other;
-        Class myclass = this.getClass();
-        Class hisclass = other.getClass();
+        Class<?> myclass = this.getClass();
         while (true) {
-            Field[] fields = myclass.getDeclaredFields();
-            if (!hisclass.equals(myclass))
-                return false;
-            Field[] hisfields = hisclass.getDeclaredFields();
+            Field[] fields = getComparableFields(myclass);
             for (int i = 0; i < fields.length; i++) {
                 Field f = fields[i];
-                Field g = hisfields[i];
-                // Only print protected and public members.
-                int modifier = f.getModifiers();
-                if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                    continue;
-                Class fieldType = f.getType();
-                String fieldName = f.getName();
-                if (fieldName.compareTo("stringRepresentation") == 0) {
-                    continue;
-                }
-                if (fieldName.compareTo("indentation") == 0) {
-                    continue;
-                }
                 try {
-                    // Primitive fields are printed with type: value
-                    if (fieldType.isPrimitive()) {
-                        String fname = fieldType.toString();
-                        if (fname.compareTo("int") == 0) {
-                            if (f.getInt(this) != g.getInt(that))
-                                return false;
-                        } else if (fname.compareTo("short") == 0) {
-                            if (f.getShort(this) != g.getShort(that))
-                                return false;
-                        } else if (fname.compareTo("char") == 0) {
-                            if (f.getChar(this) != g.getChar(that))
-                                return false;
-                        } else if (fname.compareTo("long") == 0) {
-                            if (f.getLong(this) != g.getLong(that))
-                                return false;
-                        } else if (fname.compareTo("boolean") == 0) {
-                            if (f.getBoolean(this) != g.getBoolean(that))
-                                return false;
-                        } else if (fname.compareTo("double") == 0) {
-                            if (f.getDouble(this) != g.getDouble(that))
-                                return false;
-                        } else if (fname.compareTo("float") == 0) {
-                            if (f.getFloat(this) != g.getFloat(that))
-                                return false;
-                        }
-                    } else if (g.get(that) == f.get(this))
+                    if (f.getType().isPrimitive()) {
+                        if (!equalPrimitiveFields(f, this, other))
+                            return false;
                         continue;
-                    else if (f.get(this) == null && g.get(that) != null)
-                        return false;
-                    else if (g.get(that) == null && f.get(this) != null)
+                    }
+                    Object myObj = f.get(this);
+                    Object hisObj = f.get(other);
+                    if (myObj == hisObj)
+                        continue;
+                    else if (myObj == null || hisObj == null)
                         return false;
-                    else if (!f.get(this).equals(g.get(that)))
+                    else if (!myObj.equals(hisObj))
                         return false;
                 } catch (IllegalAccessException ex1) {
-                    System.out.println("accessed field " + fieldName);
-                    System.out.println("modifier  " + modifier);
-                    System.out.println("modifier.private  " + Modifier.PRIVATE);
                     InternalErrorHandler.handleException(ex1);
                 }
             }
@@ -150,7 +109,6 @@ public abstract class SIPObject extends GenericObject {
                 break;
             else {
                 myclass = myclass.getSuperclass();
-                hisclass = hisclass.getSuperclass();
             }
         }
         return true;
@@ -176,57 +134,18 @@ public abstract class SIPObject extends GenericObject {
         if (!this.getClass().equals(other.getClass()))
             return false;
         GenericObject that = (GenericObject) other;
-        Class myclass = this.getClass();
-        Class hisclass = other.getClass();
+        Class<?> myclass = this.getClass();
         while (true) {
-            Field[] fields = myclass.getDeclaredFields();
-            Field[] hisfields = hisclass.getDeclaredFields();
+            Field[] fields = getComparableFields(myclass);
             for (int i = 0; i < fields.length; i++) {
                 Field f = fields[i];
-                Field g = hisfields[i];
-                // Only print protected and public members.
-                int modifier = f.getModifiers();
-                if ((modifier & Modifier.PRIVATE) == Modifier.PRIVATE)
-                    continue;
-                Class fieldType = f.getType();
-                String fieldName = f.getName();
-                if (fieldName.compareTo("stringRepresentation") == 0) {
-                    continue;
-                }
-                if (fieldName.compareTo("indentation") == 0) {
-                    continue;
-                }
                 try {
-                    if (fieldType.isPrimitive()) {
-                        String fname = fieldType.toString();
-                        if (fname.compareTo("int") == 0) {
-                            if (f.getInt(this) != g.getInt(that))
-                                return false;
-                        } else if (fname.compareTo("short") == 0) {
-                            if (f.getShort(this) != g.getShort(that))
-                                return false;
-                        } else if (fname.compareTo("char") == 0) {
-                            if (f.getChar(this) != g.getChar(that))
-                                return false;
-                        } else if (fname.compareTo("long") == 0) {
-                            if (f.getLong(this) != g.getLong(that))
-                                return false;
-                        } else if (fname.compareTo("boolean") == 0) {
-                            if (f.getBoolean(this) != g.getBoolean(that))
-                                return false;
-                        } else if (fname.compareTo("double") == 0) {
-                            if (f.getDouble(this) != g.getDouble(that))
-                                return false;
-                        } else if (fname.compareTo("float") == 0) {
-                            if (f.getFloat(this) != g.getFloat(that))
-                                return false;
-                        } else {
-                            InternalErrorHandler.handleException(
-                                "unknown type");
-                        }
+                    if (f.getType().isPrimitive()) {
+                        if (!equalPrimitiveFields(f, this, that))
+                            return false;
                     } else {
                         Object myObj = f.get(this);
-                        Object hisObj = g.get(that);
+                        Object hisObj = f.get(that);
                         if (hisObj != null && myObj == null)
                             return false;
                         else if (hisObj == null && myObj != null)
@@ -243,8 +162,7 @@ public abstract class SIPObject extends GenericObject {
                                 != 0)
                                 return false;
                         } else if (
-                            hisObj != null
-                                && GenericObject.isMySubclass(myObj.getClass())
+                            GenericObject.isMySubclass(myObj.getClass())
                                 && GenericObject.isMySubclass(hisObj.getClass())
                                 && myObj.getClass().equals(hisObj.getClass())
                                 && ((GenericObject) hisObj).getMatcher()
@@ -264,7 +182,6 @@ public abstract class SIPObject extends GenericObject {
                             GenericObjectList.isMySubclass(myObj.getClass())
                                 && !((GenericObjectList) myObj).match(hisObj))
                             return false;
-
                     }
                 } catch (IllegalAccessException ex1) {
                     InternalErrorHandler.handleException(ex1);
@@ -274,7 +191,6 @@ public abstract class SIPObject extends GenericObject {
                 break;
             else {
                 myclass = myclass.getSuperclass();
-                hisclass = hisclass.getSuperclass();
             }
         }
         return true;
@@ -121,6 +121,16 @@ public class Server extends SIPHeader implements ServerHeader {
                     + " product parameter is null");
         productTokens = product;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof Server) {
+            final Server o = (Server) other;
+            return (this.productTokens == null ? o.productTokens == null
+                : this.productTokens.equals(o.productTokens));
+        }
+        return false;
+    }
 }
 /*
  * $Log: Server.java,v $
@@ -98,6 +98,14 @@ public class Subject extends SIPHeader implements SubjectHeader {
         return subject;
     }
 
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof SubjectHeader) {
+            final SubjectHeader o = (SubjectHeader) other;
+            return (this.subject == null ? o.getSubject() == null : this.subject.equals(o.getSubject()));
+        }
+        return false;
+    }
 }
 /*
  * $Log: Subject.java,v $
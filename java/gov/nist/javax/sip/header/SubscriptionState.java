@@ -183,5 +183,17 @@ public class SubscriptionState
         }
         return buffer;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof SubscriptionStateHeader) {
+            final SubscriptionStateHeader o = (SubscriptionStateHeader) other;
+            return (this.state == null ? o.getState() == null : this.state.equals(o.getState()))
+                && (this.reasonCode == null ? o.getReasonCode() == null : this.reasonCode.equals(o.getReasonCode()))
+                && this.expires == o.getExpires() && this.retryAfter == o.getRetryAfter()
+                && this.equalParameters(o);
+        }
+        return false;
+    }
 }
 
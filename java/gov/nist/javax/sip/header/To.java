@@ -67,8 +67,7 @@ public final class To extends AddressParametersHeader implements
      */
     public To(From from) {
         super(TO);
-        setAddress(from.address);
-        setParameters(from.parameters);
+        shareAddress(from);
     }
 
     /**
@@ -117,7 +116,7 @@ public final class To extends AddressParametersHeader implements
     public HostPort getHostPort() {
         if (address == null)
             return null;
-        return address.getHostPort();
+        return ownAddress().getHostPort();
     }
 
     /**
@@ -160,7 +159,7 @@ public final class To extends AddressParametersHeader implements
      */
     public void removeTag() {
             if (parameters != null)
-                parameters.delete(ParameterNames.TAG);
+                ownParameters().delete(ParameterNames.TAG);
 
     }
 
@@ -188,4 +187,8 @@ public final class To extends AddressParametersHeader implements
     public boolean equals(Object other) {
         return (other instanceof ToHeader) && super.equals(other);
     }
+
+    public SIPHeader copyOnWrite() {
+        return copyAddressOnWrite();
+    }
 }
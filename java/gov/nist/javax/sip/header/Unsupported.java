@@ -91,6 +91,15 @@ public class Unsupported
                     + " Unsupported, setOptionTag(), The option tag parameter is null");
         optionTag = o;
     }
+
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof javax.sip.header.UnsupportedHeader) {
+            final javax.sip.header.UnsupportedHeader o = (javax.sip.header.UnsupportedHeader) other;
+            return (this.optionTag == null ? o.getOptionTag() == null : this.optionTag.equals(o.getOptionTag()));
+        }
+        return false;
+    }
 }
 /*
  * $Log: Unsupported.java,v $
@@ -124,6 +124,15 @@ public class UserAgent extends SIPHeader implements UserAgentHeader {
         return retval;
     }
 
+    public boolean equals(Object other) {
+        if (this==other) return true;
+        if (other instanceof UserAgent) {
+            final UserAgent o = (UserAgent) other;
+            return (this.productTokens == null ? o.productTokens == null
+                : this.productTokens.equals(o.productTokens));
+        }
+        return false;
+    }
 }
 /*
  * $Log: UserAgent.java,v $
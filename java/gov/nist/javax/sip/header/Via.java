@@ -88,6 +88,13 @@ public class Via
      */
     protected HostPort sentBy;
 
+    /**
+     * True while sentProtocol (sentBy) is shared with another Via (see copyOnWrite).
+     */
+    private transient volatile boolean sentProtocolShared;
+
+    private transient volatile boolean sentByShared;
+
     /**
      * comment field
      *
@@ -132,20 +139,22 @@ public class Via
     }
 
     /**
-     * Accessor for the sentProtocol field.
+     * Accessor for the sentProtocol field. A sent-protocol still shared with another
+     * Via is copied first, since the caller may change it.
      * @return Protocol field
      */
     public Protocol getSentProtocol() {
 
-        return sentProtocol;
+        return ownSentProtocol();
     }
 
     /**
-     * Accessor for the sentBy field
+     * Accessor for the sentBy field. A sent-by still shared with another Via is
+     * copied first, since the caller may change it.
      *@return SentBy field
      */
     public HostPort getSentBy() {
-        return sentBy;
+        return ownSentBy();
     }
 
     /**
@@ -164,7 +173,7 @@ public class Via
      * @return parameters field
      */
     public NameValueList getViaParms() {
-        return parameters;
+        return ownParameters();
     }
 
     /**
@@ -196,7 +205,7 @@ public class Via
     /** remove the port.
      */
     public void removePort() {
-        sentBy.removePort();
+        ownSentBy().removePort();
     }
 
     /** remove the comment field.
@@ -211,7 +220,7 @@ public class Via
     public void setProtocolVersion(String protocolVersion) {
         if (sentProtocol == null)
             sentProtocol = new Protocol();
-        sentProtocol.setProtocolVersion(protocolVersion);
+        ownSentProtocol().setProtocolVersion(protocolVersion);
     }
 
     /** set the Host of the Via Header
@@ -221,7 +230,7 @@ public class Via
         if (sentBy == null) {
             sentBy = new HostPort();
         }
-        sentBy.setHost(host);
+        ownSentBy().setHost(host);
     }
 
     /**
@@ -230,6 +239,7 @@ public class Via
      */
     public void setSentProtocol(Protocol s) {
         sentProtocol = s;
+        sentProtocolShared = false;
     }
 
     /**
@@ -238,6 +248,7 @@ public class Via
      */
     public void setSentBy(HostPort s) {
         sentBy = s;
+        sentByShared = false;
     }
 
     /**
@@ -283,7 +294,7 @@ public class Via
             sentBy = new HostPort();
         try {
             Host h = new Host(host);
-            sentBy.setHost(h);
+            ownSentBy().setHost(h);
         } catch (Exception e) {
             throw new NullPointerException(" host parameter is null");
         }
@@ -320,7 +331,7 @@ public class Via
 
         if (sentBy == null)
             sentBy = new HostPort();
-        sentBy.setPort(port);
+        ownSentBy().setPort(port);
     }
 
     /**
@@ -384,7 +395,7 @@ public class Via
                     + "Via, setTransport(), the transport parameter is null.");
         if (sentProtocol == null)
             sentProtocol = new Protocol();
-        sentProtocol.setTransport(transport);
+        ownSentProtocol().setTransport(transport);
     }
 
     /**
@@ -415,7 +426,7 @@ public class Via
         if (sentProtocol == null)
             sentProtocol = new Protocol();
 
-        sentProtocol.setProtocol(protocol);
+        ownSentProtocol().setProtocol(protocol);
     }
 
     /**
@@ -538,9 +549,59 @@ public class Via
             retval.sentBy = (HostPort) this.sentBy.clone();
         if ( this.getRPort() != -1)
             retval.setParameter(RPORT,this.getRPort());
+        retval.sentProtocolShared = false;
+        retval.sentByShared = false;
+        return retval;
+    }
+
+    /**
+     * A copy of this Via that shares its sent-protocol, sent-by and parameters with it
+     * until one of the two changes them.
+     */
+    public SIPHeader copyOnWrite() {
+        Via retval = (Via) shallowClone();
+        retval.shareParameters(this);
+        synchronized (this) {
+            retval.sentProtocol = this.sentProtocol;
+            retval.sentBy = this.sentBy;
+            retval.sentProtocolShared = this.sentProtocolShared = true;
+            retval.sentByShared = this.sentByShared = true;
+        }
         return retval;
     }
 
+    /**
+     * Return the sent-protocol, copying it under the header lock if it is shared.
+     */
+    private Protocol ownSentProtocol() {
+        if (sentProtocolShared) {
+            synchronized (this) {
+                if (sentProtocolShared) {
+                    if (sentProtocol != null)
+                        sentProtocol = (Protocol) sentProtocol.clone();
+                    sentProtocolShared = false;
+                }
+            }
+        }
+        return sentProtocol;
+    }
+
+    /**
+     * Return the sent-by, copying it under the header lock if it is shared.
+     */
+    private HostPort ownSentBy() {
+        if (sentByShared) {
+            synchronized (this) {
+                if (sentByShared) {
+                    if (sentBy != null)
+                        sentBy = (HostPort) sentBy.clone();
+                    sentByShared = false;
+                }
+            }
+        }
+        return sentBy;
+    }
+
     /*
      * (non-Javadoc)
      * @see gov.nist.javax.sip.header.ViaHeaderExt#getSentByField()
@@ -1,5 +1,8 @@
 package gov.nist.javax.sip.message;
 
+import gov.nist.core.InternalErrorHandler;
+
+import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 
 import javax.sip.header.ContentDispositionHeader;
@@ -14,6 +17,18 @@ public class ContentImpl implements Content {
    
     private Object content;
 
+    /*
+     * Undecoded content: a region of the message body. It is decoded into
+     * a String the first time the content is asked for.
+     */
+    private byte[] contentBuffer;
+
+    private int contentOffset;
+
+    private int contentLength;
+
+    private String charset;
+
     private String boundary;
     
     private ContentTypeHeader contentTypeHeader;
@@ -28,6 +43,18 @@ public class ContentImpl implements Content {
         this.boundary = boundary;
     }
 
+    /**
+     * Create content that refers to a region of a message body without
+     * decoding it.
+     */
+    ContentImpl(byte[] buffer, int offset, int length, String charset, String boundary) {
+        this.contentBuffer = buffer;
+        this.contentOffset = offset;
+        this.contentLength = length;
+        this.charset = charset;
+        this.boundary = boundary;
+    }
+
     
 
     /* (non-Javadoc)
@@ -35,6 +62,7 @@ public class ContentImpl implements Content {
      */
     public void setContent(Object content) {
         this.content = content;
+        this.contentBuffer = null;
     }
 
     /* (non-Javadoc)
@@ -49,6 +77,14 @@ public class ContentImpl implements Content {
      * @see gov.nist.javax.sip.message.Content#getContent()
      */
     public Object getContent() {
+        if (this.contentBuffer != null) {
+            try {
+                this.content = new String(contentBuffer, contentOffset, contentLength, charset);
+            } catch (UnsupportedEncodingException ex) {
+                InternalErrorHandler.handleException(ex);
+            }
+            this.contentBuffer = null;
+        }
         return this.content;
     }
     
@@ -59,14 +95,14 @@ public class ContentImpl implements Content {
     public String toString() {
         // This is not part of a multipart message.
         if (boundary == null) {
-            return content.toString();
+            return getContent().toString();
         } else {
            if ( this.contentDispositionHeader != null ) {
             return "--" + boundary + "\r\n" + getContentTypeHeader() + 
                     this.getContentDispositionHeader().toString() + "\r\n"
-                    + content.toString();
+                    + getContent().toString();
            } else {
-               return "--" + boundary + "\r\n" + getContentTypeHeader() + "\r\n" +  content.toString();
+               return "--" + boundary + "\r\n" + getContentTypeHeader() + "\r\n" +  getContent().toString();
            }
         }
     }
@@ -28,9 +28,9 @@
  *******************************************************************************/
 package gov.nist.javax.sip.message;
 
+import gov.nist.core.PackageNames;
 import gov.nist.javax.sip.header.*;
 import gov.nist.javax.sip.header.ims.*;
-import java.util.Hashtable;
 
 /**
  * A map of which of the standard headers may appear as a list
@@ -39,149 +39,115 @@ import java.util.Hashtable;
  * @since 1.1
  */
 class ListMap {
-    // A table that indicates whether a header has a list representation or
-    // not (to catch adding of the non-list form when a list exists.)
-    // Entries in this table allow you to look up the list form of a header
-    // (provided it has a list form). Note that under JAVA-5 we have
-    // typed collections which would render such a list obsolete. However,
-    // we are not using java 5.
-    private static Hashtable<Class<?>,Class<?>> headerListTable;
+    private static final String HEADER_PACKAGE = PackageNames.SIPHEADERS_PACKAGE + ".";
 
-    private static boolean initialized;
-    static {
-        initializeListMap();
-    }
-
-    static private void initializeListMap() {
-        /*
-         * Build a table mapping between objects that have a list form and the
-         * class of such objects.
-         */
-        headerListTable = new Hashtable<Class<?>, Class<?>>();
-        headerListTable.put(ExtensionHeaderImpl.class, ExtensionHeaderList.class);
-
-        headerListTable.put(Contact.class, ContactList.class);
-
-        headerListTable.put(ContentEncoding.class, ContentEncodingList.class);
-
-        headerListTable.put(Via.class, ViaList.class);
-
-        headerListTable.put(WWWAuthenticate.class, WWWAuthenticateList.class);
-
-        headerListTable.put(Accept.class, AcceptList.class);
-
-        headerListTable.put(AcceptEncoding.class, AcceptEncodingList.class);
-
-        headerListTable.put(AcceptLanguage.class, AcceptLanguageList.class);
-
-        headerListTable.put(ProxyRequire.class, ProxyRequireList.class);
-
-        headerListTable.put(Route.class, RouteList.class);
-
-        headerListTable.put(Require.class, RequireList.class);
-
-        headerListTable.put(Warning.class, WarningList.class);
-
-        headerListTable.put(Unsupported.class, UnsupportedList.class);
-
-        headerListTable.put(AlertInfo.class, AlertInfoList.class);
-
-        headerListTable.put(CallInfo.class, CallInfoList.class);
-
-        headerListTable.put(ProxyAuthenticate.class,ProxyAuthenticateList.class);
-
-        headerListTable.put(ProxyAuthorization.class, ProxyAuthorizationList.class);
-
-        headerListTable.put(Authorization.class, AuthorizationList.class);
-
-        headerListTable.put(Allow.class, AllowList.class);
-
-        headerListTable.put(RecordRoute.class, RecordRouteList.class);
-
-        headerListTable.put(ContentLanguage.class, ContentLanguageList.class);
-
-        headerListTable.put(ErrorInfo.class, ErrorInfoList.class);
-
-        headerListTable.put(Supported.class, SupportedList.class);
-
-        headerListTable.put(InReplyTo.class,InReplyToList.class);
-
-        // IMS headers.
-
-        headerListTable.put(PAssociatedURI.class, PAssociatedURIList.class);
-
-        headerListTable.put(PMediaAuthorization.class, PMediaAuthorizationList.class);
-
-        headerListTable.put(Path.class, PathList.class);
-
-        headerListTable.put(Privacy.class,PrivacyList.class);
-
-        headerListTable.put(ServiceRoute.class, ServiceRouteList.class);
-
-        headerListTable.put(PVisitedNetworkID.class, PVisitedNetworkIDList.class);
-
-        headerListTable.put(SecurityClient.class, SecurityClientList.class);
-
-        headerListTable.put(SecurityServer.class, SecurityServerList.class);
-
-        headerListTable.put(SecurityVerify.class, SecurityVerifyList.class);
-
-        headerListTable.put(PAssertedIdentity.class, PAssertedIdentityList.class);
-
-        initialized = true;
-
-    }
+    private static final String IMS_PACKAGE = HEADER_PACKAGE + "ims.";
 
     /**
-     * return true if this has an associated list object.
+     * Create the list form of a header, or return null if the header has no list form. The
+     * headers are identified by class name so that the table is a switch the compiler builds
+     * rather than a map of classes, which would load every header and list class when the
+     * first message is parsed. Returns Object so that verifying this method does not load
+     * them either.
      */
-    static protected boolean hasList(SIPHeader sipHeader) {
-        if (sipHeader instanceof SIPHeaderList)
-            return false;
-        else {
-            Class<?> headerClass = sipHeader.getClass();
-            return headerListTable.get(headerClass) != null;
+    private static Object newList(String headerClassName) {
+        switch (headerClassName) {
+            case HEADER_PACKAGE + "ExtensionHeaderImpl":
+                return new ExtensionHeaderList();
+            case HEADER_PACKAGE + "Contact":
+                return new ContactList();
+            case HEADER_PACKAGE + "ContentEncoding":
+                return new ContentEncodingList();
+            case HEADER_PACKAGE + "Via":
+                return new ViaList();
+            case HEADER_PACKAGE + "WWWAuthenticate":
+                return new WWWAuthenticateList();
+            case HEADER_PACKAGE + "Accept":
+                return new AcceptList();
+            case HEADER_PACKAGE + "AcceptEncoding":
+                return new AcceptEncodingList();
+            case HEADER_PACKAGE + "AcceptLanguage":
+                return new AcceptLanguageList();
+            case HEADER_PACKAGE + "ProxyRequire":
+                return new ProxyRequireList();
+            case HEADER_PACKAGE + "Route":
+                return new RouteList();
+            case HEADER_PACKAGE + "Require":
+                return new RequireList();
+            case HEADER_PACKAGE + "Warning":
+                return new WarningList();
+            case HEADER_PACKAGE + "Unsupported":
+                return new UnsupportedList();
+            case HEADER_PACKAGE + "AlertInfo":
+                return new AlertInfoList();
+            case HEADER_PACKAGE + "CallInfo":
+                return new CallInfoList();
+            case HEADER_PACKAGE + "ProxyAuthenticate":
+                return new ProxyAuthenticateList();
+            case HEADER_PACKAGE + "ProxyAuthorization":
+                return new ProxyAuthorizationList();
+            case HEADER_PACKAGE + "Authorization":
+                return new AuthorizationList();
+            case HEADER_PACKAGE + "Allow":
+                return new AllowList();
+            case HEADER_PACKAGE + "RecordRoute":
+                return new RecordRouteList();
+            case HEADER_PACKAGE + "ContentLanguage":
+                return new ContentLanguageList();
+            case HEADER_PACKAGE + "ErrorInfo":
+                return new ErrorInfoList();
+            case HEADER_PACKAGE + "Supported":
+                return new SupportedList();
+            case HEADER_PACKAGE + "InReplyTo":
+                return new InReplyToList();
+
+            // IMS headers.
+            case IMS_PACKAGE + "PAssociatedURI":
+                return new PAssociatedURIList();
+            case IMS_PACKAGE + "PMediaAuthorization":
+                return new PMediaAuthorizationList();
+            case IMS_PACKAGE + "Path":
+                return new PathList();
+            case IMS_PACKAGE + "Privacy":
+                return new PrivacyList();
+            case IMS_PACKAGE + "ServiceRoute":
+                return new ServiceRouteList();
+            case IMS_PACKAGE + "PVisitedNetworkID":
+                return new PVisitedNetworkIDList();
+            case IMS_PACKAGE + "SecurityClient":
+                return new SecurityClientList();
+            case IMS_PACKAGE + "SecurityServer":
+                return new SecurityServerList();
+            case IMS_PACKAGE + "SecurityVerify":
+                return new SecurityVerifyList();
+            case IMS_PACKAGE + "PAssertedIdentity":
+                return new PAssertedIdentityList();
+
+            default:
+                return null;
         }
     }
 
     /**
-     * Return true if this has an associated list object.
-     */
-    static protected boolean hasList(Class<?> sipHdrClass) {
-        if (!initialized)
-            initializeListMap();
-        return headerListTable.get(sipHdrClass) != null;
-    }
-
-    /**
-     * Get the associated list class.
+     * return true if this has an associated list object.
      */
-    static protected Class<?> getListClass(Class<?> sipHdrClass) {
-        if (!initialized)
-            initializeListMap();
-        return (Class<?>) headerListTable.get(sipHdrClass);
+    static protected boolean hasList(SIPHeader sipHeader) {
+        return getList(sipHeader) != null;
     }
 
     /**
-     * Return a list object for this header if it has an associated list object.
+     * Return a list object for this header if it has an associated list object, null
+     * otherwise.
      */
     @SuppressWarnings("unchecked")
     static protected SIPHeaderList<SIPHeader> getList(SIPHeader sipHeader) {
-        if (!initialized)
-            initializeListMap();
-        try {
-            Class<?> headerClass = sipHeader.getClass();
-            Class<?> listClass =  headerListTable.get(headerClass);
-            SIPHeaderList<SIPHeader> shl = (SIPHeaderList<SIPHeader>) listClass.newInstance();
+        if (sipHeader instanceof SIPHeaderList)
+            return null;
+        SIPHeaderList<SIPHeader> shl = (SIPHeaderList<SIPHeader>) newList(sipHeader.getClass()
+                .getName());
+        if (shl != null)
             shl.setHeaderName(sipHeader.getName());
-            return shl;
-        } catch (InstantiationException ex) {
-            ex.printStackTrace();
-        } catch (IllegalAccessException ex) {
-            ex.printStackTrace();
-        }
-        return null;
+        return shl;
     }
 
 }
-
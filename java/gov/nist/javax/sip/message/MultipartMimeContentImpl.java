@@ -4,6 +4,9 @@ import gov.nist.javax.sip.header.HeaderFactoryExt;
 import gov.nist.javax.sip.header.HeaderFactoryImpl;
 import gov.nist.javax.sip.parser.StringMsgParser;
 
+import gov.nist.core.InternalErrorHandler;
+
+import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -83,66 +86,139 @@ public class MultipartMimeContentImpl implements MultipartMimeContent {
      */
     public void createContentList(String body) throws ParseException {
         try {
-            HeaderFactoryExt headerFactory = new HeaderFactoryImpl();
-            String delimiter = this.getContentTypeHeader().getParameter(BOUNDARY);
-
-            if (delimiter == null) {
-                this.contentList = new LinkedList<Content>();
-                ContentImpl content = new ContentImpl(body, delimiter);
-                content.setContentTypeHeader(this.getContentTypeHeader());
-                this.contentList.add(content);
-                return;
-            }
+            byte[] bytes = body.getBytes("UTF-8");
+            createContentList(bytes, 0, bytes.length, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            InternalErrorHandler.handleException(ex);
+        }
+    }
 
-            String[] fragments = body.split("--" + delimiter + "\r\n");
-
-
-            for (String nextPart : fragments) {
-                // NOTE - we are not hanlding line folding for the sip header here.
-
-                if (nextPart == null) {
-                    return;
-                }
-                StringBuffer strbuf = new StringBuffer(nextPart);
-                while (strbuf.length() > 0
-                        && (strbuf.charAt(0) == '\r' || strbuf.charAt(0) == '\n'))
-                    strbuf.deleteCharAt(0);
-
-                if (strbuf.length() == 0)
-                    continue;
-                nextPart = strbuf.toString();
-                int position = nextPart.indexOf("\r\n\r\n");
-                int off = 4;
-                if (position == -1) {
-                    position = nextPart.indexOf("\n");
-                    off = 2;
-                }
-                if (position == -1)
-                    throw new ParseException("no content type header found in " + nextPart, 0);
-                String rest = nextPart.substring(position + off);
-
-                if (rest == null)
-                    throw new ParseException("No content [" + nextPart + "]", 0);
-                // logger.debug("rest = [[" + rest + "]]");
-                String headers = nextPart.substring(0, position);
-                ContentImpl content = new ContentImpl(rest, boundary);
-
-                String[] headerArray = headers.split("\r\n");
-                for (String hdr : headerArray) {
-                    Header header = headerFactory.createHeader(hdr);
-                    if (header instanceof ContentTypeHeader) {
-                        content.setContentTypeHeader((ContentTypeHeader) header);
-                    } else if (header instanceof ContentDispositionHeader) {
-                        content.setContentDispositionHeader((ContentDispositionHeader) header);
-                    } else {
-                        throw new ParseException("Unexpected header type " + header.getName(), 0);
-                    }
-                    contentList.add(content);
-                }
+    /**
+     * Unpack a multipart mime body held in a region of a byte array. The part boundaries are
+     * located by scanning the bytes; only the part headers are decoded. The content of each part
+     * refers to the given buffer and is decoded when it is first asked for.
+     * 
+     * @param body -- buffer holding the body.
+     * @param offset -- start of the body in the buffer.
+     * @param length -- length of the body.
+     * @param charset -- charset used to decode the parts.
+     */
+    public void createContentList(byte[] body, int offset, int length, String charset)
+            throws ParseException {
+        if (body == null)
+            return;
+        String delimiter = this.getContentTypeHeader().getParameter(BOUNDARY);
+
+        if (delimiter == null) {
+            this.contentList = new LinkedList<Content>();
+            ContentImpl content = new ContentImpl(body, offset, length, charset, delimiter);
+            content.setContentTypeHeader(this.getContentTypeHeader());
+            this.contentList.add(content);
+            return;
+        }
 
+        HeaderFactoryExt headerFactory = new HeaderFactoryImpl();
+        byte[] dashBoundary = ("--" + delimiter).getBytes();
+        int end = offset + length;
+        // The preamble before the first delimiter is ignored.
+        int position = findDelimiter(body, dashBoundary, offset, end);
+        while (position >= 0) {
+            int p = position + dashBoundary.length;
+            // Close delimiter.
+            if (p + 1 < end && body[p] == '-' && body[p + 1] == '-')
+                break;
+            // Skip transport padding up to the end of the delimiter line.
+            while (p < end && body[p] != '\n')
+                p++;
+            int partStart = p + 1;
+            if (partStart >= end)
+                break;
+            int nextDelimiter = findDelimiter(body, dashBoundary, partStart, end);
+            int partEnd = nextDelimiter < 0 ? end : nextDelimiter;
+
+            ContentImpl content = createContent(headerFactory, body, partStart, partEnd, charset);
+            contentList.add(content);
+            position = nextDelimiter;
+        }
+    }
+
+    /*
+     * Parse the headers of one part and create its content. The part ends just before the next
+     * delimiter line, so the content keeps the line break that precedes the delimiter.
+     */
+    private ContentImpl createContent(HeaderFactoryExt headerFactory, byte[] body, int start,
+            int end, String charset) throws ParseException {
+        List<String> headers = new LinkedList<String>();
+        int p = start;
+        int contentStart = -1;
+        String currentHeader = null;
+        while (p < end) {
+            int lineEnd = p;
+            while (lineEnd < end && body[lineEnd] != '\n')
+                lineEnd++;
+            int next = lineEnd + 1;
+            if (lineEnd > p && body[lineEnd - 1] == '\r')
+                lineEnd--;
+            if (lineEnd == p) {
+                // Empty line: end of the part headers.
+                contentStart = next;
+                break;
+            }
+            String line = decode(body, p, lineEnd - p, charset);
+            if ((body[p] == ' ' || body[p] == '\t') && currentHeader != null) {
+                currentHeader = currentHeader + line.substring(1);
+            } else {
+                if (currentHeader != null)
+                    headers.add(currentHeader);
+                currentHeader = line;
+            }
+            p = next;
+        }
+        if (contentStart < 0)
+            throw new ParseException("no content type header found in "
+                    + decode(body, start, end - start, charset), 0);
+        if (currentHeader != null)
+            headers.add(currentHeader);
+
+        ContentImpl content = new ContentImpl(body, contentStart, Math.max(end - contentStart, 0),
+                charset, boundary);
+        for (String hdr : headers) {
+            Header header = headerFactory.createHeader(hdr);
+            if (header instanceof ContentTypeHeader) {
+                content.setContentTypeHeader((ContentTypeHeader) header);
+            } else if (header instanceof ContentDispositionHeader) {
+                content.setContentDispositionHeader((ContentDispositionHeader) header);
+            } else {
+                throw new ParseException("Unexpected header type " + header.getName(), 0);
             }
-        } catch (StringIndexOutOfBoundsException ex) {
-            throw new ParseException("Invalid Multipart mime format", 0);
+        }
+        return content;
+    }
+
+    /*
+     * Find the next delimiter that starts a line at or after position from (which is itself the
+     * start of a line).
+     */
+    private static int findDelimiter(byte[] body, byte[] dashBoundary, int from, int end) {
+        int last = end - dashBoundary.length;
+        for (int i = from; i <= last; i++) {
+            if (i > from && body[i - 1] != '\n')
+                continue;
+            int j = 0;
+            while (j < dashBoundary.length && body[i + j] == dashBoundary[j])
+                j++;
+            if (j == dashBoundary.length)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String decode(byte[] body, int offset, int length, String charset) {
+        try {
+            return new String(body, offset, length, charset);
+        } catch (UnsupportedEncodingException ex) {
+            InternalErrorHandler.handleException(ex);
+            return null;
         }
     }
 
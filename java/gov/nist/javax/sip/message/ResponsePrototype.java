@@ -0,0 +1,264 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.message;
+
+import gov.nist.core.InternalErrorHandler;
+import gov.nist.core.Separators;
+import gov.nist.javax.sip.header.ContentLength;
+import gov.nist.javax.sip.header.SIPHeader;
+import gov.nist.javax.sip.header.SIPHeaderList;
+import gov.nist.javax.sip.header.StatusLine;
+import gov.nist.javax.sip.header.Via;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.Iterator;
+
+import javax.sip.header.Header;
+import javax.sip.header.ServerHeader;
+
+/**
+ * A pre-encoded template for responses the stack (or the application) sends over and over
+ * again with the same status, such as 100 Trying, 481 Call/Transaction Does Not Exist or the
+ * 200 OK to an OPTIONS keepalive. The status line and the static headers (the default Server
+ * header plus the headers given to the constructor, for example Allow and Supported) are
+ * encoded once, together with Content-Length: 0. Encoding a response created from the
+ * prototype only encodes the headers taken from the request (Via, From, To, Call-ID, CSeq)
+ * and copies the pre-encoded parts around them into the outgoing byte array.
+ * <p>
+ * The response is a regular SIPResponse, so transactions, dialogs and the message log see
+ * no difference. It may even be modified: the pre-encoded parts are used only as long as
+ * the status line, the static headers and the empty body are left as they were, otherwise
+ * the response is encoded as usual. The static headers are shared by all the responses
+ * created from a prototype and must not be modified.
+ * <p>
+ * The prototype follows changes of MessageFactoryImpl's default Server header.
+ *
+ * @since 2.0
+ */
+public class ResponsePrototype {
+
+    private static final byte[] CONTENT_LENGTH_ZERO = (ContentLength.NAME + Separators.COLON
+            + Separators.SP + "0" + Separators.NEWLINE + Separators.NEWLINE).getBytes();
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final int statusCode;
+
+    private final String reasonPhrase;
+
+    private final SIPHeader[] headers;
+
+    private volatile Encoding encoding;
+
+    /**
+     * The pre-encoded parts for a given default Server header.
+     */
+    static final class Encoding {
+
+        private final ServerHeader server;
+
+        private final int statusCode;
+
+        private final String reasonPhrase;
+
+        private final SIPHeader[] headers;
+
+        private final byte[] statusLine;
+
+        private final byte[] trailer;
+
+        private Encoding(ResponsePrototype prototype, ServerHeader server) {
+            this.server = server;
+            this.statusCode = prototype.statusCode;
+            this.reasonPhrase = prototype.reasonPhrase;
+            if (server == null) {
+                this.headers = prototype.headers;
+            } else {
+                this.headers = new SIPHeader[prototype.headers.length + 1];
+                System.arraycopy(prototype.headers, 0, this.headers, 0,
+                        prototype.headers.length);
+                this.headers[prototype.headers.length] = (SIPHeader) server;
+            }
+            StatusLine line = new StatusLine();
+            line.setStatusCode(prototype.statusCode);
+            line.setReasonPhrase(prototype.reasonPhrase);
+            StringBuffer trailer = new StringBuffer();
+            for (SIPHeader header : this.headers)
+                header.encode(trailer);
+            try {
+                this.statusLine = line.encode().getBytes("UTF-8");
+                byte[] encoded = trailer.toString().getBytes("UTF-8");
+                this.trailer = new byte[encoded.length + CONTENT_LENGTH_ZERO.length];
+                System.arraycopy(encoded, 0, this.trailer, 0, encoded.length);
+                System.arraycopy(CONTENT_LENGTH_ZERO, 0, this.trailer, encoded.length,
+                        CONTENT_LENGTH_ZERO.length);
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        /**
+         * Encode a response created from this prototype, or return null when the response was
+         * changed in a way the pre-encoded parts no longer describe.
+         */
+        byte[] encodeAsBytes(SIPResponse response, String transport) {
+            if (response.getContentLength().getContentLength() != 0 || response.hasContent()
+                    || response.getContent() != null)
+                return null;
+
+            Via topVia = (Via) response.getHeader(Via.NAME);
+            if (topVia == null)
+                return null;
+            try {
+                topVia.setTransport(transport);
+            } catch (ParseException e) {
+                InternalErrorHandler.handleException(e);
+            }
+
+            StringBuffer encoding = new StringBuffer(256);
+            StatusLine line = response.statusLine;
+            boolean sameStatusLine = line.getStatusCode() == statusCode
+                    && reasonPhrase.equals(line.getReasonPhrase());
+            if (!sameStatusLine)
+                encoding.append(line.encode());
+            int found = 0;
+            synchronized (response.headers) {
+                Iterator<SIPHeader> it = response.headers.iterator();
+                while (it.hasNext()) {
+                    SIPHeader header = it.next();
+                    if (header instanceof ContentLength)
+                        continue;
+                    if (isStatic(header))
+                        found++;
+                    else
+                        header.encode(encoding);
+                }
+            }
+            if (found != headers.length)
+                return null;
+            for (String unrecognized : response.unrecognizedHeaders)
+                encoding.append(unrecognized).append(Separators.NEWLINE);
+
+            byte[] head = sameStatusLine ? statusLine : NO_BYTES;
+            int count = encoding.length();
+            char[] chars = new char[count];
+            encoding.getChars(0, count, chars, 0);
+            byte[] retval = new byte[head.length + count + trailer.length];
+            for (int i = 0, j = head.length; i < count; i++, j++) {
+                if (chars[i] >= 0x80)
+                    return concat(head, toBytes(chars, response.getCharset()));
+                retval[j] = (byte) chars[i];
+            }
+            System.arraycopy(head, 0, retval, 0, head.length);
+            System.arraycopy(trailer, 0, retval, head.length + count, trailer.length);
+            return retval;
+        }
+
+        private byte[] concat(byte[] head, byte[] middle) {
+            byte[] retval = new byte[head.length + middle.length + trailer.length];
+            System.arraycopy(head, 0, retval, 0, head.length);
+            System.arraycopy(middle, 0, retval, head.length, middle.length);
+            System.arraycopy(trailer, 0, retval, head.length + middle.length, trailer.length);
+            return retval;
+        }
+
+        private boolean isStatic(SIPHeader header) {
+            for (SIPHeader h : headers) {
+                if (h == header)
+                    return true;
+            }
+            return false;
+        }
+
+        private static byte[] toBytes(char[] chars, String charset) {
+            try {
+                return new String(chars).getBytes(charset);
+            } catch (UnsupportedEncodingException ex) {
+                InternalErrorHandler.handleException(ex);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Create a prototype.
+     *
+     * @param statusCode the status code of the responses.
+     * @param reasonPhrase the reason phrase, or null for the default one of the status code.
+     * @param headers static headers added to every response, for example Allow and Supported
+     *        for OPTIONS responses. The default Server header is added automatically.
+     */
+    public ResponsePrototype(int statusCode, String reasonPhrase, Header... headers) {
+        if (statusCode < 100 || statusCode > 699)
+            throw new IllegalArgumentException("Bad code " + statusCode);
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase != null ? reasonPhrase : SIPResponse
+                .getReasonPhrase(statusCode);
+        this.headers = new SIPHeader[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            // Headers that a message holds in a list are put in their list here, the message
+            // would otherwise hold a new list instead of the header itself.
+            SIPHeader header = (SIPHeader) headers[i];
+            SIPHeaderList<SIPHeader> list = ListMap.getList(header);
+            if (list != null) {
+                list.add(header);
+                header = list;
+            }
+            this.headers[i] = header;
+        }
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    /**
+     * Create a response to the given request, in the same way as
+     * {@link SIPRequest#createResponse(int, String)}, that encodes from the pre-encoded
+     * parts of this prototype.
+     *
+     * @param request the request to respond to.
+     * @return the response.
+     */
+    public SIPResponse createResponse(SIPRequest request) {
+        ServerHeader server = MessageFactoryImpl.getDefaultServerHeader();
+        Encoding current = this.encoding;
+        if (current == null || current.server != server) {
+            current = new Encoding(this, server);
+            this.encoding = current;
+        }
+        SIPResponse response = request.createResponse(statusCode, reasonPhrase);
+        for (SIPHeader header : headers)
+            response.setHeader(header);
+        response.setPrototype(current);
+        return response;
+    }
+}
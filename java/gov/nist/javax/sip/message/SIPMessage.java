@@ -167,6 +167,16 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
 
     private byte[] messageContentBytes;
 
+    // The payload is messageContentBytes[offset, offset + length). When the
+    // message is parsed from a byte array the payload is a slice of the
+    // receive buffer, which is never written to, so it is shared rather
+    // than copied.
+    private int messageContentOffset;
+
+    private int messageContentLength;
+
+    private boolean messageContentShared;
+
     private Object messageContentObject;
 
     // Table of headers indexed by name.
@@ -386,7 +396,8 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
                     content = messageContent;
                 else {
                 	// JvB: Check for 'charset' parameter which overrides the default UTF-8
-                    content = new String(messageContentBytes, getCharset() );
+                    content = new String(messageContentBytes, messageContentOffset,
+                            messageContentLength, getCharset());
                 }
             } catch (UnsupportedEncodingException ex) {
             	InternalErrorHandler.handleException(ex);
@@ -433,7 +444,9 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
         encoding.append(NEWLINE);
 
         byte[] retval = null;
-        byte[] content = this.getRawContent();
+        if (this.messageContentBytes == null)
+            this.getRawContent();
+        byte[] content = this.messageContentBytes;
         if (content != null) {
             // Append the content
 
@@ -444,9 +457,10 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
                 InternalErrorHandler.handleException(ex);
             }
 
-            retval = new byte[msgarray.length + content.length];
+            retval = new byte[msgarray.length + messageContentLength];
             System.arraycopy(msgarray, 0, retval, 0, msgarray.length);
-            System.arraycopy(content, 0, retval, msgarray.length, content.length);
+            System.arraycopy(content, messageContentOffset, retval, msgarray.length,
+                    messageContentLength);
         } else {
             // Message content does not exist.
 
@@ -482,12 +496,13 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
             retval.headers = new ConcurrentLinkedQueue<SIPHeader>();
             for (Iterator<SIPHeader> iter = headers.iterator(); iter.hasNext();) {
                 SIPHeader hdr = (SIPHeader) iter.next();
-                retval.attachHeader((SIPHeader) hdr.clone());
+                retval.attachHeader(hdr.copyOnWrite());
             }
 
         }
-        if (this.messageContentBytes != null)
+        if (this.messageContentBytes != null && !this.messageContentShared) {
             retval.messageContentBytes = (byte[]) this.messageContentBytes.clone();
+        }
         if (this.messageContentObject != null)
             retval.messageContentObject = makeClone(messageContentObject);
         retval.unrecognizedHeaders = this.unrecognizedHeaders;
@@ -644,8 +659,8 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
 
         SIPHeader h;
 
-        if (ListMap.hasList(header) && !SIPHeaderList.class.isAssignableFrom(header.getClass())) {
-            SIPHeaderList<SIPHeader> hdrList = ListMap.getList(header);
+        SIPHeaderList<SIPHeader> hdrList = ListMap.getList(header);
+        if (hdrList != null) {
             hdrList.add(header);
             h = hdrList;
         } else {
@@ -669,12 +684,13 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
 
         SIPHeader originalHeader = (SIPHeader) getHeader(header.getName());
 
-        // Delete the original header from our list structure.
+        // Delete the original header from our list structure. It is one of the objects
+        // held in the list, so compare by identity instead of calling equals on every header.
         if (originalHeader != null) {
             Iterator<SIPHeader> li = headers.iterator();
             while (li.hasNext()) {
                 SIPHeader next = (SIPHeader) li.next();
-                if (next.equals(originalHeader)) {
+                if (next == originalHeader) {
                     li.remove();
                 }
             }
@@ -1174,7 +1190,8 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
         if (this.messageContent == null && this.messageContentBytes == null)
             return null;
         else if (this.messageContent == null) {
-            this.messageContent = new String(messageContentBytes, getCharset() );
+            this.messageContent = new String(messageContentBytes, messageContentOffset,
+                    messageContentLength, getCharset());
         }
         return this.messageContent;
     }
@@ -1189,12 +1206,19 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
     public byte[] getRawContent() {
         try {
             if ( this.messageContentBytes != null ) {
-                // return messageContentBytes;
+                if (messageContentOffset != 0
+                        || messageContentLength != messageContentBytes.length) {
+                    // Detach the payload from the receive buffer.
+                    byte[] content = new byte[messageContentLength];
+                    System.arraycopy(messageContentBytes, messageContentOffset, content, 0,
+                            messageContentLength);
+                    setContentBytes(content);
+                }
             } else if (this.messageContentObject != null) {
                 String messageContent = this.messageContentObject.toString();
-                this.messageContentBytes = messageContent.getBytes( getCharset() );
+                setContentBytes(messageContent.getBytes( getCharset() ));
             } else if (this.messageContent != null) {
-            	this.messageContentBytes = messageContent.getBytes( getCharset() );                
+            	setContentBytes(messageContent.getBytes( getCharset() ));
             }
             return this.messageContentBytes;
         } catch (UnsupportedEncodingException ex) {
@@ -1242,7 +1266,7 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
         if (content instanceof String) {
             this.messageContent = (String) content;
         } else if (content instanceof byte[]) {
-            this.messageContentBytes = (byte[]) content;
+            setContentBytes((byte[]) content);
         } else
             this.messageContentObject = content;
 
@@ -1260,7 +1284,7 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
         else if (this.messageContent != null)
             return this.messageContent;
         else if (this.messageContentBytes != null)
-            return this.messageContentBytes;
+            return this.getRawContent();
         else
             return null;
     }
@@ -1311,11 +1335,21 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
     public void setMessageContent(byte[] content) {
         computeContentLength(content);
 
-        messageContentBytes = content;
+        setContentBytes(content);
         messageContent = null;
         messageContentObject = null;
     }
 
+    /*
+     * Set the payload to a whole byte array owned by this message.
+     */
+    private void setContentBytes(byte[] content) {
+        messageContentBytes = content;
+        messageContentOffset = 0;
+        messageContentLength = content == null ? 0 : content.length;
+        messageContentShared = false;
+    }
+
     /**
      * Method to set the content - called by the parser
      * 
@@ -1330,7 +1364,32 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
             throw new ParseException("Invalid content length "
                     + this.contentLengthHeader.getContentLength() + " / " + givenLength, 0);
         }
-        messageContentBytes = content;
+        setContentBytes(content);
+        messageContent = null;
+        messageContentObject = null;
+    }
+
+    /**
+     * Method to set the content to a region of the buffer that the message was parsed from -
+     * called by the parser. The region is not copied; the buffer must not be modified
+     * afterwards. The payload is decoded or copied only when the application asks for it.
+     * 
+     * @param buffer -- the buffer holding the payload.
+     * @param offset -- where the payload starts in the buffer.
+     * @param length -- length of the payload.
+     * @throws ParseException
+     */
+    public void setMessageContent(byte[] buffer, int offset, int length,
+            boolean computeContentLength, int givenLength) throws ParseException {
+        setContentLength(length);
+        if ((!computeContentLength) && this.contentLengthHeader.getContentLength() < givenLength) {
+            throw new ParseException("Invalid content length "
+                    + this.contentLengthHeader.getContentLength() + " / " + givenLength, 0);
+        }
+        messageContentBytes = buffer;
+        messageContentOffset = offset;
+        messageContentLength = length;
+        messageContentShared = true;
         messageContent = null;
         messageContentObject = null;
     }
@@ -1355,7 +1414,10 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
                 length = content.toString().length();
             }
         }
+        setContentLength(length);
+    }
 
+    private void setContentLength(int length) {
         try {
             contentLengthHeader.setContentLength(length);
         } catch (InvalidArgumentException e) {
@@ -1368,7 +1430,7 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
      */
     public void removeContent() {
         messageContent = null;
-        messageContentBytes = null;
+        setContentBytes(null);
         messageContentObject = null;
         try {
             this.contentLengthHeader.setContentLength(0);
@@ -1823,15 +1885,11 @@ public abstract class SIPMessage extends MessageObject implements javax.sip.mess
         }
         MultipartMimeContentImpl retval = new MultipartMimeContentImpl(this
                 .getContentTypeHeader());
-        byte[] rawContent = getRawContent();
-		try {
-			String body = new String( rawContent, getCharset() );
-	        retval.createContentList(body);
-	        return retval;
-		} catch (UnsupportedEncodingException e) {
-			InternalErrorHandler.handleException(e);
-			return null;
-		}
+        if (this.messageContentBytes == null)
+            getRawContent();
+        retval.createContentList(this.messageContentBytes, this.messageContentOffset,
+                this.messageContentLength, getCharset());
+        return retval;
     }
     
     public CallIdHeader getCallIdHeader() {
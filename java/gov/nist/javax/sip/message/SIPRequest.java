@@ -710,16 +710,12 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
 
                 try {
 
-                    newResponse.attachHeader((SIPHeader) nextHeader.clone(), false);
+                    newResponse.attachHeader(nextHeader.copyOnWrite(), false);
                 } catch (SIPDuplicateHeaderException e) {
                     e.printStackTrace();
                 }
             }
         }
-        if (MessageFactoryImpl.getDefaultServerHeader() != null) {
-            newResponse.setHeader(MessageFactoryImpl.getDefaultServerHeader());
-
-        }
         if (newResponse.getStatusCode() == 100) {
             // Trying is never supposed to have the tag parameter set.
             newResponse.getTo().removeParameter("tag");
@@ -774,25 +770,25 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
         SIPRequest cancel = new SIPRequest();
         cancel.setRequestLine((RequestLine) this.requestLine.clone());
         cancel.setMethod(Request.CANCEL);
-        cancel.setHeader((Header) this.callIdHeader.clone());
-        cancel.setHeader((Header) this.toHeader.clone());
-        cancel.setHeader((Header) cSeqHeader.clone());
+        cancel.setHeader(this.callIdHeader.copyOnWrite());
+        cancel.setHeader(this.toHeader.copyOnWrite());
+        cancel.setHeader(cSeqHeader.copyOnWrite());
         try {
             cancel.getCSeq().setMethod(Request.CANCEL);
         } catch (ParseException e) {
             e.printStackTrace(); // should not happen
         }
-        cancel.setHeader((Header) this.fromHeader.clone());
+        cancel.setHeader(this.fromHeader.copyOnWrite());
 
-        cancel.addFirst((Header) this.getTopmostVia().clone());
-        cancel.setHeader((Header) this.maxForwardsHeader.clone());
+        cancel.addFirst(this.getTopmostVia().copyOnWrite());
+        cancel.setHeader(this.maxForwardsHeader.copyOnWrite());
 
         /*
          * If the request being cancelled contains a Route header field, the CANCEL request MUST
          * include that Route header field's values.
          */
         if (this.getRouteHeaders() != null) {
-            cancel.setHeader((SIPHeaderList< ? >) this.getRouteHeaders().clone());
+            cancel.setHeader(this.getRouteHeaders().copyOnWrite());
         }
         if (MessageFactoryImpl.getDefaultUserAgentHeader() != null) {
             cancel.setHeader(MessageFactoryImpl.getDefaultUserAgentHeader());
@@ -858,7 +854,7 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
                 if (responseToHeader != null) {
                     nextHeader = responseToHeader;
                 } else {
-                    nextHeader = (SIPHeader) nextHeader.clone();
+                    nextHeader = nextHeader.copyOnWrite();
                 }
             } else if (nextHeader instanceof ContactList || nextHeader instanceof Expires) {
                 // CONTACT header does not apply for ACK requests.
@@ -870,9 +866,9 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
                 // field of the original
                 // request.
 
-                nextHeader = (SIPHeader) ((ViaList) nextHeader).getFirst().clone();
+                nextHeader = ((Via) ((ViaList) nextHeader).getFirst()).copyOnWrite();
             } else {
-                nextHeader = (SIPHeader) nextHeader.clone();
+                nextHeader = nextHeader.copyOnWrite();
             }
 
             try {
@@ -916,14 +912,14 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
         SIPRequest newRequest = new SIPRequest();
         newRequest.setRequestLine((RequestLine) this.requestLine.clone());
         newRequest.setMethod(Request.ACK);
-        newRequest.setHeader((Header) this.callIdHeader.clone());
-        newRequest.setHeader((Header) this.maxForwardsHeader.clone()); // ISSUE
+        newRequest.setHeader(this.callIdHeader.copyOnWrite());
+        newRequest.setHeader(this.maxForwardsHeader.copyOnWrite()); // ISSUE
         // 130
         // fix
-        newRequest.setHeader((Header) this.fromHeader.clone());
-        newRequest.setHeader((Header) responseToHeader.clone());
-        newRequest.addFirst((Header) this.getTopmostVia().clone());
-        newRequest.setHeader((Header) cSeqHeader.clone());
+        newRequest.setHeader(this.fromHeader.copyOnWrite());
+        newRequest.setHeader(responseToHeader.copyOnWrite());
+        newRequest.addFirst(this.getTopmostVia().copyOnWrite());
+        newRequest.setHeader(cSeqHeader.copyOnWrite());
         newRequest.getCSeq().setMethod(Request.ACK);
 
         /*
@@ -932,7 +928,7 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
          * routed properly through any downstream stateless proxies.
          */
         if (this.getRouteHeaders() != null) {
-            newRequest.setHeader((SIPHeaderList) this.getRouteHeaders().clone());
+            newRequest.setHeader(this.getRouteHeaders().copyOnWrite());
         }
         if (MessageFactoryImpl.getDefaultUserAgentHeader() != null) {
             newRequest.setHeader(MessageFactoryImpl.getDefaultUserAgentHeader());
@@ -989,7 +985,7 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
                 } catch (ParseException e) {
                 }
             } else if (nextHeader instanceof ViaList) {
-                Via via = (Via) (((ViaList) nextHeader).getFirst().clone());
+                Via via = (Via) ((Via) ((ViaList) nextHeader).getFirst()).copyOnWrite();
                 via.removeParameter("branch");
                 nextHeader = via;
                 // Cancel and ACK preserve the branch ID.
@@ -999,7 +995,7 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
                     nextHeader = new From(to);
                     ((From) nextHeader).removeTag();
                 } else {
-                    nextHeader = (SIPHeader) to.clone();
+                    nextHeader = to.copyOnWrite();
                     ((To) nextHeader).removeTag();
                 }
             } else if (nextHeader instanceof From) {
@@ -1008,7 +1004,7 @@ public final class SIPRequest extends SIPMessage implements javax.sip.message.Re
                     nextHeader = new To(from);
                     ((To) nextHeader).removeTag();
                 } else {
-                    nextHeader = (SIPHeader) from.clone();
+                    nextHeader = from.copyOnWrite();
                     ((From) nextHeader).removeTag();
                 }
             } else if (nextHeader instanceof ContentLength) {
@@ -73,6 +73,11 @@ public final class SIPResponse
     implements javax.sip.message.Response, ResponseExt {
     protected StatusLine statusLine;
 
+    /**
+     * The pre-encoded parts of the prototype this response was created from, if any.
+     */
+    private ResponsePrototype.Encoding prototype;
+
     public static String getReasonPhrase(int rc) {
         String retval = null;
         switch (rc) {
@@ -481,6 +486,7 @@ public final class SIPResponse
         SIPResponse retval = (SIPResponse) super.clone();
         if (this.statusLine != null)
             retval.statusLine = (StatusLine) this.statusLine.clone();
+        retval.prototype = null;
         return retval;
     }
 
@@ -531,6 +537,11 @@ public final class SIPResponse
      */
 
     public byte[] encodeAsBytes( String transport ) {
+        if (prototype != null && statusLine != null) {
+            byte[] retval = prototype.encodeAsBytes(this, transport);
+            if (retval != null)
+                return retval;
+        }
         byte[] slbytes = null;
         if (statusLine != null) {
             try {
@@ -549,6 +560,13 @@ public final class SIPResponse
 
 
 
+    /**
+     * Record the prototype this response was created from.
+     */
+    void setPrototype(ResponsePrototype.Encoding prototype) {
+        this.prototype = prototype;
+    }
+
     /** Get a dialog identifier.
      * Generates a string that can be used as a dialog identifier.
      *
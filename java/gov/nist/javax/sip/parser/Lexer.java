@@ -88,237 +88,254 @@ public class Lexer extends LexerCore {
         return headerValue;
     }
 
+    /**
+     * The lexers of the SIP parser. Their keyword tables are built when the class is loaded
+     * and are not modified afterwards, so selecting a lexer is a lookup without a lock.
+     */
+    private static final String[] KEYWORD_LEXERS = { "method_keywordLexer",
+            "command_keywordLexer", "status_lineLexer", "request_lineLexer", "sip_urlLexer",
+            "charLexer" };
+
+    static {
+        for (int i = 0; i < KEYWORD_LEXERS.length; i++) {
+            Hashtable<String, Integer> table = new Hashtable<String, Integer>();
+            addKeywords(KEYWORD_LEXERS[i], table);
+            lexerTables.put(KEYWORD_LEXERS[i], table);
+        }
+    }
+
     public void selectLexer(String lexerName) {
-        synchronized (lexerTables) {
-            // Synchronization Bug fix by Robert Rosen.
-            currentLexer = (Hashtable) lexerTables.get(lexerName);
-            this.currentLexerName = lexerName;
-            if (currentLexer == null) {
-                addLexer(lexerName);
-                if (lexerName.equals("method_keywordLexer")) {
-                    addKeyword(TokenNames.REGISTER, TokenTypes.REGISTER);
-                    addKeyword(TokenNames.ACK, TokenTypes.ACK);
-                    addKeyword(TokenNames.OPTIONS, TokenTypes.OPTIONS);
-                    addKeyword(TokenNames.BYE, TokenTypes.BYE);
-                    addKeyword(TokenNames.INVITE, TokenTypes.INVITE);
-                    addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-                    addKeyword(TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
-                    addKeyword(TokenNames.SUBSCRIBE, TokenTypes.SUBSCRIBE);
-                    addKeyword(TokenNames.NOTIFY, TokenTypes.NOTIFY);
-                    addKeyword(TokenNames.MESSAGE, TokenTypes.MESSAGE);
+        currentLexer = lexerTables.get(lexerName);
+        this.currentLexerName = lexerName;
+        if (currentLexer == null) {
+            // A lexer without keywords.
+            addLexer(lexerName);
+        }
+    }
+
+    private static void addKeywords(String lexerName, Hashtable<String, Integer> table) {
+        if (lexerName.equals("method_keywordLexer")) {
+            addKeyword(table, TokenNames.REGISTER, TokenTypes.REGISTER);
+            addKeyword(table, TokenNames.ACK, TokenTypes.ACK);
+            addKeyword(table, TokenNames.OPTIONS, TokenTypes.OPTIONS);
+            addKeyword(table, TokenNames.BYE, TokenTypes.BYE);
+            addKeyword(table, TokenNames.INVITE, TokenTypes.INVITE);
+            addKeyword(table, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+            addKeyword(table, TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
+            addKeyword(table, TokenNames.SUBSCRIBE, TokenTypes.SUBSCRIBE);
+            addKeyword(table, TokenNames.NOTIFY, TokenTypes.NOTIFY);
+            addKeyword(table, TokenNames.MESSAGE, TokenTypes.MESSAGE);
 
-                    // JvB: added to support RFC3903
-                    addKeyword(TokenNames.PUBLISH, TokenTypes.PUBLISH);
+            // JvB: added to support RFC3903
+            addKeyword(table, TokenNames.PUBLISH, TokenTypes.PUBLISH);
 
-                } else if (lexerName.equals("command_keywordLexer")) {
-                    addKeyword(ErrorInfoHeader.NAME.toUpperCase(),
-                            TokenTypes.ERROR_INFO);
-                    addKeyword(AllowEventsHeader.NAME.toUpperCase(),
-                            TokenTypes.ALLOW_EVENTS);
-                    addKeyword(AuthenticationInfoHeader.NAME.toUpperCase(),
-                            TokenTypes.AUTHENTICATION_INFO);
-                    addKeyword(EventHeader.NAME.toUpperCase(), TokenTypes.EVENT);
-                    addKeyword(MinExpiresHeader.NAME.toUpperCase(),
-                            TokenTypes.MIN_EXPIRES);
-                    addKeyword(RSeqHeader.NAME.toUpperCase(), TokenTypes.RSEQ);
-                    addKeyword(RAckHeader.NAME.toUpperCase(), TokenTypes.RACK);
-                    addKeyword(ReasonHeader.NAME.toUpperCase(),
-                            TokenTypes.REASON);
-                    addKeyword(ReplyToHeader.NAME.toUpperCase(),
-                            TokenTypes.REPLY_TO);
-                    addKeyword(SubscriptionStateHeader.NAME.toUpperCase(),
-                            TokenTypes.SUBSCRIPTION_STATE);
-                    addKeyword(TimeStampHeader.NAME.toUpperCase(),
-                            TokenTypes.TIMESTAMP);
-                    addKeyword(InReplyToHeader.NAME.toUpperCase(),
-                            TokenTypes.IN_REPLY_TO);
-                    addKeyword(MimeVersionHeader.NAME.toUpperCase(),
-                            TokenTypes.MIME_VERSION);
-                    addKeyword(AlertInfoHeader.NAME.toUpperCase(),
-                            TokenTypes.ALERT_INFO);
-                    addKeyword(FromHeader.NAME.toUpperCase(), TokenTypes.FROM);
-                    addKeyword(ToHeader.NAME.toUpperCase(), TokenTypes.TO);
-                    addKeyword(ReferToHeader.NAME.toUpperCase(),
-                            TokenTypes.REFER_TO);
-                    addKeyword(ViaHeader.NAME.toUpperCase(), TokenTypes.VIA);
-                    addKeyword(UserAgentHeader.NAME.toUpperCase(),
-                            TokenTypes.USER_AGENT);
-                    addKeyword(ServerHeader.NAME.toUpperCase(),
-                            TokenTypes.SERVER);
-                    addKeyword(AcceptEncodingHeader.NAME.toUpperCase(),
-                            TokenTypes.ACCEPT_ENCODING);
-                    addKeyword(AcceptHeader.NAME.toUpperCase(),
-                            TokenTypes.ACCEPT);
-                    addKeyword(AllowHeader.NAME.toUpperCase(), TokenTypes.ALLOW);
-                    addKeyword(RouteHeader.NAME.toUpperCase(), TokenTypes.ROUTE);
-                    addKeyword(AuthorizationHeader.NAME.toUpperCase(),
-                            TokenTypes.AUTHORIZATION);
-                    addKeyword(ProxyAuthorizationHeader.NAME.toUpperCase(),
-                            TokenTypes.PROXY_AUTHORIZATION);
-                    addKeyword(RetryAfterHeader.NAME.toUpperCase(),
-                            TokenTypes.RETRY_AFTER);
-                    addKeyword(ProxyRequireHeader.NAME.toUpperCase(),
-                            TokenTypes.PROXY_REQUIRE);
-                    addKeyword(ContentLanguageHeader.NAME.toUpperCase(),
-                            TokenTypes.CONTENT_LANGUAGE);
-                    addKeyword(UnsupportedHeader.NAME.toUpperCase(),
-                            TokenTypes.UNSUPPORTED);
-                    addKeyword(SupportedHeader.NAME.toUpperCase(),
-                            TokenTypes.SUPPORTED);
-                    addKeyword(WarningHeader.NAME.toUpperCase(),
-                            TokenTypes.WARNING);
-                    addKeyword(MaxForwardsHeader.NAME.toUpperCase(),
-                            TokenTypes.MAX_FORWARDS);
-                    addKeyword(DateHeader.NAME.toUpperCase(), TokenTypes.DATE);
-                    addKeyword(PriorityHeader.NAME.toUpperCase(),
-                            TokenTypes.PRIORITY);
-                    addKeyword(ProxyAuthenticateHeader.NAME.toUpperCase(),
-                            TokenTypes.PROXY_AUTHENTICATE);
-                    addKeyword(ContentEncodingHeader.NAME.toUpperCase(),
-                            TokenTypes.CONTENT_ENCODING);
-                    addKeyword(ContentLengthHeader.NAME.toUpperCase(),
-                            TokenTypes.CONTENT_LENGTH);
-                    addKeyword(SubjectHeader.NAME.toUpperCase(),
-                            TokenTypes.SUBJECT);
-                    addKeyword(ContentTypeHeader.NAME.toUpperCase(),
-                            TokenTypes.CONTENT_TYPE);
-                    addKeyword(ContactHeader.NAME.toUpperCase(),
-                            TokenTypes.CONTACT);
-                    addKeyword(CallIdHeader.NAME.toUpperCase(),
-                            TokenTypes.CALL_ID);
-                    addKeyword(RequireHeader.NAME.toUpperCase(),
-                            TokenTypes.REQUIRE);
-                    addKeyword(ExpiresHeader.NAME.toUpperCase(),
-                            TokenTypes.EXPIRES);
-                    addKeyword(RecordRouteHeader.NAME.toUpperCase(),
-                            TokenTypes.RECORD_ROUTE);
-                    addKeyword(OrganizationHeader.NAME.toUpperCase(),
-                            TokenTypes.ORGANIZATION);
-                    addKeyword(CSeqHeader.NAME.toUpperCase(), TokenTypes.CSEQ);
-                    addKeyword(AcceptLanguageHeader.NAME.toUpperCase(),
-                            TokenTypes.ACCEPT_LANGUAGE);
-                    addKeyword(WWWAuthenticateHeader.NAME.toUpperCase(),
-                            TokenTypes.WWW_AUTHENTICATE);
-                    addKeyword(CallInfoHeader.NAME.toUpperCase(),
-                            TokenTypes.CALL_INFO);
-                    addKeyword(ContentDispositionHeader.NAME.toUpperCase(),
-                            TokenTypes.CONTENT_DISPOSITION);
-                    // And now the dreaded short forms....
-                    addKeyword(TokenNames.K.toUpperCase(), TokenTypes.SUPPORTED);
-                    addKeyword(TokenNames.C.toUpperCase(),
-                            TokenTypes.CONTENT_TYPE);
-                    addKeyword(TokenNames.E.toUpperCase(),
-                            TokenTypes.CONTENT_ENCODING);
-                    addKeyword(TokenNames.F.toUpperCase(), TokenTypes.FROM);
-                    addKeyword(TokenNames.I.toUpperCase(), TokenTypes.CALL_ID);
-                    addKeyword(TokenNames.M.toUpperCase(), TokenTypes.CONTACT);
-                    addKeyword(TokenNames.L.toUpperCase(),
-                            TokenTypes.CONTENT_LENGTH);
-                    addKeyword(TokenNames.S.toUpperCase(), TokenTypes.SUBJECT);
-                    addKeyword(TokenNames.T.toUpperCase(), TokenTypes.TO);
-                    addKeyword(TokenNames.U.toUpperCase(),
-                            TokenTypes.ALLOW_EVENTS); // JvB: added
-                    addKeyword(TokenNames.V.toUpperCase(), TokenTypes.VIA);
-                    addKeyword(TokenNames.R.toUpperCase(), TokenTypes.REFER_TO);
-                    addKeyword(TokenNames.O.toUpperCase(), TokenTypes.EVENT); // Bug
-                                                                                // fix
-                                                                                // by
-                                                                                // Mario
-                                                                                // Mantak
-                    addKeyword(TokenNames.X.toUpperCase(), TokenTypes.SESSIONEXPIRES_TO); // Bug fix by Jozef Saniga
-                    
-                    // JvB: added to support RFC3903
-                    addKeyword(SIPETagHeader.NAME.toUpperCase(),
-                            TokenTypes.SIP_ETAG);
-                    addKeyword(SIPIfMatchHeader.NAME.toUpperCase(),
-                            TokenTypes.SIP_IF_MATCH);
+        } else if (lexerName.equals("command_keywordLexer")) {
+            addKeyword(table, ErrorInfoHeader.NAME.toUpperCase(),
+                    TokenTypes.ERROR_INFO);
+            addKeyword(table, AllowEventsHeader.NAME.toUpperCase(),
+                    TokenTypes.ALLOW_EVENTS);
+            addKeyword(table, AuthenticationInfoHeader.NAME.toUpperCase(),
+                    TokenTypes.AUTHENTICATION_INFO);
+            addKeyword(table, EventHeader.NAME.toUpperCase(), TokenTypes.EVENT);
+            addKeyword(table, MinExpiresHeader.NAME.toUpperCase(),
+                    TokenTypes.MIN_EXPIRES);
+            addKeyword(table, RSeqHeader.NAME.toUpperCase(), TokenTypes.RSEQ);
+            addKeyword(table, RAckHeader.NAME.toUpperCase(), TokenTypes.RACK);
+            addKeyword(table, ReasonHeader.NAME.toUpperCase(),
+                    TokenTypes.REASON);
+            addKeyword(table, ReplyToHeader.NAME.toUpperCase(),
+                    TokenTypes.REPLY_TO);
+            addKeyword(table, SubscriptionStateHeader.NAME.toUpperCase(),
+                    TokenTypes.SUBSCRIPTION_STATE);
+            addKeyword(table, TimeStampHeader.NAME.toUpperCase(),
+                    TokenTypes.TIMESTAMP);
+            addKeyword(table, InReplyToHeader.NAME.toUpperCase(),
+                    TokenTypes.IN_REPLY_TO);
+            addKeyword(table, MimeVersionHeader.NAME.toUpperCase(),
+                    TokenTypes.MIME_VERSION);
+            addKeyword(table, AlertInfoHeader.NAME.toUpperCase(),
+                    TokenTypes.ALERT_INFO);
+            addKeyword(table, FromHeader.NAME.toUpperCase(), TokenTypes.FROM);
+            addKeyword(table, ToHeader.NAME.toUpperCase(), TokenTypes.TO);
+            addKeyword(table, ReferToHeader.NAME.toUpperCase(),
+                    TokenTypes.REFER_TO);
+            addKeyword(table, ViaHeader.NAME.toUpperCase(), TokenTypes.VIA);
+            addKeyword(table, UserAgentHeader.NAME.toUpperCase(),
+                    TokenTypes.USER_AGENT);
+            addKeyword(table, ServerHeader.NAME.toUpperCase(),
+                    TokenTypes.SERVER);
+            addKeyword(table, AcceptEncodingHeader.NAME.toUpperCase(),
+                    TokenTypes.ACCEPT_ENCODING);
+            addKeyword(table, AcceptHeader.NAME.toUpperCase(),
+                    TokenTypes.ACCEPT);
+            addKeyword(table, AllowHeader.NAME.toUpperCase(), TokenTypes.ALLOW);
+            addKeyword(table, RouteHeader.NAME.toUpperCase(), TokenTypes.ROUTE);
+            addKeyword(table, AuthorizationHeader.NAME.toUpperCase(),
+                    TokenTypes.AUTHORIZATION);
+            addKeyword(table, ProxyAuthorizationHeader.NAME.toUpperCase(),
+                    TokenTypes.PROXY_AUTHORIZATION);
+            addKeyword(table, RetryAfterHeader.NAME.toUpperCase(),
+                    TokenTypes.RETRY_AFTER);
+            addKeyword(table, ProxyRequireHeader.NAME.toUpperCase(),
+                    TokenTypes.PROXY_REQUIRE);
+            addKeyword(table, ContentLanguageHeader.NAME.toUpperCase(),
+                    TokenTypes.CONTENT_LANGUAGE);
+            addKeyword(table, UnsupportedHeader.NAME.toUpperCase(),
+                    TokenTypes.UNSUPPORTED);
+            addKeyword(table, SupportedHeader.NAME.toUpperCase(),
+                    TokenTypes.SUPPORTED);
+            addKeyword(table, WarningHeader.NAME.toUpperCase(),
+                    TokenTypes.WARNING);
+            addKeyword(table, MaxForwardsHeader.NAME.toUpperCase(),
+                    TokenTypes.MAX_FORWARDS);
+            addKeyword(table, DateHeader.NAME.toUpperCase(), TokenTypes.DATE);
+            addKeyword(table, PriorityHeader.NAME.toUpperCase(),
+                    TokenTypes.PRIORITY);
+            addKeyword(table, ProxyAuthenticateHeader.NAME.toUpperCase(),
+                    TokenTypes.PROXY_AUTHENTICATE);
+            addKeyword(table, ContentEncodingHeader.NAME.toUpperCase(),
+                    TokenTypes.CONTENT_ENCODING);
+            addKeyword(table, ContentLengthHeader.NAME.toUpperCase(),
+                    TokenTypes.CONTENT_LENGTH);
+            addKeyword(table, SubjectHeader.NAME.toUpperCase(),
+                    TokenTypes.SUBJECT);
+            addKeyword(table, ContentTypeHeader.NAME.toUpperCase(),
+                    TokenTypes.CONTENT_TYPE);
+            addKeyword(table, ContactHeader.NAME.toUpperCase(),
+                    TokenTypes.CONTACT);
+            addKeyword(table, CallIdHeader.NAME.toUpperCase(),
+                    TokenTypes.CALL_ID);
+            addKeyword(table, RequireHeader.NAME.toUpperCase(),
+                    TokenTypes.REQUIRE);
+            addKeyword(table, ExpiresHeader.NAME.toUpperCase(),
+                    TokenTypes.EXPIRES);
+            addKeyword(table, RecordRouteHeader.NAME.toUpperCase(),
+                    TokenTypes.RECORD_ROUTE);
+            addKeyword(table, OrganizationHeader.NAME.toUpperCase(),
+                    TokenTypes.ORGANIZATION);
+            addKeyword(table, CSeqHeader.NAME.toUpperCase(), TokenTypes.CSEQ);
+            addKeyword(table, AcceptLanguageHeader.NAME.toUpperCase(),
+                    TokenTypes.ACCEPT_LANGUAGE);
+            addKeyword(table, WWWAuthenticateHeader.NAME.toUpperCase(),
+                    TokenTypes.WWW_AUTHENTICATE);
+            addKeyword(table, CallInfoHeader.NAME.toUpperCase(),
+                    TokenTypes.CALL_INFO);
+            addKeyword(table, ContentDispositionHeader.NAME.toUpperCase(),
+                    TokenTypes.CONTENT_DISPOSITION);
+            // And now the dreaded short forms....
+            addKeyword(table, TokenNames.K.toUpperCase(), TokenTypes.SUPPORTED);
+            addKeyword(table, TokenNames.C.toUpperCase(),
+                    TokenTypes.CONTENT_TYPE);
+            addKeyword(table, TokenNames.E.toUpperCase(),
+                    TokenTypes.CONTENT_ENCODING);
+            addKeyword(table, TokenNames.F.toUpperCase(), TokenTypes.FROM);
+            addKeyword(table, TokenNames.I.toUpperCase(), TokenTypes.CALL_ID);
+            addKeyword(table, TokenNames.M.toUpperCase(), TokenTypes.CONTACT);
+            addKeyword(table, TokenNames.L.toUpperCase(),
+                    TokenTypes.CONTENT_LENGTH);
+            addKeyword(table, TokenNames.S.toUpperCase(), TokenTypes.SUBJECT);
+            addKeyword(table, TokenNames.T.toUpperCase(), TokenTypes.TO);
+            addKeyword(table, TokenNames.U.toUpperCase(),
+                    TokenTypes.ALLOW_EVENTS); // JvB: added
+            addKeyword(table, TokenNames.V.toUpperCase(), TokenTypes.VIA);
+            addKeyword(table, TokenNames.R.toUpperCase(), TokenTypes.REFER_TO);
+            addKeyword(table, TokenNames.O.toUpperCase(), TokenTypes.EVENT); // Bug
+                                                                        // fix
+                                                                        // by
+                                                                        // Mario
+                                                                        // Mantak
+            addKeyword(table, TokenNames.X.toUpperCase(), TokenTypes.SESSIONEXPIRES_TO); // Bug fix by Jozef Saniga
+            
+            // JvB: added to support RFC3903
+            addKeyword(table, SIPETagHeader.NAME.toUpperCase(),
+                    TokenTypes.SIP_ETAG);
+            addKeyword(table, SIPIfMatchHeader.NAME.toUpperCase(),
+                    TokenTypes.SIP_IF_MATCH);
 
-                    // pmusgrave: Add RFC4028 and ReferredBy
-                    addKeyword(SessionExpiresHeader.NAME.toUpperCase(),
-                            TokenTypes.SESSIONEXPIRES_TO);
-                    addKeyword(MinSEHeader.NAME.toUpperCase(),
-                            TokenTypes.MINSE_TO);
-                    addKeyword(ReferredByHeader.NAME.toUpperCase(),
-                            TokenTypes.REFERREDBY_TO);
+            // pmusgrave: Add RFC4028 and ReferredBy
+            addKeyword(table, SessionExpiresHeader.NAME.toUpperCase(),
+                    TokenTypes.SESSIONEXPIRES_TO);
+            addKeyword(table, MinSEHeader.NAME.toUpperCase(),
+                    TokenTypes.MINSE_TO);
+            addKeyword(table, ReferredByHeader.NAME.toUpperCase(),
+                    TokenTypes.REFERREDBY_TO);
 
-                    // pmusgrave RFC3891
-                    addKeyword(ReplacesHeader.NAME.toUpperCase(),
-                            TokenTypes.REPLACES_TO);
-                    //jean deruelle RFC3911
-                    addKeyword(JoinHeader.NAME.toUpperCase(),
-                            TokenTypes.JOIN_TO);
+            // pmusgrave RFC3891
+            addKeyword(table, ReplacesHeader.NAME.toUpperCase(),
+                    TokenTypes.REPLACES_TO);
+            //jean deruelle RFC3911
+            addKeyword(table, JoinHeader.NAME.toUpperCase(),
+                    TokenTypes.JOIN_TO);
 
-                    // IMS Headers
-                    addKeyword(PathHeader.NAME.toUpperCase(), TokenTypes.PATH);
-                    addKeyword(ServiceRouteHeader.NAME.toUpperCase(),
-                            TokenTypes.SERVICE_ROUTE);
-                    addKeyword(PAssertedIdentityHeader.NAME.toUpperCase(),
-                            TokenTypes.P_ASSERTED_IDENTITY);
-                    addKeyword(PPreferredIdentityHeader.NAME.toUpperCase(),
-                            TokenTypes.P_PREFERRED_IDENTITY);
-                    addKeyword(PrivacyHeader.NAME.toUpperCase(),
-                            TokenTypes.PRIVACY);
+            // IMS Headers
+            addKeyword(table, PathHeader.NAME.toUpperCase(), TokenTypes.PATH);
+            addKeyword(table, ServiceRouteHeader.NAME.toUpperCase(),
+                    TokenTypes.SERVICE_ROUTE);
+            addKeyword(table, PAssertedIdentityHeader.NAME.toUpperCase(),
+                    TokenTypes.P_ASSERTED_IDENTITY);
+            addKeyword(table, PPreferredIdentityHeader.NAME.toUpperCase(),
+                    TokenTypes.P_PREFERRED_IDENTITY);
+            addKeyword(table, PrivacyHeader.NAME.toUpperCase(),
+                    TokenTypes.PRIVACY);
 
-                    // issued by Miguel Freitas
-                    addKeyword(PCalledPartyIDHeader.NAME.toUpperCase(),
-                            TokenTypes.P_CALLED_PARTY_ID);
-                    addKeyword(PAssociatedURIHeader.NAME.toUpperCase(),
-                            TokenTypes.P_ASSOCIATED_URI);
-                    addKeyword(PVisitedNetworkIDHeader.NAME.toUpperCase(),
-                            TokenTypes.P_VISITED_NETWORK_ID);
-                    addKeyword(PChargingFunctionAddressesHeader.NAME
-                            .toUpperCase(),
-                            TokenTypes.P_CHARGING_FUNCTION_ADDRESSES);
-                    addKeyword(PChargingVectorHeader.NAME.toUpperCase(),
-                            TokenTypes.P_VECTOR_CHARGING);
-                    addKeyword(PAccessNetworkInfoHeader.NAME.toUpperCase(),
-                            TokenTypes.P_ACCESS_NETWORK_INFO);
-                    addKeyword(PMediaAuthorizationHeader.NAME.toUpperCase(),
-                            TokenTypes.P_MEDIA_AUTHORIZATION);
+            // issued by Miguel Freitas
+            addKeyword(table, PCalledPartyIDHeader.NAME.toUpperCase(),
+                    TokenTypes.P_CALLED_PARTY_ID);
+            addKeyword(table, PAssociatedURIHeader.NAME.toUpperCase(),
+                    TokenTypes.P_ASSOCIATED_URI);
+            addKeyword(table, PVisitedNetworkIDHeader.NAME.toUpperCase(),
+                    TokenTypes.P_VISITED_NETWORK_ID);
+            addKeyword(table, PChargingFunctionAddressesHeader.NAME
+                    .toUpperCase(),
+                    TokenTypes.P_CHARGING_FUNCTION_ADDRESSES);
+            addKeyword(table, PChargingVectorHeader.NAME.toUpperCase(),
+                    TokenTypes.P_VECTOR_CHARGING);
+            addKeyword(table, PAccessNetworkInfoHeader.NAME.toUpperCase(),
+                    TokenTypes.P_ACCESS_NETWORK_INFO);
+            addKeyword(table, PMediaAuthorizationHeader.NAME.toUpperCase(),
+                    TokenTypes.P_MEDIA_AUTHORIZATION);
 
-                    addKeyword(SecurityServerHeader.NAME.toUpperCase(),
-                            TokenTypes.SECURITY_SERVER);
-                    addKeyword(SecurityVerifyHeader.NAME.toUpperCase(),
-                            TokenTypes.SECURITY_VERIFY);
-                    addKeyword(SecurityClientHeader.NAME.toUpperCase(),
-                            TokenTypes.SECURITY_CLIENT);
+            addKeyword(table, SecurityServerHeader.NAME.toUpperCase(),
+                    TokenTypes.SECURITY_SERVER);
+            addKeyword(table, SecurityVerifyHeader.NAME.toUpperCase(),
+                    TokenTypes.SECURITY_VERIFY);
+            addKeyword(table, SecurityClientHeader.NAME.toUpperCase(),
+                    TokenTypes.SECURITY_CLIENT);
 
-                    // added by aayush@rancore
-                    addKeyword(PUserDatabaseHeader.NAME.toUpperCase(),
-                            TokenTypes.P_USER_DATABASE);
+            // added by aayush@rancore
+            addKeyword(table, PUserDatabaseHeader.NAME.toUpperCase(),
+                    TokenTypes.P_USER_DATABASE);
 
-                    // added by aayush@rancore
-                    addKeyword(PProfileKeyHeader.NAME.toUpperCase(),
-                            TokenTypes.P_PROFILE_KEY);
+            // added by aayush@rancore
+            addKeyword(table, PProfileKeyHeader.NAME.toUpperCase(),
+                    TokenTypes.P_PROFILE_KEY);
 
-                    // added by aayush@rancore
-                    addKeyword(PServedUserHeader.NAME.toUpperCase(),
-                            TokenTypes.P_SERVED_USER);
+            // added by aayush@rancore
+            addKeyword(table, PServedUserHeader.NAME.toUpperCase(),
+                    TokenTypes.P_SERVED_USER);
 
-                    // added by aayush@rancore
-                    addKeyword(PPreferredServiceHeader.NAME.toUpperCase(),
-                            TokenTypes.P_PREFERRED_SERVICE);
+            // added by aayush@rancore
+            addKeyword(table, PPreferredServiceHeader.NAME.toUpperCase(),
+                    TokenTypes.P_PREFERRED_SERVICE);
 
-                    // added by aayush@rancore
-                    addKeyword(PAssertedServiceHeader.NAME.toUpperCase(),
-                            TokenTypes.P_ASSERTED_SERVICE);
-                    
-                    // added References header
-                    addKeyword(ReferencesHeader.NAME.toUpperCase(),TokenTypes.REFERENCES);
+            // added by aayush@rancore
+            addKeyword(table, PAssertedServiceHeader.NAME.toUpperCase(),
+                    TokenTypes.P_ASSERTED_SERVICE);
+            
+            // added References header
+            addKeyword(table, ReferencesHeader.NAME.toUpperCase(),TokenTypes.REFERENCES);
 
-                    // end //
+            // end //
 
 
-                } else if (lexerName.equals("status_lineLexer")) {
-                    addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-                } else if (lexerName.equals("request_lineLexer")) {
-                    addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-                } else if (lexerName.equals("sip_urlLexer")) {
-                    addKeyword(TokenNames.TEL.toUpperCase(), TokenTypes.TEL);
-                    addKeyword(TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
-                    addKeyword(TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
-                }
-            }
+        } else if (lexerName.equals("status_lineLexer")) {
+            addKeyword(table, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+        } else if (lexerName.equals("request_lineLexer")) {
+            addKeyword(table, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+        } else if (lexerName.equals("sip_urlLexer")) {
+            addKeyword(table, TokenNames.TEL.toUpperCase(), TokenTypes.TEL);
+            addKeyword(table, TokenNames.SIP.toUpperCase(), TokenTypes.SIP);
+            addKeyword(table, TokenNames.SIPS.toUpperCase(), TokenTypes.SIPS);
         }
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.parser;
+
+import gov.nist.core.GenericObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed objects (headers, addresses, URIs) keyed by the text they were
+ * parsed from. Callers get a clone of the cached object, so the copy they modify is never
+ * shared.
+ * <p>
+ * The cache is split in stripes by key hash; each stripe is a segmented LRU. A new entry
+ * goes to the probationary segment and moves to the protected segment when it is hit
+ * again. Eviction takes the least recently used probationary entry first, so a burst of
+ * strings that are seen only once cannot push out the values that repeat.
+ *
+ * @since 2.0
+ */
+public class ParseCache {
+
+    /**
+     * Share of a stripe reserved for entries that were hit at least once.
+     */
+    private static final float PROTECTED_RATIO = 0.8f;
+
+    private static class Segment {
+        private final int capacity;
+
+        private final int protectedCapacity;
+
+        private final LinkedHashMap<String, GenericObject> probation =
+                new LinkedHashMap<String, GenericObject>(16, 0.75f, true);
+
+        private final LinkedHashMap<String, GenericObject> protect =
+                new LinkedHashMap<String, GenericObject>(16, 0.75f, true);
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = Math.max(1, (int) (capacity * PROTECTED_RATIO));
+        }
+
+        synchronized GenericObject get(String key) {
+            GenericObject value = protect.get(key);
+            if (value != null)
+                return value;
+            value = probation.remove(key);
+            if (value != null) {
+                protect.put(key, value);
+                if (protect.size() > protectedCapacity) {
+                    Iterator<Map.Entry<String, GenericObject>> it = protect.entrySet()
+                            .iterator();
+                    Map.Entry<String, GenericObject> eldest = it.next();
+                    it.remove();
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            }
+            return value;
+        }
+
+        synchronized void put(String key, GenericObject value) {
+            if (protect.containsKey(key) || probation.containsKey(key))
+                return;
+            probation.put(key, value);
+            if (probation.size() + protect.size() > capacity) {
+                Map<String, GenericObject> victims = probation.isEmpty() ? protect : probation;
+                Iterator<String> it = victims.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+
+        synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protect.clear();
+        }
+    }
+
+    private final Segment[] segments;
+
+    private final int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache.
+     *
+     * @param maxSize -- the largest number of entries kept.
+     */
+    public ParseCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Bad max size " + maxSize);
+        this.maxSize = maxSize;
+        int n = 1;
+        while (n < 16 && maxSize / (n * 2) >= 64)
+            n *= 2;
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++)
+            segments[i] = new Segment((maxSize + n - 1) / n);
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * Return a copy of the object parsed from the given text, or null if it is not cached.
+     */
+    public GenericObject get(String key) {
+        GenericObject value = segmentFor(key).get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (GenericObject) value.clone();
+    }
+
+    /**
+     * Cache a copy of the object parsed from the given text. The caller keeps ownership of
+     * the object it passes in.
+     */
+    public void put(String key, GenericObject value) {
+        segmentFor(key).put(key, (GenericObject) value.clone());
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < segments.length; i++)
+            size += segments[i].size();
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * The share of lookups that were hits, between 0 and 1.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        for (int i = 0; i < segments.length; i++)
+            segments[i].clear();
+    }
+}
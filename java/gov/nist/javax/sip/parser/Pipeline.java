@@ -30,10 +30,14 @@ import gov.nist.javax.sip.stack.SIPStackTimerTask;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Input class for the pipelined parser. Buffer all bytes read from the socket
- * and make them available to the message parser.
+ * and make them available to the message parser. The reader waits on a
+ * ReentrantLock condition rather than a monitor so that a virtual parser thread
+ * does not pin its carrier thread while the buffer is empty.
  *
  * @author M. Ranganathan (Contains a bug fix contributed by Rob Daugherty (
  *         Lucent Technologies) )
@@ -43,6 +47,10 @@ import java.util.*;
 public class Pipeline extends InputStream {
     private LinkedList buffList;
 
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
     private Buffer currentBuffer;
 
     private boolean isClosed;
@@ -133,9 +141,12 @@ public class Pipeline extends InputStream {
             throw new IOException("Closed!!");
         Buffer buff = new Buffer(bytes, length);
         buff.ptr = start;
-        synchronized (this.buffList) {
+        lock.lock();
+        try {
             buffList.add(buff);
-            buffList.notifyAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -143,16 +154,22 @@ public class Pipeline extends InputStream {
         if (this.isClosed)
             throw new IOException("Closed!!");
         Buffer buff = new Buffer(bytes, bytes.length);
-        synchronized (this.buffList) {
+        lock.lock();
+        try {
             buffList.add(buff);
-            buffList.notifyAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
     public void close() throws IOException {
         this.isClosed = true;
-        synchronized (this.buffList) {
-            this.buffList.notifyAll();
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
 
         // JvB: added
@@ -161,7 +178,8 @@ public class Pipeline extends InputStream {
 
     public int read() throws IOException {
         // if (this.isClosed) return -1;
-        synchronized (this.buffList) {
+        lock.lock();
+        try {
             if (currentBuffer != null
                     && currentBuffer.ptr < currentBuffer.length) {
                 int retval = currentBuffer.getNextByte();
@@ -175,7 +193,7 @@ public class Pipeline extends InputStream {
             try {
                 // wait till something is posted.
                 while (this.buffList.isEmpty()) {
-                    this.buffList.wait();
+                    notEmpty.await();
                     if (this.isClosed)
                         return -1;
                 }
@@ -190,6 +208,8 @@ public class Pipeline extends InputStream {
                 ex.printStackTrace();
                 throw new IOException(ex.getMessage());
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -41,6 +41,7 @@ import gov.nist.javax.sip.message.*;
 import gov.nist.javax.sip.header.*;
 import java.text.ParseException;
 import java.io.*;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This implements a pipelined message parser suitable for use with a stream -
@@ -52,6 +53,9 @@ import java.io.*;
  * content-length header is read directly from the input stream. This can be
  * accessed from the SIPMessage using the getContent and getContentBytes methods
  * provided by the SIPMessage class.
+ * <p>
+ * A double CRLF between two messages is an RFC 5626 keepalive ping; it is reported
+ * to a listener that implements KeepAliveListener.
  *
  * @version 1.2 $Revision: 1.23 $ $Date: 2009/08/16 17:28:28 $
  *
@@ -69,6 +73,7 @@ public final class PipelinedMsgParser implements Runnable {
      */
     protected SIPMessageListener sipMessageListener;
     private Thread mythread; // Preprocessor thread
+    private String threadName;
     //private byte[] messageBody;
     //private boolean errorFlag;
     private Pipeline rawInputStream;
@@ -108,8 +113,7 @@ public final class PipelinedMsgParser implements Runnable {
         this.sipMessageListener = sipMessageListener;
         rawInputStream = in;
         this.maxMessageSize = maxMessageSize;
-        mythread = new Thread(this);
-        mythread.setName("PipelineThread-" + getNewUid());
+        threadName = "PipelineThread-" + getNewUid();
 
     }
 
@@ -143,6 +147,16 @@ public final class PipelinedMsgParser implements Runnable {
      * Start reading and processing input.
      */
     public void processInput() {
+        processInput(null);
+    }
+
+    /**
+     * Start reading and processing input on a thread created by the given factory
+     * (a new platform thread if null).
+     */
+    public void processInput(ThreadFactory threadFactory) {
+        mythread = threadFactory == null ? new Thread(this) : threadFactory.newThread(this);
+        mythread.setName(threadName);
         mythread.start();
     }
 
@@ -225,6 +239,7 @@ public final class PipelinedMsgParser implements Runnable {
 
                 String line1;
                 String line2 = null;
+                int blankLines = 0;
 
                 while (true) {
                     try {
@@ -234,6 +249,13 @@ public final class PipelinedMsgParser implements Runnable {
                             if (Debug.parserDebug) {
                                 Debug.println("Discarding blank line. ");
                             }
+                            // Keepalives are not part of a message, so they do not count
+                            // against the size limit of the next one.
+                            this.sizeCounter = this.maxMessageSize;
+                            if (++blankLines == 2) {
+                                blankLines = 0;
+                                processPing();
+                            }
                             continue;
                         } else
                             break;
@@ -356,6 +378,19 @@ public final class PipelinedMsgParser implements Runnable {
         }
     }
 
+    /**
+     * Report a double CRLF ping to the listener, if it wants to know.
+     */
+    private void processPing() {
+        if (sipMessageListener instanceof KeepAliveListener) {
+            try {
+                ((KeepAliveListener) sipMessageListener).processPing();
+            } catch (Exception ex) {
+                Debug.logError("Could not answer keepalive", ex);
+            }
+        }
+    }
+
     public void close() {
         try {
             this.rawInputStream.close();
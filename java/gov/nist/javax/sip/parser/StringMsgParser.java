@@ -32,6 +32,7 @@ package gov.nist.javax.sip.parser;
 
 import gov.nist.core.Host;
 import gov.nist.core.HostNameParser;
+import gov.nist.core.InternalErrorHandler;
 import gov.nist.javax.sip.SIPConstants;
 import gov.nist.javax.sip.address.AddressImpl;
 import gov.nist.javax.sip.address.GenericURI;
@@ -42,8 +43,12 @@ import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 /*
  * Acknowledgement: 1/12/2007: Yanick Belanger rewrote the parsing loops to make them
  * simpler and quicker.
@@ -79,6 +84,87 @@ public class StringMsgParser {
 
     private static boolean computeContentLengthFromMessage = false;
 
+    /**
+     * Parsed headers of received messages whose values repeat from one message to the next,
+     * or null if they are parsed every time.
+     */
+    private static ParseCache headerCache;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Scratch space for decoding the lines of a byte message.
+     */
+    private char[] lineBuffer;
+
+    /**
+     * Lower case names (long and compact forms) of the headers kept in the header cache.
+     */
+    private static final Set<String> cachedHeaderNames = new HashSet<String>(Arrays.asList(
+            "user-agent", "server", "allow", "supported", "k", "require", "proxy-require",
+            "content-type", "c", "accept", "accept-encoding", "accept-language",
+            "allow-events", "u", "max-forwards", "content-disposition", "mime-version",
+            "content-encoding", "e"));
+
+    /**
+     * Messages with the common headers, parsed and encoded by preload().
+     */
+    private static final String[] PRELOAD_MESSAGES = {
+            "INVITE sip:bob@127.0.0.1:5060;transport=udp SIP/2.0\r\n"
+                    + "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bKpreload;rport\r\n"
+                    + "Max-Forwards: 70\r\n"
+                    + "Route: <sip:127.0.0.1:5080;lr>\r\n"
+                    + "From: \"Alice\" <sip:alice@127.0.0.1>;tag=1\r\n"
+                    + "To: <sip:bob@127.0.0.1>\r\n"
+                    + "Call-ID: preload@127.0.0.1\r\n"
+                    + "CSeq: 1 INVITE\r\n"
+                    + "Contact: <sip:alice@127.0.0.1:5070>;expires=3600\r\n"
+                    + "Allow: INVITE, ACK, CANCEL, BYE, OPTIONS\r\n"
+                    + "Supported: timer\r\n"
+                    + "Content-Type: application/sdp\r\n"
+                    + "Content-Length: 4\r\n\r\n"
+                    + "v=0\n",
+            "SIP/2.0 200 OK\r\n"
+                    + "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bKpreload;received=127.0.0.1\r\n"
+                    + "Record-Route: <sip:127.0.0.1:5080;lr>\r\n"
+                    + "From: \"Alice\" <sip:alice@127.0.0.1>;tag=1\r\n"
+                    + "To: <sip:bob@127.0.0.1>;tag=2\r\n"
+                    + "Call-ID: preload@127.0.0.1\r\n"
+                    + "CSeq: 1 INVITE\r\n"
+                    + "Contact: <sip:bob@127.0.0.1:5060>\r\n"
+                    + "Content-Length: 0\r\n\r\n" };
+
+    // A plain flag: on recent JVMs the atomic classes pull in the method handle machinery,
+    // which is what preloading is meant to save.
+    private static volatile boolean preloaded;
+
+    /**
+     * Parse and encode a request and a response with the common headers once per JVM, so
+     * that the lexer tables and the classes of those headers and their parsers are loaded.
+     * The stack runs this on a thread of its own when it is created, so that the first
+     * message it receives does not pay for class loading.
+     */
+    public static void preload() {
+        synchronized (PRELOAD_MESSAGES) {
+            if (preloaded)
+                return;
+            preloaded = true;
+        }
+        try {
+            for (int i = 0; i < PRELOAD_MESSAGES.length; i++)
+                new StringMsgParser().parseSIPMessage(PRELOAD_MESSAGES[i]).encode();
+        } catch (ParseException ex) {
+            InternalErrorHandler.handleException(ex);
+        }
+    }
+
+    /**
+     * Returns true if preload() has run or is running.
+     */
+    public static boolean isPreloaded() {
+        return preloaded;
+    }
+
     /**
      * @since v0.9
      */
@@ -114,7 +200,8 @@ public class StringMsgParser {
      * Parse a buffer containing a single SIP Message where the body is an array
      * of un-interpreted bytes. This is intended for parsing the message from a
      * memory buffer when the buffer. Incorporates a bug fix for a bug that was
-     * noted by Will Sullin of Callcast
+     * noted by Will Sullin of Callcast. The body of the parsed message refers
+     * to the given buffer, so the buffer must not be reused by the caller.
      *
      * @param msgBuffer
      *            a byte buffer containing the messages to be parsed. This can
@@ -127,100 +214,220 @@ public class StringMsgParser {
      * @see ParseExceptionListener
      */
     public SIPMessage parseSIPMessage(byte[] msgBuffer) throws ParseException {
-        if (msgBuffer == null || msgBuffer.length == 0)
+        if (msgBuffer == null)
             return null;
+        return parseSIPMessage(msgBuffer, 0, msgBuffer.length);
+    }
 
-        int i = 0;
+    /**
+     * Parse the remaining bytes of a buffer containing a single SIP Message, as
+     * parseSIPMessage(byte[]) does. A heap buffer is parsed in place, a direct buffer is
+     * copied first. The position of the buffer is not changed.
+     *
+     * @param msgBuffer
+     *            the buffer holding the message between its position and its limit.
+     * @return the parsed message.
+     * @exception ParseException
+     *                is thrown when an illegal message has been encountered.
+     */
+    public SIPMessage parseSIPMessage(ByteBuffer msgBuffer) throws ParseException {
+        if (msgBuffer == null)
+            return null;
+        if (msgBuffer.hasArray())
+            return parseSIPMessage(msgBuffer.array(), msgBuffer.arrayOffset()
+                    + msgBuffer.position(), msgBuffer.remaining());
+        byte[] bytes = new byte[msgBuffer.remaining()];
+        msgBuffer.duplicate().get(bytes);
+        return parseSIPMessage(bytes);
+    }
+
+    /**
+     * Parse a single SIP Message held in a range of a byte array, as
+     * parseSIPMessage(byte[]) does. The parser works on the bytes directly: header names
+     * are looked up in the buffer, US-ASCII lines are decoded without a charset and folded
+     * header lines are joined while they are decoded. The body refers to the buffer when the
+     * message fills all of it, otherwise the body is copied so that the message does not
+     * keep a larger buffer (typically a receive buffer) alive.
+     *
+     * @param msgBuffer
+     *            the buffer holding the message.
+     * @param offset
+     *            where the message starts in the buffer.
+     * @param length
+     *            the length of the message.
+     * @return the parsed message.
+     * @exception ParseException
+     *                is thrown when an illegal message has been encountered.
+     */
+    public SIPMessage parseSIPMessage(byte[] msgBuffer, int offset, int length)
+            throws ParseException {
+        if (msgBuffer == null || length == 0)
+            return null;
+
+        int end = offset + length;
+        int i = offset;
 
         // Squeeze out any leading control character.
-        try {
-            while (msgBuffer[i] < 0x20)
-                i++;
-        }
-        catch (ArrayIndexOutOfBoundsException e) {
+        while (i < end && (msgBuffer[i] & 0xff) < 0x20)
+            i++;
+        if (i == end) {
             // Array contains only control char, return null.
             return null;
         }
 
-        // Iterate thru the request/status line and headers.
-        String currentLine = null;
-        String currentHeader = null;
-        boolean isFirstLine = true;
-        SIPMessage message = null;
-        do
-        {
-            int lineStart = i;
-
-            // Find the length of the line.
-            try {
-                while (msgBuffer[i] != '\r' && msgBuffer[i] != '\n')
-                    i++;
-            }
-            catch (ArrayIndexOutOfBoundsException e) {
-                // End of the message.
+        int lineEnd = findLineEnd(msgBuffer, i, end);
+        int trimmedEnd = trimEndOfLine(msgBuffer, i, lineEnd);
+        if (lineEnd == end || trimmedEnd == i)
+            throw new ParseException("Bad message", 0);
+        SIPMessage message = processFirstLine(decodeLine(msgBuffer, i, trimmedEnd, false,
+                false));
+        i = nextLine(msgBuffer, lineEnd, end);
+
+        // Iterate thru the headers, up to the empty line.
+        while (i < end) {
+            lineEnd = findLineEnd(msgBuffer, i, end);
+            trimmedEnd = trimEndOfLine(msgBuffer, i, lineEnd);
+            if (trimmedEnd == i) {
+                i = nextLine(msgBuffer, lineEnd, end);
                 break;
             }
-            int lineLength = i - lineStart;
-
-            // Make it a String.
-            try {
-                currentLine = new String(msgBuffer, lineStart, lineLength, "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                throw new ParseException("Bad message encoding!", 0);
+            if (msgBuffer[i] == ' ' || msgBuffer[i] == '\t')
+                throw new ParseException("Bad header continuation.", 0);
+
+            // Take in the continuation lines of this header.
+            int headerStart = i;
+            int headerEnd = trimmedEnd;
+            boolean folded = false;
+            i = nextLine(msgBuffer, lineEnd, end);
+            while (i < end && (msgBuffer[i] == ' ' || msgBuffer[i] == '\t')) {
+                lineEnd = findLineEnd(msgBuffer, i, end);
+                trimmedEnd = trimEndOfLine(msgBuffer, i, lineEnd);
+                if (trimmedEnd == i)
+                    break;
+                headerEnd = trimmedEnd;
+                folded = true;
+                i = nextLine(msgBuffer, lineEnd, end);
             }
+            processHeader(msgBuffer, headerStart, headerEnd, folded, message);
+        }
 
-            currentLine = trimEndOfLine(currentLine);
-
-            if (currentLine.length() == 0) {
-                // Last header line, process the previous buffered header.
-                if (currentHeader != null && message != null) {
-                     processHeader(currentHeader, message);
-                 }
+        message.setSize(i - offset);
 
-            }
-            else {
-                if (isFirstLine) {
-                    message = processFirstLine(currentLine);
-                } else {
-                    char firstChar = currentLine.charAt(0);
-                    if (firstChar == '\t' || firstChar == ' ') {
-                        if (currentHeader == null)
-                            throw new ParseException("Bad header continuation.", 0);
+        if (readBody && message.getContentLength() != null &&
+                message.getContentLength().getContentLength() != 0) {
 
-                        // This is a continuation, append it to the previous line.
-                        currentHeader += currentLine.substring(1);
-                    }
-                    else {
-                        if (currentHeader != null && message != null) {
-                             processHeader(currentHeader, message);
-                         }
-                        currentHeader = currentLine;
-                    }
-                }
+            int bodyLength = end - i;
+
+            if (offset == 0 && end == msgBuffer.length) {
+                // The body is kept as a slice of the message buffer (no copy).
+                message.setMessageContent(msgBuffer, i, bodyLength,
+                        computeContentLengthFromMessage, message.getContentLength().getContentLength());
+            } else {
+                byte[] body = new byte[bodyLength];
+                System.arraycopy(msgBuffer, i, body, 0, bodyLength);
+                message.setMessageContent(body, 0, bodyLength,
+                        computeContentLengthFromMessage, message.getContentLength().getContentLength());
             }
+        }
 
-            if (msgBuffer[i] == '\r' && msgBuffer.length > i+1 && msgBuffer[i+1] == '\n')
-                i++;
+        return message;
+    }
 
+    /**
+     * The index of the CR or LF ending the line that starts at i, or end.
+     */
+    private static int findLineEnd(byte[] msgBuffer, int i, int end) {
+        while (i < end && msgBuffer[i] != '\r' && msgBuffer[i] != '\n')
             i++;
+        return i;
+    }
 
-            isFirstLine = false;
-        } while (currentLine.length() > 0); // End do - while
-
-        if (message == null) throw new ParseException("Bad message", 0);
-        message.setSize(i);
+    /**
+     * The start of the line following the line end at i (CRLF, CR or LF).
+     */
+    private static int nextLine(byte[] msgBuffer, int i, int end) {
+        if (i >= end)
+            return end;
+        if (msgBuffer[i] == '\r' && i + 1 < end && msgBuffer[i + 1] == '\n')
+            i++;
+        return i + 1;
+    }
 
-        if (readBody && message.getContentLength() != null &&
-                message.getContentLength().getContentLength() != 0) {
+    private static int trimEndOfLine(byte[] msgBuffer, int start, int i) {
+        while (i > start && (msgBuffer[i - 1] & 0xff) <= 0x20)
+            i--;
+        return i;
+    }
 
-            int bodyLength = msgBuffer.length - i;
+    private void processHeader(byte[] msgBuffer, int start, int end, boolean folded,
+            SIPMessage message) throws ParseException {
+        String line = decodeLine(msgBuffer, start, end, folded, true);
+
+        // The name ends at the colon, which must be on the first line.
+        int colon = start;
+        while (colon < end && msgBuffer[colon] != ':' && msgBuffer[colon] != '\r'
+                && msgBuffer[colon] != '\n')
+            colon++;
+        int nameEnd = trimEndOfLine(msgBuffer, start, colon);
+        if (colon == end || msgBuffer[colon] != ':' || nameEnd == start) {
+            processHeader(line.substring(0, line.length() - 1), message);
+            return;
+        }
+        processHeader(SIPHeaderNamesCache.toLowerCase(msgBuffer, start, nameEnd - start),
+                line, message);
+    }
 
-            byte[] body = new byte[bodyLength];
-            System.arraycopy(msgBuffer, i, body, 0, bodyLength);
-            message.setMessageContent(body,computeContentLengthFromMessage ,message.getContentLength().getContentLength() );
+    /**
+     * Decode a line of the message. US-ASCII, by far the common case, is copied byte by
+     * byte, anything else is decoded as UTF-8. The line breaks of a folded header and the
+     * whitespace that starts each continuation line are dropped, in the char array, as
+     * parseSIPMessage(String) does.
+     */
+    private String decodeLine(byte[] msgBuffer, int start, int end, boolean folded,
+            boolean newline) {
+        int length = end - start;
+        char[] chars = lineBuffer;
+        if (chars == null || chars.length < length + 1) {
+            chars = new char[Math.max(length + 1, 256)];
+            lineBuffer = chars;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = msgBuffer[start + i];
+            if (b < 0) {
+                chars = new String(msgBuffer, start, length, UTF8).toCharArray();
+                length = chars.length;
+                if (newline) {
+                    char[] grown = new char[length + 1];
+                    System.arraycopy(chars, 0, grown, 0, length);
+                    chars = grown;
+                }
+                break;
+            }
+            chars[i] = (char) b;
         }
+        if (folded)
+            length = fold(chars, length);
+        if (newline)
+            chars[length++] = '\n';
+        return new String(chars, 0, length);
+    }
 
-        return message;
+    private static int fold(char[] chars, int length) {
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\r' || c == '\n') {
+                while (n > 0 && chars[n - 1] <= 0x20)
+                    n--;
+                if (c == '\r' && i + 1 < length && chars[i + 1] == '\n')
+                    i++;
+                // Skip the whitespace that marks the continuation.
+                i++;
+            } else {
+                chars[n++] = c;
+            }
+        }
+        return n;
     }
 
     /**
@@ -391,20 +598,44 @@ public class StringMsgParser {
         if (header == null || header.length() == 0)
             return;
 
-        HeaderParser headerParser = null;
-        try {
-            headerParser = ParserFactory.createParser(header + "\n");
-        } catch (ParseException ex) {
+        String name = Lexer.getHeaderName(header);
+        if (name == null) {
+            ParseException ex = new ParseException("The header name or value is null", 0);
+            if (this.parseExceptionListener == null)
+                throw ex;
             this.parseExceptionListener.handleException(ex, message, null,
                     header, rawStringMessage);
             return;
         }
+        processHeader(SIPHeaderNamesCache.toLowerCase(name), header + "\n", message);
+    }
+
+    /**
+     * Parse a header line (terminated by a newline) whose name is known.
+     */
+    private void processHeader(String lowerCaseName, String line, SIPMessage message)
+            throws ParseException {
+        ParseCache cache = headerCache;
+        String cacheKey = null;
+        if (cache != null && cachedHeaderNames.contains(lowerCaseName)) {
+            SIPHeader cached = (SIPHeader) cache.get(line);
+            if (cached != null) {
+                message.attachHeader(cached, false);
+                return;
+            }
+            cacheKey = line;
+        }
+
+        HeaderParser headerParser = ParserFactory.createParser(lowerCaseName, line);
 
         try {
             SIPHeader sipHeader = headerParser.parse();
+            if (cacheKey != null)
+                cache.put(cacheKey, sipHeader);
             message.attachHeader(sipHeader, false);
         } catch (ParseException ex) {
             if (this.parseExceptionListener != null) {
+                String header = line.substring(0, line.length() - 1);
                 String headerName = Lexer.getHeaderName(header);
                 Class headerClass = NameMap.getClassFromName(headerName);
                 if (headerClass == null) {
@@ -616,6 +847,23 @@ public class StringMsgParser {
         StringMsgParser.computeContentLengthFromMessage = computeContentLengthFromMessage;
     }
 
+    /**
+     * Keep up to the given number of parsed User-Agent, Server, Allow, Supported,
+     * Content-Type and similar headers of received messages, so that a header seen before
+     * is copied instead of parsed again. The copies share their strings with the cached
+     * header. Zero disables the cache.
+     */
+    public static void setHeaderCacheSize(int size) {
+        StringMsgParser.headerCache = size > 0 ? new ParseCache(size) : null;
+    }
+
+    /**
+     * The cache of received headers, or null if it is disabled.
+     */
+    public static ParseCache getHeaderCache() {
+        return headerCache;
+    }
+
 
 
     /**
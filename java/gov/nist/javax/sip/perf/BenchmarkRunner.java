@@ -0,0 +1,165 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Runs benchmarks the way a JMH average time benchmark with the gc profiler would: a number
+ * of timed warm up iterations followed by timed measurement iterations, each calling the
+ * operation in a loop for a fixed time. The result is the average time per operation with
+ * its standard deviation over the measurement iterations and, where the JVM supports it, the
+ * number of bytes allocated per operation.
+ *
+ * @since 2.0
+ */
+public class BenchmarkRunner {
+
+    private final int warmupIterations;
+
+    private final int measurementIterations;
+
+    private final long iterationTime;
+
+    private final PrintStream out;
+
+    /**
+     * Keeps the results of the operations reachable.
+     */
+    private Object sink;
+
+    /**
+     * Create a runner.
+     *
+     * @param warmupIterations -- the number of iterations whose results are discarded.
+     * @param measurementIterations -- the number of iterations that are reported.
+     * @param iterationTime -- the length of one iteration in ms.
+     * @param out -- where the results are printed.
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationTime,
+            PrintStream out) {
+        if (measurementIterations <= 0 || iterationTime <= 0)
+            throw new IllegalArgumentException("Bad iteration settings");
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationTime = iterationTime;
+        this.out = out;
+    }
+
+    /**
+     * The result of one benchmark.
+     */
+    public static class Result {
+        public final String name;
+
+        public final double nanosPerOp;
+
+        public final double error;
+
+        public final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double error, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    public void printHeader() {
+        out.println(String.format(Locale.US, "%-48s %5s %12s %10s %12s", "Benchmark", "Cnt",
+                "Score", "Error", "Alloc"));
+    }
+
+    public Result run(Benchmark benchmark) throws Exception {
+        try {
+            benchmark.setUp();
+            for (int i = 0; i < warmupIterations; i++)
+                iteration(benchmark, null);
+            double[] scores = new double[measurementIterations];
+            long operations = 0;
+            long allocated = 0;
+            for (int i = 0; i < measurementIterations; i++) {
+                long[] counts = new long[2];
+                scores[i] = iteration(benchmark, counts);
+                operations += counts[0];
+                allocated = counts[1] < 0 || allocated < 0 ? -1 : allocated + counts[1];
+            }
+            double mean = 0;
+            for (double score : scores)
+                mean += score;
+            mean /= scores.length;
+            double variance = 0;
+            for (double score : scores)
+                variance += (score - mean) * (score - mean);
+            double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+            double bytesPerOp = allocated < 0 ? -1 : (double) allocated / operations;
+            Result result = new Result(benchmark.getName(), mean, error, bytesPerOp);
+            out.println(String.format(Locale.US, "%-48s %5d %9.1f ns %7.1f ns %9s",
+                    result.name, measurementIterations, result.nanosPerOp, result.error,
+                    bytesPerOp < 0 ? "n/a" : String.format(Locale.US, "%.0f B", bytesPerOp)));
+            return result;
+        } finally {
+            benchmark.tearDown();
+            sink = null;
+        }
+    }
+
+    /**
+     * Run the operation for iterationTime ms.
+     *
+     * @param counts -- if not null receives the number of operations and allocated bytes.
+     * @return the average ns per operation.
+     */
+    private double iteration(Benchmark benchmark, long[] counts) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = RuntimeStats.getThreadAllocatedBytes(threadId);
+        long deadline = System.nanoTime() + iterationTime * 1000000L;
+        long operations = 0;
+        long elapsed = 0;
+        int batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batch; i++)
+                sink = benchmark.run();
+            long end = System.nanoTime();
+            elapsed += end - start;
+            operations += batch;
+            if (end >= deadline)
+                break;
+            if (batch < 1024)
+                batch <<= 1;
+        }
+        if (counts != null) {
+            long allocatedAfter = RuntimeStats.getThreadAllocatedBytes(threadId);
+            counts[0] = operations;
+            counts[1] = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter
+                    - allocatedBefore;
+        }
+        return (double) elapsed / operations;
+    }
+}
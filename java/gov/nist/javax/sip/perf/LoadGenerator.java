@@ -0,0 +1,634 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.MessageFactoryImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.sip.Dialog;
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.ServerTransaction;
+import javax.sip.SipListener;
+import javax.sip.SipProvider;
+import javax.sip.TimeoutEvent;
+import javax.sip.TransactionTerminatedEvent;
+import javax.sip.address.Address;
+import javax.sip.address.SipURI;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.EventHeader;
+import javax.sip.header.Header;
+import javax.sip.header.ToHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.Message;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+/**
+ * An end to end load generator. Two stacks are started in this JVM on the loopback
+ * interface, a UAC and a UAS, and the UAC starts calls at a fixed rate. The scheduler is open
+ * loop: call n is started at start + n / cps whether or not earlier calls have completed, and
+ * the setup latency is measured from that intended start so that a stalled stack shows up
+ * in the percentiles instead of lowering the offered load.
+ * <p>
+ * The scenarios are
+ * <ul>
+ * <li>invite -- INVITE, 200, ACK, then BYE, 200 after the hold time. The setup latency is
+ * the time to the 200 for the INVITE.
+ * <li>register -- REGISTER, 200.
+ * <li>subscribe -- SUBSCRIBE, 200, then a NOTIFY from the UAS that ends the subscription.
+ * The setup latency is the time to the NOTIFY.
+ * </ul>
+ * At the end the generator prints the throughput, the latency percentiles, the number of
+ * retransmissions sent by either side, the collections and collection time of the garbage
+ * collectors and the CPU time used per thread group. It exits with status 1 if a call failed
+ * or the 99th percentile exceeded -maxp99.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java gov.nist.javax.sip.perf.LoadGenerator [-transport udp|tcp|tls] [-scenario invite|register|subscribe]
+ *      [-cps n] [-duration s] [-hold ms] [-port n] [-maxp99 ms] [-tlsprotocols TLSv1.2,...]
+ * </pre>
+ *
+ * System properties starting with gov.nist.javax.sip. are passed on to both stacks so that
+ * configurations can be compared. TLS needs the usual javax.net.ssl.keyStore and
+ * javax.net.ssl.trustStore system properties; on recent JVMs also pass -tlsprotocols since
+ * the protocols the stack enables by default are disabled there.
+ *
+ * @since 2.0
+ */
+public class LoadGenerator {
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final long DRAIN_TIME = 35000;
+
+    private final String transport;
+
+    private final String scenario;
+
+    private final int cps;
+
+    private final int duration;
+
+    private final long holdTime;
+
+    private final int port;
+
+    private String[] tlsProtocols;
+
+    private final AddressFactoryImpl addressFactory = new AddressFactoryImpl();
+
+    private final HeaderFactoryImpl headerFactory = new HeaderFactoryImpl();
+
+    private final MessageFactoryImpl messageFactory = new MessageFactoryImpl();
+
+    private final ScheduledExecutorService byeScheduler = Executors
+            .newSingleThreadScheduledExecutor();
+
+    private SipStackImpl uacStack;
+
+    private SipStackImpl uasStack;
+
+    private SipProvider uacProvider;
+
+    private SipProvider uasProvider;
+
+    /**
+     * Call-ID to the intended start time (ns) of the calls in progress.
+     */
+    private final ConcurrentHashMap<String, Long> calls = new ConcurrentHashMap<String, Long>();
+
+    private final AtomicLong started = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final LatencyRecorder latencies = new LatencyRecorder();
+
+    public LoadGenerator(String transport, String scenario, int cps, int duration,
+            long holdTime, int port) {
+        if (!Arrays.asList("udp", "tcp", "tls").contains(transport))
+            throw new IllegalArgumentException("Bad transport " + transport);
+        if (!Arrays.asList(Request.INVITE, Request.REGISTER, Request.SUBSCRIBE).contains(
+                scenario.toUpperCase(Locale.ENGLISH)))
+            throw new IllegalArgumentException("Bad scenario " + scenario);
+        if (cps <= 0 || duration <= 0)
+            throw new IllegalArgumentException("Bad rate or duration");
+        this.transport = transport;
+        this.scenario = scenario.toUpperCase(Locale.ENGLISH);
+        this.cps = cps;
+        this.duration = duration;
+        this.holdTime = holdTime;
+        this.port = port;
+    }
+
+    /**
+     * Latency samples in microseconds.
+     */
+    static class LatencyRecorder {
+        private long[] samples = new long[1024];
+
+        private int count;
+
+        synchronized void record(long nanos) {
+            if (count == samples.length)
+                samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = nanos / 1000;
+        }
+
+        synchronized long[] sorted() {
+            long[] retval = Arrays.copyOf(samples, count);
+            Arrays.sort(retval);
+            return retval;
+        }
+
+        static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0)
+                return 0;
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    private SipStackImpl createStack(String name) throws Exception {
+        Properties properties = new Properties();
+        for (Enumeration<?> e = System.getProperties().propertyNames(); e.hasMoreElements();) {
+            String key = (String) e.nextElement();
+            if (key.startsWith("gov.nist.javax.sip."))
+                properties.setProperty(key, System.getProperty(key));
+        }
+        properties.setProperty("javax.sip.STACK_NAME", name);
+        properties.setProperty("gov.nist.javax.sip.SERVER_LOGGER", MessageCounter.class
+                .getName());
+        if (properties.getProperty("gov.nist.javax.sip.TRACE_LEVEL") == null)
+            properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+        SipStackImpl sipStack = new SipStackImpl(properties);
+        if (tlsProtocols != null) {
+            sipStack.setEnabledProtocols(tlsProtocols);
+            sipStack.setEnabledCipherSuites(SSLContext.getDefault().getDefaultSSLParameters()
+                    .getCipherSuites());
+        }
+        return sipStack;
+    }
+
+    /**
+     * Use the given TLS protocols and the default cipher suites of the JVM instead of the
+     * stack defaults, which recent JVMs no longer enable.
+     */
+    public void setTlsProtocols(String[] tlsProtocols) {
+        this.tlsProtocols = tlsProtocols;
+    }
+
+    private void start() throws Exception {
+        uasStack = createStack("uas");
+        ListeningPoint uasListeningPoint = uasStack.createListeningPoint(HOST, port, transport);
+        uasProvider = uasStack.createSipProvider(uasListeningPoint);
+        uasProvider.addSipListener(new Uas());
+        uasStack.start();
+
+        uacStack = createStack("uac");
+        ListeningPoint uacListeningPoint = uacStack.createListeningPoint(HOST, port + 1,
+                transport);
+        uacProvider = uacStack.createSipProvider(uacListeningPoint);
+        uacProvider.addSipListener(new Uac());
+        uacStack.start();
+    }
+
+    private void stop() {
+        byeScheduler.shutdownNow();
+        if (uacStack != null)
+            uacStack.stop();
+        if (uasStack != null)
+            uasStack.stop();
+    }
+
+    private ContactHeader createContact(int contactPort) throws Exception {
+        SipURI uri = addressFactory.createSipURI("load", HOST);
+        uri.setPort(contactPort);
+        uri.setTransportParam(transport);
+        return headerFactory.createContactHeader(addressFactory.createAddress(uri));
+    }
+
+    private Request createRequest(String method, long sequence) throws Exception {
+        SipURI requestUri = addressFactory.createSipURI("uas", HOST);
+        requestUri.setPort(port);
+        requestUri.setTransportParam(transport);
+        Address from = addressFactory.createAddress("sip:uac@" + HOST);
+        Address to = addressFactory.createAddress(method.equals(Request.REGISTER) ? "sip:uac@"
+                + HOST : "sip:uas@" + HOST);
+        List<ViaHeader> vias = new ArrayList<ViaHeader>(1);
+        vias.add(headerFactory.createViaHeader(HOST, port + 1, transport, null));
+        Request request = messageFactory.createRequest(requestUri, method, uacProvider
+                .getNewCallId(), headerFactory.createCSeqHeader(1L, method), headerFactory
+                .createFromHeader(from, Long.toString(sequence)), headerFactory
+                .createToHeader(to, null), vias, headerFactory.createMaxForwardsHeader(70));
+        request.addHeader(createContact(port + 1));
+        if (method.equals(Request.REGISTER)) {
+            request.addHeader(headerFactory.createExpiresHeader(3600));
+        } else if (method.equals(Request.SUBSCRIBE)) {
+            request.addHeader(headerFactory.createEventHeader("presence"));
+            request.addHeader(headerFactory.createExpiresHeader(60));
+        }
+        return request;
+    }
+
+    private void startCall(long sequence, long intendedStart) {
+        try {
+            Request request = createRequest(scenario, sequence);
+            String callId = ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId();
+            calls.put(callId, Long.valueOf(intendedStart));
+            started.incrementAndGet();
+            uacProvider.getNewClientTransaction(request).sendRequest();
+        } catch (Exception ex) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private void callCompleted(String callId) {
+        if (calls.remove(callId) != null)
+            completed.incrementAndGet();
+        ((MessageCounter) uacStack.getServerLogger()).forgetCall(callId);
+        ((MessageCounter) uasStack.getServerLogger()).forgetCall(callId);
+    }
+
+    private void callFailed(String callId) {
+        if (calls.remove(callId) != null)
+            failed.incrementAndGet();
+        ((MessageCounter) uacStack.getServerLogger()).forgetCall(callId);
+        ((MessageCounter) uasStack.getServerLogger()).forgetCall(callId);
+    }
+
+    private void recordSetup(String callId) {
+        Long intendedStart = calls.get(callId);
+        if (intendedStart != null)
+            latencies.record(System.nanoTime() - intendedStart.longValue());
+    }
+
+    private static String getCallId(Message message) {
+        return ((CallIdHeader) message.getHeader(CallIdHeader.NAME)).getCallId();
+    }
+
+    private void sendBye(Dialog dialog) {
+        try {
+            Request bye = dialog.createRequest(Request.BYE);
+            dialog.sendRequest(uacProvider.getNewClientTransaction(bye));
+        } catch (Exception ex) {
+            callFailed(dialog.getCallId().getCallId());
+        }
+    }
+
+    /**
+     * The calling side.
+     */
+    class Uac implements SipListener {
+
+        public void processResponse(ResponseEvent responseEvent) {
+            Response response = responseEvent.getResponse();
+            String callId = getCallId(response);
+            String method = ((CSeqHeader) response.getHeader(CSeqHeader.NAME)).getMethod();
+            int status = response.getStatusCode();
+            if (status < 200)
+                return;
+            if (status >= 300) {
+                callFailed(callId);
+                return;
+            }
+            try {
+                if (method.equals(Request.INVITE)) {
+                    final Dialog dialog = responseEvent.getDialog();
+                    if (responseEvent.getClientTransaction() == null || dialog == null)
+                        return; // A retransmitted 200 OK.
+                    recordSetup(callId);
+                    long sequence = ((CSeqHeader) response.getHeader(CSeqHeader.NAME))
+                            .getSeqNumber();
+                    dialog.sendAck(dialog.createAck(sequence));
+                    if (holdTime <= 0) {
+                        sendBye(dialog);
+                    } else {
+                        byeScheduler.schedule(new Runnable() {
+                            public void run() {
+                                sendBye(dialog);
+                            }
+                        }, holdTime, TimeUnit.MILLISECONDS);
+                    }
+                } else if (method.equals(Request.BYE)) {
+                    callCompleted(callId);
+                } else if (method.equals(Request.REGISTER)) {
+                    recordSetup(callId);
+                    callCompleted(callId);
+                }
+            } catch (Exception ex) {
+                callFailed(callId);
+            }
+        }
+
+        public void processRequest(RequestEvent requestEvent) {
+            Request request = requestEvent.getRequest();
+            String callId = getCallId(request);
+            try {
+                ServerTransaction serverTransaction = requestEvent.getServerTransaction();
+                if (serverTransaction == null)
+                    serverTransaction = uacProvider.getNewServerTransaction(request);
+                serverTransaction.sendResponse(messageFactory.createResponse(Response.OK,
+                        request));
+                if (request.getMethod().equals(Request.NOTIFY)) {
+                    recordSetup(callId);
+                    callCompleted(callId);
+                    if (serverTransaction.getDialog() != null)
+                        serverTransaction.getDialog().delete();
+                }
+            } catch (Exception ex) {
+                callFailed(callId);
+            }
+        }
+
+        public void processTimeout(TimeoutEvent timeoutEvent) {
+            if (timeoutEvent.isServerTransaction())
+                return;
+            callFailed(getCallId(timeoutEvent.getClientTransaction().getRequest()));
+        }
+
+        public void processIOException(IOExceptionEvent exceptionEvent) {
+        }
+
+        public void processTransactionTerminated(TransactionTerminatedEvent event) {
+        }
+
+        public void processDialogTerminated(DialogTerminatedEvent event) {
+        }
+    }
+
+    /**
+     * The called side.
+     */
+    class Uas implements SipListener {
+
+        public void processRequest(RequestEvent requestEvent) {
+            Request request = requestEvent.getRequest();
+            String method = request.getMethod();
+            if (method.equals(Request.ACK))
+                return;
+            try {
+                ServerTransaction serverTransaction = requestEvent.getServerTransaction();
+                if (serverTransaction == null)
+                    serverTransaction = uasProvider.getNewServerTransaction(request);
+                Response response = messageFactory.createResponse(Response.OK, request);
+                if (method.equals(Request.INVITE) || method.equals(Request.SUBSCRIBE)) {
+                    response.addHeader(createContact(port));
+                    ((ToHeader) response.getHeader(ToHeader.NAME)).setTag(Long.toString(System
+                            .nanoTime()));
+                }
+                if (method.equals(Request.SUBSCRIBE))
+                    response.addHeader(headerFactory.createExpiresHeader(60));
+                serverTransaction.sendResponse(response);
+                if (method.equals(Request.SUBSCRIBE))
+                    sendNotify(serverTransaction.getDialog(), request);
+                else if (method.equals(Request.BYE) && serverTransaction.getDialog() != null)
+                    serverTransaction.getDialog().delete();
+            } catch (Exception ex) {
+                // The UAC will time out and count the call as failed.
+            }
+        }
+
+        private void sendNotify(Dialog dialog, Request subscribe) throws Exception {
+            Request notify = dialog.createRequest(Request.NOTIFY);
+            notify.setHeader((EventHeader) subscribe.getHeader(EventHeader.NAME));
+            Header state = headerFactory.createSubscriptionStateHeader("terminated");
+            notify.setHeader(state);
+            notify.setHeader(createContact(port));
+            dialog.sendRequest(uasProvider.getNewClientTransaction(notify));
+        }
+
+        public void processResponse(ResponseEvent responseEvent) {
+            if (responseEvent.getResponse().getStatusCode() >= 200
+                    && responseEvent.getDialog() != null)
+                responseEvent.getDialog().delete();
+        }
+
+        public void processTimeout(TimeoutEvent timeoutEvent) {
+        }
+
+        public void processIOException(IOExceptionEvent exceptionEvent) {
+        }
+
+        public void processTransactionTerminated(TransactionTerminatedEvent event) {
+        }
+
+        public void processDialogTerminated(DialogTerminatedEvent event) {
+        }
+    }
+
+    /**
+     * Thread CPU times (ns) by thread id.
+     */
+    private static Map<Long, Long> sampleThreadCpu(Map<Long, String> names) {
+        Map<Long, Long> retval = new HashMap<Long, Long>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            long cpu = RuntimeStats.getThreadCpuTime(thread.getId());
+            if (cpu >= 0) {
+                retval.put(Long.valueOf(thread.getId()), Long.valueOf(cpu));
+                names.put(Long.valueOf(thread.getId()), thread.getName());
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Run the load and print the report.
+     *
+     * @return the 99th percentile of the setup latency in microseconds.
+     */
+    public long run() throws Exception {
+        start();
+        try {
+            Map<Long, String> threadNames = new HashMap<Long, String>();
+            Map<Long, Long> cpuBefore = sampleThreadCpu(threadNames);
+            long gcCountBefore = RuntimeStats.getGcCount();
+            long gcTimeBefore = RuntimeStats.getGcTime();
+
+            long total = (long) cps * duration;
+            long startTime = System.nanoTime();
+            long nextReport = startTime + 1000000000L;
+            for (long i = 0; i < total; i++) {
+                long intendedStart = startTime + i * 1000000000L / cps;
+                long now;
+                while ((now = System.nanoTime()) < intendedStart) {
+                    long delay = intendedStart - now;
+                    if (delay > 1000000)
+                        Thread.sleep(delay / 1000000);
+                    else
+                        Thread.yield();
+                }
+                if (now >= nextReport) {
+                    progress(now - startTime);
+                    nextReport += 1000000000L;
+                }
+                startCall(i, intendedStart);
+            }
+            long drainDeadline = System.currentTimeMillis() + holdTime + DRAIN_TIME;
+            while (!calls.isEmpty() && System.currentTimeMillis() < drainDeadline)
+                Thread.sleep(100);
+            long elapsed = System.nanoTime() - startTime;
+
+            Map<Long, Long> cpuAfter = sampleThreadCpu(threadNames);
+            long gcCount = RuntimeStats.getGcCount() - gcCountBefore;
+            long gcTime = RuntimeStats.getGcTime() - gcTimeBefore;
+            return report(elapsed, gcCount, gcTime, cpuBefore, cpuAfter, threadNames);
+        } finally {
+            stop();
+        }
+    }
+
+    private void progress(long elapsed) {
+        System.out.println(String.format(Locale.US,
+                "t=%ds started=%d completed=%d failed=%d in-progress=%d", elapsed / 1000000000L,
+                started.get(), completed.get(), failed.get(), calls.size()));
+    }
+
+    private long report(long elapsed, long gcCount, long gcTime, Map<Long, Long> cpuBefore,
+            Map<Long, Long> cpuAfter, Map<Long, String> threadNames) {
+        long[] sorted = latencies.sorted();
+        MessageCounter uacCounter = (MessageCounter) uacStack.getServerLogger();
+        MessageCounter uasCounter = (MessageCounter) uasStack.getServerLogger();
+        long unfinished = calls.size();
+
+        System.out.println(String.format(Locale.US, "scenario=%s transport=%s cps=%d duration=%ds",
+                scenario, transport, cps, duration));
+        System.out.println(String.format(Locale.US,
+                "started=%d completed=%d failed=%d unfinished=%d throughput=%.1f/s",
+                started.get(), completed.get(), failed.get(), unfinished, completed.get()
+                        * 1e9 / elapsed));
+        System.out.println(String.format(Locale.US,
+                "setup latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                LatencyRecorder.percentile(sorted, 50) / 1000.0, LatencyRecorder.percentile(
+                        sorted, 90) / 1000.0, LatencyRecorder.percentile(sorted, 99) / 1000.0,
+                LatencyRecorder.percentile(sorted, 99.9) / 1000.0, LatencyRecorder.percentile(
+                        sorted, 100) / 1000.0));
+        System.out.println(String.format(Locale.US,
+                "messages: uac sent=%d retransmitted=%d, uas sent=%d retransmitted=%d",
+                uacCounter.getSentCount(), uacCounter.getRetransmissionCount(), uasCounter
+                        .getSentCount(), uasCounter.getRetransmissionCount()));
+        System.out.println(gcCount < 0 ? "gc: n/a" : String.format(Locale.US,
+                "gc: collections=%d time=%dms", gcCount, gcTime));
+
+        // CPU per thread group, the trailing numbers of the thread names dropped.
+        final Map<String, Long> groups = new HashMap<String, Long>();
+        for (Map.Entry<Long, Long> entry : cpuAfter.entrySet()) {
+            Long before = cpuBefore.get(entry.getKey());
+            long used = entry.getValue().longValue() - (before == null ? 0 : before.longValue());
+            String group = threadNames.get(entry.getKey()).replaceAll("[-#_ ]*\\d+$", "");
+            Long sum = groups.get(group);
+            groups.put(group, Long.valueOf((sum == null ? 0 : sum.longValue()) + used));
+        }
+        List<String> names = new ArrayList<String>(groups.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return groups.get(b).compareTo(groups.get(a));
+            }
+        });
+        if (names.isEmpty())
+            System.out.println("thread cpu: n/a");
+        for (String name : names) {
+            long used = groups.get(name).longValue();
+            if (used < 1000000)
+                break;
+            System.out.println(String.format(Locale.US, "thread cpu: %-40s %8dms", name,
+                    used / 1000000));
+        }
+        if (unfinished > 0)
+            failed.addAndGet(unfinished);
+        return LatencyRecorder.percentile(sorted, 99);
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String transport = "udp";
+        String scenario = "invite";
+        int cps = 100;
+        int duration = 10;
+        long holdTime = 0;
+        int port = 5070;
+        long maxP99 = -1;
+        String tlsProtocols = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-transport"))
+                transport = args[i + 1].toLowerCase(Locale.ENGLISH);
+            else if (args[i].equals("-scenario"))
+                scenario = args[i + 1];
+            else if (args[i].equals("-cps"))
+                cps = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-duration"))
+                duration = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-hold"))
+                holdTime = Long.parseLong(args[i + 1]);
+            else if (args[i].equals("-port"))
+                port = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-maxp99"))
+                maxP99 = Long.parseLong(args[i + 1]);
+            else if (args[i].equals("-tlsprotocols"))
+                tlsProtocols = args[i + 1];
+            else
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+        LoadGenerator generator = new LoadGenerator(transport, scenario, cps, duration,
+                holdTime, port);
+        if (tlsProtocols != null)
+            generator.setTlsProtocols(tlsProtocols.split(","));
+        long p99 = generator.run();
+        boolean passed = generator.getFailedCount() == 0 && (maxP99 < 0 || p99 <= maxP99 * 1000);
+        System.exit(passed ? 0 : 1);
+    }
+}
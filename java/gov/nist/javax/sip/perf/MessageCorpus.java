@@ -0,0 +1,223 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+/**
+ * A small corpus of realistic SIP messages for the benchmarks and the load generator. The
+ * messages are chosen to exercise the header parsers that matter in practice: an INVITE with
+ * an SDP offer, a 200 OK with a Record-Route set, a REGISTER carrying digest credentials, a
+ * NOTIFY with a multipart body and an IMS INVITE with the usual P- headers.
+ *
+ * @since 2.0
+ */
+public final class MessageCorpus {
+
+    public static final String INVITE_SDP = withBody(
+            "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=z9hG4bK776asdhds;rport\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+            + "CSeq: 314159 INVITE\r\n"
+            + "Contact: <sip:alice@pc33.atlanta.example.com;transport=udp>\r\n"
+            + "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, REFER, NOTIFY, MESSAGE, SUBSCRIBE, INFO, UPDATE, PRACK\r\n"
+            + "Supported: replaces, timer, 100rel\r\n"
+            + "Session-Expires: 1800;refresher=uac\r\n"
+            + "User-Agent: Example UA 1.0\r\n",
+            "application/sdp",
+            "v=0\r\n"
+            + "o=alice 2890844526 2890844526 IN IP4 pc33.atlanta.example.com\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.101\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49172 RTP/AVP 0 8 101\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n"
+            + "a=rtpmap:8 PCMA/8000\r\n"
+            + "a=rtpmap:101 telephone-event/8000\r\n"
+            + "a=fmtp:101 0-15\r\n"
+            + "a=sendrecv\r\n");
+
+    public static final String OK_RECORD_ROUTE = withBody(
+            "SIP/2.0 200 OK\r\n"
+            + "Via: SIP/2.0/UDP server10.biloxi.example.com;branch=z9hG4bK4b43c2ff8.1;received=192.0.2.3\r\n"
+            + "Via: SIP/2.0/UDP bigbox3.site3.atlanta.example.com;branch=z9hG4bK77ef4c2312983.1;received=192.0.2.2\r\n"
+            + "Via: SIP/2.0/UDP pc33.atlanta.example.com;branch=z9hG4bK776asdhds;received=192.0.2.1\r\n"
+            + "Record-Route: <sip:server10.biloxi.example.com;lr>\r\n"
+            + "Record-Route: <sip:bigbox3.site3.atlanta.example.com;lr>\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>;tag=a6c85cf\r\n"
+            + "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+            + "CSeq: 314159 INVITE\r\n"
+            + "Contact: <sip:bob@192.0.2.4>\r\n"
+            + "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE\r\n",
+            "application/sdp",
+            "v=0\r\n"
+            + "o=bob 2808844564 2808844564 IN IP4 biloxi.example.com\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.201\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 3456 RTP/AVP 0\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n");
+
+    public static final String REGISTER_DIGEST =
+            "REGISTER sip:registrar.biloxi.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP bobspc.biloxi.example.com:5060;branch=z9hG4bKnashds7\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: Bob <sip:bob@biloxi.example.com>\r\n"
+            + "From: Bob <sip:bob@biloxi.example.com>;tag=456248\r\n"
+            + "Call-ID: 843817637684230@998sdasdh09\r\n"
+            + "CSeq: 1827 REGISTER\r\n"
+            + "Contact: <sip:bob@192.0.2.4>;expires=7200;+sip.instance=\"<urn:uuid:00000000-0000-1000-8000-000A95A0E128>\"\r\n"
+            + "Authorization: Digest username=\"bob\", realm=\"biloxi.example.com\", "
+            + "nonce=\"dcd98b7102dd2f0e8b11d0f600bfb0c093\", uri=\"sip:registrar.biloxi.example.com\", "
+            + "qop=auth, nc=00000001, cnonce=\"0a4f113b\", "
+            + "response=\"6629fae49393a05397450978507c4ef1\", opaque=\"5ccc069c403ebaf9f0171e9517f40e41\", "
+            + "algorithm=MD5\r\n"
+            + "Expires: 7200\r\n"
+            + "Content-Length: 0\r\n\r\n";
+
+    public static final String NOTIFY_MULTIPART = withBody(
+            "NOTIFY sip:alice@pc33.atlanta.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/TCP rls.example.com;branch=z9hG4bKMgRenyjoJg\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:alice@atlanta.example.com>;tag=zpNctbZq\r\n"
+            + "From: <sip:buddies@example.com>;tag=ie4hbb8t\r\n"
+            + "Call-ID: cdB34qLToC@pc33.atlanta.example.com\r\n"
+            + "CSeq: 997935769 NOTIFY\r\n"
+            + "Contact: <sip:rls.example.com;transport=tcp>\r\n"
+            + "Event: presence\r\n"
+            + "Subscription-State: active;expires=7200\r\n"
+            + "Require: eventlist\r\n",
+            "multipart/related;type=\"application/rlmi+xml\";start=\"<nXYxAE@example.com>\";boundary=\"50UBfW7LSCVLtggUPe5z\"",
+            "--50UBfW7LSCVLtggUPe5z\r\n"
+            + "Content-Transfer-Encoding: binary\r\n"
+            + "Content-ID: <nXYxAE@example.com>\r\n"
+            + "Content-Type: application/rlmi+xml;charset=\"UTF-8\"\r\n"
+            + "\r\n"
+            + "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+            + "<list xmlns=\"urn:ietf:params:xml:ns:rlmi\" uri=\"sip:buddies@example.com\" version=\"1\" fullState=\"true\">\r\n"
+            + "  <resource uri=\"sip:bob@biloxi.example.com\">\r\n"
+            + "    <instance id=\"juwigmtboe\" state=\"active\" cid=\"bUZBsM@example.com\"/>\r\n"
+            + "  </resource>\r\n"
+            + "</list>\r\n"
+            + "\r\n"
+            + "--50UBfW7LSCVLtggUPe5z\r\n"
+            + "Content-Transfer-Encoding: binary\r\n"
+            + "Content-ID: <bUZBsM@example.com>\r\n"
+            + "Content-Type: application/pidf+xml;charset=\"UTF-8\"\r\n"
+            + "\r\n"
+            + "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+            + "<presence xmlns=\"urn:ietf:params:xml:ns:pidf\" entity=\"sip:bob@biloxi.example.com\">\r\n"
+            + "  <tuple id=\"sg89ae\">\r\n"
+            + "    <status><basic>open</basic></status>\r\n"
+            + "    <contact priority=\"1.0\">sip:bob@biloxi.example.com</contact>\r\n"
+            + "  </tuple>\r\n"
+            + "</presence>\r\n"
+            + "\r\n"
+            + "--50UBfW7LSCVLtggUPe5z--\r\n");
+
+    public static final String INVITE_IMS = withBody(
+            "INVITE tel:+15555551002;phone-context=ims.example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP pcscf1.visited1.example.net;branch=z9hG4bK240f34.1\r\n"
+            + "Via: SIP/2.0/UDP [5555::aaa:bbb:ccc:ddd]:1357;comp=sigcomp;branch=z9hG4bKnashds7\r\n"
+            + "Max-Forwards: 69\r\n"
+            + "Record-Route: <sip:pcscf1.visited1.example.net;lr>\r\n"
+            + "Route: <sip:scscf1.home1.example.net;lr>\r\n"
+            + "P-Asserted-Identity: \"John Doe\" <sip:user1_public1@home1.example.net>\r\n"
+            + "P-Access-Network-Info: 3GPP-UTRAN-TDD; utran-cell-id-3gpp=234151D0FCE11\r\n"
+            + "P-Charging-Vector: icid-value=\"AyretyU0dm+6O2IrT5tAFrbHLso=023551024\"; orig-ioi=visited1.example.net\r\n"
+            + "P-Visited-Network-ID: \"Visited network number 1\"\r\n"
+            + "P-Preferred-Service: urn:urn-7:3gpp-service.ims.icsi.mmtel\r\n"
+            + "Privacy: none\r\n"
+            + "From: <sip:user1_public1@home1.example.net>;tag=171828\r\n"
+            + "To: <tel:+15555551002>\r\n"
+            + "Call-ID: cb03a0s09a2sdfglkj490333\r\n"
+            + "CSeq: 127 INVITE\r\n"
+            + "Require: sec-agree\r\n"
+            + "Supported: precondition, 100rel, gruu\r\n"
+            + "Proxy-Require: sec-agree\r\n"
+            + "Security-Verify: ipsec-3gpp; q=0.1; alg=hmac-sha-1-96; spi-c=98765432; spi-s=87654321; port-c=8642; port-s=7531\r\n"
+            + "Contact: <sip:[5555::aaa:bbb:ccc:ddd]:1357;comp=sigcomp>;+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\"\r\n"
+            + "Accept-Contact: *;+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\"\r\n"
+            + "Allow: INVITE, ACK, CANCEL, BYE, PRACK, UPDATE, REFER, MESSAGE\r\n",
+            "application/sdp",
+            "v=0\r\n"
+            + "o=- 2987933615 2987933615 IN IP6 5555::aaa:bbb:ccc:ddd\r\n"
+            + "s=-\r\n"
+            + "c=IN IP6 5555::aaa:bbb:ccc:ddd\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 3456 RTP/AVP 97 96\r\n"
+            + "b=AS:25.4\r\n"
+            + "a=curr:qos local none\r\n"
+            + "a=curr:qos remote none\r\n"
+            + "a=des:qos mandatory local sendrecv\r\n"
+            + "a=des:qos none remote sendrecv\r\n"
+            + "a=rtpmap:97 AMR\r\n"
+            + "a=fmtp:97 mode-set=0,2,5,7; maxframes=2\r\n"
+            + "a=rtpmap:96 telephone-event\r\n");
+
+    private static final String[] NAMES = {
+        "invite-sdp", "200-record-route", "register-digest", "notify-multipart", "invite-ims"
+    };
+
+    private static final String[] MESSAGES = {
+        INVITE_SDP, OK_RECORD_ROUTE, REGISTER_DIGEST, NOTIFY_MULTIPART, INVITE_IMS
+    };
+
+    private MessageCorpus() {
+    }
+
+    /**
+     * The short names of the corpus messages, in the order of getMessages.
+     */
+    public static String[] getNames() {
+        return NAMES.clone();
+    }
+
+    public static String[] getMessages() {
+        return MESSAGES.clone();
+    }
+
+    /**
+     * The corpus message with the given short name, or null.
+     */
+    public static String getMessage(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name))
+                return MESSAGES[i];
+        }
+        return null;
+    }
+
+    /**
+     * Append the Content-Type, Content-Length and body to a header block.
+     */
+    private static String withBody(String headers, String contentType, String body) {
+        return headers + "Content-Type: " + contentType + "\r\n" + "Content-Length: "
+                + body.length() + "\r\n\r\n" + body;
+    }
+}
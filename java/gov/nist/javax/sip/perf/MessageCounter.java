@@ -0,0 +1,128 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+import gov.nist.core.ServerLogger;
+import gov.nist.javax.sip.message.SIPMessage;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.SipStack;
+
+/**
+ * A ServerLogger that counts the messages a stack sends and receives and detects
+ * retransmissions: a message sent with the same transaction id and first line as one sent
+ * before in the same call is counted as a retransmission. Install it with the
+ * gov.nist.javax.sip.SERVER_LOGGER property and call forgetCall when a call is over so that
+ * the memory used for the detection stays bounded.
+ *
+ * @since 2.0
+ */
+public class MessageCounter implements ServerLogger {
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong retransmitted = new AtomicLong();
+
+    /**
+     * Call-ID to the keys of the messages sent in that call.
+     */
+    private final ConcurrentHashMap<String, Set<String>> calls =
+            new ConcurrentHashMap<String, Set<String>>();
+
+    public void logMessage(SIPMessage message, String from, String to, boolean sender,
+            long time) {
+        count(message, sender);
+    }
+
+    public void logMessage(SIPMessage message, String from, String to, String status,
+            boolean sender, long time) {
+        count(message, sender);
+    }
+
+    public void logMessage(SIPMessage message, String from, String to, String status,
+            boolean sender) {
+        count(message, sender);
+    }
+
+    private void count(SIPMessage message, boolean sender) {
+        if (!sender) {
+            received.incrementAndGet();
+            return;
+        }
+        sent.incrementAndGet();
+        String callId = message.getCallId() == null ? null : message.getCallId().getCallId();
+        if (callId == null)
+            return;
+        Set<String> keys = calls.get(callId);
+        if (keys == null) {
+            Set<String> newKeys = Collections
+                    .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            keys = calls.putIfAbsent(callId, newKeys);
+            if (keys == null)
+                keys = newKeys;
+        }
+        if (!keys.add(message.getTransactionId() + " " + message.getFirstLine()))
+            retransmitted.incrementAndGet();
+    }
+
+    /**
+     * Drop the retransmission detection state of a call.
+     */
+    public void forgetCall(String callId) {
+        calls.remove(callId);
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getRetransmissionCount() {
+        return retransmitted.get();
+    }
+
+    public void logException(Exception ex) {
+    }
+
+    public void closeLogFile() {
+    }
+
+    public void setStackProperties(Properties stackProperties) {
+    }
+
+    public void setSipStack(SipStack sipStack) {
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Per thread CPU time, allocated bytes and garbage collector counters. The management beans
+ * are looked up reflectively so that this package still compiles where java.lang.management
+ * is not available (Android); the methods then return -1.
+ *
+ * @since 2.0
+ */
+public final class RuntimeStats {
+
+    private static Object threadBean;
+
+    private static Method getThreadCpuTime;
+
+    private static Method getThreadAllocatedBytes;
+
+    private static List<?> gcBeans;
+
+    private static Method getCollectionCount;
+
+    private static Method getCollectionTime;
+
+    static {
+        try {
+            Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            threadBean = factory.getMethod("getThreadMXBean").invoke(null);
+            Class<?> threadBeanClass = Class.forName("java.lang.management.ThreadMXBean");
+            getThreadCpuTime = threadBeanClass.getMethod("getThreadCpuTime", long.class);
+            try {
+                // HotSpot extension.
+                Class<?> ext = Class.forName("com.sun.management.ThreadMXBean");
+                if (ext.isInstance(threadBean)) {
+                    getThreadAllocatedBytes = ext.getMethod("getThreadAllocatedBytes",
+                            long.class);
+                }
+            } catch (ClassNotFoundException ex) {
+                // No allocation accounting.
+            }
+            gcBeans = (List<?>) factory.getMethod("getGarbageCollectorMXBeans").invoke(null);
+            Class<?> gcBeanClass = Class
+                    .forName("java.lang.management.GarbageCollectorMXBean");
+            getCollectionCount = gcBeanClass.getMethod("getCollectionCount");
+            getCollectionTime = gcBeanClass.getMethod("getCollectionTime");
+        } catch (Exception ex) {
+            threadBean = null;
+            gcBeans = null;
+        }
+    }
+
+    private RuntimeStats() {
+    }
+
+    private static long invokeLong(Method method, Object target, Object... args) {
+        if (method == null || target == null)
+            return -1;
+        try {
+            return ((Long) method.invoke(target, args)).longValue();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * The CPU time (ns) used by a thread so far, or -1.
+     */
+    public static long getThreadCpuTime(long threadId) {
+        return invokeLong(getThreadCpuTime, threadBean, Long.valueOf(threadId));
+    }
+
+    /**
+     * The number of bytes allocated by a thread so far, or -1.
+     */
+    public static long getThreadAllocatedBytes(long threadId) {
+        return invokeLong(getThreadAllocatedBytes, threadBean, Long.valueOf(threadId));
+    }
+
+    public static boolean isAllocationAccountingSupported() {
+        return getThreadAllocatedBytes != null
+                && getThreadAllocatedBytes(Thread.currentThread().getId()) >= 0;
+    }
+
+    /**
+     * The number of collections of all garbage collectors, or -1.
+     */
+    public static long getGcCount() {
+        return sumGc(getCollectionCount);
+    }
+
+    /**
+     * The accumulated collection time (ms) of all garbage collectors, or -1.
+     */
+    public static long getGcTime() {
+        return sumGc(getCollectionTime);
+    }
+
+    private static long sumGc(Method method) {
+        if (gcBeans == null)
+            return -1;
+        long total = 0;
+        for (Object bean : gcBeans) {
+            long value = invokeLong(method, bean);
+            if (value > 0)
+                total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+import gov.nist.javax.sip.ListeningPointImpl;
+import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.address.AddressFactoryImpl;
+import gov.nist.javax.sip.header.HeaderFactoryImpl;
+import gov.nist.javax.sip.message.MessageFactoryImpl;
+import gov.nist.javax.sip.message.ResponsePrototype;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.Pipeline;
+import gov.nist.javax.sip.parser.PipelinedMsgParser;
+import gov.nist.javax.sip.parser.SIPMessageListener;
+import gov.nist.javax.sip.parser.StringMsgParser;
+import gov.nist.javax.sip.stack.DialogCodec;
+import gov.nist.javax.sip.stack.MessageChannel;
+import gov.nist.javax.sip.stack.SIPDialog;
+import gov.nist.javax.sip.stack.SIPServerTransaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.ServerTransaction;
+import javax.sip.SipListener;
+import javax.sip.SipProvider;
+import javax.sip.TimeoutEvent;
+import javax.sip.TransactionTerminatedEvent;
+import javax.sip.header.Header;
+import javax.sip.message.Response;
+
+/**
+ * Micro benchmarks for the hot paths of the stack: message parsing (datagram and stream
+ * framing), encoding, cloning, equals and match of a message against its clone, creation of a 200 OK, ACK and CANCEL from an INVITE,
+ * transaction id computation, header and URI creation through
+ * the factories, transaction lookup at different table sizes and the snapshot and restore of
+ * a dialog for replication. Each benchmark is run over
+ * the messages of the MessageCorpus.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java gov.nist.javax.sip.perf.StackBenchmarks [-wi n] [-i n] [-t ms] [-tx size,size,...] [filter...]
+ * java gov.nist.javax.sip.perf.StackBenchmarks -retained
+ * </pre>
+ *
+ * -wi and -i set the number of warm up and measurement iterations, -t the length of an
+ * iteration and -tx the transaction table sizes. Only the benchmarks whose name contains one
+ * of the filters are run. Allocation per operation is reported on JVMs that support thread
+ * allocation accounting. -retained prints the heap held by a parsed message of the corpus
+ * and by a completed server transaction, with and without TRIM_COMPLETED_TRANSACTIONS,
+ * instead.
+ *
+ * @since 2.0
+ */
+public class StackBenchmarks {
+
+    /**
+     * The number of messages written to the pipeline per framing operation.
+     */
+    private static final int PIPELINED_MESSAGES = 16;
+
+    /**
+     * The number of copies of a message held to measure its retained size.
+     */
+    private static final int RETAINED_MESSAGES = 20000;
+
+    /**
+     * The number of completed server transactions held to measure their retained size.
+     */
+    private static final int RETAINED_TRANSACTIONS = 5000;
+
+    private static final String[] HEADERS = {
+        "Via: SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=z9hG4bK776asdhds;rport",
+        "Contact: <sip:alice@pc33.atlanta.example.com;transport=udp>;expires=3600",
+        "Record-Route: <sip:server10.biloxi.example.com;lr>",
+        "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774",
+        "Authorization: Digest username=\"bob\", realm=\"biloxi.example.com\", "
+                + "nonce=\"dcd98b7102dd2f0e8b11d0f600bfb0c093\", uri=\"sip:biloxi.example.com\", "
+                + "qop=auth, nc=00000001, cnonce=\"0a4f113b\", "
+                + "response=\"6629fae49393a05397450978507c4ef1\"",
+        "P-Asserted-Identity: \"John Doe\" <sip:user1_public1@home1.example.net>"
+    };
+
+    private static final String[] URIS = {
+        "sip:alice@atlanta.example.com",
+        "sip:bob@192.0.2.4:5060;transport=tcp;lr",
+        "sips:registrar.biloxi.example.com;maddr=192.0.2.10?subject=project",
+        "tel:+15555551002;phone-context=ims.example.com",
+        "sip:[5555::aaa:bbb:ccc:ddd]:1357;comp=sigcomp"
+    };
+
+    private static final int[] DEFAULT_TABLE_SIZES = {
+        100, 1000, 10000
+    };
+
+    private static SIPMessage parse(String message) throws ParseException {
+        return new StringMsgParser().parseSIPMessage(message.getBytes());
+    }
+
+    private static List<Benchmark> createBenchmarks(int[] tableSizes) throws Exception {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        String[] names = MessageCorpus.getNames();
+        String[] messages = MessageCorpus.getMessages();
+
+        for (int i = 0; i < messages.length; i++) {
+            final byte[] bytes = messages[i].getBytes();
+            benchmarks.add(new Benchmark("parse/" + names[i]) {
+                public Object run() throws Exception {
+                    return new StringMsgParser().parseSIPMessage(bytes);
+                }
+            });
+        }
+
+        for (int i = 0; i < messages.length; i++) {
+            // A message in a receive buffer larger than itself, as UDP hands it over.
+            final byte[] packet = new byte[8192];
+            final int length = messages[i].getBytes().length;
+            System.arraycopy(messages[i].getBytes(), 0, packet, 0, length);
+            benchmarks.add(new Benchmark("parseDatagram/" + names[i]) {
+                public Object run() throws Exception {
+                    return new StringMsgParser().parseSIPMessage(packet, 0, length);
+                }
+            });
+        }
+
+        for (int i = 0; i < messages.length; i++) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            for (int j = 0; j < PIPELINED_MESSAGES; j++)
+                stream.write(messages[i].getBytes());
+            final byte[] bytes = stream.toByteArray();
+            benchmarks.add(new Benchmark("pipelined/" + names[i] + "x" + PIPELINED_MESSAGES) {
+                public Object run() throws Exception {
+                    Pipeline pipeline = new Pipeline(new ByteArrayInputStream(new byte[0]), -1,
+                            null);
+                    pipeline.write(bytes);
+                    pipeline.close();
+                    CountingListener listener = new CountingListener();
+                    new PipelinedMsgParser(listener, pipeline, 0).run();
+                    if (listener.count != PIPELINED_MESSAGES)
+                        throw new IllegalStateException("Framed " + listener.count
+                                + " messages");
+                    return listener;
+                }
+            });
+        }
+
+        for (int i = 0; i < messages.length; i++) {
+            final SIPMessage message = parse(messages[i]);
+            // Encoding for another transport rewrites the top Via, so keep the message's own.
+            final String transport = message.getTopmostVia().getTransport();
+            benchmarks.add(new Benchmark("encodeAsBytes/" + names[i]) {
+                public Object run() {
+                    return message.encodeAsBytes(transport);
+                }
+            });
+            benchmarks.add(new Benchmark("clone/" + names[i]) {
+                public Object run() {
+                    return message.clone();
+                }
+            });
+            // The equals and match benchmarks get their own pair, which no other benchmark
+            // touches.
+            final SIPMessage original = parse(messages[i]);
+            final SIPMessage copy = (SIPMessage) original.clone();
+            benchmarks.add(new Benchmark("equals/" + names[i]) {
+                public Object run() {
+                    if (!original.equals(copy))
+                        throw new IllegalStateException("Clone does not equal the original");
+                    return copy;
+                }
+            });
+            benchmarks.add(new Benchmark("match/" + names[i]) {
+                public Object run() {
+                    if (!original.match(copy))
+                        throw new IllegalStateException("Clone does not match the original");
+                    return copy;
+                }
+            });
+            benchmarks.add(new Benchmark("getTransactionId/" + names[i]) {
+                public Object run() {
+                    return message.getTransactionId();
+                }
+            });
+        }
+
+        final SIPRequest invite = (SIPRequest) parse(MessageCorpus.INVITE_SDP);
+        benchmarks.add(new Benchmark("createResponse/200") {
+            public Object run() throws Exception {
+                SIPResponse response = invite.createResponse(Response.OK);
+                response.setToTag("a6c85cf");
+                return response;
+            }
+        });
+        benchmarks.add(new Benchmark("createResponse/200+encode") {
+            public Object run() throws Exception {
+                SIPResponse response = invite.createResponse(Response.OK);
+                response.setToTag("a6c85cf");
+                return response.encodeAsBytes("UDP");
+            }
+        });
+        benchmarks.add(new Benchmark("createResponse/100+encode") {
+            public Object run() throws Exception {
+                return invite.createResponse(Response.TRYING).encodeAsBytes("UDP");
+            }
+        });
+        final ResponsePrototype trying = new ResponsePrototype(Response.TRYING, null);
+        benchmarks.add(new Benchmark("prototype/100+encode") {
+            public Object run() throws Exception {
+                return trying.createResponse(invite).encodeAsBytes("UDP");
+            }
+        });
+        final HeaderFactoryImpl headerFactory = new HeaderFactoryImpl();
+        final Header allow = (Header) headerFactory
+                .createHeaders("Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, PRACK, UPDATE");
+        final Header supported = (Header) headerFactory.createHeaders("Supported: 100rel, timer");
+        benchmarks.add(new Benchmark("createResponse/OPTIONS+encode") {
+            public Object run() throws Exception {
+                SIPResponse response = invite.createResponse(Response.OK);
+                response.setHeader(allow);
+                response.setHeader(supported);
+                return response.encodeAsBytes("UDP");
+            }
+        });
+        final ResponsePrototype options = new ResponsePrototype(Response.OK, null, allow,
+                supported);
+        benchmarks.add(new Benchmark("prototype/OPTIONS+encode") {
+            public Object run() throws Exception {
+                return options.createResponse(invite).encodeAsBytes("UDP");
+            }
+        });
+        benchmarks.add(new Benchmark("createAckRequest") {
+            public Object run() throws Exception {
+                return invite.createAckRequest(null);
+            }
+        });
+        benchmarks.add(new Benchmark("createCancelRequest") {
+            public Object run() throws Exception {
+                return invite.createCancelRequest();
+            }
+        });
+
+        benchmarks.add(new Benchmark("createHeader") {
+            private int next;
+
+            public Object run() throws Exception {
+                next = (next + 1) % HEADERS.length;
+                return headerFactory.createHeader(HEADERS[next]);
+            }
+        });
+
+        final AddressFactoryImpl addressFactory = new AddressFactoryImpl();
+        benchmarks.add(new Benchmark("createURI") {
+            private int next;
+
+            public Object run() throws Exception {
+                next = (next + 1) % URIS.length;
+                return addressFactory.createURI(URIS[next]);
+            }
+        });
+
+        for (int size : tableSizes)
+            benchmarks.add(new FindTransactionBenchmark(size));
+
+        benchmarks.add(new DialogSnapshotBenchmark(false));
+        benchmarks.add(new DialogSnapshotBenchmark(true));
+
+        return benchmarks;
+    }
+
+    static class CountingListener implements SIPMessageListener {
+        int count;
+
+        public void processMessage(SIPMessage msg) {
+            count++;
+        }
+
+        @SuppressWarnings("rawtypes")
+        public void handleException(ParseException ex, SIPMessage sipMessage,
+                Class headerClass, String headerText, String messageText) throws ParseException {
+            throw ex;
+        }
+    }
+
+    /**
+     * Look up server transactions in a table of the given size.
+     */
+    static class FindTransactionBenchmark extends Benchmark {
+        private static final int LOOKUPS = 256;
+
+        private final int size;
+
+        private SipStackImpl sipStack;
+
+        private SIPRequest[] lookups;
+
+        private int next;
+
+        FindTransactionBenchmark(int size) {
+            super("findTransaction/" + size);
+            this.size = size;
+        }
+
+        private static String request(int i) {
+            return "OPTIONS sip:bob@biloxi.example.com SIP/2.0\r\n"
+                    + "Via: SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=z9hG4bK" + i + "\r\n"
+                    + "Max-Forwards: 70\r\n"
+                    + "To: <sip:bob@biloxi.example.com>\r\n"
+                    + "From: <sip:alice@atlanta.example.com>;tag=" + i + "\r\n"
+                    + "Call-ID: " + i + "@pc33.atlanta.example.com\r\n"
+                    + "CSeq: 1 OPTIONS\r\n"
+                    + "Content-Length: 0\r\n\r\n";
+        }
+
+        public void setUp() throws Exception {
+            Properties properties = new Properties();
+            properties.setProperty("javax.sip.STACK_NAME", getName());
+            properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+            sipStack = new SipStackImpl(properties);
+            // Any free port will do, nothing is sent.
+            DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+            int port = socket.getLocalPort();
+            socket.close();
+            ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", port,
+                    "udp");
+            MessageChannel channel = ((ListeningPointImpl) listeningPoint).getMessageProcessor()
+                    .createMessageChannel(InetAddress.getByName("127.0.0.1"), 5060);
+            for (int i = 0; i < size; i++) {
+                SIPServerTransaction transaction = sipStack.createServerTransaction(channel);
+                transaction.setOriginalRequest((SIPRequest) parse(request(i)));
+                sipStack.addTransaction(transaction);
+            }
+            Random random = new Random(size);
+            lookups = new SIPRequest[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++)
+                lookups[i] = (SIPRequest) parse(request(random.nextInt(size)));
+        }
+
+        public Object run() {
+            next = (next + 1) % LOOKUPS;
+            Object transaction = sipStack.findTransaction(lookups[next], true);
+            if (transaction == null)
+                throw new IllegalStateException("Transaction not found");
+            return transaction;
+        }
+
+        public void tearDown() {
+            if (sipStack != null)
+                sipStack.stop();
+            sipStack = null;
+            lookups = null;
+        }
+    }
+
+    /**
+     * Take a DialogCodec snapshot of a dialog with a route set, or restore one.
+     */
+    static class DialogSnapshotBenchmark extends Benchmark {
+        private static final String RESPONSE = "SIP/2.0 200 OK\r\n"
+                + "Via: SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=z9hG4bK776asdhds\r\n"
+                + "Record-Route: <sip:p2.biloxi.example.com;lr>\r\n"
+                + "Record-Route: <sip:p1.atlanta.example.com;lr>\r\n"
+                + "To: Bob <sip:bob@biloxi.example.com>;tag=a6c85cf\r\n"
+                + "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+                + "Call-ID: a84b4c76e66710@pc33.atlanta.example.com\r\n"
+                + "CSeq: 314159 INVITE\r\n"
+                + "Contact: <sip:bob@192.0.2.4>\r\n"
+                + "Content-Length: 0\r\n\r\n";
+
+        private final boolean restore;
+
+        private SipStackImpl sipStack;
+
+        private SIPDialog dialog;
+
+        private byte[] snapshot;
+
+        DialogSnapshotBenchmark(boolean restore) {
+            super(restore ? "dialogRestore" : "dialogSnapshot");
+            this.restore = restore;
+        }
+
+        public void setUp() throws Exception {
+            Properties properties = new Properties();
+            properties.setProperty("javax.sip.STACK_NAME", getName());
+            properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+            sipStack = new SipStackImpl(properties);
+            // Any free port will do, nothing is sent.
+            DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+            int port = socket.getLocalPort();
+            socket.close();
+            SipProviderImpl provider = (SipProviderImpl) sipStack.createSipProvider(sipStack
+                    .createListeningPoint("127.0.0.1", port, "udp"));
+            dialog = sipStack.createDialog(provider, (SIPResponse) parse(RESPONSE));
+            snapshot = DialogCodec.encode(dialog);
+        }
+
+        public Object run() throws Exception {
+            return restore ? DialogCodec.decode(sipStack, snapshot) : DialogCodec.encode(dialog);
+        }
+
+        public void tearDown() {
+            if (sipStack != null)
+                sipStack.stop();
+            sipStack = null;
+            dialog = null;
+            snapshot = null;
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Print the average heap held by a parsed message, for each message of the corpus.
+     */
+    private static void printRetainedSizes() throws ParseException {
+        String[] names = MessageCorpus.getNames();
+        String[] messages = MessageCorpus.getMessages();
+        System.out.println(String.format("%-40s %12s", "Message", "Retained"));
+        for (int i = 0; i < messages.length; i++) {
+            byte[] message = messages[i].getBytes();
+            SIPMessage[] held = new SIPMessage[RETAINED_MESSAGES];
+            long before = usedMemory();
+            for (int j = 0; j < held.length; j++)
+                held[j] = new StringMsgParser().parseSIPMessage(message);
+            long after = usedMemory();
+            System.out.println(String.format("%-40s %10d B", names[i], (after - before)
+                    / held.length));
+        }
+    }
+
+    /**
+     * Answers every request with a 200 OK.
+     */
+    static class RespondingListener implements SipListener {
+        private final SipProvider provider;
+
+        private final MessageFactoryImpl messageFactory = new MessageFactoryImpl();
+
+        RespondingListener(SipProvider provider) {
+            this.provider = provider;
+        }
+
+        public void processRequest(RequestEvent event) {
+            try {
+                ServerTransaction transaction = event.getServerTransaction();
+                if (transaction == null)
+                    transaction = provider.getNewServerTransaction(event.getRequest());
+                transaction.sendResponse(messageFactory.createResponse(200, event.getRequest()));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        public void processResponse(ResponseEvent event) {
+        }
+
+        public void processTimeout(TimeoutEvent event) {
+        }
+
+        public void processIOException(IOExceptionEvent event) {
+        }
+
+        public void processTransactionTerminated(TransactionTerminatedEvent event) {
+        }
+
+        public void processDialogTerminated(DialogTerminatedEvent event) {
+        }
+    }
+
+    private static String transactionRequest(String method, int port, String branch, int i) {
+        return method + " sip:bob@127.0.0.1:" + port + " SIP/2.0\r\n"
+                + "Via: SIP/2.0/UDP 127.0.0.1:" + (port + 1) + ";branch=" + branch + "\r\n"
+                + "Max-Forwards: 70\r\n"
+                + "To: <sip:bob@biloxi.example.com>\r\n"
+                + "From: <sip:alice@atlanta.example.com>;tag=" + i + "\r\n"
+                + "Call-ID: " + i + "@pc33.atlanta.example.com\r\n"
+                + "CSeq: 1 " + method + "\r\n"
+                + "Record-Route: <sip:p1.example.com;lr>,<sip:p2.example.com;lr>\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: 200\r\n\r\n"
+                + String.format("%200s", "x");
+    }
+
+    /**
+     * Print the average heap held by a server transaction that has sent its final response,
+     * with and without TRIM_COMPLETED_TRANSACTIONS. A CANCEL and an RFC 2543 retransmission,
+     * which are matched against every transaction of the table, are looked up before the
+     * heap is measured.
+     */
+    private static void printRetainedTransactionSizes() throws Exception {
+        for (String trim : new String[] {"false", "true"}) {
+            DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+            int port = socket.getLocalPort();
+            socket.close();
+            Properties properties = new Properties();
+            properties.setProperty("javax.sip.STACK_NAME", "retained-" + trim);
+            properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+            properties.setProperty("gov.nist.javax.sip.TRIM_COMPLETED_TRANSACTIONS", trim);
+            SipStackImpl sipStack = new SipStackImpl(properties);
+            SipProvider provider = sipStack.createSipProvider(sipStack.createListeningPoint(
+                    "127.0.0.1", port, "udp"));
+            provider.addSipListener(new RespondingListener(provider));
+            sipStack.start();
+            DatagramSocket client = new DatagramSocket(port + 1, InetAddress
+                    .getByName("127.0.0.1"));
+            client.setSoTimeout(2000);
+            try {
+                InetAddress address = InetAddress.getByName("127.0.0.1");
+                byte[] buffer = new byte[4096];
+                long before = usedMemory();
+                for (int i = 0; i < RETAINED_TRANSACTIONS; i++) {
+                    byte[] request = transactionRequest("MESSAGE", port, "z9hG4bK" + i, i)
+                            .getBytes();
+                    client.send(new DatagramPacket(request, request.length, address, port));
+                    client.receive(new DatagramPacket(buffer, buffer.length));
+                }
+                sipStack.findCancelTransaction((SIPRequest) parse(transactionRequest("CANCEL",
+                        port, "z9hG4bKnone", -1)), true);
+                sipStack.findTransaction(parse(transactionRequest("MESSAGE", port, "none", -1)),
+                        true);
+                long after = usedMemory();
+                System.out.println(String.format("%-40s %10d B", "serverTransaction/trim=" + trim,
+                        (after - before) / RETAINED_TRANSACTIONS));
+            } finally {
+                client.close();
+                sipStack.stop();
+            }
+        }
+    }
+
+    private static int[] parseSizes(String sizes) {
+        String[] parts = sizes.split(",");
+        int[] retval = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            retval[i] = Integer.parseInt(parts[i].trim());
+        return retval;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmupIterations = 5;
+        int measurementIterations = 5;
+        long iterationTime = 1000;
+        int[] tableSizes = DEFAULT_TABLE_SIZES;
+        List<String> filters = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-wi") && i + 1 < args.length) {
+                warmupIterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-i") && i + 1 < args.length) {
+                measurementIterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                iterationTime = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-tx") && i + 1 < args.length) {
+                tableSizes = parseSizes(args[++i]);
+            } else if (args[i].equals("-retained")) {
+                printRetainedSizes();
+                printRetainedTransactionSizes();
+                return;
+            } else {
+                filters.add(args[i]);
+            }
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(warmupIterations, measurementIterations,
+                iterationTime, System.out);
+        if (!RuntimeStats.isAllocationAccountingSupported())
+            System.out.println("# Allocation accounting is not supported by this JVM");
+        runner.printHeader();
+        for (Benchmark benchmark : createBenchmarks(tableSizes)) {
+            boolean selected = filters.isEmpty();
+            for (String filter : filters) {
+                if (benchmark.getName().indexOf(filter) != -1)
+                    selected = true;
+            }
+            if (selected)
+                runner.run(benchmark);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.SipFactory;
+import javax.sip.SipListener;
+import javax.sip.SipProvider;
+import javax.sip.SipStack;
+import javax.sip.TimeoutEvent;
+import javax.sip.TransactionTerminatedEvent;
+
+/**
+ * Measures the time from SipFactory.createSipStack to the first message handed to the
+ * listener, the figure that matters for short lived JVMs (tests, mobile clients). The
+ * benchmark creates a stack, a listening point per transport and a provider, then sends an
+ * OPTIONS request to the first listening point from a plain socket and waits for the
+ * listener to see it. It prints the time spent in each phase and the number of classes
+ * loaded.
+ * <p>
+ * Startup is a one shot measurement, so by default the benchmark runs itself in -fork fresh
+ * JVMs and prints the median of each phase.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java gov.nist.javax.sip.perf.StartupBenchmark [-fork n] [-transports udp,tcp,...] [-port n]
+ * </pre>
+ *
+ * System properties starting with gov.nist.javax.sip. are passed on to the stack. -fork 0
+ * runs a single measurement in this JVM.
+ *
+ * @since 2.0
+ */
+public class StartupBenchmark {
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final String RESULT_PREFIX = "startup: ";
+
+    private final String[] transports;
+
+    private final int port;
+
+    private final CountDownLatch received = new CountDownLatch(1);
+
+    private volatile long receivedTime;
+
+    /**
+     * The phases of one run, in order, with their duration in ms.
+     */
+    private final Map<String, Double> phases = new LinkedHashMap<String, Double>();
+
+    public StartupBenchmark(String[] transports, int port) {
+        this.transports = transports;
+        this.port = port;
+    }
+
+    private class Listener implements SipListener {
+
+        public void processRequest(RequestEvent requestEvent) {
+            receivedTime = System.nanoTime();
+            received.countDown();
+        }
+
+        public void processResponse(ResponseEvent responseEvent) {
+        }
+
+        public void processTimeout(TimeoutEvent timeoutEvent) {
+        }
+
+        public void processIOException(IOExceptionEvent exceptionEvent) {
+        }
+
+        public void processTransactionTerminated(TransactionTerminatedEvent transactionTerminatedEvent) {
+        }
+
+        public void processDialogTerminated(DialogTerminatedEvent dialogTerminatedEvent) {
+        }
+    }
+
+    private static double millis(long from, long to) {
+        return (to - from) / 1000000.0;
+    }
+
+    private String createOptions() {
+        String transport = transports[0].toUpperCase(Locale.ENGLISH);
+        return "OPTIONS sip:startup@" + HOST + ":" + port + " SIP/2.0\r\n"
+                + "Via: SIP/2.0/" + transport + " " + HOST + ":" + (port + 1)
+                + ";branch=z9hG4bKstartup\r\n"
+                + "Max-Forwards: 70\r\n"
+                + "From: <sip:probe@" + HOST + ">;tag=startup\r\n"
+                + "To: <sip:startup@" + HOST + ">\r\n"
+                + "Call-ID: startup@" + HOST + "\r\n"
+                + "CSeq: 1 OPTIONS\r\n"
+                + "Content-Length: 0\r\n\r\n";
+    }
+
+    private void send(String message) throws Exception {
+        byte[] bytes = message.getBytes("UTF-8");
+        if (transports[0].equalsIgnoreCase(ListeningPoint.UDP)) {
+            DatagramSocket socket = new DatagramSocket();
+            try {
+                socket.send(new DatagramPacket(bytes, bytes.length, InetAddress.getByName(HOST),
+                        port));
+            } finally {
+                socket.close();
+            }
+        } else {
+            Socket socket = new Socket(HOST, port);
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write(bytes);
+                out.flush();
+                if (!received.await(10, TimeUnit.SECONDS))
+                    throw new IllegalStateException("The stack did not receive the request");
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Run one measurement in this JVM.
+     */
+    public Map<String, Double> run() throws Exception {
+        Properties properties = new Properties();
+        for (Enumeration<?> e = System.getProperties().propertyNames(); e.hasMoreElements();) {
+            String key = (String) e.nextElement();
+            if (key.startsWith("gov.nist.javax.sip."))
+                properties.setProperty(key, System.getProperty(key));
+        }
+        properties.setProperty("javax.sip.STACK_NAME", "startup");
+        if (properties.getProperty("gov.nist.javax.sip.TRACE_LEVEL") == null)
+            properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+        String message = createOptions();
+
+        long start = System.nanoTime();
+        SipStack sipStack = SipFactory.getInstance().createSipStack(properties);
+        long created = System.nanoTime();
+        try {
+            ListeningPoint[] listeningPoints = new ListeningPoint[transports.length];
+            for (int i = 0; i < transports.length; i++)
+                listeningPoints[i] = sipStack.createListeningPoint(HOST, port, transports[i]);
+            long listening = System.nanoTime();
+            SipProvider sipProvider = sipStack.createSipProvider(listeningPoints[0]);
+            for (int i = 1; i < listeningPoints.length; i++)
+                sipProvider.addListeningPoint(listeningPoints[i]);
+            sipProvider.addSipListener(new Listener());
+            sipStack.start();
+            long started = System.nanoTime();
+            send(message);
+            if (!received.await(10, TimeUnit.SECONDS))
+                throw new IllegalStateException("The stack did not receive the request");
+
+            phases.put("createSipStack", millis(start, created));
+            phases.put("createListeningPoints", millis(created, listening));
+            phases.put("createSipProvider+start", millis(listening, started));
+            phases.put("firstMessage", millis(started, receivedTime));
+            phases.put("total", millis(start, receivedTime));
+            phases.put("loadedClasses", (double) ManagementFactory.getClassLoadingMXBean()
+                    .getLoadedClassCount());
+            return phases;
+        } finally {
+            sipStack.stop();
+        }
+    }
+
+    /**
+     * Run the benchmark in a fresh JVM and return its phases.
+     */
+    private static Map<String, Double> fork(List<String> args) throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator
+                + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (Enumeration<?> e = System.getProperties().propertyNames(); e.hasMoreElements();) {
+            String key = (String) e.nextElement();
+            if (key.startsWith("gov.nist.javax.sip.") || key.startsWith("javax.net.ssl."))
+                command.add("-D" + key + "=" + System.getProperty(key));
+        }
+        command.add(StartupBenchmark.class.getName());
+        command.addAll(args);
+        command.add("-fork");
+        command.add("0");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process
+                .getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] fields = line.substring(RESULT_PREFIX.length()).trim().split("\\s+");
+                    result.put(fields[0], Double.valueOf(fields[1]));
+                } else {
+                    System.out.println(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (process.waitFor() != 0)
+            throw new IllegalStateException("The forked benchmark failed");
+        return result;
+    }
+
+    private static void print(Map<String, Double> phases) {
+        for (Map.Entry<String, Double> phase : phases.entrySet()) {
+            System.out.println(RESULT_PREFIX
+                    + String.format(Locale.ENGLISH, "%-26s %10.2f", phase.getKey(), phase
+                            .getValue()));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int forks = 10;
+        String transports = "udp";
+        int port = 5090;
+        List<String> childArgs = new ArrayList<String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-fork")) {
+                forks = Integer.parseInt(args[i + 1]);
+                continue;
+            } else if (args[i].equals("-transports"))
+                transports = args[i + 1];
+            else if (args[i].equals("-port"))
+                port = Integer.parseInt(args[i + 1]);
+            else
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            childArgs.add(args[i]);
+            childArgs.add(args[i + 1]);
+        }
+
+        if (forks <= 0) {
+            print(new StartupBenchmark(transports.split(","), port).run());
+            System.exit(0);
+        }
+
+        Map<String, List<Double>> samples = new LinkedHashMap<String, List<Double>>();
+        for (int i = 0; i < forks; i++) {
+            Map<String, Double> result = fork(childArgs);
+            for (Map.Entry<String, Double> phase : result.entrySet()) {
+                List<Double> values = samples.get(phase.getKey());
+                if (values == null) {
+                    values = new ArrayList<Double>();
+                    samples.put(phase.getKey(), values);
+                }
+                values.add(phase.getValue());
+            }
+        }
+        System.out.println("median of " + forks + " runs (ms, transports " + transports + ")");
+        Map<String, Double> medians = new LinkedHashMap<String, Double>();
+        for (Map.Entry<String, List<Double>> phase : samples.entrySet()) {
+            List<Double> values = phase.getValue();
+            Collections.sort(values);
+            medians.put(phase.getKey(), values.get(values.size() / 2));
+        }
+        print(medians);
+    }
+}
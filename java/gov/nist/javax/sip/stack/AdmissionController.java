@@ -0,0 +1,243 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import gov.nist.javax.sip.header.Via;
+
+import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for the transaction tables. The controller holds a limit on the number
+ * of transactions in progress. New transactions are admitted while the count is below the
+ * limit and rejected at once otherwise: the client side fails with a
+ * TransactionUnavailableException, the server side answers 503 with Retry-After.
+ * <p>
+ * When adaptive, the limit follows an AIMD rule driven by the observed processing delay
+ * (time an event spent queued for the listener plus the time the listener took). A delay
+ * above the target cuts the limit by a quarter (at most once per adjustment interval), a
+ * delay below it while the table is close to full raises the limit by one. The limit stays
+ * between the configured minimum and maximum.
+ * <p>
+ * The controller can also fill in the RFC 7339 overload control parameters (oc, oc-algo,
+ * oc-validity, oc-seq) in the Via of responses to clients that announced support by
+ * adding an oc parameter to their Via.
+ *
+ * @since 2.0
+ */
+public class AdmissionController {
+
+    /**
+     * How often (in ms) the limit may be decreased.
+     */
+    private static final long DECREASE_INTERVAL = 100;
+
+    /**
+     * Validity (in ms) advertised with an oc parameter.
+     */
+    private static final int OC_VALIDITY = 2000;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long targetDelay;
+
+    private final boolean adaptive;
+
+    private volatile int limit;
+
+    /**
+     * Exponentially weighted moving average of the processing delay, in ms, stored as the
+     * bits of a double so that it can be updated with compareAndSet.
+     */
+    private final AtomicLong averageDelay = new AtomicLong(Double.doubleToLongBits(0));
+
+    private long lastDecrease;
+
+    private final AtomicLong admitted = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private long windowStart;
+
+    private long windowAdmitted;
+
+    private long windowRejected;
+
+    private int reduction;
+
+    /**
+     * Create a controller.
+     *
+     * @param maxLimit -- the largest number of transactions in progress.
+     * @param adaptive -- whether to adapt the limit to the observed processing delay.
+     * @param targetDelay -- the processing delay (ms) above which the limit is reduced.
+     */
+    public AdmissionController(int maxLimit, boolean adaptive, long targetDelay) {
+        if (maxLimit <= 0)
+            throw new IllegalArgumentException("Bad limit " + maxLimit);
+        this.maxLimit = maxLimit;
+        this.minLimit = Math.max(1, maxLimit / 10);
+        this.adaptive = adaptive;
+        this.targetDelay = targetDelay;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Decide whether a new transaction may be created.
+     *
+     * @param inProgress -- the number of transactions currently in progress.
+     */
+    public boolean admit(int inProgress) {
+        if (inProgress < limit) {
+            admitted.incrementAndGet();
+            return true;
+        } else {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Reserve room for a new transaction: increment the count of transactions in progress
+     * if it is below the limit. The check and the increment are one atomic step, so that
+     * concurrent callers cannot overshoot the limit. The caller must decrement the count
+     * when the transaction ends or is not created after all.
+     *
+     * @param inProgress -- the number of transactions currently in progress.
+     */
+    public boolean admit(AtomicInteger inProgress) {
+        while (true) {
+            int count = inProgress.get();
+            if (count >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inProgress.compareAndSet(count, count + 1)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Record the processing delay of an event and adapt the limit.
+     *
+     * @param delay -- queue delay plus listener latency in ms.
+     * @param inProgress -- the number of transactions currently in progress.
+     */
+    public void recordDelay(long delay, int inProgress) {
+        while (true) {
+            long bits = averageDelay.get();
+            double average = Double.longBitsToDouble(bits) * 0.9 + delay * 0.1;
+            if (averageDelay.compareAndSet(bits, Double.doubleToLongBits(average)))
+                break;
+        }
+        if (!adaptive)
+            return;
+        if (delay > targetDelay) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (now - lastDecrease >= DECREASE_INTERVAL) {
+                    lastDecrease = now;
+                    limit = Math.max(minLimit, limit - Math.max(1, limit / 4));
+                }
+            }
+        } else if (inProgress >= limit * 3 / 4 && limit < maxLimit) {
+            synchronized (this) {
+                if (limit < maxLimit)
+                    limit++;
+            }
+        }
+    }
+
+    /**
+     * The number of seconds a rejected client should wait before retrying.
+     */
+    public int getRetryAfter() {
+        return 1 + (int) Math.min(30, getAverageDelay() * 2 / 1000);
+    }
+
+    /**
+     * The percentage of requests a client should stop sending (RFC 7339 loss algorithm):
+     * the share of transactions rejected over the last second or so.
+     */
+    public synchronized int getReductionPercentage() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= 1000) {
+            long a = admitted.get();
+            long r = rejected.get();
+            long total = (a - windowAdmitted) + (r - windowRejected);
+            reduction = total == 0 ? 0 : (int) ((r - windowRejected) * 100 / total);
+            windowAdmitted = a;
+            windowRejected = r;
+            windowStart = now;
+        }
+        return reduction;
+    }
+
+    /**
+     * Add the RFC 7339 overload control parameters to a Via of a response if the client
+     * announced support for them.
+     */
+    public void setOverloadControlParameters(Via via) {
+        if (via == null || !via.hasParameter("oc"))
+            return;
+        try {
+            via.setParameter("oc", Integer.toString(getReductionPercentage()));
+            via.setParameter("oc-algo", "\"loss\"");
+            via.setParameter("oc-validity", Integer.toString(OC_VALIDITY));
+            via.setParameter("oc-seq", Long.toString(System.currentTimeMillis() / 1000));
+        } catch (ParseException ex) {
+            // Not a legal value; leave the Via as it was.
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * The average processing delay, in ms.
+     */
+    public double getAverageDelay() {
+        return Double.longBitsToDouble(averageDelay.get());
+    }
+}
@@ -298,21 +298,27 @@ public class DefaultRouter implements Router {
 
         // sipUri.removeParameter("transport");
 
-        int port;
-        if (sipUri.getPort() != -1) {
-            port = sipUri.getPort();
-        } else {
-            if (transport.equalsIgnoreCase(SIPConstants.TLS))
-                port = 5061;
-            else
-                port = 5060; // TCP or UDP
-        }
+        int port = sipUri.getPort();
         String host = sipUri.getMAddrParam() != null ? sipUri.getMAddrParam()
                 : sipUri.getHost();
         AddressResolver addressResolver = this.sipStack.getAddressResolver();
-        return addressResolver
+        // Only the caching resolver looks up SRV records (RFC 3263) and needs
+        // the port left unset; other resolvers get the default port as before.
+        if (port == -1 && !(addressResolver instanceof CachingAddressResolver))
+            port = defaultPort(transport);
+        Hop hop = addressResolver
                 .resolveAddress(new HopImpl(host, port, transport));
+        if (hop.getPort() == -1)
+            hop = new HopImpl(hop.getHost(), defaultPort(transport), hop.getTransport());
+        return hop;
+
+    }
 
+    private static int defaultPort(String transport) {
+        if (transport.equalsIgnoreCase(SIPConstants.TLS))
+            return 5061;
+        else
+            return 5060; // TCP or UDP
     }
 
     /**
@@ -0,0 +1,123 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sip.address.Hop;
+
+/**
+ * Versioned binary snapshots of dialogs and of hop lists. This is much smaller and faster
+ * than Java serialization of a SIPDialog, which drags in the whole graph of the requests
+ * and transactions it refers to. A dialog snapshot holds the state needed to route and
+ * create in-dialog requests: dialog id, tags, CSeq numbers, parties, route set, remote
+ * target, contact, event, the flags of the first transaction and the last response without
+ * its body.
+ * <p>
+ * Every snapshot starts with a version byte. A decoder accepts snapshots of its own version
+ * and older ones, so that a standby may be upgraded before the active side.
+ *
+ * @since 2.0
+ */
+public final class DialogCodec {
+
+    /**
+     * The version written by this codec.
+     */
+    public static final int VERSION = 1;
+
+    private DialogCodec() {
+    }
+
+    /**
+     * Take a snapshot of a dialog.
+     */
+    public static byte[] encode(SIPDialog dialog) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        dialog.writeState(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rebuild a dialog from a snapshot. The dialog is bound to a provider of the given stack
+     * but is not put into its dialog table.
+     */
+    public static SIPDialog decode(SIPTransactionStack sipStack, byte[] snapshot)
+            throws IOException, ParseException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        checkVersion(in.readByte());
+        return SIPDialog.readState(sipStack, in);
+    }
+
+    /**
+     * Encode a list of hops, for example a route set computed by a router.
+     */
+    public static byte[] encodeHops(List<? extends Hop> hops) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + hops.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeShort(hops.size());
+        for (Hop hop : hops) {
+            out.writeUTF(hop.getHost());
+            out.writeInt(hop.getPort());
+            out.writeUTF(hop.getTransport());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a list of hops written by encodeHops.
+     */
+    public static List<Hop> decodeHops(byte[] encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        checkVersion(in.readByte());
+        int size = in.readUnsignedShort();
+        List<Hop> hops = new ArrayList<Hop>(size);
+        for (int i = 0; i < size; i++) {
+            String host = in.readUTF();
+            int port = in.readInt();
+            String transport = in.readUTF();
+            hops.add(new HopImpl(host, port, transport));
+        }
+        return hops;
+    }
+
+    private static void checkVersion(int version) throws IOException {
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects the dialogs that changed and hands their snapshots to the DialogStateReplicator
+ * in batches. A dialog that changes several times before the next batch is snapshotted only
+ * once. Batches are taken and replicated on the stack timer, every replication interval and
+ * as soon as the queue holds maxBatchSize dialogs, so that the threads that change dialogs
+ * never wait for the replicator.
+ *
+ * @since 2.0
+ */
+class DialogReplicationQueue {
+
+    private final SIPTransactionStack sipStack;
+
+    private final DialogStateReplicator replicator;
+
+    private final int maxBatchSize;
+
+    // Changed dialogs by id. A null value stands for a removed dialog.
+    private LinkedHashMap<String, SIPDialog> pending = new LinkedHashMap<String, SIPDialog>();
+
+    // Keeps batches in order when the timer and a caller flush at the same time.
+    private final Object flushLock = new Object();
+
+    // Set while a flush of a full batch is waiting for the timer.
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    DialogReplicationQueue(SIPTransactionStack sipStack, DialogStateReplicator replicator,
+            int maxBatchSize) {
+        this.sipStack = sipStack;
+        this.replicator = replicator;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    DialogStateReplicator getReplicator() {
+        return replicator;
+    }
+
+    void dialogChanged(SIPDialog dialog) {
+        String dialogId = dialog.getDialogId();
+        if (dialogId == null)
+            return;
+        if (add(dialogId, dialog))
+            scheduleFlush();
+    }
+
+    void dialogRemoved(String dialogId) {
+        if (add(dialogId, null))
+            scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        // Without a timer (the stack is not running) the batch waits for the next flush.
+        if (flushScheduled.compareAndSet(false, true) && !sipStack.scheduleDialogReplication())
+            flushScheduled.set(false);
+    }
+
+    private synchronized boolean add(String dialogId, SIPDialog dialog) {
+        if (!pending.containsKey(dialogId) || dialog == null)
+            pending.put(dialogId, dialog);
+        return pending.size() >= maxBatchSize;
+    }
+
+    /**
+     * Snapshot the pending dialogs and hand them to the replicator.
+     */
+    void flush() {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+            Map<String, SIPDialog> batch;
+            synchronized (this) {
+                if (pending.isEmpty())
+                    return;
+                batch = pending;
+                pending = new LinkedHashMap<String, SIPDialog>();
+            }
+            Map<String, byte[]> snapshots = new LinkedHashMap<String, byte[]>(batch.size() * 2);
+            for (Map.Entry<String, SIPDialog> entry : batch.entrySet()) {
+                SIPDialog dialog = entry.getValue();
+                if (dialog == null) {
+                    snapshots.put(entry.getKey(), null);
+                    continue;
+                }
+                try {
+                    snapshots.put(entry.getKey(), DialogCodec.encode(dialog));
+                } catch (Exception ex) {
+                    if (sipStack.isLoggingEnabled())
+                        sipStack.getStackLogger().logError(
+                                "Could not take a snapshot of dialog " + entry.getKey(), ex);
+                }
+            }
+            try {
+                replicator.replicate(snapshots);
+            } catch (RuntimeException ex) {
+                if (sipStack.isLoggingEnabled())
+                    sipStack.getStackLogger().logError("Dialog replication failed", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.util.Map;
+
+/**
+ * Receives the state of dialogs that changed, for example to ship it to a standby stack.
+ * The stack takes a DialogCodec snapshot of a dialog when it changes state, when its route
+ * set or remote target is set and when its CSeq numbers change. Changes are batched:
+ * several changes of a dialog between two batches are coalesced into a single snapshot of
+ * its latest state.
+ * <p>
+ * Batches are delivered one at a time, in order, from the stack timer thread. This holds for
+ * full batches too: the thread that changed a dialog only schedules the delivery, it never
+ * calls the replicator. The one exception is the last batch, which is delivered from the
+ * thread that replaces the replicator or stops the stack. Implementations should hand the
+ * snapshots over to their own I/O rather than block, since they hold up the other timer
+ * tasks of the stack.
+ *
+ * @since 2.0
+ */
+public interface DialogStateReplicator {
+
+    /**
+     * Replicate a batch of dialog snapshots.
+     *
+     * @param snapshots -- the snapshots keyed by dialog id, in the order the dialogs first
+     *        changed. A null snapshot means that the dialog was removed.
+     */
+    public void replicate(Map<String, byte[]> snapshots);
+}
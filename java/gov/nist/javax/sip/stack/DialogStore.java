@@ -0,0 +1,175 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Off-heap storage for the compact records of passivated dialogs, indexed by dialog id.
+ * <p>
+ * Records are copied into direct buffers carved from 1MB slabs in size classes of 64 bytes.
+ * A freed record goes back on the free list of its size class and is reused by the next
+ * record of that class, so the store does not fragment and the garbage collector only sees
+ * the slabs and the index. Records larger than the largest size class get a direct buffer
+ * of their own.
+ *
+ * @since 2.0
+ */
+public class DialogStore {
+
+    private static final int SLAB_SIZE = 1024 * 1024;
+
+    private static final int SIZE_CLASS = 64;
+
+    private static final int MAX_CLASS_SIZE = 8192;
+
+    private final ConcurrentHashMap<String, ByteBuffer> index =
+        new ConcurrentHashMap<String, ByteBuffer>();
+
+    private final List<List<ByteBuffer>> freeLists;
+
+    private ByteBuffer slab;
+
+    private int slabCount;
+
+    private long bytesStored;
+
+    public DialogStore() {
+        int classes = MAX_CLASS_SIZE / SIZE_CLASS;
+        this.freeLists = new ArrayList<List<ByteBuffer>>(classes);
+        for (int i = 0; i < classes; i++)
+            freeLists.add(new ArrayList<ByteBuffer>());
+    }
+
+    /**
+     * Store a record, replacing the one stored under the same id.
+     */
+    public synchronized void put(String id, byte[] record) {
+        ByteBuffer buffer = allocate(record.length);
+        buffer.put(record);
+        buffer.flip();
+        ByteBuffer old = index.put(id, buffer);
+        if (old != null)
+            free(old);
+        bytesStored += record.length;
+    }
+
+    /**
+     * Get a copy of the record stored under an id, or null if there is none.
+     */
+    public synchronized byte[] get(String id) {
+        ByteBuffer buffer = index.get(id);
+        if (buffer == null)
+            return null;
+        byte[] record = new byte[buffer.remaining()];
+        buffer.duplicate().get(record);
+        return record;
+    }
+
+    /**
+     * Remove the record stored under an id and return it, or null if there is none.
+     */
+    public synchronized byte[] remove(String id) {
+        ByteBuffer buffer = index.remove(id);
+        if (buffer == null)
+            return null;
+        byte[] record = new byte[buffer.remaining()];
+        buffer.duplicate().get(record);
+        free(buffer);
+        return record;
+    }
+
+    /**
+     * Check for a record without taking the store lock.
+     */
+    public boolean contains(String id) {
+        return index.containsKey(id);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * The number of bytes held by the records currently in the store.
+     */
+    public synchronized long getBytesStored() {
+        return bytesStored;
+    }
+
+    /**
+     * The off-heap memory (bytes) reserved for slabs.
+     */
+    public synchronized long getReservedBytes() {
+        return (long) slabCount * SLAB_SIZE;
+    }
+
+    /**
+     * Drop all records and release the slabs.
+     */
+    public synchronized void clear() {
+        index.clear();
+        for (List<ByteBuffer> freeList : freeLists)
+            freeList.clear();
+        slab = null;
+        slabCount = 0;
+        bytesStored = 0;
+    }
+
+    private ByteBuffer allocate(int length) {
+        int capacity = Math.max(SIZE_CLASS, (length + SIZE_CLASS - 1) / SIZE_CLASS * SIZE_CLASS);
+        if (capacity > MAX_CLASS_SIZE)
+            return ByteBuffer.allocateDirect(length);
+        List<ByteBuffer> freeList = freeLists.get(capacity / SIZE_CLASS - 1);
+        if (!freeList.isEmpty()) {
+            ByteBuffer buffer = freeList.remove(freeList.size() - 1);
+            buffer.clear();
+            buffer.limit(length);
+            return buffer;
+        }
+        if (slab == null || slab.remaining() < capacity) {
+            // The tail of the old slab is too small for this class; leave it unused.
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            slabCount++;
+        }
+        slab.limit(slab.position() + capacity);
+        ByteBuffer buffer = slab.slice();
+        slab.position(slab.limit());
+        slab.limit(slab.capacity());
+        buffer.limit(length);
+        return buffer;
+    }
+
+    private void free(ByteBuffer buffer) {
+        bytesStored -= buffer.limit();
+        int capacity = buffer.capacity();
+        if (capacity <= MAX_CLASS_SIZE && capacity % SIZE_CLASS == 0)
+            freeLists.get(capacity / SIZE_CLASS - 1).add(buffer);
+    }
+}
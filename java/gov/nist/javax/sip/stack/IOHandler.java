@@ -29,14 +29,21 @@
 package gov.nist.javax.sip.stack;
 
 import gov.nist.core.StackLogger;
+import gov.nist.core.net.NetworkLayer;
+import gov.nist.core.net.NetworkLayerExt;
 import gov.nist.javax.sip.SipStackImpl;
 
 import java.io.*;
 import java.net.*;
-import java.util.Enumeration;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLSocket;
@@ -49,6 +56,12 @@ import javax.net.ssl.SSLSocket;
 /**
  * Low level Input output to a socket. Caches TCP connections and takes care of re-connecting to
  * the remote party if the other end drops the connection
+ * <p>
+ * The cache can be bounded (least recently used connections are closed first), connections
+ * that carried no traffic for the idle timeout are closed and, if configured, idle
+ * connections are kept alive with RFC 5626 double CRLF pings. A connection whose ping is not
+ * answered (by a CRLF pong or any other data) within PONG_TIMEOUT is closed. All of this is
+ * done by one task on the stack timer.
  * 
  * @version 1.2
  * 
@@ -59,8 +72,6 @@ import javax.net.ssl.SSLSocket;
 
 class IOHandler {
 
-    private Semaphore ioSemaphore = new Semaphore(1);
-
     private SipStackImpl sipStack;
 
     private static String TCP = "tcp";
@@ -68,9 +79,87 @@ class IOHandler {
     // Added by Daniel J. Martinez Manzano <dani@dif.um.es>
     private static String TLS = "tls";
 
+    private static final byte[] PING = { '\r', '\n', '\r', '\n' };
+
+    // How long (ms) to wait for the answer to a keepalive ping.
+    private static final long PONG_TIMEOUT = 10000;
+
+    // How often (ms) the connection audit runs.
+    private static final long AUDIT_INTERVAL = 5000;
+
+    private static class CachedSocket {
+        final Socket socket;
+
+        volatile long lastActivity;
+
+        volatile long pingSent;
+
+        CachedSocket(Socket socket) {
+            this.socket = socket;
+            this.lastActivity = System.currentTimeMillis();
+        }
+    }
+
     // A cache of client sockets that can be re-used for
-    // sending tcp messages.
-    private ConcurrentHashMap<String, Socket> socketTable;
+    // sending tcp messages. Access ordered, so the eldest entry is
+    // the least recently used connection.
+    private final LinkedHashMap<String, CachedSocket> socketTable;
+
+    private boolean auditScheduled;
+
+    // Serializes the writes to a socket output stream. A ReentrantLock rather than the
+    // stream monitor, so that a virtual thread blocked in a write does not pin its carrier.
+    private static final Map<OutputStream, ReentrantLock> writeLocks =
+            new WeakHashMap<OutputStream, ReentrantLock>();
+
+    // Outgoing connections (and TLS handshakes) in progress, by peer.
+    private final Map<String, PendingConnection> pendingConnections = new HashMap<String, PendingConnection>();
+
+    // How long (ms) sends to a peer whose connection just failed fail at once, rather
+    // than each starting a new connect.
+    private static final long CONNECT_RETRY_INTERVAL = 5000;
+
+    // How long (ms) a connect may take when the connect or handshake timeout is 0.
+    private static final long MAX_CONNECT_TIME = 32000;
+
+    // Connects that failed recently, by peer, with the time they failed.
+    private final Map<String, ConnectFailure> connectFailures = new HashMap<String, ConnectFailure>();
+
+    private static class ConnectFailure {
+        final IOException exception;
+
+        final long time;
+
+        ConnectFailure(IOException exception, long time) {
+            this.exception = exception;
+            this.time = time;
+        }
+    }
+
+    /*
+     * A connection being opened on the connect executor. Messages sent to the peer in the
+     * meantime are queued (under the pendingConnections lock) and written in order before
+     * the socket is cached, so no direct write can overtake them. The senders do not wait:
+     * a failure is reported to the transactions using the peer (see
+     * SIPTransactionStack.connectionFailed) and to the senders that follow.
+     */
+    private static class PendingConnection {
+        final List<byte[]> queue = new ArrayList<byte[]>();
+
+        private boolean done;
+
+        /**
+         * Record the outcome. Only the first call counts.
+         *
+         * @return false if the outcome was already set.
+         */
+        synchronized boolean complete() {
+            if (done)
+                return false;
+            done = true;
+            return true;
+        }
+    }
 
     protected static String makeKey(InetAddress addr, int port) {
         return addr.getHostAddress() + ":" + port;
@@ -79,21 +168,175 @@ class IOHandler {
 
     protected IOHandler(SIPTransactionStack sipStack) {
         this.sipStack = (SipStackImpl) sipStack;
-        this.socketTable = new ConcurrentHashMap<String, Socket>();
+        this.socketTable = new LinkedHashMap<String, CachedSocket>(16, 0.75f, true);
 
     }
 
     protected void putSocket(String key, Socket sock) {
-        socketTable.put(key, sock);
-
+        List<Socket> evicted = null;
+        synchronized (socketTable) {
+            CachedSocket old = socketTable.put(key, new CachedSocket(sock));
+            if (old != null && old.socket != sock) {
+                evicted = new ArrayList<Socket>(1);
+                evicted.add(old.socket);
+            }
+            int maxSize = sipStack.maxCachedConnections;
+            if (maxSize > 0 && socketTable.size() > maxSize) {
+                Iterator<CachedSocket> it = socketTable.values().iterator();
+                while (socketTable.size() > maxSize && it.hasNext()) {
+                    CachedSocket eldest = it.next();
+                    if (eldest.socket == sock)
+                        continue;
+                    it.remove();
+                    if (evicted == null)
+                        evicted = new ArrayList<Socket>();
+                    evicted.add(eldest.socket);
+                }
+            }
+            if (!auditScheduled
+                    && (sipStack.connectionIdleTimeout > 0 || sipStack.keepAliveInterval > 0)
+                    && sipStack.getTimer() != null) {
+                sipStack.getTimer().schedule(new ConnectionAuditTask(), AUDIT_INTERVAL,
+                        AUDIT_INTERVAL);
+                auditScheduled = true;
+            }
+        }
+        if (evicted != null) {
+            for (Socket s : evicted) {
+                if (sipStack.isLoggingEnabled())
+                    sipStack.getStackLogger().logDebug("Evicting cached connection " + s);
+                closeQuietly(s);
+            }
+        }
     }
 
     protected Socket getSocket(String key) {
-        return (Socket) socketTable.get(key);
+        synchronized (socketTable) {
+            CachedSocket cached = socketTable.get(key);
+            return cached == null ? null : cached.socket;
+        }
     }
 
     protected void removeSocket(String key) {
-        socketTable.remove(key);
+        synchronized (socketTable) {
+            socketTable.remove(key);
+        }
+    }
+
+    /**
+     * Remove a cached socket, unless it was replaced by another one in the meantime.
+     */
+    private void removeSocket(String key, Socket sock) {
+        synchronized (socketTable) {
+            CachedSocket cached = socketTable.get(key);
+            if (cached != null && cached.socket == sock)
+                socketTable.remove(key);
+        }
+    }
+
+    /**
+     * Record traffic on a cached connection. Called by the channels for data they read.
+     */
+    protected void touch(String key) {
+        CachedSocket cached;
+        synchronized (socketTable) {
+            cached = socketTable.get(key);
+        }
+        if (cached != null)
+            cached.lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the time of the last traffic on a cached connection.
+     *
+     * @return the time in ms, or 0 if there is no such connection.
+     */
+    protected long getLastActivityTime(String key) {
+        synchronized (socketTable) {
+            CachedSocket cached = socketTable.get(key);
+            return cached == null ? 0 : cached.lastActivity;
+        }
+    }
+
+    /**
+     * Close a socket without lingering and without reporting errors. Used for connections
+     * that we drop on our own initiative, which have no data in flight.
+     */
+    static void closeQuietly(Socket sock) {
+        try {
+            sock.setSoLinger(true, 0);
+        } catch (IOException ex) {
+        }
+        try {
+            sock.close();
+        } catch (IOException ex) {
+        }
+    }
+
+    /**
+     * Close idle connections and keep the others alive. Runs on the stack timer.
+     */
+    class ConnectionAuditTask extends SIPStackTimerTask {
+
+        protected void runTask() {
+            long now = System.currentTimeMillis();
+            long idleTimeout = sipStack.connectionIdleTimeout;
+            long keepAliveInterval = sipStack.keepAliveInterval;
+            List<CachedSocket> toClose = new ArrayList<CachedSocket>();
+            List<CachedSocket> toPing = new ArrayList<CachedSocket>();
+            synchronized (socketTable) {
+                for (Iterator<CachedSocket> it = socketTable.values().iterator(); it.hasNext();) {
+                    CachedSocket cached = it.next();
+                    long idle = now - cached.lastActivity;
+                    if (cached.socket.isClosed()
+                            || (idleTimeout > 0 && idle >= idleTimeout)
+                            || (cached.pingSent > cached.lastActivity && now - cached.pingSent >= PONG_TIMEOUT)) {
+                        it.remove();
+                        toClose.add(cached);
+                    } else if (keepAliveInterval > 0 && idle >= keepAliveInterval
+                            && cached.pingSent <= cached.lastActivity) {
+                        toPing.add(cached);
+                    }
+                }
+            }
+            if (idleTimeout > 0) {
+                MessageProcessor[] processors = sipStack.getMessageProcessors();
+                for (int i = 0; i < processors.length; i++) {
+                    if (processors[i] instanceof TCPMessageProcessor)
+                        ((TCPMessageProcessor) processors[i]).closeIdleChannels(now - idleTimeout);
+                    else if (processors[i] instanceof TLSMessageProcessor)
+                        ((TLSMessageProcessor) processors[i]).closeIdleChannels(now - idleTimeout);
+                }
+            }
+            for (CachedSocket cached : toClose) {
+                if (sipStack.isLoggingEnabled())
+                    sipStack.getStackLogger().logDebug("Closing idle connection " + cached.socket);
+                closeQuietly(cached.socket);
+            }
+            for (CachedSocket cached : toPing) {
+                try {
+                    OutputStream outputStream = cached.socket.getOutputStream();
+                    cached.pingSent = now;
+                    writeChunks(outputStream, PING, PING.length);
+                } catch (IOException ex) {
+                    closeQuietly(cached.socket);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the lock that serializes the writes to a socket output stream.
+     */
+    static ReentrantLock getWriteLock(OutputStream outputStream) {
+        synchronized (writeLocks) {
+            ReentrantLock lock = writeLocks.get(outputStream);
+            if (lock == null) {
+                lock = new ReentrantLock();
+                writeLocks.put(outputStream, lock);
+            }
+            return lock;
+        }
     }
 
     /**
@@ -105,13 +348,17 @@ class IOHandler {
             throws IOException {
         // Chunk size is 16K - this hack is for large
         // writes over slow connections.
-        synchronized (outputStream) {
+        ReentrantLock lock = getWriteLock(outputStream);
+        lock.lock();
+        try {
             // outputStream.write(bytes,0,length);
             int chunksize = 8 * 1024;
             for (int p = 0; p < length; p += chunksize) {
                 int chunk = p + chunksize < length ? chunksize : length - p;
                 outputStream.write(bytes, p, chunk);
             }
+        } finally {
+            lock.unlock();
         }
         outputStream.flush();
     }
@@ -159,8 +406,6 @@ class IOHandler {
     public Socket sendBytes(InetAddress senderAddress, InetAddress receiverAddress,
             int contactPort, String transport, byte[] bytes, boolean retry,
             MessageChannel messageChannel) throws IOException {
-        int retry_count = 0;
-        int max_retry = retry ? 2 : 1;
         // Server uses TCP transport. TCP client sockets are cached
         int length = bytes.length;
         if (sipStack.isLoggingEnabled()) {
@@ -171,166 +416,277 @@ class IOHandler {
         if (sipStack.isLoggingEnabled() && sipStack.isLogStackTraceOnMessageSend()) {
             sipStack.getStackLogger().logStackTrace(StackLogger.TRACE_INFO);
         }
-        if (transport.compareToIgnoreCase(TCP) == 0) {
+        if (transport.compareToIgnoreCase(TCP) == 0 || transport.compareToIgnoreCase(TLS) == 0) {
             String key = makeKey(receiverAddress, contactPort);
-            // This should be in a synchronized block ( reported by
-            // Jayashenkhar ( lucent ).
-
-            try {
-                boolean retval = this.ioSemaphore.tryAcquire(10000, TimeUnit.MILLISECONDS); 
-                if (!retval) {
-                    throw new IOException(
-                            "Could not acquire IO Semaphore after 10 seconds -- giving up ");
+            Socket clientSock = getSocket(key);
+            if (clientSock != null) {
+                try {
+                    OutputStream outputStream = clientSock.getOutputStream();
+                    writeChunks(outputStream, bytes, length);
+                    touch(key);
+                    return clientSock;
+                } catch (IOException ex) {
+                    if (sipStack.isLoggingEnabled())
+                        sipStack.getStackLogger().logDebug(
+                                "IOException occured on cached connection " + ex);
+                    // old connection is bad.
+                    // remove from our table.
+                    removeSocket(key, clientSock);
+                    try {
+                        clientSock.close();
+                    } catch (Exception e) {
+                    }
+                    if (!retry)
+                        throw ex;
                 }
-            } catch (InterruptedException ex) {
-                throw new IOException("exception in acquiring sem");
             }
-            Socket clientSock = getSocket(key);
-
-            try {
-
-                while (retry_count < max_retry) {
-                    if (clientSock == null) {
-                        if (sipStack.isLoggingEnabled()) {
-                            sipStack.getStackLogger().logDebug("inaddr = " + receiverAddress);
-                            sipStack.getStackLogger().logDebug("port = " + contactPort);
-                        }
-                        // note that the IP Address for stack may not be
-                        // assigned.
-                        // sender address is the address of the listening point.
-                        // in version 1.1 all listening points have the same IP
-                        // address (i.e. that of the stack). In version 1.2
-                        // the IP address is on a per listening point basis.
-                        clientSock = sipStack.getNetworkLayer().createSocket(receiverAddress,
-                                contactPort, senderAddress);
-                        OutputStream outputStream = clientSock.getOutputStream();
-                        writeChunks(outputStream, bytes, length);
-                        putSocket(key, clientSock);
+            return connectAndSend(key, senderAddress, receiverAddress, contactPort,
+                    transport.compareToIgnoreCase(TLS) == 0, bytes, messageChannel);
+        } else {
+            // This is a UDP transport. Send from the listening socket of the sender
+            // address (and the port of the sending channel, if it has one) rather than
+            // from a new socket.
+            int senderPort = messageChannel != null && messageChannel.getMessageProcessor() != null
+                    ? messageChannel.getMessageProcessor().getPort() : -1;
+            UDPMessageProcessor udpProcessor = null;
+            MessageProcessor[] processors = sipStack.getMessageProcessors();
+            for (int i = 0; i < processors.length; i++) {
+                if (processors[i] instanceof UDPMessageProcessor
+                        && processors[i].getIpAddress().equals(senderAddress)) {
+                    if (processors[i].getPort() == senderPort) {
+                        udpProcessor = (UDPMessageProcessor) processors[i];
                         break;
-                    } else {
-                        try {
-                            OutputStream outputStream = clientSock.getOutputStream();
-                            writeChunks(outputStream, bytes, length);
-                            break;
-                        } catch (IOException ex) {
-                            if (sipStack.isLoggingEnabled())
-                                sipStack.getStackLogger().logDebug(
-                                        "IOException occured retryCount " + retry_count);
-                            // old connection is bad.
-                            // remove from our table.
-                            removeSocket(key);
-                            try {
-                                clientSock.close();
-                            } catch (Exception e) {
-                            }
-                            clientSock = null;
-                            retry_count++;
-                        }
+                    } else if (udpProcessor == null) {
+                        udpProcessor = (UDPMessageProcessor) processors[i];
                     }
                 }
-            } finally {
-                ioSemaphore.release();
             }
+            if (udpProcessor != null) {
+                udpProcessor.send(bytes, receiverAddress, contactPort);
+                return null;
+            }
+            DatagramSocket datagramSock = sipStack.getNetworkLayer().createDatagramSocket();
+            datagramSock.connect(receiverAddress, contactPort);
+            DatagramPacket dgPacket = new DatagramPacket(bytes, 0, length, receiverAddress,
+                    contactPort);
+            datagramSock.send(dgPacket);
+            datagramSock.close();
+            return null;
+        }
 
-            if (clientSock == null) {
+    }
 
-                if (sipStack.isLoggingEnabled()) {
-                    sipStack.getStackLogger().logDebug(this.socketTable.toString());
-                    sipStack.getStackLogger().logError(
-                            "Could not connect to " + receiverAddress + ":" + contactPort);
+    /**
+     * Send a message on a connection that is being opened. The connect (and TLS handshake)
+     * runs on the connect executor, bounded by the connect and handshake timeouts, and the
+     * message is queued until the connection is open; the sender returns at once. The
+     * connection is handed to the sending channel when it is open (see connected()). If it
+     * cannot be opened, the transactions using the peer get an IOExceptionEvent, and sends
+     * to the peer fail with the same IOException for CONNECT_RETRY_INTERVAL.
+     *
+     * @return a socket if one was opened by another sender in the meantime, null otherwise.
+     */
+    private Socket connectAndSend(final String key, final InetAddress senderAddress,
+            final InetAddress receiverAddress, final int contactPort, final boolean tls,
+            byte[] bytes, final MessageChannel messageChannel) throws IOException {
+        Socket clientSock;
+        PendingConnection pending = null;
+        boolean opener = false;
+        synchronized (pendingConnections) {
+            clientSock = getSocket(key);
+            if (clientSock == null) {
+                ConnectFailure failure = connectFailures.get(key);
+                if (failure != null) {
+                    if (System.currentTimeMillis() - failure.time < CONNECT_RETRY_INTERVAL)
+                        throw failure.exception;
+                    connectFailures.remove(key);
+                }
+                pending = pendingConnections.get(key);
+                if (pending == null) {
+                    pending = new PendingConnection();
+                    pendingConnections.put(key, pending);
+                    opener = true;
+                } else if (sipStack.isLoggingEnabled()) {
+                    sipStack.getStackLogger().logDebug(
+                            "Queueing message for connection in progress to " + key);
                 }
+                pending.queue.add(bytes);
+            }
+        }
+        if (clientSock != null) {
+            // Somebody else connected in the meantime.
+            writeChunks(clientSock.getOutputStream(), bytes, bytes.length);
+            touch(key);
+            return clientSock;
+        }
+        if (!opener)
+            return null;
 
-                throw new IOException("Could not connect to " + receiverAddress + ":"
-                        + contactPort);
-            } else
-                return clientSock;
+        final PendingConnection connection = pending;
+        long limit = MAX_CONNECT_TIME;
+        if (sipStack.getConnectTimeout() > 0 && (!tls || sipStack.getTlsHandshakeTimeout() > 0))
+            limit = sipStack.getConnectTimeout() + (tls ? sipStack.getTlsHandshakeTimeout() : 0)
+                    + 1000;
+        if (sipStack.getTimer() != null) {
+            // Do not let messages wait for ever on a connect that never returns.
+            sipStack.getTimer().schedule(new SIPStackTimerTask() {
+                protected void runTask() {
+                    fail(key, receiverAddress, contactPort, tls, connection, null,
+                            new SocketTimeoutException("Timed out connecting to " + key));
+                }
+            }, limit);
+        }
+        try {
+            sipStack.getConnectExecutor().execute(new Runnable() {
+                public void run() {
+                    connect(key, senderAddress, receiverAddress, contactPort, tls,
+                            messageChannel, connection);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            fail(key, receiverAddress, contactPort, tls, connection, null, new IOException(
+                    "Too many connections in progress -- cannot connect to " + key));
+        }
+        return null;
+    }
 
-            // Added by Daniel J. Martinez Manzano <dani@dif.um.es>
-            // Copied and modified from the former section for TCP
-        } else if (transport.compareToIgnoreCase(TLS) == 0) {
-            String key = makeKey(receiverAddress, contactPort);
-            try {
-                boolean retval = this.ioSemaphore.tryAcquire(10000, TimeUnit.MILLISECONDS);
-                if (!retval)
-                    throw new IOException("Timeout acquiring IO SEM");
-            } catch (InterruptedException ex) {
-                throw new IOException("exception in acquiring sem");
+    /**
+     * Open a connection for a pending peer, write the queued messages, cache the connection
+     * and hand it to the channel that asked for it. Runs on the connect executor.
+     */
+    private void connect(String key, InetAddress senderAddress, InetAddress receiverAddress,
+            int contactPort, boolean tls, MessageChannel messageChannel,
+            PendingConnection pending) {
+        if (sipStack.isLoggingEnabled()) {
+            sipStack.getStackLogger().logDebug("inaddr = " + receiverAddress);
+            sipStack.getStackLogger().logDebug("port = " + contactPort);
+        }
+        NetworkLayer networkLayer = sipStack.getNetworkLayer();
+        int connectTimeout = sipStack.getConnectTimeout();
+        Socket clientSock = null;
+        try {
+            // note that the IP Address for stack may not be
+            // assigned.
+            // sender address is the address of the listening point.
+            // in version 1.1 all listening points have the same IP
+            // address (i.e. that of the stack). In version 1.2
+            // the IP address is on a per listening point basis.
+            if (tls) {
+                SSLSocket sslsock;
+                if (networkLayer instanceof NetworkLayerExt)
+                    sslsock = ((NetworkLayerExt) networkLayer).connectSSLSocket(
+                            receiverAddress, contactPort, senderAddress, connectTimeout);
+                else
+                    sslsock = networkLayer.createSSLSocket(receiverAddress, contactPort,
+                            senderAddress);
+                clientSock = sslsock;
+                HandshakeCompletedListener listner = new HandshakeCompletedListenerImpl(
+                        (TLSMessageChannel) messageChannel);
+                ((TLSMessageChannel) messageChannel).setHandshakeCompletedListener(listner);
+                sslsock.addHandshakeCompletedListener(listner);
+                sslsock.setEnabledProtocols(sipStack.getEnabledProtocols());
+                int soTimeout = sslsock.getSoTimeout();
+                sslsock.setSoTimeout(sipStack.getTlsHandshakeTimeout());
+                sslsock.startHandshake();
+                sslsock.setSoTimeout(soTimeout);
+            } else if (networkLayer instanceof NetworkLayerExt) {
+                clientSock = ((NetworkLayerExt) networkLayer).connectSocket(receiverAddress,
+                        contactPort, senderAddress, connectTimeout);
+            } else {
+                clientSock = networkLayer.createSocket(receiverAddress, contactPort,
+                        senderAddress);
             }
-            Socket clientSock = getSocket(key);
-
-            try {
-                while (retry_count < max_retry) {
-                    if (clientSock == null) {
-                        if (sipStack.isLoggingEnabled()) {
-                            sipStack.getStackLogger().logDebug("inaddr = " + receiverAddress);
-                            sipStack.getStackLogger().logDebug("port = " + contactPort);
+            // Write the queue until it is empty, then cache the socket in the same step so
+            // that later messages are written directly, after the queued ones.
+            OutputStream outputStream = clientSock.getOutputStream();
+            while (true) {
+                List<byte[]> queued;
+                synchronized (pendingConnections) {
+                    if (pending.queue.isEmpty()) {
+                        if (pendingConnections.get(key) == pending) {
+                            pendingConnections.remove(key);
+                            putSocket(key, clientSock);
                         }
-
-                        clientSock = sipStack.getNetworkLayer().createSSLSocket(receiverAddress,
-                                contactPort, senderAddress);
-                        SSLSocket sslsock = (SSLSocket) clientSock;
-                        HandshakeCompletedListener listner = new HandshakeCompletedListenerImpl(
-                                (TLSMessageChannel) messageChannel);
-                        ((TLSMessageChannel) messageChannel)
-                                .setHandshakeCompletedListener(listner);
-                        sslsock.addHandshakeCompletedListener(listner);
-                        sslsock.setEnabledProtocols(sipStack.getEnabledProtocols());
-                        sslsock.startHandshake();
-
-                        OutputStream outputStream = clientSock.getOutputStream();
-                        writeChunks(outputStream, bytes, length);
-                        putSocket(key, clientSock);
                         break;
-                    } else {
-                        try {
-                            OutputStream outputStream = clientSock.getOutputStream();
-                            writeChunks(outputStream, bytes, length);
-                            break;
-                        } catch (IOException ex) {
-                            if (sipStack.isLoggingEnabled())
-                                sipStack.getStackLogger().logException(ex);
-                            // old connection is bad.
-                            // remove from our table.
-                            removeSocket(key);
-                            try {
-                                clientSock.close();
-                            } catch (Exception e) {
-                            }
-                            clientSock = null;
-                            retry_count++;
-                        }
                     }
+                    queued = new ArrayList<byte[]>(pending.queue);
+                    pending.queue.clear();
                 }
-            } finally {
-                ioSemaphore.release();
+                for (byte[] message : queued)
+                    writeChunks(outputStream, message, message.length);
             }
-            if (clientSock == null) {
-                throw new IOException("Could not connect to " + receiverAddress + ":"
-                        + contactPort);
-            } else
-                return clientSock;
-
-        } else {
-            // This is a UDP transport...
-            DatagramSocket datagramSock = sipStack.getNetworkLayer().createDatagramSocket();
-            datagramSock.connect(receiverAddress, contactPort);
-            DatagramPacket dgPacket = new DatagramPacket(bytes, 0, length, receiverAddress,
-                    contactPort);
-            datagramSock.send(dgPacket);
-            datagramSock.close();
-            return null;
+        } catch (IOException ex) {
+            fail(key, receiverAddress, contactPort, tls, pending, clientSock, ex);
+            return;
+        } catch (RuntimeException ex) {
+            fail(key, receiverAddress, contactPort, tls, pending, clientSock, new IOException(
+                    "Could not connect to " + key, ex));
+            return;
+        }
+        if (!pending.complete()) {
+            // Timed out in the meantime and reported as failed; drop the late connection.
+            removeSocket(key, clientSock);
+            closeQuietly(clientSock);
+            return;
         }
+        try {
+            if (messageChannel instanceof TCPMessageChannel)
+                ((TCPMessageChannel) messageChannel).connected(clientSock);
+            else if (messageChannel instanceof TLSMessageChannel)
+                ((TLSMessageChannel) messageChannel).connected(clientSock);
+        } catch (IOException ex) {
+            removeSocket(key, clientSock);
+            closeQuietly(clientSock);
+        }
+    }
 
+    /**
+     * Give up on a pending connection: drop its queued messages, report the failure to the
+     * transactions using the peer and remember it for the senders that follow.
+     */
+    private void fail(String key, InetAddress receiverAddress, int contactPort, boolean tls,
+            PendingConnection pending, Socket clientSock, IOException ex) {
+        if (!pending.complete())
+            return;
+        int dropped;
+        synchronized (pendingConnections) {
+            if (pendingConnections.get(key) == pending)
+                pendingConnections.remove(key);
+            dropped = pending.queue.size();
+            pending.queue.clear();
+            connectFailures.put(key, new ConnectFailure(ex, System.currentTimeMillis()));
+            // Forget failures nobody asked about again, so the map stays small.
+            if (connectFailures.size() > 1) {
+                long now = System.currentTimeMillis();
+                for (Iterator<ConnectFailure> it = connectFailures.values().iterator(); it
+                        .hasNext();) {
+                    if (now - it.next().time >= CONNECT_RETRY_INTERVAL)
+                        it.remove();
+                }
+            }
+        }
+        if (clientSock != null)
+            closeQuietly(clientSock);
+        if (sipStack.isLoggingEnabled()) {
+            sipStack.getStackLogger().logError(
+                    "Could not connect to " + key + " -- failing " + dropped
+                            + " queued messages : " + ex.getMessage());
+        }
+        sipStack.connectionFailed(receiverAddress, contactPort, tls ? TLS : TCP);
     }
 
     /**
      * Close all the cached connections.
      */
     public void closeAll() {
-        for (Enumeration<Socket> values = socketTable.elements(); values.hasMoreElements();) {
-            Socket s = (Socket) values.nextElement();
+        List<CachedSocket> sockets;
+        synchronized (socketTable) {
+            sockets = new ArrayList<CachedSocket>(socketTable.values());
+            socketTable.clear();
+        }
+        for (CachedSocket cached : sockets) {
             try {
-                s.close();
+                cached.socket.close();
             } catch (IOException ex) {
             }
         }
@@ -0,0 +1,95 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.util.Map;
+
+/**
+ * A DialogStateReplicator that restores the snapshots into the dialog table of another
+ * stack in the same process. It is meant for testing replication and failover: the standby
+ * stack ends up with the dialogs of the active one, bound to its own providers.
+ *
+ * @since 2.0
+ */
+public class LoopbackDialogStateReplicator implements DialogStateReplicator {
+
+    private final SIPTransactionStack standby;
+
+    private long snapshotCount;
+
+    private long byteCount;
+
+    private long failureCount;
+
+    public LoopbackDialogStateReplicator(SIPTransactionStack standby) {
+        if (standby == null)
+            throw new NullPointerException("null standby stack");
+        this.standby = standby;
+    }
+
+    public synchronized void replicate(Map<String, byte[]> snapshots) {
+        for (Map.Entry<String, byte[]> entry : snapshots.entrySet()) {
+            String dialogId = entry.getKey();
+            byte[] snapshot = entry.getValue();
+            if (snapshot == null) {
+                standby.dialogTable.remove(dialogId);
+                continue;
+            }
+            try {
+                SIPDialog dialog = DialogCodec.decode(standby, snapshot);
+                standby.dialogTable.put(dialogId, dialog);
+                snapshotCount++;
+                byteCount += snapshot.length;
+            } catch (Exception ex) {
+                failureCount++;
+                if (standby.isLoggingEnabled())
+                    standby.getStackLogger().logError(
+                            "Could not restore dialog " + dialogId, ex);
+            }
+        }
+    }
+
+    /**
+     * The number of snapshots restored so far.
+     */
+    public synchronized long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * The total size of the snapshots restored so far.
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * The number of snapshots that could not be restored.
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+}
@@ -32,10 +32,10 @@ package gov.nist.javax.sip.stack;
 import gov.nist.core.Host;
 import gov.nist.core.HostPort;
 import gov.nist.core.InternalErrorHandler;
+import gov.nist.core.Separators;
 import gov.nist.core.ServerLogger;
 import gov.nist.javax.sip.address.AddressImpl;
-import gov.nist.javax.sip.header.ContentLength;
-import gov.nist.javax.sip.header.ContentType;
+import gov.nist.javax.sip.header.SIPHeader;
 import gov.nist.javax.sip.header.Via;
 import gov.nist.javax.sip.message.MessageFactoryImpl;
 import gov.nist.javax.sip.message.SIPMessage;
@@ -372,6 +372,13 @@ public abstract class MessageChannel {
                 receptionTime);
     }
 
+    // The static headers of the 400 response to an unparseable request.
+    private static final String SIPFRAG_CONTENT_TYPE = ContentTypeHeader.NAME + Separators.COLON
+            + Separators.SP + "message/sipfrag" + Separators.NEWLINE;
+
+    private static final String NO_CONTENT = ContentLengthHeader.NAME + Separators.COLON
+            + Separators.SP + "0" + Separators.NEWLINE + Separators.NEWLINE;
+
     /**
      * Creates a response to a bad request (ie one that causes a ParseException)
      * 
@@ -401,28 +408,27 @@ public abstract class MessageChannel {
             buf.append(";tag=badreq");
         }
 
+        buf.append(Separators.NEWLINE);
+
         // Let's add a Server header too..
         ServerHeader s = MessageFactoryImpl.getDefaultServerHeader();
         if ( s != null ) {
-            buf.append("\r\n" + s.toString());
+            ((SIPHeader) s).encode(buf);
         }
         int clength = badReq.length();
         if (! (this instanceof UDPMessageChannel) ||
-                clength + buf.length() + ContentTypeHeader.NAME.length()
-                + ": message/sipfrag\r\n".length() +
+                clength + buf.length() + SIPFRAG_CONTENT_TYPE.length() +
                 ContentLengthHeader.NAME.length()  < 1300) { 
             
             /*
              * Check to see we are within one UDP packet.
              */
-            ContentTypeHeader cth = new ContentType("message", "sipfrag");
-            buf.append("\r\n" + cth.toString());
-            ContentLength clengthHeader = new ContentLength(clength);
-            buf.append("\r\n" + clengthHeader.toString());
-            buf.append("\r\n\r\n" + badReq);
+            buf.append(SIPFRAG_CONTENT_TYPE);
+            buf.append(ContentLengthHeader.NAME).append(Separators.COLON).append(Separators.SP)
+                    .append(clength).append(Separators.NEWLINE);
+            buf.append(Separators.NEWLINE).append(badReq);
         } else {
-            ContentLength clengthHeader = new ContentLength(0);
-            buf.append("\r\n" + clengthHeader.toString());
+            buf.append(NO_CONTENT);
         }
         
         return buf.toString();
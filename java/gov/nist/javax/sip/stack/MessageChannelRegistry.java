@@ -0,0 +1,154 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The outgoing connection table of a connection oriented message processor. Each key maps to
+ * a creation future: the first thread that asks for a channel to a peer creates it, threads
+ * asking for the same peer meanwhile wait for that creation only, and channels to different
+ * peers are created in parallel. Lookups of existing channels never block.
+ * <p>
+ * Channels are compared by identity; the equals method of the channels compares their
+ * sockets, which are not set until the channel connects.
+ *
+ * @since 2.0
+ */
+final class MessageChannelRegistry<T extends MessageChannel> {
+
+    private final ConcurrentHashMap<String, FutureTask<T>> channels =
+            new ConcurrentHashMap<String, FutureTask<T>>();
+
+    /**
+     * A future that is already completed with a channel.
+     */
+    private static <T> FutureTask<T> completed(final T channel) {
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            public T call() {
+                return channel;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    /**
+     * The channel of a future, or null if it is still being created or its creation failed.
+     */
+    private static <T> T getNow(FutureTask<T> task) {
+        if (task == null || !task.isDone())
+            return null;
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The channel for a key, or null if there is none yet. Does not wait for a channel that
+     * is being created.
+     */
+    T get(String key) {
+        return getNow(channels.get(key));
+    }
+
+    /**
+     * The channel for a key, created with the factory if there is none. Only threads asking
+     * for the same key wait for the creation.
+     *
+     * @throws IOException if the factory fails; the next call tries again.
+     */
+    T getOrCreate(String key, Callable<T> factory) throws IOException {
+        FutureTask<T> task = channels.get(key);
+        if (task == null) {
+            FutureTask<T> newTask = new FutureTask<T>(factory);
+            task = channels.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                newTask.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a channel to " + key);
+        } catch (ExecutionException ex) {
+            channels.remove(key, task);
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException("Could not create a channel to " + key + ": " + cause);
+        }
+    }
+
+    /**
+     * Register a channel under a key, replacing the current one.
+     *
+     * @return the channel that was replaced, or null.
+     */
+    T put(String key, T channel) {
+        return getNow(channels.put(key, completed(channel)));
+    }
+
+    /**
+     * Remove a channel if it is the one registered under the key.
+     */
+    boolean remove(String key, T channel) {
+        FutureTask<T> task = channels.get(key);
+        return task != null && getNow(task) == channel && channels.remove(key, task);
+    }
+
+    /**
+     * A snapshot of the registered channels.
+     */
+    List<T> getChannels() {
+        List<T> retval = new ArrayList<T>(channels.size());
+        for (FutureTask<T> task : channels.values()) {
+            T channel = getNow(task);
+            if (channel != null)
+                retval.add(channel);
+        }
+        return retval;
+    }
+
+    int size() {
+        return channels.size();
+    }
+}
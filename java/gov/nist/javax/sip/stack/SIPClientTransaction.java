@@ -49,6 +49,7 @@ import java.text.ParseException;
 import java.util.ListIterator;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.sip.Dialog;
@@ -207,6 +208,9 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
 
     private int callingStateTimeoutCount;
 
+    // Whether this transaction is included in the stack's active client transaction count.
+    private final AtomicBoolean countedAsActive = new AtomicBoolean(false);
+
     public class TransactionTimer extends SIPStackTimerTask {
 
         public TransactionTimer() {
@@ -1277,6 +1281,20 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
         // this.lastResponse = null;
     }
 
+    /**
+     * Start counting this transaction as active. Returns false if it already is.
+     */
+    boolean startCountingAsActive() {
+        return countedAsActive.compareAndSet(false, true);
+    }
+
+    /**
+     * Stop counting this transaction as active. Returns false if it was not counted.
+     */
+    boolean stopCountingAsActive() {
+        return countedAsActive.compareAndSet(true, false);
+    }
+
     /**
      * Sets a timeout after which the connection is closed (provided the server does not use the
      * connection for outgoing requests in this time period) and calls the superclass to set
@@ -1292,9 +1310,8 @@ public class SIPClientTransaction extends SIPTransaction implements ServerRespon
             this.collectionTime = TIMER_J;
 
         }
-        if (super.getState() != TransactionState.COMPLETED
-                && (newState == TransactionState.COMPLETED || newState == TransactionState.TERMINATED)) {
-            sipStack.decrementActiveClientTransactionCount();
+        if (newState == TransactionState.COMPLETED || newState == TransactionState.TERMINATED) {
+            sipStack.decrementActiveClientTransactionCount(this);
         }
         super.setState(newState);
     }
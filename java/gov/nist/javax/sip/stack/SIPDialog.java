@@ -34,6 +34,7 @@ import gov.nist.javax.sip.DialogExt;
 import gov.nist.javax.sip.ListeningPointImpl;
 import gov.nist.javax.sip.SipListenerExt;
 import gov.nist.javax.sip.SipProviderImpl;
+import gov.nist.javax.sip.SipStackImpl;
 import gov.nist.javax.sip.Utils;
 import gov.nist.javax.sip.address.AddressImpl;
 import gov.nist.javax.sip.address.SipUri;
@@ -59,7 +60,13 @@ import gov.nist.javax.sip.message.MessageFactoryImpl;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.AddressParser;
+import gov.nist.javax.sip.parser.StringMsgParser;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
@@ -271,6 +278,13 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
     protected int firstTransactionPort = 5060;   
     protected Contact contactHeader;
 
+    // When the dialog was last used (ms), to find idle dialogs for passivation.
+    private transient volatile long lastActivityTime = System.currentTimeMillis();
+
+    // Set while the messages and route set of the dialog are held by the passivated dialog
+    // store rather than by the dialog.
+    private transient volatile boolean passivated;
+
     // //////////////////////////////////////////////////////
     // Inner classes
     // //////////////////////////////////////////////////////
@@ -651,6 +665,8 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      */
     private boolean isClientDialog() {
         SIPTransaction transaction = (SIPTransaction) this.getFirstTransaction();
+        if (transaction == null)
+            return firstTransactionSeen && !firstTransactionIsServerTransaction;
         return transaction instanceof SIPClientTransaction;
     }
 
@@ -800,6 +816,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
                 }
             }
         }
+        stateChanged();
     }
 
     /**
@@ -809,13 +826,13 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * 
      */
 
-    void setRemoteTarget(ContactHeader contact) {
+    synchronized void setRemoteTarget(ContactHeader contact) {
         this.remoteTarget = contact.getAddress();
         if (sipStack.isLoggingEnabled()) {
             sipStack.getStackLogger().logDebug("Dialog.setRemoteTarget: " + this.remoteTarget);
             sipStack.getStackLogger().logStackTrace();
         }
-
+        stateChanged();
     }
 
     /**
@@ -825,6 +842,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param sipMessage is the SIP message for which we want to add the route.
      */
     private synchronized void addRoute(SIPResponse sipResponse) {
+        activate();
 
         try {
             if (sipStack.isLoggingEnabled()) {
@@ -887,6 +905,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @return -- a cloned copy of the dialog route list.
      */
     private synchronized RouteList getRouteList() {
+        activate();
         if (sipStack.isLoggingEnabled())
             sipStack.getStackLogger().logDebug("getRouteList " + this);
         // Find the top via in the route list.
@@ -898,7 +917,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
             li = routeList.listIterator();
             while (li.hasNext()) {
                 Route route = (Route) li.next();
-                retval.add((Route) route.clone());
+                retval.add((Route) route.copyOnWrite());
             }
         }
 
@@ -914,8 +933,10 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
         return retval;
     }
     
-    void setRouteList(RouteList routeList) {
+    synchronized void setRouteList(RouteList routeList) {
+    	activate();
     	this.routeList = routeList;
+    	stateChanged();
     }
 
     /**
@@ -1232,6 +1253,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
             this.stopTimer();
 
         }
+        stateChanged();
     }
 
     /**
@@ -1261,6 +1283,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * Get the last ACK for this transaction.
      */
     public SIPRequest getLastAckSent() {
+        activate();
         return this.lastAckSent;
     }
 
@@ -1310,6 +1333,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      *         iterator is returned if route has not been established.
      */
     public Iterator getRouteSet() {
+        activate();
         if (this.routeList == null) {
             return new LinkedList().listIterator();
         } else {
@@ -1323,6 +1347,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param sipRequest
      */
     public synchronized void addRoute(SIPRequest sipRequest) {
+        activate();
         if (sipStack.isLoggingEnabled()) {
             sipStack.getStackLogger().logDebug(
                     "setContact: dialogState: " + this + "state = " + this.getState());
@@ -1474,6 +1499,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param transaction is the transaction to add to the dialog.
      */
     public void addTransaction(SIPTransaction transaction) {
+        activate();
 
         SIPRequest sipRequest = (SIPRequest) transaction.getOriginalRequest();
 
@@ -1622,7 +1648,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param lCseq is the local cseq number.
      * 
      */
-    private void setLocalSequenceNumber(long lCseq) {
+    private synchronized void setLocalSequenceNumber(long lCseq) {
         if (sipStack.isLoggingEnabled())
             sipStack.getStackLogger().logDebug(
                     "setLocalSequenceNumber: original  " + this.localSequenceNumber + " new  = "
@@ -1630,6 +1656,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
         if (lCseq <= this.localSequenceNumber)
             throw new RuntimeException("Sequence number should not decrease !");
         this.localSequenceNumber = lCseq;
+        stateChanged();
     }
 
     /**
@@ -1638,10 +1665,11 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param rCseq is the remote cseq number.
      * 
      */
-    public void setRemoteSequenceNumber(long rCseq) {
+    public synchronized void setRemoteSequenceNumber(long rCseq) {
         if (sipStack.isLoggingEnabled())
             sipStack.getStackLogger().logDebug("setRemoteSeqno " + this + "/" + rCseq);
         this.remoteSequenceNumber = rCseq;
+        stateChanged();
     }
 
     /**
@@ -1649,8 +1677,9 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * in the sequence number i.e. route a request outside the dialog and then resume within the
      * dialog.
      */
-    public void incrementLocalSequenceNumber() {
+    public synchronized void incrementLocalSequenceNumber() {
         ++this.localSequenceNumber;
+        stateChanged();
     }
 
     /**
@@ -1854,6 +1883,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
         if (method.equals(Request.ACK) || method.equals(Request.PRACK)) {
             throw new SipException("Invalid method specified for createRequest:" + method);
         }
+        activate();
         if (lastResponse != null)
             return this.createRequest(method, this.lastResponse);
         else
@@ -2012,9 +2042,12 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
     public void sendRequest(ClientTransaction clientTransactionId, boolean allowInterleaving)
             throws TransactionDoesNotExistException, SipException {
 
+        activate();
+
         if ( (!allowInterleaving)
                 && clientTransactionId.getRequest().getMethod().equals(Request.INVITE)) {
-            new Thread((new ReInviteSender(clientTransactionId))).start();
+            sipStack.getThreadFactory().newThread(new ReInviteSender(clientTransactionId))
+                    .start();
             return;
         }
 
@@ -2179,8 +2212,11 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
 
         try {
             // Increment before setting!!
-            localSequenceNumber++;
-            dialogRequest.getCSeq().setSeqNumber(getLocalSeqNumber());
+            synchronized (this) {
+                localSequenceNumber++;
+                dialogRequest.getCSeq().setSeqNumber(getLocalSeqNumber());
+            }
+            stateChanged();
         } catch (InvalidArgumentException ex) {
             sipStack.getStackLogger().logFatalError(ex.getMessage());
         }
@@ -2382,6 +2418,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @see javax.sip.Dialog#createAck(long)
      */
     public Request createAck(long cseqno) throws InvalidArgumentException, SipException {
+        activate();
 
         // JvB: strictly speaking it is allowed to start a dialog with
         // SUBSCRIBE,
@@ -2549,6 +2586,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param sipResponse -- the last response to set.
      */
     public void setLastResponse(SIPTransaction transaction, SIPResponse sipResponse) {
+        activate();
         this.callIdHeader = sipResponse.getCallId();     
         int statusCode = sipResponse.getStatusCode();
         if (statusCode == 100) {
@@ -2821,7 +2859,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @return -- the last response associated with the dialog.
      */
     public SIPResponse getLastResponse() {
-
+        activate();
         return lastResponse;
     }
 
@@ -2871,7 +2909,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      */
     public Response createReliableProvisionalResponse(int statusCode)
             throws InvalidArgumentException, SipException {
-
+        activate();
         if (!(firstTransactionIsServerTransaction)) {
             throw new SipException("Not a Server Dialog!");
 
@@ -3234,6 +3272,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param lastAckReceived the lastAckReceived to set
      */
     private void setLastAckReceived(SIPRequest lastAckReceived) {
+        activate();
         this.lastAckReceived = lastAckReceived;
     }
 
@@ -3241,6 +3280,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @return the lastAckReceived
      */
     protected SIPRequest getLastAckReceived() {
+        activate();
         return lastAckReceived;
     }
 
@@ -3248,6 +3288,7 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
      * @param lastAckSent the lastAckSent to set
      */
     private void setLastAckSent(SIPRequest lastAckSent) {
+        activate();
         this.lastAckSent = lastAckSent;
     }
     
@@ -3339,5 +3380,307 @@ public class SIPDialog implements javax.sip.Dialog, DialogExt {
         this.timerTaskLock.release();
     }    
     
+    /**
+     * Record that the dialog has just been used and, if it was passivated, bring its state
+     * back from the passivated dialog store. Does nothing unless dialog passivation is
+     * enabled.
+     */
+    void activate() {
+        DialogStore store = sipStack == null ? null : sipStack.getPassivatedDialogs();
+        if (store == null)
+            return;
+        this.lastActivityTime = System.currentTimeMillis();
+        if (passivated)
+            restoreState(store);
+    }
+
+    /**
+     * Move the messages and the route set of an idle dialog to the passivated dialog store.
+     * The dialog itself stays in the dialog table, so that it remains the only dialog with
+     * its id and a reference kept by the application stays valid: the state comes back in
+     * place the next time the dialog is used (see activate()).
+     *
+     * @return true if the dialog was passivated.
+     */
+    synchronized boolean passivate(DialogStore store, long idleSince) throws IOException {
+        if (passivated || !isPassivationCandidate(idleSince))
+            return false;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeMessage(out, lastResponse, false);
+        writeMessage(out, originalRequest, false);
+        writeMessage(out, lastAckSent, true);
+        writeMessage(out, lastAckReceived, false);
+        writeString(out, routeList == null ? null : routeList.isEmpty() ? "" : routeList
+                .encode());
+        out.flush();
+        // A thread that uses the dialog sets lastActivityTime before it checks the flag, so
+        // either it sees the flag and waits for the lock, or we see it here and back off.
+        passivated = true;
+        if (lastActivityTime > idleSince) {
+            passivated = false;
+            return false;
+        }
+        store.put(dialogId, bytes.toByteArray());
+        lastResponse = null;
+        originalRequest = null;
+        lastAckSent = null;
+        lastAckReceived = null;
+        routeList = null;
+        // The transactions hold the full request and response; the firstTransaction flags
+        // carry what the dialog still needs to know about them.
+        firstTransaction = null;
+        lastTransaction = null;
+        return true;
+    }
+
+    private synchronized void restoreState(DialogStore store) {
+        if (!passivated)
+            return;
+        byte[] record = store.remove(dialogId);
+        try {
+            if (record == null)
+                throw new IOException("No passivated state");
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            StringMsgParser parser = new StringMsgParser();
+            SIPResponse response = (SIPResponse) readMessage(in, parser);
+            SIPRequest request = (SIPRequest) readMessage(in, parser);
+            SIPRequest ackSent = (SIPRequest) readMessage(in, parser);
+            SIPRequest ackReceived = (SIPRequest) readMessage(in, parser);
+            String value = readString(in);
+            if (response == null || request == null)
+                throw new IOException("Passivated state has no response or request");
+            lastResponse = response;
+            originalRequest = request;
+            lastAckSent = ackSent;
+            lastAckReceived = ackReceived;
+            if (value != null)
+                routeList = value.length() == 0 ? new RouteList() : (RouteList) parser
+                        .parseSIPHeader(value);
+            passivated = false;
+        } catch (Exception ex) {
+            // Without its messages the dialog can neither create nor match requests.
+            if (sipStack.isLoggingEnabled())
+                sipStack.getStackLogger().logError(
+                        "Could not activate dialog " + dialogId + ", terminating it", ex);
+            passivated = false;
+            delete();
+        }
+    }
+
+    /**
+     * Check whether the dialog may be passivated: it must be confirmed, unused since the given
+     * time, and hold nothing that cannot be rebuilt from its compact form (no transaction in
+     * progress, no running timer, no application data and no listener other than the stack).
+     */
+    boolean isPassivationCandidate(long idleSince) {
+        if (dialogState != CONFIRMED_STATE || lastActivityTime > idleSince
+                || lastResponse == null || applicationData != null || timerTask != null
+                || dialogDeleteTask != null || dialogId == null)
+            return false;
+        if (lastTransaction != null
+                && lastTransaction.getState() != TransactionState.TERMINATED)
+            return false;
+        // Once the transactions are dropped the dialog can no longer tell whether an INVITE
+        // on it is still waiting for its ACK.
+        if (lastTransaction != null && lastTransaction.isInviteTransaction()) {
+            if (lastTransaction instanceof SIPServerTransaction ? !ackSeen
+                    : lastAckSent == null || lastAckSent.getCSeq().getSeqNumber() < lastTransaction
+                            .getCSeq())
+                return false;
+        }
+        if (eventListeners.size() > 1
+                || (eventListeners.size() == 1 && !eventListeners.contains(sipStack)))
+            return false;
+        return true;
+    }
+
+    /**
+     * Write the state needed to route and create in-dialog requests: ids, tags, CSeq
+     * numbers, parties, route set, remote target and the last response without its body.
+     * Holds the dialog lock so that the snapshot does not mix two updates. See DialogCodec.
+     */
+    synchronized void writeState(DataOutputStream out) throws IOException {
+        activate();
+        int flags = (serverTransactionFlag ? 0x01 : 0) | (terminateOnBye ? 0x02 : 0)
+                | (isBackToBackUserAgent ? 0x04 : 0) | (sequenceNumberValidation ? 0x08 : 0)
+                | (reInviteFlag ? 0x10 : 0) | (firstTransactionSeen ? 0x20 : 0)
+                | (firstTransactionSecure ? 0x40 : 0)
+                | (firstTransactionIsServerTransaction ? 0x80 : 0);
+        out.writeInt(flags);
+        out.writeInt(dialogState);
+        out.writeLong(localSequenceNumber);
+        out.writeLong(remoteSequenceNumber);
+        out.writeLong(originalLocalSequenceNumber);
+        out.writeInt(firstTransactionPort);
+        writeString(out, dialogId);
+        writeString(out, method);
+        writeString(out, myTag);
+        writeString(out, hisTag);
+        writeString(out, firstTransactionMethod);
+        writeString(out, firstTransactionId);
+        writeString(out, callIdHeader == null ? null : ((SIPHeader) callIdHeader).encode());
+        writeString(out, localParty == null ? null : ((AddressImpl) localParty).encode());
+        writeString(out, remoteParty == null ? null : ((AddressImpl) remoteParty).encode());
+        writeString(out, remoteTarget == null ? null : ((AddressImpl) remoteTarget).encode());
+        writeString(out, routeList == null || routeList.isEmpty() ? null : routeList.encode());
+        writeString(out, eventHeader == null ? null : ((SIPHeader) eventHeader).encode());
+        writeString(out, contactHeader == null ? null : contactHeader.encode());
+        if (lastResponse == null) {
+            writeString(out, null);
+        } else {
+            SIPResponse response = (SIPResponse) lastResponse.clone();
+            response.removeContent();
+            writeString(out, response.encode());
+        }
+        ListeningPoint listeningPoint = sipProvider == null ? null : sipProvider
+                .getListeningPoint();
+        writeString(out, listeningPoint == null ? null : getListeningPointKey(listeningPoint));
+    }
+
+    /**
+     * Rebuild a dialog from the state written by writeState. The dialog is bound to the
+     * provider listening on the same address, or failing that to a provider with the same
+     * transport (a standby stack may listen elsewhere). A confirmed dialog is marked as
+     * acknowledged.
+     */
+    static SIPDialog readState(SIPTransactionStack sipStack, DataInputStream in)
+            throws IOException, ParseException {
+        SIPDialog dialog = new SIPDialog((SipProviderImpl) null);
+        int flags = in.readInt();
+        dialog.serverTransactionFlag = (flags & 0x01) != 0;
+        dialog.terminateOnBye = (flags & 0x02) != 0;
+        dialog.isBackToBackUserAgent = (flags & 0x04) != 0;
+        dialog.sequenceNumberValidation = (flags & 0x08) != 0;
+        dialog.reInviteFlag = (flags & 0x10) != 0;
+        dialog.firstTransactionSeen = (flags & 0x20) != 0;
+        dialog.firstTransactionSecure = (flags & 0x40) != 0;
+        dialog.firstTransactionIsServerTransaction = (flags & 0x80) != 0;
+        dialog.dialogState = in.readInt();
+        dialog.localSequenceNumber = in.readLong();
+        dialog.remoteSequenceNumber = in.readLong();
+        dialog.originalLocalSequenceNumber = in.readLong();
+        dialog.firstTransactionPort = in.readInt();
+        dialog.dialogId = readString(in);
+        dialog.method = readString(in);
+        dialog.myTag = readString(in);
+        dialog.hisTag = readString(in);
+        dialog.firstTransactionMethod = readString(in);
+        dialog.firstTransactionId = readString(in);
+        StringMsgParser parser = new StringMsgParser();
+        String value = readString(in);
+        if (value != null)
+            dialog.callIdHeader = (CallIdHeader) parser.parseSIPHeader(value);
+        value = readString(in);
+        if (value != null)
+            dialog.localParty = new AddressParser(value).address(true);
+        value = readString(in);
+        if (value != null)
+            dialog.remoteParty = new AddressParser(value).address(true);
+        value = readString(in);
+        if (value != null)
+            dialog.remoteTarget = new AddressParser(value).address(true);
+        value = readString(in);
+        if (value != null)
+            dialog.routeList = (RouteList) parser.parseSIPHeader(value);
+        value = readString(in);
+        if (value != null)
+            dialog.eventHeader = (EventHeader) parser.parseSIPHeader(value);
+        value = readString(in);
+        if (value != null)
+            dialog.contactHeader = (Contact) ((ContactList) parser.parseSIPHeader(value))
+                    .getFirst();
+        value = readString(in);
+        if (value != null)
+            dialog.lastResponse = (SIPResponse) parser.parseSIPMessage(value);
+        String listeningPointKey = readString(in);
+
+        dialog.sipStack = sipStack;
+        if (listeningPointKey != null && sipStack instanceof SipStackImpl) {
+            String transport = listeningPointKey.substring(listeningPointKey.lastIndexOf('/') + 1);
+            for (Iterator<SipProviderImpl> it = ((SipStackImpl) sipStack).getSipProviders(); it
+                    .hasNext();) {
+                SipProviderImpl provider = it.next();
+                ListeningPoint listeningPoint = provider.getListeningPoint();
+                if (listeningPoint == null)
+                    continue;
+                if (listeningPointKey.equals(getListeningPointKey(listeningPoint))) {
+                    dialog.sipProvider = provider;
+                    break;
+                } else if (dialog.sipProvider == null
+                        && transport.equalsIgnoreCase(listeningPoint.getTransport())) {
+                    dialog.sipProvider = provider;
+                }
+            }
+        }
+        if (dialog.sipProvider == null)
+            throw new IOException("No provider for dialog " + dialog.dialogId);
+        dialog.isAssigned = true;
+        if (dialog.dialogState == CONFIRMED_STATE) {
+            dialog.isAcknowledged = true;
+            dialog.ackSeen = true;
+            dialog.ackProcessed = true;
+            dialog.highestSequenceNumberAcknowledged = dialog.localSequenceNumber;
+        }
+        dialog.addEventListener(sipStack);
+        return dialog;
+    }
+
+    /**
+     * Let the stack know that state that is replicated to a standby has changed.
+     */
+    private void stateChanged() {
+        if (sipStack != null)
+            sipStack.dialogStateChanged(this);
+    }
+
+    private static String getListeningPointKey(ListeningPoint listeningPoint) {
+        return listeningPoint.getIPAddress() + ":" + listeningPoint.getPort() + "/"
+                + listeningPoint.getTransport();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeMessage(DataOutputStream out, SIPMessage message,
+            boolean withContent) throws IOException {
+        if (message == null) {
+            out.writeInt(-1);
+            return;
+        }
+        if (!withContent && message.getRawContent() != null) {
+            message = (SIPMessage) message.clone();
+            message.removeContent();
+        }
+        byte[] bytes = message.encodeAsBytes(message.getTopmostVia().getTransport());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static SIPMessage readMessage(DataInputStream in, StringMsgParser parser)
+            throws IOException, ParseException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return parser.parseSIPMessage(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
 	
 }
@@ -30,6 +30,7 @@ import gov.nist.javax.sip.SIPConstants;
 import gov.nist.javax.sip.ServerTransactionExt;
 import gov.nist.javax.sip.SipProviderImpl;
 import gov.nist.javax.sip.Utils;
+import gov.nist.javax.sip.header.CSeq;
 import gov.nist.javax.sip.header.Expires;
 import gov.nist.javax.sip.header.ParameterNames;
 import gov.nist.javax.sip.header.RSeq;
@@ -38,6 +39,7 @@ import gov.nist.javax.sip.header.ViaList;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
+import gov.nist.javax.sip.parser.StringMsgParser;
 
 import java.io.IOException;
 import java.text.ParseException;
@@ -54,6 +56,7 @@ import javax.sip.Timeout;
 import javax.sip.TimeoutEvent;
 import javax.sip.TransactionState;
 import javax.sip.address.Hop;
+import javax.sip.address.URI;
 import javax.sip.header.ContactHeader;
 import javax.sip.header.ExpiresHeader;
 import javax.sip.header.RSeqHeader;
@@ -203,6 +206,18 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
     
     private Semaphore provisionalResponseSem = new Semaphore(1);
 
+    // Topmost Via and request URI of the original request, kept to match retransmissions
+    // and CANCELs once the transaction has been trimmed.
+    private Via originalRequestTopmostVia;
+
+    private URI originalRequestURI;
+
+    // Encoded original request and last response of a trimmed transaction (see trim). They
+    // are kept when the messages are decoded again, so the decoded copies can be dropped.
+    private byte[] originalRequestBytes;
+
+    private byte[] lastResponseBytes;
+
     /**
      * This timer task is used for alerting the application to send retransmission alerts.
      *
@@ -336,8 +351,8 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                     sipStack.getStackLogger().logDebug(" sending Trying current state = "
                             + serverTransaction.getRealState());
                 try {
-                    serverTransaction.sendMessage(serverTransaction.getOriginalRequest()
-                            .createResponse(100, "Trying"));
+                    serverTransaction.sendMessage(SIPTransactionStack.TRYING
+                            .createResponse(serverTransaction.getOriginalRequest()));
                     if (sipStack.isLoggingEnabled())
                         sipStack.getStackLogger().logDebug(" trying sent "
                                 + serverTransaction.getRealState());
@@ -384,6 +399,9 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                         SIPTransactionStack.CONNECTION_LINGER_TIME * 1000);
 
             } else {
+                // Drop the messages decoded again since the transaction was trimmed.
+                if (originalRequestBytes != null)
+                    trim();
                 // Add to the fire list -- needs to be moved
                 // outside the synchronized block to prevent
                 // deadlock.
@@ -596,16 +614,14 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                         transactionMatches = this.getMethod().equals(Request.CANCEL)
                                 && getBranch().equalsIgnoreCase(messageBranch)
                                 && topViaHeader.getSentBy().equals(
-                                        ((Via) getOriginalRequest().getViaHeaders().getFirst())
-                                                .getSentBy());
+                                        originalRequestTopmostVia.getSentBy());
 
                     } else {
                         // Matching server side transaction with only the
                         // branch parameter.
                         transactionMatches = getBranch().equalsIgnoreCase(messageBranch)
                                 && topViaHeader.getSentBy().equals(
-                                        ((Via) getOriginalRequest().getViaHeaders().getFirst())
-                                                .getSentBy());
+                                        originalRequestTopmostVia.getSentBy());
 
                     }
 
@@ -634,21 +650,18 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                     // the CSeq method of the original request must
                     // be CANCEL for it to have a chance at matching.
                     if (messageToTest.getCSeq().getMethod().equalsIgnoreCase(Request.CANCEL)
-                            && !getOriginalRequest().getCSeq().getMethod().equalsIgnoreCase(
-                                    Request.CANCEL)) {
+                            && !getMethod().equalsIgnoreCase(Request.CANCEL)) {
                         transactionMatches = false;
-                    } else if ((isResponse || getOriginalRequest().getRequestURI().equals(
+                    } else if ((isResponse || originalRequestURI.equals(
                             ((SIPRequest) messageToTest).getRequestURI()))
                             && (skipFrom || originalFromTag != null && originalFromTag.equalsIgnoreCase(thisFromTag))
                             && (skipTo || originalToTag != null && originalToTag.equalsIgnoreCase(thisToTag))
-                            && getOriginalRequest().getCallId().getCallId().equalsIgnoreCase(
+                            && callId.getCallId().equalsIgnoreCase(
                                     messageToTest.getCallId().getCallId())
-                            && getOriginalRequest().getCSeq().getSeqNumber() == messageToTest
-                                    .getCSeq().getSeqNumber()
-                            && ((!messageToTest.getCSeq().getMethod().equals(Request.CANCEL)) || getOriginalRequest()
-                                    .getMethod().equals(messageToTest.getCSeq().getMethod()))
-                            && topViaHeader.equals(getOriginalRequest().getViaHeaders()
-                                    .getFirst())) {
+                            && getCSeq() == messageToTest.getCSeq().getSeqNumber()
+                            && ((!messageToTest.getCSeq().getMethod().equals(Request.CANCEL)) || getMethod()
+                                    .equals(messageToTest.getCSeq().getMethod()))
+                            && topViaHeader.equals(originalRequestTopmostVia)) {
 
                         transactionMatches = true;
                     }
@@ -736,7 +749,7 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
 
                     // Has side-effect of setting
                     // state to "Proceeding"
-                    sendMessage(transactionRequest.createResponse(100, "Trying"));
+                    sendMessage(SIPTransactionStack.TRYING.createResponse(transactionRequest));
 
                 }
                 // If an invite transaction is ACK'ed while in
@@ -772,24 +785,21 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                     }
 
                     this.semRelease();
+                    if (sipStack.trimCompletedTransactions)
+                        trim();
                 }
                 return;
 
                 // If we receive a retransmission of the original
                 // request,
-            } else if (transactionRequest.getMethod().equals(getOriginalRequest().getMethod())) {
+            } else if (transactionRequest.getMethod().equals(getMethod())) {
 
                 if (TransactionState.PROCEEDING == getRealState()
                         || TransactionState.COMPLETED == getRealState()) {
                     this.semRelease();
                     // Resend the last response to
                     // the client
-                    if (lastResponse != null) {
-
-                        // Send the message to the client
-                        super.sendMessage(lastResponse);
-
-                    }
+                    resendLastResponse();
                 } else if (transactionRequest.getMethod().equals(Request.ACK)) {
                     // This is passed up to the TU to suppress
                     // retransmission of OK
@@ -809,7 +819,7 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
             // Pass message to the TU
             if (TransactionState.COMPLETED != getRealState()
                     && TransactionState.TERMINATED != getRealState() && requestOf != null) {
-                if (getOriginalRequest().getMethod().equals(transactionRequest.getMethod())) {
+                if (getMethod().equals(transactionRequest.getMethod())) {
                     // Only send original request to TU once!
                     if (toTu) {
                         requestOf.processRequest(transactionRequest, this);
@@ -823,8 +833,7 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                 }
             } else {
                 // This seems like a common bug so I am allowing it through!
-                if (((SIPTransactionStack) getSIPStack()).isDialogCreated(getOriginalRequest()
-                        .getMethod())
+                if (((SIPTransactionStack) getSIPStack()).isDialogCreated(getMethod())
                         && getRealState() == TransactionState.TERMINATED
                         && transactionRequest.getMethod().equals(Request.ACK)
                         && requestOf != null) {
@@ -887,23 +896,25 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                 // Provided we have set the banch id for this we set the BID for
                 // the
                 // outgoing via.
-                if (this.getOriginalRequest().getTopmostVia().getBranch() != null)
+                if (originalRequestTopmostVia.getBranch() != null)
                     transactionResponse.getTopmostVia().setBranch(this.getBranch());
                 else
                     transactionResponse.getTopmostVia().removeParameter(ParameterNames.BRANCH);
 
                 // Make the topmost via headers match identically for the
                 // transaction rsponse.
-                if (!this.getOriginalRequest().getTopmostVia().hasPort())
+                if (!originalRequestTopmostVia.hasPort())
                     transactionResponse.getTopmostVia().removePort();
+
+                // RFC 7339 overload control feedback, if the client asked for it.
+                sipStack.setOverloadControlParameters(transactionResponse);
             } catch (ParseException ex) {
                 ex.printStackTrace();
             }
 
             // Method of the response does not match the request used to
             // create the transaction - transaction state does not change.
-            if (!transactionResponse.getCSeq().getMethod().equals(
-                    getOriginalRequest().getMethod())) {
+            if (!transactionResponse.getCSeq().getMethod().equals(getMethod())) {
                 sendResponse(transactionResponse);
                 return;
             }
@@ -1076,6 +1087,7 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                             "sendMessage : tx = " + this + " getState = " + this.getState());
                 }
                 lastResponse = transactionResponse;
+                lastResponseBytes = null;
                 this.sendResponse(transactionResponse);
 
             } catch (IOException e) {
@@ -1160,7 +1172,7 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
         if (sipStack.isLoggingEnabled())
             sipStack.getStackLogger().logDebug("SIPServerTransaction.fireTimeoutTimer this = " + this
                     + " current state = " + this.getRealState() + " method = "
-                    + this.getOriginalRequest().getMethod());
+                    + this.getMethod());
 
         if ( this.getMethod().equals(Request.INVITE) && sipStack.removeTransactionPendingAck(this) ) {
             if ( sipStack.isLoggingEnabled() ) {
@@ -1170,12 +1182,11 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
             
         }
         SIPDialog dialog = (SIPDialog) this.dialog;
-        if (((SIPTransactionStack) getSIPStack()).isDialogCreated(this.getOriginalRequest()
-                .getMethod())
+        if (((SIPTransactionStack) getSIPStack()).isDialogCreated(this.getMethod())
                 && (TransactionState.CALLING == this.getRealState() || TransactionState.TRYING == this
                         .getRealState())) {
             dialog.setState(SIPDialog.TERMINATED_STATE);
-        } else if (getOriginalRequest().getMethod().equals(Request.BYE)) {
+        } else if (getMethod().equals(Request.BYE)) {
             if (dialog != null && dialog.isTerminatedOnBye())
                 dialog.setState(SIPDialog.TERMINATED_STATE);
         }
@@ -1214,7 +1225,10 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
      * Get the last response.
      */
     public SIPResponse getLastResponse() {
-        return this.lastResponse;
+        SIPResponse response = this.lastResponse;
+        if (response == null && lastResponseBytes != null)
+            response = inflate().lastResponse;
+        return response;
     }
 
     /**
@@ -1222,7 +1236,103 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
      */
     public void setOriginalRequest(SIPRequest originalRequest) {
         super.setOriginalRequest(originalRequest);
+        this.originalRequestTopmostVia = originalRequest.getTopmostVia();
+        this.originalRequestURI = originalRequest.getRequestURI();
+    }
+
+    protected Via getOriginalRequestTopmostVia() {
+        return originalRequestTopmostVia;
+    }
 
+    protected URI getOriginalRequestURI() {
+        return originalRequestURI;
+    }
+
+    /**
+     * Get the merge id of the original request (see SIPRequest.getMergeId) without decoding
+     * it again if the transaction has been trimmed.
+     */
+    public String getMergeId() {
+        SIPRequest request = this.originalRequest;
+        if (request != null)
+            return request.getMergeId();
+        if (fromTag == null || originalRequestURI == null)
+            return null;
+        return new StringBuffer().append(originalRequestURI).append(":").append(fromTag)
+                .append(":").append(new CSeq(getCSeq(), getMethod())).append(":")
+                .append(callId.getCallId()).toString();
+    }
+
+    /**
+     * Get the original request, decoding it again if the transaction has been trimmed.
+     */
+    public SIPRequest getOriginalRequest() {
+        SIPRequest request = this.originalRequest;
+        if (request == null && originalRequestBytes != null)
+            request = inflate().originalRequest;
+        return request;
+    }
+
+    /**
+     * Replace the parsed original request and last response of a transaction that has sent its
+     * final response by their encoded forms. What is left is the matching state (branch,
+     * method, sent-by, tags), the channel and the bytes of the last response, which is all a
+     * lingering transaction needs to absorb retransmissions. The parsed messages are rebuilt
+     * if they are asked for again, and dropped again by the next trim (the transaction timer
+     * trims a trimmed transaction on every tick).
+     */
+    private synchronized void trim() {
+        if (originalRequest == null && originalRequestBytes == null)
+            return;
+        if (lastResponseBytes == null
+                && (lastResponse == null || !lastResponse.isFinalResponse()))
+            return;
+        String transport = getTransport();
+        if (lastResponseBytes == null)
+            lastResponseBytes = lastResponse.encodeAsBytes(transport);
+        if (originalRequestBytes == null)
+            originalRequestBytes = originalRequest.encodeAsBytes(transport);
+        originalRequest = null;
+        lastResponse = null;
+        requestOf = null;
+    }
+
+    /**
+     * Rebuild the parsed messages of a trimmed transaction.
+     */
+    private synchronized SIPServerTransaction inflate() {
+        try {
+            StringMsgParser parser = new StringMsgParser();
+            if (originalRequest == null && originalRequestBytes != null) {
+                originalRequest = (SIPRequest) parser.parseSIPMessage(originalRequestBytes);
+                originalRequest.setTransaction(this);
+            }
+            if (lastResponse == null && lastResponseBytes != null)
+                lastResponse = (SIPResponse) parser.parseSIPMessage(lastResponseBytes);
+        } catch (ParseException ex) {
+            InternalErrorHandler.handleException(ex);
+        }
+        return this;
+    }
+
+    /**
+     * Send the last response again, from its encoded form if the transaction has been trimmed.
+     */
+    private void resendLastResponse() throws IOException {
+        SIPResponse response = this.lastResponse;
+        if (response != null) {
+            super.sendMessage(response);
+        } else {
+            byte[] responseBytes = this.lastResponseBytes;
+            if (responseBytes != null) {
+                try {
+                    getMessageChannel().sendMessage(responseBytes, this.peerInetAddress,
+                            this.peerPort, false);
+                } finally {
+                    this.startTransactionTimer();
+                }
+            }
+        }
     }
 
     /*
@@ -1401,6 +1511,10 @@ public class SIPServerTransaction extends SIPTransaction implements ServerReques
                 dialog.startRetransmitTimer(this, (SIPResponse)response);
             }
 
+            if (sipStack.trimCompletedTransactions && !isInviteTransaction()
+                    && sipResponse.isFinalResponse())
+                trim();
+
         } catch (IOException ex) {
             if (sipStack.isLoggingEnabled())
                 sipStack.getStackLogger().logException(ex);
@@ -53,6 +53,7 @@ import javax.sip.Dialog;
 import javax.sip.IOExceptionEvent;
 import javax.sip.ServerTransaction;
 import javax.sip.TransactionState;
+import javax.sip.address.URI;
 import javax.sip.message.Request;
 import javax.sip.message.Response;
 
@@ -428,13 +429,31 @@ public abstract class SIPTransaction extends MessageChannel implements
         return originalRequest;
     }
 
+    /**
+     * Get the topmost Via of the original request. Matching uses this rather than
+     * getOriginalRequest, so that a server transaction that has been trimmed is not decoded
+     * again to match a retransmission or a CANCEL.
+     */
+    protected Via getOriginalRequestTopmostVia() {
+        SIPRequest request = this.originalRequest;
+        return request == null ? null : request.getTopmostVia();
+    }
+
+    /**
+     * Get the request URI of the original request. See getOriginalRequestTopmostVia.
+     */
+    protected URI getOriginalRequestURI() {
+        SIPRequest request = this.originalRequest;
+        return request == null ? null : request.getRequestURI();
+    }
+
     /**
      * Get the original request but cast to a Request structure.
      *
      * @return the request that generated this transaction.
      */
     public Request getRequest() {
-        return (Request) originalRequest;
+        return (Request) getOriginalRequest();
     }
 
     /**
@@ -888,7 +907,7 @@ public abstract class SIPTransaction extends MessageChannel implements
      * Get the JAIN interface response
      */
     public Response getResponse() {
-        return (Response) this.lastResponse;
+        return (Response) getLastResponse();
     }
 
     /**
@@ -939,8 +958,8 @@ public abstract class SIPTransaction extends MessageChannel implements
 
         transactionMatches = false;
 
-        if (this.getOriginalRequest() == null
-                || this.getOriginalRequest().getMethod().equals(Request.CANCEL))
+        Via originalTopViaHeader = getOriginalRequestTopmostVia();
+        if (originalTopViaHeader == null || getMethod().equals(Request.CANCEL))
             return false;
         // Get the topmost Via header and its branch parameter
         viaHeaders = requestToTest.getViaHeaders();
@@ -969,9 +988,7 @@ public abstract class SIPTransaction extends MessageChannel implements
                 // If the branch equals the branch in
                 // this message,
                 if (getBranch().equalsIgnoreCase(messageBranch)
-                        && topViaHeader.getSentBy().equals(
-                                ((Via) getOriginalRequest().getViaHeaders()
-                                        .getFirst()).getSentBy())) {
+                        && topViaHeader.getSentBy().equals(originalTopViaHeader.getSentBy())) {
                     transactionMatches = true;
                     if (sipStack.isLoggingEnabled())
                         sipStack.getStackLogger().logDebug("returning  true");
@@ -984,20 +1001,14 @@ public abstract class SIPTransaction extends MessageChannel implements
                 // headers are the same,
                 if (sipStack.isLoggingEnabled())
                     sipStack.getStackLogger().logDebug("testing against "
-                            + getOriginalRequest());
-
-                if (getOriginalRequest().getRequestURI().equals(
-                        requestToTest.getRequestURI())
-                        && getOriginalRequest().getTo().equals(
-                                requestToTest.getTo())
-                        && getOriginalRequest().getFrom().equals(
-                                requestToTest.getFrom())
-                        && getOriginalRequest().getCallId().getCallId().equals(
-                                requestToTest.getCallId().getCallId())
-                        && getOriginalRequest().getCSeq().getSeqNumber() == requestToTest
-                                .getCSeq().getSeqNumber()
-                        && topViaHeader.equals(getOriginalRequest()
-                                .getViaHeaders().getFirst())) {
+                            + getTransactionId());
+
+                if (getOriginalRequestURI().equals(requestToTest.getRequestURI())
+                        && to.equals(requestToTest.getTo())
+                        && from.equals(requestToTest.getFrom())
+                        && callId.getCallId().equals(requestToTest.getCallId().getCallId())
+                        && getCSeq() == requestToTest.getCSeq().getSeqNumber()
+                        && topViaHeader.equals(originalTopViaHeader)) {
 
                     transactionMatches = true;
                 }
@@ -33,6 +33,7 @@ import gov.nist.core.ThreadAuditor;
 import gov.nist.core.net.AddressResolver;
 import gov.nist.core.net.DefaultNetworkLayer;
 import gov.nist.core.net.NetworkLayer;
+import gov.nist.javax.sip.CachingAddressResolver;
 import gov.nist.javax.sip.DefaultAddressResolver;
 import gov.nist.javax.sip.ListeningPointImpl;
 import gov.nist.javax.sip.LogRecordFactory;
@@ -40,10 +41,13 @@ import gov.nist.javax.sip.SIPConstants;
 import gov.nist.javax.sip.SipListenerExt;
 import gov.nist.javax.sip.SipProviderImpl;
 import gov.nist.javax.sip.SipStackImpl;
+import gov.nist.javax.sip.TransactionOverloadException;
 import gov.nist.javax.sip.header.Event;
+import gov.nist.javax.sip.header.RetryAfter;
 import gov.nist.javax.sip.header.Via;
 import gov.nist.javax.sip.header.extensions.JoinHeader;
 import gov.nist.javax.sip.header.extensions.ReplacesHeader;
+import gov.nist.javax.sip.message.ResponsePrototype;
 import gov.nist.javax.sip.message.SIPMessage;
 import gov.nist.javax.sip.message.SIPRequest;
 import gov.nist.javax.sip.message.SIPResponse;
@@ -57,9 +61,15 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sip.ClientTransaction;
@@ -157,6 +167,21 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
     private AtomicInteger activeClientTransactionCount = new AtomicInteger(0);
 
+    // Admission control for new client transactions (null if unlimited).
+    protected AdmissionController clientAdmissionController;
+
+    // Admission control for new server transactions (null if unlimited).
+    protected AdmissionController serverAdmissionController;
+
+    // The automatic responses of the transaction layer, pre-encoded.
+    static final ResponsePrototype TRYING = new ResponsePrototype(Response.TRYING, "Trying");
+
+    private static final ResponsePrototype SERVICE_UNAVAILABLE = new ResponsePrototype(
+            Response.SERVICE_UNAVAILABLE, null);
+
+    // Add RFC 7339 overload control parameters to the Via of responses.
+    protected boolean overloadControlVia;
+
     // Hashtable for server transactions.
     private ConcurrentHashMap<String, SIPServerTransaction> serverTransactionTable;
 
@@ -178,11 +203,6 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     protected ServerLogger serverLogger;
 
-    /*
-     * We support UDP on this stack.
-     */
-    boolean udpFlag;
-
     /*
      * Internal router. Use this for all sip: request routing.
      *
@@ -279,6 +299,12 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     private Collection<MessageProcessor> messageProcessors;
 
+    /*
+     * The send path for messages outside of transactions; keeps an index of the message
+     * processors.
+     */
+    private StatelessForwarder statelessForwarder;
+
     /*
      * Read timeout on TCP incoming sockets -- defines the time between reads for after delivery
      * of first byte of message.
@@ -347,6 +373,67 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
     protected boolean stackDoesCongestionControl = true;
 
+    // Maximum number of cached TCP/TLS connections (-1 is unlimited).
+    protected int maxCachedConnections = -1;
+
+    // Cached connections idle for longer than this (ms) are closed (0 is never).
+    protected long connectionIdleTimeout;
+
+    // Idle cached connections are pinged with a double CRLF after this (ms) (0 is never).
+    protected long keepAliveInterval;
+
+    // Time (ms) allowed for a TLS handshake (0 is unlimited).
+    protected int tlsHandshakeTimeout = 10000;
+
+    // Time (ms) allowed to open an outgoing TCP/TLS connection (0 is the system default).
+    protected int connectTimeout = 10000;
+
+    // Number of threads doing TLS handshakes for accepted connections.
+    protected int tlsHandshakeThreads = 4;
+
+    // Number of accepted TLS connections that may wait for a handshake thread.
+    protected int tlsHandshakeQueueSize = 100;
+
+    // Runs the TLS handshakes of accepted connections (created on first use).
+    private ExecutorService tlsHandshakeExecutor;
+
+    // Number of threads opening outgoing TCP/TLS connections.
+    protected int connectThreads = 4;
+
+    // Number of outgoing connections that may wait for a connect thread.
+    protected int connectQueueSize = 100;
+
+    // Opens outgoing TCP/TLS connections (created on first use).
+    private ExecutorService connectExecutor;
+
+    // Creates the transport, parser and event threads (platform threads by default).
+    protected StackThreadFactory threadFactory = new StackThreadFactory();
+
+    // Per source rate limiting applied by the transports (null if disabled).
+    protected SourceRateLimiter sourceRateLimiter;
+
+    // Server transactions drop their parsed messages once they have sent a final response.
+    protected boolean trimCompletedTransactions;
+
+    // Confirmed dialogs idle for longer than this (ms) are passivated (0 is never).
+    protected long dialogPassivationTime;
+
+    // Off-heap records of passivated dialogs (null if passivation is disabled).
+    protected DialogStore passivatedDialogs;
+
+    private boolean dialogPassivationScheduled;
+
+    // Batches dialog snapshots for the DialogStateReplicator (null if there is none).
+    private volatile DialogReplicationQueue dialogReplicationQueue;
+
+    // How often (ms) changed dialogs are handed to the DialogStateReplicator.
+    protected long dialogReplicationInterval = 100;
+
+    // Number of changed dialogs that triggers a batch before the interval is up.
+    protected int dialogReplicationBatchSize = 1000;
+
+    private boolean dialogReplicationScheduled;
+
     protected boolean isBackToBackUserAgent = false;
 
     protected boolean checkBranchId;
@@ -394,6 +481,45 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     }
     
     
+    /**
+     * Moves the state of confirmed dialogs that have been idle for dialogPassivationTime into
+     * the off-heap dialog store. The dialogs stay in the dialog table. Runs on the stack timer.
+     */
+    class DialogPassivationTask extends SIPStackTimerTask {
+
+        protected void runTask() {
+            DialogStore store = passivatedDialogs;
+            if (store == null)
+                return;
+            long idleSince = System.currentTimeMillis() - dialogPassivationTime;
+            int passivated = 0;
+            for (SIPDialog dialog : dialogTable.values()) {
+                try {
+                    if (dialog.passivate(store, idleSince))
+                        passivated++;
+                } catch (Exception ex) {
+                    if (stackLogger.isLoggingEnabled())
+                        stackLogger.logError("Could not passivate dialog " + dialog, ex);
+                }
+            }
+            if (passivated > 0 && stackLogger.isLoggingEnabled())
+                stackLogger.logDebug("Passivated " + passivated + " dialogs, "
+                        + store.size() + " passivated in all");
+        }
+    }
+
+    /**
+     * Hands the dialogs that changed to the DialogStateReplicator. Runs on the stack timer.
+     */
+    class DialogReplicationTask extends SIPStackTimerTask {
+
+        protected void runTask() {
+            DialogReplicationQueue queue = dialogReplicationQueue;
+            if (queue != null)
+                queue.flush();
+        }
+    }
+
     class RemoveForkedTransactionTimerTask extends SIPStackTimerTask {
         
         private SIPClientTransaction clientTransaction;
@@ -435,6 +561,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         this.maxConnections = -1;
         // Array of message processors.
         messageProcessors = new ArrayList<MessageProcessor>();
+        statelessForwarder = new StatelessForwarder(this);
         // Handle IO for this process.
         this.ioHandler = new IOHandler(this);
 
@@ -469,9 +596,20 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         
         this.forkedClientTransactionTable = new ConcurrentHashMap<String,SIPClientTransaction>();
 
+        startThreadAudit();
+    }
+
+    /**
+     * Start monitoring the timer thread and scanning for stalled threads, if thread audits
+     * are enabled. Called again once the audit interval has been configured and when the
+     * stack is re-initialized with a new timer.
+     */
+    protected void startThreadAudit() {
         if (getThreadAuditor().isEnabled()) {
+            getThreadAuditor().setStackLogger(stackLogger);
             // Start monitoring the timer thread
             timer.schedule(new PingTimer(null), 0);
+            getThreadAuditor().startStallDetection();
         }
     }
 
@@ -484,6 +622,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
         // Array of message processors.
         messageProcessors = new ArrayList<MessageProcessor>();
+        statelessForwarder = new StatelessForwarder(this);
         // Handle IO for this process.
         this.ioHandler = new IOHandler(this);
         // clientTransactions = new ConcurrentLinkedQueue();
@@ -503,6 +642,14 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
         this.activeClientTransactionCount = new AtomicInteger(0);
 
+        synchronized (this) {
+            if (this.dialogReplicationQueue != null && !this.dialogReplicationScheduled) {
+                this.timer.schedule(new DialogReplicationTask(), dialogReplicationInterval,
+                        dialogReplicationInterval);
+                this.dialogReplicationScheduled = true;
+            }
+        }
+        startThreadAudit();
     }
 
     /**
@@ -616,6 +763,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         if (stackLogger.isLoggingEnabled())
             stackLogger.logStackTrace();
         dialogTable.put(dialogId, dialog);
+        if (passivatedDialogs != null)
+            scheduleDialogPassivation();
 
     }
 
@@ -711,6 +860,13 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
             if (old == dialog) {
                 this.dialogTable.remove(id);
+                if (passivatedDialogs != null)
+                    passivatedDialogs.remove(id);
+            }
+            if (old == dialog || old == null) {
+                DialogReplicationQueue queue = dialogReplicationQueue;
+                if (queue != null)
+                    queue.dialogRemoved(id);
             }
        
             // We now deliver DTE even when the dialog is not originally present in the Dialog
@@ -752,6 +908,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     public SIPDialog getDialog(String dialogId) {
 
         SIPDialog sipDialog = (SIPDialog) dialogTable.get(dialogId);
+        if (sipDialog != null && passivatedDialogs != null)
+            sipDialog.activate();
         if (stackLogger.isLoggingEnabled()) {
             stackLogger.logDebug("getDialog(" + dialogId + ") : returning " + sipDialog);
         }
@@ -759,6 +917,73 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
     }
 
+    /**
+     * Set the replicator that receives snapshots of the dialogs that change, for example to
+     * keep a standby stack up to date. Null stops replication.
+     */
+    public synchronized void setDialogStateReplicator(DialogStateReplicator replicator) {
+        DialogReplicationQueue queue = dialogReplicationQueue;
+        if (queue != null)
+            queue.flush();
+        dialogReplicationQueue = replicator == null ? null : new DialogReplicationQueue(this,
+                replicator, dialogReplicationBatchSize);
+        if (replicator != null && !dialogReplicationScheduled && timer != null) {
+            timer.schedule(new DialogReplicationTask(), dialogReplicationInterval,
+                    dialogReplicationInterval);
+            dialogReplicationScheduled = true;
+        }
+    }
+
+    /**
+     * Get the dialog state replicator, or null if dialogs are not replicated.
+     */
+    public DialogStateReplicator getDialogStateReplicator() {
+        DialogReplicationQueue queue = dialogReplicationQueue;
+        return queue == null ? null : queue.getReplicator();
+    }
+
+    /**
+     * Flush the dialog replication queue on the stack timer as soon as possible.
+     *
+     * @return false if the stack has no timer to run the flush.
+     */
+    boolean scheduleDialogReplication() {
+        Timer timer = this.timer;
+        if (timer == null)
+            return false;
+        try {
+            timer.schedule(new DialogReplicationTask(), 0);
+            return true;
+        } catch (IllegalStateException ex) {
+            // The timer was cancelled by stopStack.
+            return false;
+        }
+    }
+
+    /**
+     * Called by a dialog when state that is replicated has changed.
+     */
+    void dialogStateChanged(SIPDialog dialog) {
+        DialogReplicationQueue queue = dialogReplicationQueue;
+        if (queue != null)
+            queue.dialogChanged(dialog);
+    }
+
+    private synchronized void scheduleDialogPassivation() {
+        if (!dialogPassivationScheduled && timer != null) {
+            long interval = Math.max(1000, dialogPassivationTime / 4);
+            timer.schedule(new DialogPassivationTask(), interval, interval);
+            dialogPassivationScheduled = true;
+        }
+    }
+
+    /**
+     * Get the store of passivated dialogs, or null if dialog passivation is disabled.
+     */
+    public DialogStore getPassivatedDialogs() {
+        return passivatedDialogs;
+    }
+
     /**
      * Remove the dialog given its dialog id. This is used for dialog id re-assignment only.
      *
@@ -848,7 +1073,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      * @param serverTransaction
      */
     public void addTransactionPendingAck(SIPServerTransaction serverTransaction) {
-        String branchId = ((SIPRequest)serverTransaction.getRequest()).getTopmostVia().getBranch();
+        String branchId = serverTransaction.getOriginalRequestTopmostVia().getBranch();
         if ( branchId != null ) {
             this.terminatedServerTransactionsPendingAck.put(branchId, serverTransaction);
         }
@@ -873,7 +1098,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     
     public boolean removeTransactionPendingAck(SIPServerTransaction serverTransaction) {
-        String branchId = ((SIPRequest)serverTransaction.getRequest()).getTopmostVia().getBranch();
+        String branchId = serverTransaction.getOriginalRequestTopmostVia().getBranch();
         if ( branchId != null && this.terminatedServerTransactionsPendingAck.containsKey(branchId) ) {
             this.terminatedServerTransactionsPendingAck.remove(branchId);
             return true;
@@ -889,7 +1114,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      * @return
      */
     public boolean isTransactionPendingAck(SIPServerTransaction serverTransaction) {
-        String branchId = ((SIPRequest)serverTransaction.getRequest()).getTopmostVia().getBranch();
+        String branchId = serverTransaction.getOriginalRequestTopmostVia().getBranch();
         return this.terminatedServerTransactionsPendingAck.contains(branchId); 
     }
     
@@ -1062,9 +1287,8 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                if (sipDialog.getFirstTransaction()  != null && 
                    sipDialog.getFirstTransaction() instanceof ServerTransaction) {
                    SIPServerTransaction serverTransaction = ((SIPServerTransaction) sipDialog.getFirstTransaction());
-                   SIPRequest transactionRequest = ((SIPServerTransaction) sipDialog.getFirstTransaction()).getOriginalRequest();
                    if ( (! serverTransaction.isMessagePartOfTransaction(sipRequest))
-                           && sipRequest.getMergeId().equals(transactionRequest.getMergeId())) {
+                           && mergeId.equals(serverTransaction.getMergeId())) {
                            return (SIPServerTransaction) sipDialog.getFirstTransaction();  
                    }
                }
@@ -1097,7 +1321,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         if (stackLogger.isLoggingEnabled()) {
             this.stackLogger.logDebug("Removing tx from merge table ");
         }
-        String key = ((SIPRequest) tr.getRequest()).getMergeId();
+        String key = tr.getMergeId();
         if (key != null) {
             this.mergeTable.remove(key);
         }
@@ -1194,6 +1418,12 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                     currentTransaction.setOriginalRequest(requestReceived);
                     // Associate the tx with the received request.
                     requestReceived.setTransaction(currentTransaction);
+                } else if (!requestReceived.getMethod().equals(Request.ACK)) {
+                    // Rejected by admission control: tell the client to back off
+                    // rather than letting it retransmit into the overload.
+                    sendServiceUnavailable(requestReceived, requestMessageChannel,
+                            serverAdmissionController.getRetryAfter());
+                    return null;
                 }
 
             }
@@ -1221,7 +1451,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                  */
                 if (currentTransaction.isMessagePartOfTransaction(requestReceived) &&
                     currentTransaction.getMethod().equals(requestReceived.getMethod())) {
-                    SIPResponse trying = requestReceived.createResponse(Response.TRYING);
+                    SIPResponse trying = TRYING.createResponse(requestReceived);
                     trying.removeContent();
                     currentTransaction.getMessageChannel().sendMessage(trying);
                 }
@@ -1235,6 +1465,49 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         }
     }
 
+    /**
+     * Apply the per source flood protection to a message received on a connection. The
+     * limiter is charged per parsed message rather than per read. A stream cannot skip
+     * bytes, but it can skip a message, so the connection stays open: a rejected request
+     * other than ACK is answered with 503 (unless the source is banned), anything else is
+     * dropped.
+     *
+     * @param sipMessage -- the parsed message.
+     * @param source -- the address the connection comes from.
+     * @param messageChannel -- the channel the message arrived on.
+     * @return true if the message may be processed.
+     */
+    boolean allowFromSource(SIPMessage sipMessage, InetAddress source,
+            MessageChannel messageChannel) {
+        if (sourceRateLimiter == null || sourceRateLimiter.allow(source))
+            return true;
+        if (isLoggingEnabled())
+            stackLogger.logDebug("Rate limit exceeded for " + source + " -- dropping message");
+        if (sipMessage instanceof SIPRequest
+                && !((SIPRequest) sipMessage).getMethod().equals(Request.ACK)
+                && !sourceRateLimiter.isBanned(source))
+            sendServiceUnavailable((SIPRequest) sipMessage, messageChannel, 1);
+        return false;
+    }
+
+    /**
+     * Answer a rejected request with 503 and Retry-After.
+     */
+    private void sendServiceUnavailable(SIPRequest sipRequest, MessageChannel messageChannel,
+            int retryAfterSeconds) {
+        try {
+            SIPResponse response = SERVICE_UNAVAILABLE.createResponse(sipRequest);
+            RetryAfter retryAfter = new RetryAfter();
+            retryAfter.setRetryAfter(retryAfterSeconds);
+            response.setHeader(retryAfter);
+            setOverloadControlParameters(response);
+            messageChannel.sendMessage(response);
+        } catch (Exception ex) {
+            if (isLoggingEnabled())
+                stackLogger.logError("Exception occured sending 503 for rejected request", ex);
+        }
+    }
+
     /**
      * Handles a new SIP response. It finds a client transaction to handle this message. If none
      * exists, it sends the message directly to the superclass.
@@ -1394,20 +1667,173 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     public SIPServerTransaction createServerTransaction(MessageChannel encapsulatedMessageChannel) {
     	// Issue 256 : be consistent with createClientTransaction, if unlimitedServerTransactionTableSize is true,
     	// a new Server Transaction is created no matter what
-        if (unlimitedServerTransactionTableSize) {                
+        if (unlimitedServerTransactionTableSize || serverAdmissionController == null) {
+            return new SIPServerTransaction(this, encapsulatedMessageChannel);
+        } else if (serverAdmissionController.admit(serverTransactionTable.size())) {
             return new SIPServerTransaction(this, encapsulatedMessageChannel);
         } else {
-            float threshold = ((float) (serverTransactionTable.size() - serverTransactionTableLowaterMark))
-                    / ((float) (serverTransactionTableHighwaterMark - serverTransactionTableLowaterMark));
-            boolean decision = Math.random() > 1.0 - threshold;
-            if (decision) {
-                return null;
-            } else {
-                return new SIPServerTransaction(this, encapsulatedMessageChannel);
-            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Check that a new client transaction may be created and reserve a place for it in the
+     * count of active client transactions. Fails at once instead of waiting for room when
+     * the client transaction admission control says no. The caller must give the place back
+     * with releaseClientTransactionAdmission once the transaction has been added to the
+     * table (it is then counted on its own) or could not be created.
+     *
+     * @throws TransactionOverloadException if the transaction is rejected.
+     */
+    public void checkClientTransactionAdmission() throws TransactionOverloadException {
+        if (unlimitedClientTransactionTableSize || clientAdmissionController == null) {
+            activeClientTransactionCount.incrementAndGet();
+            return;
+        }
+        if (!clientAdmissionController.admit(activeClientTransactionCount))
+            throw new TransactionOverloadException("Too many client transactions -- limit "
+                    + clientAdmissionController.getLimit(),
+                    clientAdmissionController.getRetryAfter());
+    }
+
+    /**
+     * Give back the place reserved by checkClientTransactionAdmission.
+     */
+    public void releaseClientTransactionAdmission() {
+        activeClientTransactionCount.decrementAndGet();
+    }
+
+    /**
+     * Record the processing delay (queue delay plus listener latency) of an event so that
+     * the admission controllers can adapt their limits.
+     *
+     * @param delay -- the delay in ms.
+     */
+    public void recordProcessingDelay(long delay) {
+        if (serverAdmissionController != null)
+            serverAdmissionController.recordDelay(delay, serverTransactionTable.size());
+        if (clientAdmissionController != null)
+            clientAdmissionController.recordDelay(delay, activeClientTransactionCount.get());
+    }
+
+    /**
+     * Add the RFC 7339 overload control parameters to the topmost Via of a response, if
+     * enabled and requested by the client.
+     */
+    public void setOverloadControlParameters(SIPResponse sipResponse) {
+        if (overloadControlVia && serverAdmissionController != null)
+            serverAdmissionController.setOverloadControlParameters(sipResponse.getTopmostVia());
+    }
+
+    /**
+     * Get the executor that runs the TLS handshakes of accepted connections, so that a slow
+     * or malicious client cannot stall the accept loop. The executor is bounded: when all
+     * threads are busy and the queue is full, new connections are refused.
+     */
+    protected synchronized ExecutorService getTlsHandshakeExecutor() {
+        if (tlsHandshakeExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(tlsHandshakeThreads,
+                    tlsHandshakeThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(tlsHandshakeQueueSize), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            return threadFactory.newThread(runnable, "TLSHandshakeThread");
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            tlsHandshakeExecutor = executor;
+        }
+        return tlsHandshakeExecutor;
+    }
 
+    /**
+     * Get the executor that opens outgoing TCP and TLS connections. It is separate from the
+     * handshake executor, so that a flood of accepted connections cannot hold up our own
+     * connects. The executor is bounded: when all threads are busy and the queue is full,
+     * new connects fail.
+     */
+    protected synchronized ExecutorService getConnectExecutor() {
+        if (connectExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(connectThreads,
+                    connectThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(connectQueueSize), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            return threadFactory.newThread(runnable, "ConnectThread");
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            connectExecutor = executor;
+        }
+        return connectExecutor;
+    }
+
+    /**
+     * Report an outgoing connection that could not be opened to the transactions whose
+     * channel leads to that peer. The message that needed the connection was handed to
+     * the IOHandler without waiting, so this is how its sender learns of the failure.
+     */
+    protected void connectionFailed(InetAddress peerAddress, int peerPort, String transport) {
+        List<SIPTransaction> failed = new ArrayList<SIPTransaction>();
+        for (SIPClientTransaction ct : clientTransactionTable.values()) {
+            if (leadsTo(ct, peerAddress, peerPort, transport))
+                failed.add(ct);
+        }
+        for (SIPServerTransaction st : serverTransactionTable.values()) {
+            if (leadsTo(st, peerAddress, peerPort, transport))
+                failed.add(st);
         }
+        for (SIPTransaction transaction : failed) {
+            if (isLoggingEnabled())
+                getStackLogger().logDebug("Connection failed for transaction " + transaction);
+            transaction.raiseIOExceptionEvent();
+            transaction.raiseErrorEvent(SIPTransactionErrorEvent.TRANSPORT_ERROR);
+        }
+    }
 
+    private static boolean leadsTo(SIPTransaction transaction, InetAddress peerAddress,
+            int peerPort, String transport) {
+        MessageChannel channel = transaction.getMessageChannel();
+        return transaction.getState() != TransactionState.TERMINATED && channel != null
+                && channel.getPeerPort() == peerPort
+                && transport.equalsIgnoreCase(channel.getTransport())
+                && peerAddress.equals(channel.getPeerInetAddress());
+    }
+
+    /**
+     * Get the factory that creates the threads of the stack.
+     */
+    public StackThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Get the time (ms) allowed to open an outgoing TCP/TLS connection, 0 for the system
+     * default.
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Get the time (ms) allowed for a TLS handshake, 0 if unlimited.
+     */
+    public int getTlsHandshakeTimeout() {
+        return tlsHandshakeTimeout;
+    }
+
+    /**
+     * Get the per source rate limiter, or null if the stack does not limit sources.
+     */
+    public SourceRateLimiter getSourceRateLimiter() {
+        return sourceRateLimiter;
+    }
+
+    public AdmissionController getClientAdmissionController() {
+        return clientAdmissionController;
+    }
+
+    public AdmissionController getServerAdmissionController() {
+        return serverAdmissionController;
     }
 
     /**
@@ -1519,24 +1945,10 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     private void addTransactionHash(SIPTransaction sipTransaction) {
         SIPRequest sipRequest = sipTransaction.getOriginalRequest();
         if (sipTransaction instanceof SIPClientTransaction) {
-            if (!this.unlimitedClientTransactionTableSize) {
-                if (this.activeClientTransactionCount.get() > clientTransactionTableHiwaterMark) {
-                    try {
-                        synchronized (this.clientTransactionTable) {
-                            this.clientTransactionTable.wait();
-                            this.activeClientTransactionCount.incrementAndGet();
-                        }
-
-                    } catch (Exception ex) {
-                        if (stackLogger.isLoggingEnabled()) {
-                            stackLogger.logError("Exception occured while waiting for room", ex);
-                        }
-
-                    }
-                }
-            } else {
+            // Admission was checked (without blocking) when the transaction was created,
+            // see checkClientTransactionAdmission.
+            if (((SIPClientTransaction) sipTransaction).startCountingAsActive())
                 this.activeClientTransactionCount.incrementAndGet();
-            }
             String key = sipRequest.getTransactionId();
             clientTransactionTable.put(key, (SIPClientTransaction) sipTransaction);
             
@@ -1556,27 +1968,20 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     }
 
     /**
-     * This method is called when a client tx transitions to the Completed or Terminated state.
+     * This method is called when a client tx transitions to the Completed or Terminated state
+     * or is removed from the table. The transaction is counted down only once.
      *
      */
-    protected void decrementActiveClientTransactionCount() {
-
-        if (this.activeClientTransactionCount.decrementAndGet() <= this.clientTransactionTableLowaterMark
-                && !this.unlimitedClientTransactionTableSize) {
-            synchronized (this.clientTransactionTable) {
-
-                clientTransactionTable.notify();
-
-            }
-        }
+    protected void decrementActiveClientTransactionCount(SIPClientTransaction clientTransaction) {
+        if (clientTransaction.stopCountingAsActive())
+            this.activeClientTransactionCount.decrementAndGet();
     }
 
     /**
      * Remove the transaction from transaction hash.
      */
     protected void removeTransactionHash(SIPTransaction sipTransaction) {
-        SIPRequest sipRequest = sipTransaction.getOriginalRequest();
-        if (sipRequest == null)
+        if (sipTransaction.getTransactionId() == null)
             return;
         if (sipTransaction instanceof SIPClientTransaction) {
             String key = sipTransaction.getTransactionId();
@@ -1585,6 +1990,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
                 stackLogger.logDebug("removing client Tx : " + key);
             }
             clientTransactionTable.remove(key);
+            decrementActiveClientTransactionCount((SIPClientTransaction) sipTransaction);
 
         } else if (sipTransaction instanceof SIPServerTransaction) {
             String key = sipTransaction.getTransactionId();
@@ -1642,6 +2048,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
 
         // JvB: set it to null, SIPDialog tries to schedule things after stop
         timer = null;
+        this.threadAuditor.stopStallDetection();
         this.pendingTransactions.clear();
         this.toExit = true;
         synchronized (this) {
@@ -1650,6 +2057,18 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         synchronized (this.clientTransactionTable) {
             clientTransactionTable.notifyAll();
         }
+        synchronized (this) {
+            if (tlsHandshakeExecutor != null) {
+                tlsHandshakeExecutor.shutdownNow();
+                tlsHandshakeExecutor = null;
+            }
+            if (connectExecutor != null) {
+                connectExecutor.shutdownNow();
+                connectExecutor = null;
+            }
+        }
+        if (addressResolver instanceof CachingAddressResolver)
+            ((CachingAddressResolver) addressResolver).stop();
 
         synchronized (this.messageProcessors) {
             // Threads must periodically check this flag.
@@ -1672,6 +2091,15 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         this.serverTransactionTable.clear();
 
         this.dialogTable.clear();
+        if (this.passivatedDialogs != null)
+            this.passivatedDialogs.clear();
+        DialogReplicationQueue queue = this.dialogReplicationQueue;
+        if (queue != null)
+            queue.flush();
+        synchronized (this) {
+            this.dialogPassivationScheduled = false;
+            this.dialogReplicationScheduled = false;
+        }
         this.serverLogger.closeLogFile();
 
     }
@@ -1897,6 +2325,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             // call is successful.
             // newMessageProcessor.start();
             messageProcessors.add(newMessageProcessor);
+            statelessForwarder.processorAdded(newMessageProcessor);
 
         }
     }
@@ -1909,6 +2338,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
     protected void removeMessageProcessor(MessageProcessor oldMessageProcessor) {
         synchronized (messageProcessors) {
             if (messageProcessors.remove(oldMessageProcessor)) {
+                statelessForwarder.processorRemoved(oldMessageProcessor);
                 oldMessageProcessor.stop();
             }
         }
@@ -1940,7 +2370,6 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             UDPMessageProcessor udpMessageProcessor = new UDPMessageProcessor(ipAddress, this,
                     port);
             this.addMessageProcessor(udpMessageProcessor);
-            this.udpFlag = true;
             return udpMessageProcessor;
         } else if (transport.equalsIgnoreCase("tcp")) {
             TCPMessageProcessor tcpMessageProcessor = new TCPMessageProcessor(ipAddress, this,
@@ -2002,47 +2431,38 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
      */
     public MessageChannel createRawMessageChannel(String sourceIpAddress, int sourcePort,
             Hop nextHop) throws UnknownHostException {
-        Host targetHost;
-        HostPort targetHostPort;
-        Iterator processorIterator;
-        MessageProcessor nextProcessor;
-        MessageChannel newChannel;
+        // Find the processor for the transport on the source address.
+        MessageProcessor messageProcessor = statelessForwarder.getMessageProcessor(nextHop
+                .getTransport(), sourceIpAddress, sourcePort);
+        if (messageProcessor == null)
+            return null;
 
         // Create the host/port of the target hop
-        targetHost = new Host();
+        Host targetHost = new Host();
         targetHost.setHostname(nextHop.getHost());
-        targetHostPort = new HostPort();
+        HostPort targetHostPort = new HostPort();
         targetHostPort.setHost(targetHost);
         targetHostPort.setPort(nextHop.getPort());
-
-        // Search each processor for the correct transport
-        newChannel = null;
-        processorIterator = messageProcessors.iterator();
-        while (processorIterator.hasNext() && newChannel == null) {
-            nextProcessor = (MessageProcessor) processorIterator.next();
-            // If a processor that supports the correct
-            // transport is found,
-            if (nextHop.getTransport().equalsIgnoreCase(nextProcessor.getTransport())
-                    && sourceIpAddress.equals(nextProcessor.getIpAddress().getHostAddress())
-                    && sourcePort == nextProcessor.getPort()) {
-                try {
-                    // Create a channel to the target
-                    // host/port
-                    newChannel = nextProcessor.createMessageChannel(targetHostPort);
-                } catch (UnknownHostException ex) {
-                    if (stackLogger.isLoggingEnabled())
-                        stackLogger.logException(ex);
-                    throw ex;
-                } catch (IOException e) {
-                    if (stackLogger.isLoggingEnabled())
-                        stackLogger.logException(e);
-                    // Ignore channel creation error -
-                    // try next processor
-                }
-            }
+        try {
+            // Create a channel to the target host/port
+            return messageProcessor.createMessageChannel(targetHostPort);
+        } catch (UnknownHostException ex) {
+            if (stackLogger.isLoggingEnabled())
+                stackLogger.logException(ex);
+            throw ex;
+        } catch (IOException e) {
+            if (stackLogger.isLoggingEnabled())
+                stackLogger.logException(e);
+            // Ignore channel creation error
+            return null;
         }
-        // Return the newly-created channel
-        return newChannel;
+    }
+
+    /**
+     * The send path for messages that are sent outside of a transaction.
+     */
+    public StatelessForwarder getStatelessForwarder() {
+        return statelessForwarder;
     }
 
     /**
@@ -2078,6 +2498,22 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         this.addressResolver = addressResolver;
     }
 
+    /**
+     * Resolve the sent-by of the topmost Via of a received request. The
+     * transport threads must not wait for DNS, so with the caching resolver
+     * only the cache is consulted and a miss starts a lookup in the background.
+     * An unresolved host name always differs from the source address, so the
+     * received parameter is then added as RFC 3261 section 18.2.1 requires.
+     *
+     * @param hop -- the sent-by hop of the Via header.
+     * @return the resolved hop.
+     */
+    Hop resolveViaHop(Hop hop) {
+        if (addressResolver instanceof CachingAddressResolver)
+            return ((CachingAddressResolver) addressResolver).resolveAddressNoWait(hop);
+        return addressResolver.resolveAddress(hop);
+    }
+
     /**
      * Set the logger factory.
      *
@@ -2350,7 +2786,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
         /*
          * Check if we can find this dialog in our dialog table.
          */
-        Dialog replacesDialog =  this.dialogTable.get(did);
+        Dialog replacesDialog =  this.getDialog(did);
         /*
          * This could be a forked dialog. Search for it.
          */
@@ -2388,7 +2824,7 @@ public abstract class SIPTransactionStack implements SIPTransactionEventListener
             retval.append(":");
             retval.append(fromTag);
         }
-        return this.dialogTable.get(retval.toString().toLowerCase());
+        return this.getDialog(retval.toString().toLowerCase());
     }
 
     /**
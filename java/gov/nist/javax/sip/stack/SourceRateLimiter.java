@@ -0,0 +1,271 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per source address flood protection for the transport layer. Every source address gets
+ * a token bucket that refills at a fixed rate; a datagram (UDP) or a message received on a
+ * connection (TCP/TLS) takes one token and is dropped if there are none left. Datagrams are
+ * checked before anything is parsed, so traffic from a flooding address costs a hash lookup.
+ * Messages on a connection are checked once they are framed, so that one message can be
+ * rejected without closing the connection.
+ * <p>
+ * A source that keeps sending while its bucket is empty (as many messages as the burst
+ * size without a token becoming available) is banned for a while and everything from it
+ * is dropped until the ban expires. Addresses on the allow list are never limited.
+ * <p>
+ * The buckets are held in a bounded concurrent table. When it is full a small sample of
+ * entries is inspected and the least recently used one that is not banned is evicted, which
+ * approximates LRU without a global lock.
+ *
+ * @since 2.0
+ */
+public class SourceRateLimiter {
+
+    /**
+     * Number of entries inspected when looking for one to evict.
+     */
+    private static final int EVICTION_SAMPLE = 16;
+
+    private static class Bucket {
+        double tokens;
+
+        long lastRefill;
+
+        int excess;
+
+        long bannedUntil;
+
+        volatile long lastSeen;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+            this.lastSeen = now;
+        }
+    }
+
+    private final double rate;
+
+    private final int burst;
+
+    private final long banTime;
+
+    private final int maxSize;
+
+    private final ConcurrentHashMap<InetAddress, Bucket> buckets;
+
+    private final Set<InetAddress> allowList = new CopyOnWriteArraySet<InetAddress>();
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong banCount = new AtomicLong();
+
+    /**
+     * Create a limiter.
+     *
+     * @param rate -- messages per second allowed from one source.
+     * @param burst -- the size of a source's bucket.
+     * @param banTime -- how long (ms) a flooding source is banned, 0 for no bans.
+     * @param maxSize -- the maximum number of sources tracked.
+     */
+    public SourceRateLimiter(double rate, int burst, long banTime, int maxSize) {
+        if (rate <= 0 || burst <= 0 || maxSize <= 0)
+            throw new IllegalArgumentException("Bad rate limit parameters");
+        this.rate = rate;
+        this.burst = burst;
+        this.banTime = banTime;
+        this.maxSize = maxSize;
+        this.buckets = new ConcurrentHashMap<InetAddress, Bucket>(Math.min(maxSize, 1024));
+    }
+
+    /**
+     * Take a token for a message from the given source.
+     *
+     * @return true if the message may be processed, false if it should be dropped.
+     */
+    public boolean allow(InetAddress source) {
+        if (source == null || allowList.contains(source)) {
+            acceptedCount.incrementAndGet();
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Bucket bucket = buckets.get(source);
+        if (bucket == null) {
+            if (buckets.size() >= maxSize)
+                evict();
+            Bucket newBucket = new Bucket(burst, now);
+            bucket = buckets.putIfAbsent(source, newBucket);
+            if (bucket == null)
+                bucket = newBucket;
+        }
+        bucket.lastSeen = now;
+        boolean allowed;
+        synchronized (bucket) {
+            if (bucket.bannedUntil != 0) {
+                if (now < bucket.bannedUntil) {
+                    droppedCount.incrementAndGet();
+                    return false;
+                }
+                bucket.bannedUntil = 0;
+                bucket.excess = 0;
+            }
+            long elapsed = now - bucket.lastRefill;
+            if (elapsed > 0) {
+                bucket.tokens = Math.min(burst, bucket.tokens + elapsed * rate / 1000);
+                bucket.lastRefill = now;
+            }
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                bucket.excess = 0;
+                allowed = true;
+            } else {
+                allowed = false;
+                if (banTime > 0 && ++bucket.excess >= burst) {
+                    bucket.bannedUntil = now + banTime;
+                    banCount.incrementAndGet();
+                }
+            }
+        }
+        if (allowed)
+            acceptedCount.incrementAndGet();
+        else
+            droppedCount.incrementAndGet();
+        return allowed;
+    }
+
+    /**
+     * Whether a source is currently banned.
+     */
+    public boolean isBanned(InetAddress source) {
+        Bucket bucket = buckets.get(source);
+        if (bucket == null)
+            return false;
+        synchronized (bucket) {
+            return bucket.bannedUntil != 0 && System.currentTimeMillis() < bucket.bannedUntil;
+        }
+    }
+
+    /**
+     * Ban a source explicitly.
+     *
+     * @param duration -- the ban duration in ms.
+     */
+    public void ban(InetAddress source, long duration) {
+        long now = System.currentTimeMillis();
+        Bucket newBucket = new Bucket(0, now);
+        Bucket bucket = buckets.putIfAbsent(source, newBucket);
+        if (bucket == null)
+            bucket = newBucket;
+        synchronized (bucket) {
+            bucket.bannedUntil = now + duration;
+        }
+        banCount.incrementAndGet();
+    }
+
+    /**
+     * Lift a ban and forget the state of a source.
+     */
+    public void unban(InetAddress source) {
+        buckets.remove(source);
+    }
+
+    /**
+     * Evict the least recently used entry among a sample of the table. Banned entries are
+     * kept unless their ban has expired.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        InetAddress victim = null;
+        long oldest = Long.MAX_VALUE;
+        int n = 0;
+        for (Iterator<Map.Entry<InetAddress, Bucket>> it = buckets.entrySet().iterator(); it
+                .hasNext()
+                && n < EVICTION_SAMPLE; n++) {
+            Map.Entry<InetAddress, Bucket> entry = it.next();
+            Bucket bucket = entry.getValue();
+            if (bucket.bannedUntil > now)
+                continue;
+            if (bucket.lastSeen < oldest) {
+                oldest = bucket.lastSeen;
+                victim = entry.getKey();
+            }
+        }
+        if (victim != null)
+            buckets.remove(victim);
+    }
+
+    public void addAllowedAddress(InetAddress address) {
+        allowList.add(address);
+    }
+
+    public void removeAllowedAddress(InetAddress address) {
+        allowList.remove(address);
+    }
+
+    public Collection<InetAddress> getAllowedAddresses() {
+        return allowList;
+    }
+
+    /**
+     * The number of messages let through.
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * The number of messages dropped because their source was over its rate or banned.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The number of bans imposed.
+     */
+    public long getBanCount() {
+        return banCount.get();
+    }
+
+    /**
+     * The number of sources currently tracked.
+     */
+    public int size() {
+        return buckets.size();
+    }
+}
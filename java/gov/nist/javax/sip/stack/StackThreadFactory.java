@@ -0,0 +1,188 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads of the stack: the transport readers and accept loops, the pipelined
+ * parsers, the UDP workers, the TLS handshake pool, the re-INVITE senders and the event
+ * scanner. The threading model is chosen with the gov.nist.javax.sip.THREAD_FACTORY
+ * property: platform threads (the default), virtual threads (Java 21 and later) or the
+ * threads of an application supplied ThreadFactory.
+ * <p>
+ * Virtual threads are always daemon threads and have a fixed priority, so the daemon flag
+ * and priority asked for by the stack are only applied to platform threads. The Java 21
+ * API is used through reflection so that the stack still builds and runs on older
+ * runtimes.
+ *
+ * @since 2.0
+ */
+public class StackThreadFactory implements ThreadFactory {
+
+    /**
+     * The name of the platform thread model.
+     */
+    public static final String PLATFORM = "platform";
+
+    /**
+     * The name of the virtual thread model.
+     */
+    public static final String VIRTUAL = "virtual";
+
+    /**
+     * Thread.isVirtual(), null before Java 21.
+     */
+    private static final Method isVirtualMethod;
+
+    static {
+        Method method = null;
+        try {
+            method = Thread.class.getMethod("isVirtual");
+        } catch (Exception ex) {
+            // Not available on this runtime.
+        }
+        isVirtualMethod = method;
+    }
+
+    /**
+     * The factory the threads come from, null for plain platform threads.
+     */
+    private final ThreadFactory delegate;
+
+    private final boolean virtual;
+
+    /**
+     * Create a factory of platform threads.
+     */
+    public StackThreadFactory() {
+        this(null, false);
+    }
+
+    /**
+     * Create a factory that takes its threads from another factory.
+     */
+    public StackThreadFactory(ThreadFactory delegate) {
+        this(delegate, false);
+    }
+
+    private StackThreadFactory(ThreadFactory delegate, boolean virtual) {
+        this.delegate = delegate;
+        this.virtual = virtual;
+    }
+
+    /**
+     * Create the factory for a value of the THREAD_FACTORY property.
+     *
+     * @param model -- "platform", "virtual" or the class name of a ThreadFactory with a public
+     *        no argument constructor.
+     * @throws IllegalArgumentException if the model is not available.
+     */
+    public static StackThreadFactory forName(String model) {
+        model = model.trim();
+        if (model.equalsIgnoreCase(PLATFORM))
+            return new StackThreadFactory();
+        if (model.equalsIgnoreCase(VIRTUAL)) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory")
+                        .invoke(builder);
+                return new StackThreadFactory(factory, true);
+            } catch (Exception ex) {
+                throw new IllegalArgumentException(
+                        "Virtual threads are not supported by this runtime", ex);
+            }
+        }
+        try {
+            Class<?> clazz = Class.forName(model);
+            Constructor<?> c = clazz.getConstructor(new Class<?>[0]);
+            return new StackThreadFactory((ThreadFactory) c.newInstance(new Object[0]));
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("can't find or instantiate ThreadFactory "
+                    + model, ex);
+        }
+    }
+
+    /**
+     * Return true if the runtime supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return isVirtualMethod != null;
+    }
+
+    /**
+     * Return true if the thread is a virtual thread.
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (isVirtualMethod == null)
+            return false;
+        try {
+            return ((Boolean) isVirtualMethod.invoke(thread)).booleanValue();
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Return true if this factory creates virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public Thread newThread(Runnable runnable) {
+        return delegate == null ? new Thread(runnable) : delegate.newThread(runnable);
+    }
+
+    /**
+     * Create a named thread. The daemon flag and priority are ignored for virtual threads.
+     */
+    public Thread newThread(Runnable runnable, String name, boolean daemon, int priority) {
+        Thread thread = newThread(runnable);
+        thread.setName(name);
+        if (!virtual && !isVirtual(thread)) {
+            thread.setDaemon(daemon);
+            thread.setPriority(priority);
+        }
+        return thread;
+    }
+
+    /**
+     * Create a named daemon thread of normal priority.
+     */
+    public Thread newThread(Runnable runnable, String name) {
+        return newThread(runnable, name, true, Thread.NORM_PRIORITY);
+    }
+
+    public String toString() {
+        if (virtual)
+            return VIRTUAL;
+        return delegate == null ? PLATFORM : delegate.getClass().getName();
+    }
+}
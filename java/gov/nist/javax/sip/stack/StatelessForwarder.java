@@ -0,0 +1,196 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package gov.nist.javax.sip.stack;
+
+import gov.nist.core.ServerLogger;
+import gov.nist.javax.sip.message.SIPMessage;
+import gov.nist.javax.sip.message.SIPRequest;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sip.address.Hop;
+
+/**
+ * The send path for messages that are not associated with a transaction (stateless proxying
+ * and the SipProvider sendRequest/sendResponse methods).
+ * <p>
+ * The message processors are indexed by (transport, local address, port) so that the
+ * processor for a listening point is found without scanning the processor list.
+ * Destinations are resolved through the address resolver of the stack, which owns the DNS
+ * cache and its lifetimes. For each sending processor and resolved address the outcome of
+ * the self routing check and, for UDP, a message channel that is reused for every message to
+ * that address are cached. Messages are encoded and written straight to the processor
+ * socket. For TCP and TLS the connection is looked up in the connection table of the
+ * processor.
+ *
+ * @since 2.0
+ */
+public class StatelessForwarder {
+
+    private static final int MAX_TARGETS = 4096;
+
+    private final SIPTransactionStack sipStack;
+
+    private final ConcurrentHashMap<String, MessageProcessor> processors =
+            new ConcurrentHashMap<String, MessageProcessor>();
+
+    private final ConcurrentHashMap<String, Target> targets =
+            new ConcurrentHashMap<String, Target>();
+
+    /**
+     * A resolved address as seen from one message processor.
+     */
+    private static class Target {
+        final MessageProcessor processor;
+
+        final InetAddress address;
+
+        final int port;
+
+        /**
+         * The destination is one of our own processors.
+         */
+        final boolean local;
+
+        /**
+         * Reused for connectionless transports, null otherwise.
+         */
+        final MessageChannel channel;
+
+        Target(MessageProcessor processor, InetAddress address, int port, boolean local,
+                MessageChannel channel) {
+            this.processor = processor;
+            this.address = address;
+            this.port = port;
+            this.local = local;
+            this.channel = channel;
+        }
+    }
+
+    StatelessForwarder(SIPTransactionStack sipStack) {
+        this.sipStack = sipStack;
+    }
+
+    private static String getProcessorKey(String transport, String ipAddress, int port) {
+        return transport.toUpperCase() + "/" + ipAddress + ":" + port;
+    }
+
+    void processorAdded(MessageProcessor messageProcessor) {
+        processors.put(getProcessorKey(messageProcessor.getTransport(), messageProcessor
+                .getIpAddress().getHostAddress(), messageProcessor.getPort()), messageProcessor);
+        // The self routing decisions may have changed.
+        targets.clear();
+    }
+
+    void processorRemoved(MessageProcessor messageProcessor) {
+        processors.remove(getProcessorKey(messageProcessor.getTransport(), messageProcessor
+                .getIpAddress().getHostAddress(), messageProcessor.getPort()));
+        targets.clear();
+    }
+
+    /**
+     * The message processor for a transport on a local address and port, or null.
+     */
+    public MessageProcessor getMessageProcessor(String transport, String ipAddress, int port) {
+        return processors.get(getProcessorKey(transport, ipAddress, port));
+    }
+
+    private Target getTarget(MessageProcessor processor, Hop hop) throws IOException {
+        // The resolver owns the DNS cache. getByName only parses the address it returns, or
+        // falls back on the JVM cache with a resolver that leaves host names alone.
+        Hop resolved = sipStack.getAddressResolver().resolveAddress(hop);
+        InetAddress address = InetAddress.getByName(resolved.getHost());
+        int port = resolved.getPort() != -1 ? resolved.getPort() : MessageProcessor
+                .getDefaultPort(hop.getTransport());
+        String key = getProcessorKey(processor.getTransport(), processor.getIpAddress()
+                .getHostAddress(), processor.getPort())
+                + "/" + address.getHostAddress() + ":" + port;
+        Target target = targets.get(key);
+        if (target != null)
+            return target;
+
+        boolean local = getMessageProcessor(hop.getTransport(), address.getHostAddress(),
+                port) != null;
+        MessageChannel channel = null;
+        if (!local && "UDP".equalsIgnoreCase(processor.getTransport()))
+            channel = processor.createMessageChannel(address, port);
+        target = new Target(processor, address, port, local, channel);
+        if (targets.size() >= MAX_TARGETS) {
+            // Make room by dropping arbitrary entries.
+            Iterator<String> it = targets.keySet().iterator();
+            while (targets.size() >= MAX_TARGETS && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        targets.put(key, target);
+        return target;
+    }
+
+    /**
+     * Send a message from the processor of a listening point to a hop without creating a
+     * transaction.
+     *
+     * @param sipMessage -- the message to send.
+     * @param ipAddress -- the address of the listening point to send from.
+     * @param port -- the port of the listening point to send from.
+     * @param hop -- where to send the message; its transport selects the processor.
+     * @throws IOException if there is no processor for the transport or the send fails.
+     */
+    public void forward(SIPMessage sipMessage, String ipAddress, int port, Hop hop)
+            throws IOException {
+        MessageProcessor processor = getMessageProcessor(hop.getTransport(), ipAddress, port);
+        if (processor == null)
+            throw new IOException("No message processor for " + hop.getTransport() + " on "
+                    + ipAddress + ":" + port);
+        Target target = getTarget(processor, hop);
+        if (target.local) {
+            // Let the channel short-circuit the message to our own processor.
+            processor.createMessageChannel(target.address, target.port)
+                    .sendMessage(sipMessage, hop);
+            return;
+        }
+        long time = System.currentTimeMillis();
+        MessageChannel channel = target.channel;
+        if (channel == null)
+            channel = processor.createMessageChannel(target.address, target.port);
+        byte[] bytes = sipMessage.encodeAsBytes(processor.getTransport());
+        channel.sendMessage(bytes, target.address, target.port,
+                sipMessage instanceof SIPRequest);
+        if (sipStack.getStackLogger().isLoggingEnabled(ServerLogger.TRACE_MESSAGES))
+            channel.logMessage(sipMessage, target.address, target.port, time);
+    }
+
+    /**
+     * Drop the cached destinations.
+     */
+    void clear() {
+        targets.clear();
+    }
+}
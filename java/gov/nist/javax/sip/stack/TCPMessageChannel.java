@@ -36,6 +36,7 @@ import java.net.*;
 import java.io.*;
 import java.text.ParseException;
 import java.util.TimerTask;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sip.address.Hop;
 
@@ -61,8 +62,8 @@ import javax.sip.address.Hop;
  * 
  * @version 1.2 $Revision: 1.59 $ $Date: 2009/11/20 04:45:53 $
  */
-public class TCPMessageChannel extends MessageChannel implements SIPMessageListener, Runnable,
-        RawMessageChannel {
+public class TCPMessageChannel extends MessageChannel implements SIPMessageListener,
+        KeepAliveListener, Runnable, RawMessageChannel {
 
     private Socket mySock;
 
@@ -78,6 +79,11 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
 
     protected boolean isRunning;
 
+    private static final byte[] PONG = { '\r', '\n' };
+
+    // Time (ms) data was last read from or written to this channel.
+    private volatile long lastActivityTime = System.currentTimeMillis();
+
     private Thread mythread;
 
     protected SIPTransactionStack sipStack;
@@ -128,9 +134,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
         myAddress = msgProcessor.getIpAddress().getHostAddress();
         myClientInputStream = mySock.getInputStream();
         myClientOutputStream = mySock.getOutputStream();
-        mythread = new Thread(this);
-        mythread.setDaemon(true);
-        mythread.setName("TCPMessageChannelThread");
+        mythread = sipStack.getThreadFactory().newThread(this, "TCPMessageChannelThread");
         // Stash away a pointer to our sipStack structure.
         this.sipStack = sipStack;
         this.peerPort = mySock.getPort();
@@ -251,6 +255,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
        // this.peerAddress, this.peerPort));
         Socket sock = this.sipStack.ioHandler.sendBytes(this.messageProcessor.getIpAddress(),
                 this.peerAddress, this.peerPort, this.peerProtocol, msg, retry, this);
+        lastActivityTime = System.currentTimeMillis();
 
         // Created a new socket so close the old one and stick the new
         // one in its place but dont do this if it is a datagram socket.
@@ -258,23 +263,30 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
         // if (mySock == null && s != null) {
         // this.uncache();
         // } else
-        if (sock != mySock && sock != null) {
-            try {
-                if (mySock != null)
-                    mySock.close();
-            } catch (IOException ex) {
-            }
-            mySock = sock;
-            this.myClientInputStream = mySock.getInputStream();
-            this.myClientOutputStream = mySock.getOutputStream();
-            Thread thread = new Thread(this);
-            thread.setDaemon(true);
-            thread.setName("TCPMessageChannelThread");
-            thread.start();
-        }
+        if (sock != mySock && sock != null)
+            connected(sock);
 
     }
 
+    /**
+     * Use a connection opened for this channel: close the old one and start reading from
+     * the new one. Called by the IOHandler once a connection it opened for this channel
+     * is established.
+     */
+    void connected(Socket sock) throws IOException {
+        try {
+            if (mySock != null)
+                mySock.close();
+        } catch (IOException ex) {
+        }
+        mySock = sock;
+        this.myClientInputStream = mySock.getInputStream();
+        this.myClientOutputStream = mySock.getOutputStream();
+        Thread thread = sipStack.getThreadFactory().newThread(this,
+                "TCPMessageChannelThread");
+        thread.start();
+    }
+
     /**
      * Return a formatted message to the client. We try to re-connect with the peer on the other
      * end if possible.
@@ -309,6 +321,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
             throw new IllegalArgumentException("Null argument");
          Socket sock = this.sipStack.ioHandler.sendBytes(this.messageProcessor.getIpAddress(),
                 receiverAddress, receiverPort, "TCP", message, retry, this);
+         lastActivityTime = System.currentTimeMillis();
         if (sock != mySock && sock != null) {
             if (mySock != null) {
                 /*
@@ -341,9 +354,8 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
             this.myClientInputStream = mySock.getInputStream();
             this.myClientOutputStream = mySock.getOutputStream();
             // start a new reader on this end of the pipe.
-            Thread mythread = new Thread(this);
-            mythread.setDaemon(true);
-            mythread.setName("TCPMessageChannelThread");
+            Thread mythread = sipStack.getThreadFactory().newThread(this,
+                    "TCPMessageChannelThread");
             mythread.start();
         }
 
@@ -427,6 +439,10 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
                 return;
             }
 
+            // Per source flood protection, one token per message.
+            if (!sipStack.allowFromSource(sipMessage, mySock.getInetAddress(), this))
+                return;
+
             ViaList viaList = sipMessage.getViaHeaders();
             // For a request
             // first via header tells where the message is coming from.
@@ -434,7 +450,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
             // message.
             if (sipMessage instanceof SIPRequest) {
                 Via v = (Via) viaList.getFirst();
-                Hop hop = sipStack.addressResolver.resolveAddress(v.getHop());
+                Hop hop = sipStack.resolveViaHop(v.getHop());
                 this.peerProtocol = v.getTransport();
                 try {
                     this.peerAddress = mySock.getInetAddress();
@@ -583,6 +599,21 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
         }
     }
 
+    /**
+     * Answer an RFC 5626 keepalive ping, found by the parser between two messages, with a
+     * single CRLF pong.
+     */
+    public void processPing() throws IOException {
+        ReentrantLock writeLock = IOHandler.getWriteLock(myClientOutputStream);
+        writeLock.lock();
+        try {
+            myClientOutputStream.write(PONG);
+            myClientOutputStream.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /**
      * This gets invoked when thread.start is called from the constructor. Implements a message
      * loop - reading the tcp connection and processing messages until we are done or the other
@@ -597,25 +628,28 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
         // messages that we write out to him.
         myParser = new PipelinedMsgParser(this, hispipe, this.sipStack.getMaxMessageSize());
         // Start running the parser thread.
-        myParser.processInput();
+        myParser.processInput(sipStack.getThreadFactory());
         // bug fix by Emmanuel Proulx
         int bufferSize = 4096;
         this.tcpMessageProcessor.useCount++;
         this.isRunning = true;
+        // Key of our socket in the IOHandler connection cache.
+        String ioKey = IOHandler.makeKey(mySock.getInetAddress(), mySock.getPort());
         try {
             while (true) {
                 try {
                     byte[] msg = new byte[bufferSize];
                     int nbytes = myClientInputStream.read(msg, 0, bufferSize);
+                    if (nbytes > 0) {
+                        lastActivityTime = System.currentTimeMillis();
+                        sipStack.ioHandler.touch(ioKey);
+                    }
                     // no more bytes to read...
                     if (nbytes == -1) {
                         hispipe.write("\r\n\r\n".getBytes("UTF-8"));
                         try {
                             if (sipStack.maxConnections != -1) {
-                                synchronized (tcpMessageProcessor) {
-                                    tcpMessageProcessor.nConnections--;
-                                    tcpMessageProcessor.notify();
-                                }
+                                tcpMessageProcessor.releaseConnection();
                             }
                             hispipe.close();
                             mySock.close();
@@ -638,11 +672,7 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
                             sipStack.getStackLogger().logDebug("IOException  closing sock " + ex);
                         try {
                             if (sipStack.maxConnections != -1) {
-                                synchronized (tcpMessageProcessor) {
-                                    tcpMessageProcessor.nConnections--;
-                                    // System.out.println("Notifying!");
-                                    tcpMessageProcessor.notify();
-                                }
+                                tcpMessageProcessor.releaseConnection();
                             }
                             mySock.close();
                             hispipe.close();
@@ -690,6 +720,13 @@ public class TCPMessageChannel extends MessageChannel implements SIPMessageListe
         }
     }
 
+    /**
+     * Get the time (ms) data was last read from or written to this channel.
+     */
+    public long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
     /**
      * Get an identifying key. This key is used to cache the connection and re-use it if
      * necessary.
@@ -35,6 +35,10 @@ import java.net.SocketException;
 import gov.nist.core.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
  * Acknowledgement: Jeff Keyser suggested that a Stop mechanism be added to this. Niklas Uhrberg
@@ -59,11 +63,18 @@ public class TCPMessageProcessor extends MessageProcessor {
 
     protected int nConnections;
 
+    // Guards nConnections. The accept loop waits on connectionReleased while the
+    // connection limit is reached; a lock rather than the processor monitor so that a
+    // virtual accept thread does not pin its carrier.
+    private final ReentrantLock connectionLock = new ReentrantLock();
+
+    private final Condition connectionReleased = connectionLock.newCondition();
+
     private boolean isRunning;
 
-    private Hashtable tcpMessageChannels;
+    private final MessageChannelRegistry<TCPMessageChannel> tcpMessageChannels;
 
-    private ArrayList<TCPMessageChannel> incomingTcpMessageChannels;
+    private final Set<TCPMessageChannel> incomingTcpMessageChannels;
 
     private ServerSocket sock;
 
@@ -80,18 +91,17 @@ public class TCPMessageProcessor extends MessageProcessor {
 
         this.sipStack = sipStack;
 
-        this.tcpMessageChannels = new Hashtable();
-        this.incomingTcpMessageChannels = new ArrayList<TCPMessageChannel>();
+        this.tcpMessageChannels = new MessageChannelRegistry<TCPMessageChannel>();
+        this.incomingTcpMessageChannels = Collections
+                .newSetFromMap(new ConcurrentHashMap<TCPMessageChannel, Boolean>());
     }
 
     /**
      * Start the processor.
      */
     public void start() throws IOException {
-        Thread thread = new Thread(this);
-        thread.setName("TCPMessageProcessorThread");
-        thread.setPriority(Thread.MAX_PRIORITY);
-        thread.setDaemon(true);
+        Thread thread = sipStack.getThreadFactory().newThread(this, "TCPMessageProcessorThread",
+                true, Thread.MAX_PRIORITY);
         this.sock = sipStack.getNetworkLayer().createServerSocket(getPort(), 0, getIpAddress());
         if (getIpAddress().getHostAddress().equals(IN_ADDR_ANY)
                 || getIpAddress().getHostAddress().equals(IN6_ADDR_ANY)) {
@@ -111,7 +121,8 @@ public class TCPMessageProcessor extends MessageProcessor {
         // Accept new connectins on our socket.
         while (this.isRunning) {
             try {
-                synchronized (this) {
+                connectionLock.lock();
+                try {
                     // sipStack.maxConnections == -1 means we are
                     // willing to handle an "infinite" number of
                     // simultaneous connections (no resource limitation).
@@ -119,7 +130,7 @@ public class TCPMessageProcessor extends MessageProcessor {
                     while (sipStack.maxConnections != -1
                             && this.nConnections >= sipStack.maxConnections) {
                         try {
-                            this.wait();
+                            connectionReleased.await();
 
                             if (!this.isRunning)
                                 return;
@@ -128,6 +139,8 @@ public class TCPMessageProcessor extends MessageProcessor {
                         }
                     }
                     this.nConnections++;
+                } finally {
+                    connectionLock.unlock();
                 }
 
                 Socket newsock = sock.accept();
@@ -137,6 +150,16 @@ public class TCPMessageProcessor extends MessageProcessor {
                 // Note that for an incoming message channel, the
                 // thread is already running
                
+                if (sipStack.sourceRateLimiter != null
+                        && !sipStack.sourceRateLimiter.allow(newsock.getInetAddress())) {
+                    if (sipStack.isLoggingEnabled())
+                        sipStack.getStackLogger().logDebug(
+                                "Refusing connection -- rate limit exceeded for "
+                                        + newsock.getInetAddress());
+                    newsock.close();
+                    releaseConnection();
+                    continue;
+                }
                 incomingTcpMessageChannels.add(new TCPMessageChannel(newsock, sipStack, this));
             } catch (SocketException ex) {
                 this.isRunning = false;
@@ -169,6 +192,19 @@ public class TCPMessageProcessor extends MessageProcessor {
         return sipStack;
     }
 
+    /**
+     * Release the connection slot of a closed connection.
+     */
+    protected void releaseConnection() {
+        connectionLock.lock();
+        try {
+            this.nConnections--;
+            connectionReleased.signal();
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
     /**
      * Stop the message processor. Feature suggested by Jeff Keyser.
      */
@@ -181,9 +217,7 @@ public class TCPMessageProcessor extends MessageProcessor {
             e.printStackTrace();
         }
 
-        Collection en = tcpMessageChannels.values();
-        for (Iterator it = en.iterator(); it.hasNext();) {
-            TCPMessageChannel next = (TCPMessageChannel) it.next();
+        for (TCPMessageChannel next : tcpMessageChannels.getChannels()) {
             next.close();
         }
         // RRPN: fix
@@ -193,10 +227,15 @@ public class TCPMessageProcessor extends MessageProcessor {
             next.close();
         }
 
-        this.notify();
+        connectionLock.lock();
+        try {
+            connectionReleased.signalAll();
+        } finally {
+            connectionLock.unlock();
+        }
     }
 
-    protected synchronized void remove(TCPMessageChannel tcpMessageChannel) {
+    protected void remove(TCPMessageChannel tcpMessageChannel) {
 
         String key = tcpMessageChannel.getKey();
         if (sipStack.isLoggingEnabled()) {
@@ -204,64 +243,82 @@ public class TCPMessageProcessor extends MessageProcessor {
         }
 
         /** May have been removed already */
-        if (tcpMessageChannels.get(key) == tcpMessageChannel) {
-            this.tcpMessageChannels.remove(key);
-        }
+        this.tcpMessageChannels.remove(key, tcpMessageChannel);
 
         incomingTcpMessageChannels.remove(tcpMessageChannel);
     }
 
-    public synchronized MessageChannel createMessageChannel(HostPort targetHostPort)
+    /**
+     * Close the channels that carried no traffic since the given time. The channels remove
+     * themselves from our tables when their reader thread sees the socket close.
+     */
+    protected void closeIdleChannels(long idleSince) {
+        List<TCPMessageChannel> idle = new ArrayList<TCPMessageChannel>();
+        for (TCPMessageChannel channel : tcpMessageChannels.getChannels()) {
+            if (channel.getLastActivityTime() < idleSince)
+                idle.add(channel);
+        }
+        for (TCPMessageChannel channel : incomingTcpMessageChannels) {
+            if (channel.getLastActivityTime() < idleSince && !idle.contains(channel))
+                idle.add(channel);
+        }
+        for (TCPMessageChannel channel : idle) {
+            if (sipStack.isLoggingEnabled())
+                sipStack.getStackLogger().logDebug("Closing idle channel " + channel.getKey());
+            channel.close();
+        }
+    }
+
+    public MessageChannel createMessageChannel(final HostPort targetHostPort)
             throws IOException {
-        String key = MessageChannel.getKey(targetHostPort, "TCP");
-        if (tcpMessageChannels.get(key) != null) {
-            return (TCPMessageChannel) this.tcpMessageChannels.get(key);
-        } else {
-            TCPMessageChannel retval = new TCPMessageChannel(targetHostPort.getInetAddress(),
-                    targetHostPort.getPort(), sipStack, this);
-            this.tcpMessageChannels.put(key, retval);
-            retval.isCached = true;
-            if (sipStack.isLoggingEnabled()) {
-                sipStack.getStackLogger().logDebug("key " + key);
-                sipStack.getStackLogger().logDebug("Creating " + retval);
-            }
+        final String key = MessageChannel.getKey(targetHostPort, "TCP");
+        TCPMessageChannel retval = tcpMessageChannels.get(key);
+        if (retval != null)
             return retval;
+        // The host name is resolved by the creating thread only.
+        return tcpMessageChannels.getOrCreate(key, new Callable<TCPMessageChannel>() {
+            public TCPMessageChannel call() throws IOException {
+                return newMessageChannel(key, targetHostPort.getInetAddress(), targetHostPort
+                        .getPort());
+            }
+        });
+    }
+
+    private TCPMessageChannel newMessageChannel(String key, InetAddress host, int port)
+            throws IOException {
+        TCPMessageChannel retval = new TCPMessageChannel(host, port, sipStack, this);
+        retval.isCached = true;
+        if (sipStack.isLoggingEnabled()) {
+            sipStack.getStackLogger().logDebug("key " + key);
+            sipStack.getStackLogger().logDebug("Creating " + retval);
         }
+        return retval;
     }
 
-    protected synchronized void cacheMessageChannel(TCPMessageChannel messageChannel) {
+    protected void cacheMessageChannel(TCPMessageChannel messageChannel) {
         String key = messageChannel.getKey();
-        TCPMessageChannel currentChannel = (TCPMessageChannel) tcpMessageChannels.get(key);
-        if (currentChannel != null) {
+        if (sipStack.isLoggingEnabled())
+            sipStack.getStackLogger().logDebug("Caching " + key);
+        TCPMessageChannel currentChannel = this.tcpMessageChannels.put(key, messageChannel);
+        if (currentChannel != null && currentChannel != messageChannel) {
             if (sipStack.isLoggingEnabled())
                 sipStack.getStackLogger().logDebug("Closing " + key);
             currentChannel.close();
         }
-        if (sipStack.isLoggingEnabled())
-            sipStack.getStackLogger().logDebug("Caching " + key);
-        this.tcpMessageChannels.put(key, messageChannel);
 
     }
 
-    public synchronized MessageChannel createMessageChannel(InetAddress host, int port)
+    public MessageChannel createMessageChannel(final InetAddress host, final int port)
             throws IOException {
-        try {
-            String key = MessageChannel.getKey(host, port, "TCP");
-            if (tcpMessageChannels.get(key) != null) {
-                return (TCPMessageChannel) this.tcpMessageChannels.get(key);
-            } else {
-                TCPMessageChannel retval = new TCPMessageChannel(host, port, sipStack, this);
-                this.tcpMessageChannels.put(key, retval);
-                retval.isCached = true;
-                if (sipStack.isLoggingEnabled()) {
-                    sipStack.getStackLogger().logDebug("key " + key);
-                    sipStack.getStackLogger().logDebug("Creating " + retval);
-                }
-                return retval;
+        final String key = MessageChannel.getKey(host, port, "TCP");
+        TCPMessageChannel retval = tcpMessageChannels.get(key);
+        if (retval != null)
+            return retval;
+        return tcpMessageChannels.getOrCreate(key, new Callable<TCPMessageChannel>() {
+            public TCPMessageChannel call() throws IOException {
+                return newMessageChannel(key, host, port);
             }
-        } catch (UnknownHostException ex) {
-            throw new IOException(ex.getMessage());
-        }
+        });
     }
 
     /**
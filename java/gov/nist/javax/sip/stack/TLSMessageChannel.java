@@ -48,6 +48,7 @@ import gov.nist.core.*;
 import java.net.*;
 import java.io.*;
 import java.text.ParseException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLSocket;
@@ -70,7 +71,7 @@ import javax.sip.message.Response;
  * @version 1.2 $Revision: 1.27 $ $Date: 2010/01/10 00:13:14 $
  */
 public final class TLSMessageChannel extends MessageChannel implements SIPMessageListener,
-        Runnable, RawMessageChannel {
+        KeepAliveListener, Runnable, RawMessageChannel {
 
     private Socket mySock;
 
@@ -84,6 +85,11 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
 
     protected boolean isRunning;
 
+    private static final byte[] PONG = { '\r', '\n' };
+
+    // Time (ms) data was last read from or written to this channel.
+    private volatile long lastActivityTime = System.currentTimeMillis();
+
     private Thread mythread;
 
     private String myAddress;
@@ -135,7 +141,12 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
             sslSock.setNeedClientAuth(true);
             this.handshakeCompletedListener = new HandshakeCompletedListenerImpl(this);
             sslSock.addHandshakeCompletedListener(this.handshakeCompletedListener);
+            // Bound the handshake so that a client that stops talking cannot hold
+            // a handshake thread forever.
+            int soTimeout = sslSock.getSoTimeout();
+            sslSock.setSoTimeout(sipStack.getTlsHandshakeTimeout());
             sslSock.startHandshake();
+            sslSock.setSoTimeout(soTimeout);
        
         }
         
@@ -143,9 +154,7 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
         myAddress = msgProcessor.getIpAddress().getHostAddress();
         myClientInputStream = mySock.getInputStream();
 
-        mythread = new Thread(this);
-        mythread.setDaemon(true);
-        mythread.setName("TLSMessageChannelThread");
+        mythread = sipStack.getThreadFactory().newThread(this, "TLSMessageChannelThread");
         // Stash away a pointer to our sipStack structure.
         this.sipStack = sipStack;
 
@@ -255,24 +264,32 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
         Socket sock = this.sipStack.ioHandler.sendBytes(
                 this.getMessageProcessor().getIpAddress(), this.peerAddress, this.peerPort,
                 this.peerProtocol, msg, retry,this);
+        lastActivityTime = System.currentTimeMillis();
         // Created a new socket so close the old one and stick the new
         // one in its place but dont do this if it is a datagram socket.
         // (could have replied via udp but received via tcp!).
-        if (sock != mySock && sock != null) {
-            try {
-                if (mySock != null)
-                    mySock.close();
-            } catch (IOException ex) {
-            }
-            mySock = sock;
-            this.myClientInputStream = mySock.getInputStream();
+        if (sock != mySock && sock != null)
+            connected(sock);
+
+    }
 
-            Thread thread = new Thread(this);
-            thread.setDaemon(true);
-            thread.setName("TLSMessageChannelThread");
-            thread.start();
+    /**
+     * Use a connection opened for this channel: close the old one and start reading from
+     * the new one. Called by the IOHandler once a connection it opened for this channel
+     * is established.
+     */
+    void connected(Socket sock) throws IOException {
+        try {
+            if (mySock != null)
+                mySock.close();
+        } catch (IOException ex) {
         }
+        mySock = sock;
+        this.myClientInputStream = mySock.getInputStream();
 
+        Thread thread = sipStack.getThreadFactory().newThread(this,
+                "TLSMessageChannelThread");
+        thread.start();
     }
 
     /**
@@ -307,6 +324,7 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
             throw new IllegalArgumentException("Null argument");
         Socket sock = this.sipStack.ioHandler.sendBytes(this.messageProcessor.getIpAddress(),
                 receiverAddress, receiverPort, "TLS", message, retry, this);
+        lastActivityTime = System.currentTimeMillis();
         //
         // Created a new socket so close the old one and s
         // Check for null (bug fix sent in by Christophe)
@@ -321,9 +339,8 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
             this.myClientInputStream = mySock.getInputStream();
 
             // start a new reader on this end of the pipe.
-            Thread mythread = new Thread(this);
-            mythread.setDaemon(true);
-            mythread.setName("TLSMessageChannelThread");
+            Thread mythread = sipStack.getThreadFactory().newThread(this,
+                    "TLSMessageChannelThread");
             mythread.start();
         }
 
@@ -401,6 +418,10 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
                 return;
             }
 
+            // Per source flood protection, one token per message.
+            if (!sipStack.allowFromSource(sipMessage, mySock.getInetAddress(), this))
+                return;
+
             ViaList viaList = sipMessage.getViaHeaders();
             // For a request
             // first via header tells where the message is coming from.
@@ -410,7 +431,7 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
             if (sipMessage instanceof SIPRequest) {
                 Via v = (Via) viaList.getFirst();
                 // the peer address and tag it appropriately.
-                Hop hop = sipStack.addressResolver.resolveAddress(v.getHop());
+                Hop hop = sipStack.resolveViaHop(v.getHop());
                 this.peerProtocol = v.getTransport();
                 try {
                     this.peerAddress = mySock.getInetAddress();
@@ -563,6 +584,22 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
         }
     }
 
+    /**
+     * Answer an RFC 5626 keepalive ping, found by the parser between two messages, with a
+     * single CRLF pong.
+     */
+    public void processPing() throws IOException {
+        OutputStream outputStream = mySock.getOutputStream();
+        ReentrantLock writeLock = IOHandler.getWriteLock(outputStream);
+        writeLock.lock();
+        try {
+            outputStream.write(PONG);
+            outputStream.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /**
      * This gets invoked when thread.start is called from the constructor. Implements a message
      * loop - reading the tcp connection and processing messages until we are done or the other
@@ -577,25 +614,28 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
         // messages that we write out to him.
         myParser = new PipelinedMsgParser(this, hispipe, this.sipStack.getMaxMessageSize());
         // Start running the parser thread.
-        myParser.processInput();
+        myParser.processInput(sipStack.getThreadFactory());
         // bug fix by Emmanuel Proulx
         int bufferSize = 4096;
         this.tlsMessageProcessor.useCount++;
         this.isRunning = true;
+        // Key of our socket in the IOHandler connection cache.
+        String ioKey = IOHandler.makeKey(mySock.getInetAddress(), mySock.getPort());
         try {
             while (true) {
                 try {
                     byte[] msg = new byte[bufferSize];
                     int nbytes = myClientInputStream.read(msg, 0, bufferSize);
+                    if (nbytes > 0) {
+                        lastActivityTime = System.currentTimeMillis();
+                        sipStack.ioHandler.touch(ioKey);
+                    }
                     // no more bytes to read...
                     if (nbytes == -1) {
                         hispipe.write("\r\n\r\n".getBytes("UTF-8"));
                         try {
                             if (sipStack.maxConnections != -1) {
-                                synchronized (tlsMessageProcessor) {
-                                    tlsMessageProcessor.nConnections--;
-                                    tlsMessageProcessor.notify();
-                                }
+                                tlsMessageProcessor.releaseConnection();
                             }
                             hispipe.close();
                             mySock.close();
@@ -618,10 +658,7 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
                             sipStack.getStackLogger().logDebug("IOException  closing sock " + ex);
                         try {
                             if (sipStack.maxConnections != -1) {
-                                synchronized (tlsMessageProcessor) {
-                                    tlsMessageProcessor.nConnections--;
-                                    tlsMessageProcessor.notify();
-                                }
+                                tlsMessageProcessor.releaseConnection();
                             }
                             mySock.close();
                             hispipe.close();
@@ -669,6 +706,13 @@ public final class TLSMessageChannel extends MessageChannel implements SIPMessag
         }
     }
 
+    /**
+     * Get the time (ms) data was last read from or written to this channel.
+     */
+    public long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
     /**
      * Get an identifying key. This key is used to cache the connection and re-use it if
      * necessary.
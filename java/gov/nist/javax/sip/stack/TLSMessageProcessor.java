@@ -50,9 +50,15 @@ import javax.net.ssl.SSLSocket;
 import java.io.IOException;
 import java.net.*;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Hashtable;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Sit in a loop waiting for incoming tls connections and start a new thread to handle each new
@@ -68,15 +74,22 @@ public class TLSMessageProcessor extends MessageProcessor {
 
     protected int nConnections;
 
+    // Guards nConnections. The accept loop waits on connectionReleased while the
+    // connection limit is reached; a lock rather than the processor monitor so that a
+    // virtual accept thread does not pin its carrier.
+    private final ReentrantLock connectionLock = new ReentrantLock();
+
+    private final Condition connectionReleased = connectionLock.newCondition();
+
     private boolean isRunning;
 
-    private Hashtable<String, TLSMessageChannel> tlsMessageChannels;
+    private final MessageChannelRegistry<TLSMessageChannel> tlsMessageChannels;
 
     private ServerSocket sock;
 
     protected int useCount = 0;
 
-    private ArrayList<TLSMessageChannel> incomingTlsMessageChannels;
+    private final Set<TLSMessageChannel> incomingTlsMessageChannels;
 
     /**
      * Constructor.
@@ -88,8 +101,9 @@ public class TLSMessageProcessor extends MessageProcessor {
     protected TLSMessageProcessor(InetAddress ipAddress, SIPTransactionStack sipStack, int port) {
         super(ipAddress, port, "tls",sipStack);
         this.sipStack = sipStack;
-        this.tlsMessageChannels = new Hashtable<String, TLSMessageChannel>();
-        this.incomingTlsMessageChannels = new ArrayList<TLSMessageChannel>();
+        this.tlsMessageChannels = new MessageChannelRegistry<TLSMessageChannel>();
+        this.incomingTlsMessageChannels = Collections
+                .newSetFromMap(new ConcurrentHashMap<TLSMessageChannel, Boolean>());
 
     }
 
@@ -97,11 +111,9 @@ public class TLSMessageProcessor extends MessageProcessor {
      * Start the processor.
      */
     public void start() throws IOException {
-        Thread thread = new Thread(this);
-        thread.setName("TLSMessageProcessorThread");
         // ISSUE 184
-        thread.setPriority(Thread.MAX_PRIORITY);
-        thread.setDaemon(true);
+        Thread thread = sipStack.getThreadFactory().newThread(this, "TLSMessageProcessorThread",
+                true, Thread.MAX_PRIORITY);
 
         this.sock = sipStack.getNetworkLayer().createSSLServerSocket(this.getPort(), 0,
                 this.getIpAddress());
@@ -125,7 +137,8 @@ public class TLSMessageProcessor extends MessageProcessor {
         // Accept new connectins on our socket.
         while (this.isRunning) {
             try {
-                synchronized (this) {
+                connectionLock.lock();
+                try {
                     // sipStack.maxConnections == -1 means we are
                     // willing to handle an "infinite" number of
                     // simultaneous connections (no resource limitation).
@@ -133,7 +146,7 @@ public class TLSMessageProcessor extends MessageProcessor {
                     while (sipStack.maxConnections != -1
                             && this.nConnections >= sipStack.maxConnections) {
                         try {
-                            this.wait();
+                            connectionReleased.await();
 
                             if (!this.isRunning)
                                 return;
@@ -142,6 +155,8 @@ public class TLSMessageProcessor extends MessageProcessor {
                         }
                     }
                     this.nConnections++;
+                } finally {
+                    connectionLock.unlock();
                 }
 
                 Socket newsock = sock.accept();
@@ -153,7 +168,25 @@ public class TLSMessageProcessor extends MessageProcessor {
                // Note that for an incoming message channel, the
                // thread is already running
 
-                incomingTlsMessageChannels.add(new TLSMessageChannel(newsock, sipStack, this));
+                if (sipStack.sourceRateLimiter != null
+                        && !sipStack.sourceRateLimiter.allow(newsock.getInetAddress())) {
+                    if (sipStack.isLoggingEnabled())
+                        sipStack.getStackLogger().logDebug(
+                                "Refusing connection -- rate limit exceeded for "
+                                        + newsock.getInetAddress());
+                    closeAcceptedSocket(newsock);
+                    continue;
+                }
+                // The handshake runs on the handshake executor so that slow
+                // clients do not hold up the accept loop.
+                try {
+                    sipStack.getTlsHandshakeExecutor().execute(new HandshakeTask(newsock));
+                } catch (RejectedExecutionException ex) {
+                    if (sipStack.isLoggingEnabled())
+                        sipStack.getStackLogger().logDebug(
+                                "Refusing connection -- too many pending TLS handshakes");
+                    closeAcceptedSocket(newsock);
+                }
             } catch (SocketException ex) {
                 if ( this.isRunning ) {
                   sipStack.getStackLogger().logError(
@@ -176,6 +209,38 @@ public class TLSMessageProcessor extends MessageProcessor {
         }
     }
 
+    /**
+     * Performs the TLS handshake of an accepted connection and creates its channel.
+     */
+    class HandshakeTask implements Runnable {
+        private final Socket socket;
+
+        HandshakeTask(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                TLSMessageChannel channel = new TLSMessageChannel(socket, sipStack,
+                        TLSMessageProcessor.this);
+                incomingTlsMessageChannels.add(channel);
+            } catch (IOException ex) {
+                if (sipStack.isLoggingEnabled())
+                    sipStack.getStackLogger().logDebug(
+                            "TLS handshake failed with " + socket.getInetAddress() + " " + ex);
+                closeAcceptedSocket(socket);
+            }
+        }
+    }
+
+    /**
+     * Close an accepted socket that did not get a channel and release its connection slot.
+     */
+    private void closeAcceptedSocket(Socket socket) {
+        IOHandler.closeQuietly(socket);
+        releaseConnection();
+    }
+
     /**
      * Returns the stack.
      * 
@@ -185,6 +250,19 @@ public class TLSMessageProcessor extends MessageProcessor {
         return sipStack;
     }
 
+    /**
+     * Release the connection slot of a closed connection.
+     */
+    protected void releaseConnection() {
+        connectionLock.lock();
+        try {
+            this.nConnections--;
+            connectionReleased.signal();
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
     /**
      * Stop the message processor. Feature suggested by Jeff Keyser.
      */
@@ -199,9 +277,7 @@ public class TLSMessageProcessor extends MessageProcessor {
             e.printStackTrace();
         }
 
-        Collection en = tlsMessageChannels.values();
-        for (Iterator it = en.iterator(); it.hasNext();) {
-            TLSMessageChannel next = (TLSMessageChannel) it.next();
+        for (TLSMessageChannel next : tlsMessageChannels.getChannels()) {
             next.close();
         }
         for (Iterator incomingMCIterator = incomingTlsMessageChannels.iterator(); incomingMCIterator
@@ -209,11 +285,16 @@ public class TLSMessageProcessor extends MessageProcessor {
             TLSMessageChannel next = (TLSMessageChannel) incomingMCIterator.next();
             next.close();
         }
-        this.notify();
+        connectionLock.lock();
+        try {
+            connectionReleased.signalAll();
+        } finally {
+            connectionLock.unlock();
+        }
 
     }
 
-    protected synchronized void remove(TLSMessageChannel tlsMessageChannel) {
+    protected void remove(TLSMessageChannel tlsMessageChannel) {
 
         String key = tlsMessageChannel.getKey();
         if (sipStack.isLoggingEnabled()) {
@@ -221,63 +302,82 @@ public class TLSMessageProcessor extends MessageProcessor {
         }
 
         /** May have been removed already */
-        if (tlsMessageChannels.get(key) == tlsMessageChannel)
-            this.tlsMessageChannels.remove(key);
+        this.tlsMessageChannels.remove(key, tlsMessageChannel);
         
         incomingTlsMessageChannels.remove(tlsMessageChannel);
     }
 
-    public synchronized MessageChannel createMessageChannel(HostPort targetHostPort)
+    /**
+     * Close the channels that carried no traffic since the given time. The channels remove
+     * themselves from our tables when their reader thread sees the socket close.
+     */
+    protected void closeIdleChannels(long idleSince) {
+        List<TLSMessageChannel> idle = new ArrayList<TLSMessageChannel>();
+        for (TLSMessageChannel channel : tlsMessageChannels.getChannels()) {
+            if (channel.getLastActivityTime() < idleSince)
+                idle.add(channel);
+        }
+        for (TLSMessageChannel channel : incomingTlsMessageChannels) {
+            if (channel.getLastActivityTime() < idleSince && !idle.contains(channel))
+                idle.add(channel);
+        }
+        for (TLSMessageChannel channel : idle) {
+            if (sipStack.isLoggingEnabled())
+                sipStack.getStackLogger().logDebug("Closing idle channel " + channel.getKey());
+            channel.close();
+        }
+    }
+
+    public MessageChannel createMessageChannel(final HostPort targetHostPort)
             throws IOException {
-        String key = MessageChannel.getKey(targetHostPort, "TLS");
-        if (tlsMessageChannels.get(key) != null) {
-            return (TLSMessageChannel) this.tlsMessageChannels.get(key);
-        } else {
-            TLSMessageChannel retval = new TLSMessageChannel(targetHostPort.getInetAddress(),
-                    targetHostPort.getPort(), sipStack, this);
-            this.tlsMessageChannels.put(key, retval);
-            retval.isCached = true;
-            if (sipStack.isLoggingEnabled()) {
-                sipStack.getStackLogger().logDebug("key " + key);
-                sipStack.getStackLogger().logDebug("Creating " + retval);
-            }
+        final String key = MessageChannel.getKey(targetHostPort, "TLS");
+        TLSMessageChannel retval = tlsMessageChannels.get(key);
+        if (retval != null)
             return retval;
+        // The host name is resolved by the creating thread only.
+        return tlsMessageChannels.getOrCreate(key, new Callable<TLSMessageChannel>() {
+            public TLSMessageChannel call() throws IOException {
+                return newMessageChannel(key, targetHostPort.getInetAddress(), targetHostPort
+                        .getPort());
+            }
+        });
+    }
+
+    private TLSMessageChannel newMessageChannel(String key, InetAddress host, int port)
+            throws IOException {
+        TLSMessageChannel retval = new TLSMessageChannel(host, port, sipStack, this);
+        retval.isCached = true;
+        if (sipStack.isLoggingEnabled()) {
+            sipStack.getStackLogger().logDebug("key " + key);
+            sipStack.getStackLogger().logDebug("Creating " + retval);
         }
+        return retval;
     }
 
-    protected synchronized void cacheMessageChannel(TLSMessageChannel messageChannel) {
+    protected void cacheMessageChannel(TLSMessageChannel messageChannel) {
         String key = messageChannel.getKey();
-        TLSMessageChannel currentChannel = (TLSMessageChannel) tlsMessageChannels.get(key);
-        if (currentChannel != null) {
+        if (sipStack.isLoggingEnabled())
+            sipStack.getStackLogger().logDebug("Caching " + key);
+        TLSMessageChannel currentChannel = this.tlsMessageChannels.put(key, messageChannel);
+        if (currentChannel != null && currentChannel != messageChannel) {
             if (sipStack.isLoggingEnabled())
                 sipStack.getStackLogger().logDebug("Closing " + key);
             currentChannel.close();
         }
-        if (sipStack.isLoggingEnabled())
-            sipStack.getStackLogger().logDebug("Caching " + key);
-        this.tlsMessageChannels.put(key, messageChannel);
 
     }
 
-    public synchronized MessageChannel createMessageChannel(InetAddress host, int port)
+    public MessageChannel createMessageChannel(final InetAddress host, final int port)
             throws IOException {
-        try {
-            String key = MessageChannel.getKey(host, port, "TLS");
-            if (tlsMessageChannels.get(key) != null) {
-                return (TLSMessageChannel) this.tlsMessageChannels.get(key);
-            } else {
-                TLSMessageChannel retval = new TLSMessageChannel(host, port, sipStack, this);
-                this.tlsMessageChannels.put(key, retval);
-                retval.isCached = true;
-                if (sipStack.isLoggingEnabled()) {
-                    sipStack.getStackLogger().logDebug("key " + key);
-                    sipStack.getStackLogger().logDebug("Creating " + retval);
-                }
-                return retval;
+        final String key = MessageChannel.getKey(host, port, "TLS");
+        TLSMessageChannel retval = tlsMessageChannels.get(key);
+        if (retval != null)
+            return retval;
+        return tlsMessageChannels.getOrCreate(key, new Callable<TLSMessageChannel>() {
+            public TLSMessageChannel call() throws IOException {
+                return newMessageChannel(key, host, port);
             }
-        } catch (UnknownHostException ex) {
-            throw new IOException(ex.getMessage());
-        }
+        });
     }
 
     /**
@@ -174,13 +174,11 @@ public class UDPMessageChannel extends MessageChannel implements
         super.messageProcessor = messageProcessor;
         this.sipStack = stack;
 
-        Thread mythread = new Thread(this);
+        Thread mythread = stack.getThreadFactory().newThread(this, "UDPMessageChannelThread");
 
         this.myAddress = messageProcessor.getIpAddress().getHostAddress();
         this.myPort = messageProcessor.getPort();
 
-        mythread.setName("UDPMessageChannelThread");
-        mythread.setDaemon(true);
         mythread.start();
 
     }
@@ -205,9 +203,7 @@ public class UDPMessageChannel extends MessageChannel implements
 
         this.myAddress = messageProcessor.getIpAddress().getHostAddress();
         this.myPort = messageProcessor.getPort();
-        Thread mythread = new Thread(this);
-        mythread.setDaemon(true);
-        mythread.setName("UDPMessageChannelThread");
+        Thread mythread = stack.getThreadFactory().newThread(this, "UDPMessageChannelThread");
 
         mythread.start();
 
@@ -293,12 +289,17 @@ public class UDPMessageChannel extends MessageChannel implements
             }
 
             // Process the packet. Catch and log any exception we may throw.
+            if (threadHandle != null)
+                threadHandle.beginWork(packet);
             try {
                 processIncomingDataPacket(packet);
             } catch (Exception e) {
 
                 sipStack.getStackLogger().logError(
                         "Error while processing incoming UDP packet", e);
+            } finally {
+                if (threadHandle != null)
+                    threadHandle.endWork();
             }
 
             if (sipStack.threadPoolSize == -1) {
@@ -317,10 +318,9 @@ public class UDPMessageChannel extends MessageChannel implements
             throws Exception {
         this.peerAddress = packet.getAddress();
         int packetLength = packet.getLength();
-        // Read bytes and put it in a eueue.
+        // The message is parsed straight from the receive buffer.
         byte[] bytes = packet.getData();
-        byte[] msgBytes = new byte[packetLength];
-        System.arraycopy(bytes, 0, msgBytes, 0, packetLength);
+        int packetOffset = packet.getOffset();
 
         // Do debug logging.
         if (sipStack.isLoggingEnabled()) {
@@ -334,13 +334,13 @@ public class UDPMessageChannel extends MessageChannel implements
         SIPMessage sipMessage = null;
         try {
             this.receptionTime = System.currentTimeMillis();
-            sipMessage = myParser.parseSIPMessage(msgBytes);
+            sipMessage = myParser.parseSIPMessage(bytes, packetOffset, packetLength);
             myParser = null;
         } catch (ParseException ex) {
             myParser = null; // let go of the parser reference.
             if (sipStack.isLoggingEnabled()) {
                 this.sipStack.getStackLogger().logDebug("Rejecting message !  "
-                        + new String(msgBytes));
+                        + new String(bytes, packetOffset, packetLength));
                 this.sipStack.getStackLogger().logDebug("error message "
                         + ex.getMessage());
                 this.sipStack.getStackLogger().logException(ex);
@@ -349,7 +349,7 @@ public class UDPMessageChannel extends MessageChannel implements
 
             // JvB: send a 400 response for requests (except ACK)
             // Currently only UDP, @todo also other transports
-            String msgString = new String(msgBytes, 0, packetLength);
+            String msgString = new String(bytes, packetOffset, packetLength);
             if (!msgString.startsWith("SIP/") && !msgString.startsWith("ACK ")) {
 
                 String badReqRes = createBadReqRes(msgString, ex);
@@ -400,7 +400,7 @@ public class UDPMessageChannel extends MessageChannel implements
                 || sipMessage.getCallId() == null
                 || sipMessage.getCSeq() == null
                 || sipMessage.getViaHeaders() == null) {
-            String badmsg = new String(msgBytes);
+            String badmsg = new String(bytes, packetOffset, packetLength);
             if (sipStack.isLoggingEnabled()) {
                 this.sipStack.getStackLogger().logError("bad message " + badmsg);
                 this.sipStack.getStackLogger().logError(">>> Dropped Bad Msg "
@@ -417,7 +417,7 @@ public class UDPMessageChannel extends MessageChannel implements
         // For response, just get the port from the packet.
         if (sipMessage instanceof SIPRequest) {
             Via v = (Via) viaList.getFirst();
-            Hop hop = sipStack.addressResolver.resolveAddress(v.getHop());
+            Hop hop = sipStack.resolveViaHop(v.getHop());
             this.peerPort = hop.getPort();
             this.peerProtocol = v.getTransport();
 
@@ -699,36 +699,11 @@ public class UDPMessageChannel extends MessageChannel implements
             }
 
         }
-        DatagramPacket reply = new DatagramPacket(msg, msg.length, peerAddress,
-                peerPort);
-        try {
-            DatagramSocket sock;
-            boolean created = false;
-
-            if (sipStack.udpFlag) {
-                // Use the socket from the message processor (for firewall
-                // support use the same socket as the message processor
-                // socket -- feature request # 18 from java.net). This also
-                // makes the whole thing run faster!
-                sock = ((UDPMessageProcessor) messageProcessor).sock;
-
-                // Bind the socket to the stack address in case there
-                // are multiple interfaces on the machine (feature reqeust
-                // by Will Scullin) 0 binds to an ephemeral port.
-                // sock = new DatagramSocket(0,sipStack.stackInetAddress);
-            } else {
-                // bind to any interface and port.
-                sock = new DatagramSocket();
-                created = true;
-            }
-            sock.send(reply);
-            if (created)
-                sock.close();
-        } catch (IOException ex) {
-            throw ex;
-        } catch (Exception ex) {
-            InternalErrorHandler.handleException(ex);
-        }
+        // Use the socket from the message processor (for firewall
+        // support use the same socket as the message processor
+        // socket -- feature request # 18 from java.net). This also
+        // makes the whole thing run faster!
+        ((UDPMessageProcessor) messageProcessor).send(msg, peerAddress, peerPort);
     }
 
     /**
@@ -762,40 +737,19 @@ public class UDPMessageChannel extends MessageChannel implements
             }
         }
         if (peerProtocol.compareToIgnoreCase("UDP") == 0) {
-            DatagramPacket reply = new DatagramPacket(msg, msg.length,
-                    peerAddress, peerPort);
-
-            try {
-                DatagramSocket sock;
-                if (sipStack.udpFlag) {
-                    sock = ((UDPMessageProcessor) messageProcessor).sock;
-
-                } else {
-                    // bind to any interface and port.
-                    sock = sipStack.getNetworkLayer().createDatagramSocket();
-                }
-                if (sipStack.isLoggingEnabled()) {
-                    this.sipStack.getStackLogger().logDebug("sendMessage "
-                            + peerAddress.getHostAddress() + "/" + peerPort
-                            + "\n" + new String(msg));
-                }
-                sock.send(reply);
-                if (!sipStack.udpFlag)
-                    sock.close();
-            } catch (IOException ex) {
-                throw ex;
-            } catch (Exception ex) {
-                InternalErrorHandler.handleException(ex);
+            if (sipStack.isLoggingEnabled()) {
+                this.sipStack.getStackLogger().logDebug("sendMessage "
+                        + peerAddress.getHostAddress() + "/" + peerPort
+                        + "\n" + new String(msg));
             }
+            ((UDPMessageProcessor) messageProcessor).send(msg, peerAddress, peerPort);
 
         } else {
             // Use TCP to talk back to the sender.
-            Socket outputSocket = sipStack.ioHandler.sendBytes(
+            // sendBytes writes the message (or queues it while connecting).
+            sipStack.ioHandler.sendBytes(
                     this.messageProcessor.getIpAddress(), peerAddress,
                     peerPort, "tcp", msg, retry,this);
-            OutputStream myOutputStream = outputSocket.getOutputStream();
-            myOutputStream.write(msg, 0, msg.length);
-            myOutputStream.flush();
             // The socket is cached (dont close it!);
         }
     }
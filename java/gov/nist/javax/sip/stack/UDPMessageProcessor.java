@@ -31,6 +31,9 @@ package gov.nist.javax.sip.stack;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.locks.ReentrantLock;
 
 import gov.nist.core.*;
 
@@ -88,6 +91,15 @@ public class UDPMessageProcessor extends MessageProcessor {
     
     private static final int LOWAT=2500;
 
+    /**
+     * Direct buffer for sending through the channel of our socket, allocated on first use.
+     * One per processor rather than per thread, so that the number of sending threads (which
+     * may be virtual threads) does not matter. The channel serializes sends anyway.
+     */
+    private ByteBuffer sendBuffer;
+
+    private final ReentrantLock sendLock = new ReentrantLock();
+
     /**
      * Constructor.
      *
@@ -149,12 +161,9 @@ public class UDPMessageProcessor extends MessageProcessor {
 
 
         this.isRunning = true;
-        Thread thread = new Thread(this);
-        thread.setDaemon(true);
-        // Issue #32 on java.net
-        thread.setName("UDPMessageProcessorThread");
-        // Issue #184
-        thread.setPriority(Thread.MAX_PRIORITY);
+        // Issue #32 on java.net, Issue #184
+        Thread thread = sipStack.getThreadFactory().newThread(this, "UDPMessageProcessorThread",
+                true, Thread.MAX_PRIORITY);
         thread.start();
     }
 
@@ -190,6 +199,16 @@ public class UDPMessageProcessor extends MessageProcessor {
                 DatagramPacket packet = new DatagramPacket(message, bufsize);
                 sock.receive(packet);
 
+                // Per source flood protection: costs a lookup, not a parse.
+                if (sipStack.sourceRateLimiter != null
+                        && !sipStack.sourceRateLimiter.allow(packet.getAddress())) {
+                    if (sipStack.isLoggingEnabled())
+                        sipStack.getStackLogger().logDebug(
+                                "Dropping message -- rate limit exceeded for "
+                                        + packet.getAddress());
+                    continue;
+                }
+
            
              
              // This is a simplistic congestion control algorithm.
@@ -331,6 +350,39 @@ public class UDPMessageProcessor extends MessageProcessor {
         return false;
     }
 
+    /**
+     * Send a datagram from our (listening) socket. If the socket is backed by a channel
+     * (see NetworkLayer.createDatagramSocket) the message is sent from the direct buffer of
+     * this processor, otherwise through a DatagramPacket.
+     *
+     * @param msg -- the message to send.
+     * @param address -- the destination address.
+     * @param port -- the destination port.
+     */
+    protected void send(byte[] msg, InetAddress address, int port) throws IOException {
+        DatagramChannel channel = sock.getChannel();
+        if (channel != null) {
+            InetSocketAddress target = new InetSocketAddress(address, port);
+            sendLock.lock();
+            try {
+                if (sendBuffer == null)
+                    sendBuffer = ByteBuffer.allocateDirect(65535);
+                if (msg.length <= sendBuffer.capacity()) {
+                    sendBuffer.clear();
+                    sendBuffer.put(msg);
+                    sendBuffer.flip();
+                    channel.send(sendBuffer, target);
+                    return;
+                }
+            } finally {
+                sendLock.unlock();
+            }
+            channel.send(ByteBuffer.wrap(msg), target);
+        } else {
+            sock.send(new DatagramPacket(msg, msg.length, address, port));
+        }
+    }
+
     /**
      * UDP can handle a message as large as the MAX_DATAGRAM_SIZE.
      */